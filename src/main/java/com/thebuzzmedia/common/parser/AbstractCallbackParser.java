@@ -19,6 +19,15 @@ package com.thebuzzmedia.common.parser;
 public abstract class AbstractCallbackParser<IT, TT, VT, ST> extends
 		AbstractParser<IT, TT, VT, ST> implements
 		ICallbackParser<IT, TT, VT, ST> {
+	public AbstractCallbackParser() {
+		super(DEFAULT_BUFFER_CAPACITY);
+	}
+
+	public AbstractCallbackParser(int bufferCapacity)
+			throws IllegalArgumentException {
+		super(bufferCapacity);
+	}
+
 	public void parse(ICallback<IT, TT, VT, ST> callback)
 			throws IllegalArgumentException, ParseException {
 		// Loop until stopped
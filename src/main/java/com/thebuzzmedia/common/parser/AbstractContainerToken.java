@@ -48,8 +48,8 @@ public abstract class AbstractContainerToken<TT, VT, ST> extends
 	public String toString() {
 		return this.getClass().getName() + "@" + hashCode() + "[type="
 				+ (type == null ? "" : type) + ", index=" + index + ", length="
-				+ length + ", source=" + (source == null ? "" : source)
-				+ ", boundsMode=" + mode + ", tokenCount=" + getTokenCount()
+				+ length + ", position=" + position + ", source="
+				+ (source == null ? "" : source) + ", boundsMode=" + mode + ", tokenCount=" + getTokenCount()
 				+ ", tokenList=" + (tokenList == null ? "" : tokenList) + "]";
 	}
 
@@ -105,15 +105,13 @@ public abstract class AbstractContainerToken<TT, VT, ST> extends
 		}
 
 		/*
-		 * Thread-Safe: Lock on "this" to avoid two threads coming in here and
-		 * creating two separate lists, potentially storing tokens in disjoint
-		 * lists this container knows nothing about.
+		 * No locking here; containers are built by the single thread that
+		 * owns the parser creating them (see IParser), and locking just the
+		 * list creation never made the (unlocked) add below thread-safe
+		 * anyway.
 		 */
-		synchronized (this) {
-			// init the list if this is our first add
-			if (tokenList == null)
-				tokenList = new ArrayList<IToken<TT, VT, ST>>(2);
-		}
+		if (tokenList == null)
+			tokenList = new ArrayList<IToken<TT, VT, ST>>(2);
 
 		tokenList.add(token);
 	}
@@ -23,6 +23,7 @@ public abstract class AbstractDelimitedTokenizer<IT, DT, TT, VT, ST> extends
 		IDelimitedTokenizer<IT, DT, TT, VT, ST> {
 	protected DT delimiters;
 	protected DelimiterMode mode;
+	protected EmptyTokenPolicy emptyTokenPolicy = EmptyTokenPolicy.COLLAPSE;
 
 	public AbstractDelimitedTokenizer() {
 		super(DEFAULT_BUFFER_CAPACITY);
@@ -47,6 +48,12 @@ public abstract class AbstractDelimitedTokenizer<IT, DT, TT, VT, ST> extends
 				"setInput(IInput) is not supported. Please use setInput(IInput, <DT> delimiters, DelimitedMode mode) instead.");
 	}
 
+	@Override
+	public final void beginFeed() throws UnsupportedOperationException {
+		throw new UnsupportedOperationException(
+				"beginFeed() is not supported. Please use beginFeed(<DT> delimiters, DelimitedMode mode) instead.");
+	}
+
 	@Override
 	public IToken<TT, VT, ST> nextToken() throws ParseException {
 		if (delimiters == null || mode == null)
@@ -66,6 +73,18 @@ public abstract class AbstractDelimitedTokenizer<IT, DT, TT, VT, ST> extends
 		return mode;
 	}
 
+	public EmptyTokenPolicy getEmptyTokenPolicy() {
+		return emptyTokenPolicy;
+	}
+
+	public void setEmptyTokenPolicy(EmptyTokenPolicy policy)
+			throws IllegalArgumentException {
+		if (policy == null)
+			throw new IllegalArgumentException("policy cannot be null");
+
+		this.emptyTokenPolicy = policy;
+	}
+
 	public void setInput(IInput<IT, ST> input, DT delimiters, DelimiterMode mode)
 			throws IllegalArgumentException {
 		if (delimiters == null)
@@ -73,10 +92,74 @@ public abstract class AbstractDelimitedTokenizer<IT, DT, TT, VT, ST> extends
 		if (mode == null)
 			throw new IllegalArgumentException("mode cannot be null");
 
+		prepareDelimiters(delimiters, mode);
+
 		// init the input
 		super.setInput(input);
 
 		this.delimiters = delimiters;
 		this.mode = mode;
 	}
+
+	public void beginFeed(DT delimiters, DelimiterMode mode)
+			throws IllegalArgumentException, UnsupportedOperationException {
+		if (delimiters == null)
+			throw new IllegalArgumentException("delimiters cannot be null");
+		if (mode == null)
+			throw new IllegalArgumentException("mode cannot be null");
+
+		prepareDelimiters(delimiters, mode);
+
+		// init the feed
+		beginFeedImpl();
+
+		this.delimiters = delimiters;
+		this.mode = mode;
+	}
+
+	/**
+	 * Used to validate the given delimiters and mode before they are used,
+	 * and to pre-compute anything the tokenizer needs to scan for them.
+	 * <p/>
+	 * This base implementation does nothing. Subclasses that only support
+	 * some of the {@link DelimiterMode}s must override this method to reject
+	 * the others.
+	 * 
+	 * @param delimiters
+	 *            The delimiters the tokenizer will use.
+	 * @param mode
+	 *            The mode the tokenizer will use.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the delimiters or mode are not supported.
+	 */
+	protected void prepareDelimiters(DT delimiters, DelimiterMode mode)
+			throws IllegalArgumentException {
+		// no-op
+	}
+
+	@Override
+	public DelimitedParserState<DT, ST> saveState()
+			throws IllegalStateException {
+		return new DelimitedParserState<DT, ST>(super.saveState(), delimiters,
+				mode);
+	}
+
+	@Override
+	public void restoreState(ParserState<ST> state)
+			throws IllegalArgumentException, UnsupportedOperationException {
+		if (!(state instanceof DelimitedParserState<?, ?>))
+			throw new IllegalArgumentException(
+					"state must be a DelimitedParserState");
+
+		@SuppressWarnings("unchecked")
+		DelimitedParserState<DT, ST> dState = (DelimitedParserState<DT, ST>) state;
+		prepareDelimiters(dState.getDelimiters(), dState.getDelimiterMode());
+
+		// restore the feed
+		super.restoreState(state);
+
+		this.delimiters = dState.getDelimiters();
+		this.mode = dState.getDelimiterMode();
+	}
 }
\ No newline at end of file
@@ -16,13 +16,15 @@
 package com.thebuzzmedia.common.parser;
 
 import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.List;
 
 import com.thebuzzmedia.common.io.IInput;
 import com.thebuzzmedia.common.parser.ParseException.Type;
 import com.thebuzzmedia.common.util.ArrayUtils;
 
 public abstract class AbstractParser<IT, TT, VT, ST> implements
-		IParser<IT, TT, VT, ST> {
+		IPushParser<IT, TT, VT, ST> {
 	/**
 	 * Flag used to keep track of the parser's state to see if it can or should
 	 * continue parsing.
@@ -34,12 +36,13 @@ public abstract class AbstractParser<IT, TT, VT, ST> implements
 	 * <code>bIndex &gt;= bEndIndex</code>; indicating that both the
 	 * <code>input</code> is empty and our read buffer has been read completely.
 	 * <p/>
-	 * This flag is also set to <code>true</code> if two attempts are made to
-	 * parse a token from the buffer and fails. After the first attempt, the
-	 * parser will refill the buffer and attempt the parse 1 more time. If that
-	 * attempt fails, this flag is flipped and the parser is considered stopped
-	 * because it is incapable of correctly parsing a token from whatever
-	 * content is left.
+	 * This flag is also set to <code>true</code> if an attempt to parse a
+	 * token from the buffer fails and no more data can be read into the
+	 * buffer. After the first attempt, the parser will refill the buffer and
+	 * attempt the parse again for as long as the refill reads new data. Once a
+	 * refill reads nothing and the attempt still fails, this flag is flipped
+	 * and the parser is considered stopped because it is incapable of
+	 * correctly parsing a token from whatever content is left.
 	 */
 	protected boolean stopped;
 
@@ -51,6 +54,39 @@ public abstract class AbstractParser<IT, TT, VT, ST> implements
 	 */
 	protected boolean reuseToken;
 
+	/**
+	 * Flag used to indicate if the parser should report malformed content
+	 * using a single, re-used {@link StacklessParseException} instead of
+	 * creating a new {@link ParseException} (and capturing its stack trace)
+	 * for every failure.
+	 * 
+	 * @see #createParseException(Type, String, int)
+	 */
+	protected boolean reuseException;
+
+	/**
+	 * Flag used to indicate if the parser should recover from
+	 * {@link Type#MALFORMED} failures by skipping to the next recovery point
+	 * (e.g. the next delimiter) in the content and continuing to parse instead
+	 * of aborting the parse by throwing the exception to the caller.
+	 * 
+	 * @see #indexOfRecoveryPoint(int, int)
+	 */
+	protected boolean recoverFromErrors;
+
+	/**
+	 * The number of {@link Type#MALFORMED} failures the parser has recovered
+	 * from since its input was set.
+	 */
+	protected int errorCount;
+
+	/**
+	 * Flag used to indicate that the parser has recovered from a failure but
+	 * has not yet found the recovery point in the content to resume parsing
+	 * from; all content is skipped until it is found.
+	 */
+	protected boolean recoveryPending;
+
 	/**
 	 * The current position in the <code>buffer</code> where the parser will
 	 * likely begin it's next parse operation at.
@@ -77,6 +113,23 @@ public abstract class AbstractParser<IT, TT, VT, ST> implements
 	 */
 	protected int bEndIndex;
 
+	/**
+	 * The absolute position, within the <code>input</code>, of the data
+	 * currently stored at index <code>0</code> in the <code>buffer</code>.
+	 * <p/>
+	 * This value is updated every time {@link #refillBuffer()} discards data
+	 * from the front of the <code>buffer</code>, so
+	 * <code>bPosition + index</code> always gives the absolute position of any
+	 * <code>index</code> within the <code>buffer</code>.
+	 */
+	protected long bPosition;
+
+	/**
+	 * The number of tokens parsed since the input was set (or since the
+	 * {@link Checkpoint} the parser was restored from).
+	 */
+	protected long tokenCount;
+
 	/**
 	 * The read buffer that our underlying <code>input</code> writes data into
 	 * for us to scan and look for tokens.
@@ -94,6 +147,17 @@ public abstract class AbstractParser<IT, TT, VT, ST> implements
 	 */
 	protected IInput<IT, ST> input;
 
+	private StacklessParseException exception;
+	private FeedInput feedInput;
+
+	private ICheckpointListener checkpointListener;
+	private long checkpointTokenInterval;
+	private long checkpointByteInterval;
+	private long lastCheckpointTokenCount;
+	private long lastCheckpointPosition;
+
+	private IRefillListener<ST> refillListener;
+
 	/**
 	 * Create an instance with a read buffer of size
 	 * {@link IParser#DEFAULT_BUFFER_CAPACITY}.
@@ -121,8 +185,17 @@ public abstract class AbstractParser<IT, TT, VT, ST> implements
 		bIndex = ArrayUtils.INVALID_INDEX;
 		bLength = 0;
 		bEndIndex = ArrayUtils.INVALID_INDEX;
+		bPosition = 0;
+		tokenCount = 0;
+
+		lastCheckpointTokenCount = 0;
+		lastCheckpointPosition = 0;
+
+		errorCount = 0;
+		recoveryPending = false;
 
 		input = null;
+		feedInput = null;
 	}
 
 	public void stop() {
@@ -166,6 +239,393 @@ public abstract class AbstractParser<IT, TT, VT, ST> implements
 		return reuseToken;
 	}
 
+	/**
+	 * Used to get the absolute position, within the input, of the next content
+	 * the parser will process.
+	 * 
+	 * @return the absolute position, within the input, of the next content
+	 *         the parser will process.
+	 */
+	public long getPosition() {
+		return bPosition + (bIndex < 0 ? 0 : bIndex);
+	}
+
+	/**
+	 * Used to get the number of tokens parsed since the input was set,
+	 * including those counted by the {@link Checkpoint} the parser was
+	 * restored from, if any.
+	 * 
+	 * @return the number of tokens parsed.
+	 */
+	public long getTokenCount() {
+		return tokenCount;
+	}
+
+	/**
+	 * Used to set a listener that is notified with a {@link Checkpoint} every
+	 * time the parser passes <code>tokenInterval</code> tokens or
+	 * <code>byteInterval</code> units of input (whichever comes first) since
+	 * the last checkpoint.
+	 * <p/>
+	 * Checkpoints are only created between tokens and only at points the
+	 * parser considers safe to resume from (see {@link #isCheckpointSafe()}),
+	 * so the actual spacing may be larger than requested.
+	 * 
+	 * @param listener
+	 *            The listener to notify or <code>null</code> to stop creating
+	 *            checkpoints.
+	 * @param tokenInterval
+	 *            The number of tokens between checkpoints or <code>0</code> to
+	 *            not create checkpoints based on token count.
+	 * @param byteInterval
+	 *            The number of units (bytes, chars, etc.) of input between
+	 *            checkpoints or <code>0</code> to not create checkpoints based
+	 *            on position.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>tokenInterval</code> or <code>byteInterval</code>
+	 *             is &lt; <code>0</code> or if <code>listener</code> is not
+	 *             <code>null</code> and both intervals are <code>0</code>.
+	 * 
+	 * @see CheckpointIndex
+	 */
+	public void setCheckpointListener(ICheckpointListener listener,
+			long tokenInterval, long byteInterval)
+			throws IllegalArgumentException {
+		if (tokenInterval < 0 || byteInterval < 0)
+			throw new IllegalArgumentException("tokenInterval ["
+					+ tokenInterval + "] and byteInterval [" + byteInterval
+					+ "] must be >= 0");
+		if (listener != null && tokenInterval == 0 && byteInterval == 0)
+			throw new IllegalArgumentException(
+					"tokenInterval and byteInterval cannot both be 0");
+
+		this.checkpointListener = listener;
+		this.checkpointTokenInterval = tokenInterval;
+		this.checkpointByteInterval = byteInterval;
+	}
+
+	public IRefillListener<ST> getRefillListener() {
+		return refillListener;
+	}
+
+	/**
+	 * Used to set a listener that is notified every time the parser is about
+	 * to compact and refill its buffer (including every chunk being fed to
+	 * it) and can hand the parser a replacement buffer, keeping the content
+	 * of the current one valid for as long as it needs it.
+	 * 
+	 * @param listener
+	 *            The listener to notify or <code>null</code> to always refill
+	 *            the same buffer.
+	 */
+	public void setRefillListener(IRefillListener<ST> listener) {
+		this.refillListener = listener;
+	}
+
+	/**
+	 * Used to resume parsing from the given checkpoint.
+	 * <p/>
+	 * The caller is responsible for positioning the underlying source of the
+	 * parser's input at {@link Checkpoint#getPosition()} (e.g. by seeking a
+	 * file) before setting the input on this parser. This method must then be
+	 * called immediately after the input is set, before any tokens are parsed,
+	 * and restores the parser's position, token count and any
+	 * parser-specific state recorded in the checkpoint.
+	 * 
+	 * @param checkpoint
+	 *            The checkpoint to resume from.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>checkpoint</code> is <code>null</code>.
+	 * @throws IllegalStateException
+	 *             if no input has been set or this parser has already parsed
+	 *             content from its input.
+	 */
+	public void restore(Checkpoint checkpoint) throws IllegalArgumentException,
+			IllegalStateException {
+		if (checkpoint == null)
+			throw new IllegalArgumentException("checkpoint cannot be null");
+		if (input == null || bPosition != 0 || bIndex > 0 || tokenCount != 0)
+			throw new IllegalStateException(
+					"restore(Checkpoint) must be called immediately after the parser's input is set.");
+
+		bPosition = checkpoint.getPosition();
+		tokenCount = checkpoint.getTokenCount();
+
+		lastCheckpointPosition = bPosition;
+		lastCheckpointTokenCount = tokenCount;
+
+		restoreCheckpointState(checkpoint.getState());
+	}
+
+	/**
+	 * Used to start the positions reported by this parser at the given
+	 * position instead of <code>0</code>, for inputs that begin part way into
+	 * a larger source (e.g. a region of a split file) that parsing starts
+	 * from fresh.
+	 * <p/>
+	 * Unlike {@link #restore(Checkpoint)}, only the position is changed; the
+	 * token count and all parser-specific state keep their initial values.
+	 * This method must be called immediately after the input is set, before
+	 * any tokens are parsed.
+	 * 
+	 * @param position
+	 *            The absolute position of the first byte of the input.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>position</code> is &lt; 0.
+	 * @throws IllegalStateException
+	 *             if no input has been set or this parser has already parsed
+	 *             content from its input.
+	 */
+	public void setStartPosition(long position)
+			throws IllegalArgumentException, IllegalStateException {
+		if (position < 0)
+			throw new IllegalArgumentException("position [" + position
+					+ "] must be >= 0");
+		if (input == null || bPosition != 0 || bIndex > 0 || tokenCount != 0)
+			throw new IllegalStateException(
+					"setStartPosition(long) must be called immediately after the parser's input is set.");
+
+		bPosition = position;
+		lastCheckpointPosition = position;
+	}
+
+	/**
+	 * Used to determine if this parser reports malformed content using a
+	 * single, re-used {@link StacklessParseException}.
+	 * 
+	 * @return <code>true</code> if this parser re-uses a single
+	 *         {@link StacklessParseException} to report malformed content,
+	 *         otherwise <code>false</code>.
+	 */
+	public boolean isReusingException() {
+		return reuseException;
+	}
+
+	/**
+	 * Used to set if this parser should report malformed content using a
+	 * single, re-used {@link StacklessParseException} instead of creating a new
+	 * {@link ParseException} (with a full stack trace) every time.
+	 * <p/>
+	 * This is intended for parsers processing dirty input where failures are
+	 * frequent and handled by the caller as part of normal processing. Callers
+	 * must not hold on to the exception once the parser continues.
+	 * 
+	 * @param reuseException
+	 *            <code>true</code> to re-use a single stackless exception,
+	 *            otherwise <code>false</code>.
+	 */
+	public void setReuseException(boolean reuseException) {
+		this.reuseException = reuseException;
+	}
+
+	/**
+	 * Used to determine if this parser recovers from malformed content by
+	 * skipping it and continuing to parse.
+	 * 
+	 * @return <code>true</code> if this parser recovers from malformed
+	 *         content, otherwise <code>false</code>.
+	 */
+	public boolean isRecoveringFromErrors() {
+		return recoverFromErrors;
+	}
+
+	/**
+	 * Used to set if this parser should recover from {@link Type#MALFORMED}
+	 * failures by skipping to the next recovery point in the content (e.g. the
+	 * next delimiter) and continuing to parse, instead of throwing the
+	 * exception to the caller.
+	 * <p/>
+	 * The number of failures recovered from can be retrieved with
+	 * {@link #getErrorCount()}.
+	 * 
+	 * @param recoverFromErrors
+	 *            <code>true</code> to skip malformed content, otherwise
+	 *            <code>false</code> to throw a {@link ParseException}.
+	 */
+	public void setRecoverFromErrors(boolean recoverFromErrors) {
+		this.recoverFromErrors = recoverFromErrors;
+	}
+
+	/**
+	 * Used to get the number of {@link Type#MALFORMED} failures this parser
+	 * has recovered from since its input was last set.
+	 * 
+	 * @return the number of failures this parser has recovered from.
+	 */
+	public int getErrorCount() {
+		return errorCount;
+	}
+
+	public void beginFeed() throws UnsupportedOperationException {
+		beginFeedImpl();
+	}
+
+	/**
+	 * Used to reset the parser and prepare it to be fed content. Kept separate
+	 * from {@link #beginFeed()} so subclasses requiring more information to
+	 * begin a feed (e.g. delimiters) can reject the public method while
+	 * {@link #restoreState(ParserState)} keeps working.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the parser re-uses a single token instance.
+	 */
+	protected void beginFeedImpl() throws UnsupportedOperationException {
+		if (reuseToken)
+			throw new UnsupportedOperationException(
+					"Feeding content is not supported by parsers re-using a single token instance.");
+
+		// Reset state
+		reset();
+
+		feedInput = new FeedInput();
+		input = feedInput;
+
+		bIndex = 0;
+		bLength = 0;
+		bEndIndex = 0;
+
+		stopped = false;
+	}
+
+	public int feed(ST chunk, int index, int length,
+			List<IToken<TT, VT, ST>> existingTokenList)
+			throws IllegalArgumentException, IllegalStateException,
+			ParseException {
+		if (chunk == null)
+			throw new IllegalArgumentException("chunk cannot be null");
+		if (existingTokenList == null)
+			throw new IllegalArgumentException(
+					"existingTokenList cannot be null");
+
+		int chunkLength = Array.getLength(chunk);
+
+		if (index < 0 || length < 0 || (index + length) > chunkLength)
+			throw new IllegalArgumentException("index [" + index
+					+ "] and length [" + length
+					+ "] must be >= 0 and (index + length) must be <= "
+					+ "chunk length [" + chunkLength + "]");
+		if (feedInput == null || feedInput.ended)
+			throw new IllegalStateException(
+					"beginFeed() must be called before content can be fed to the parser.");
+
+		/*
+		 * Discard the content of the tokens returned from the last feed and
+		 * append as much of the chunk as fits after the partial token (if any)
+		 * we are still holding on to.
+		 */
+		compactBuffer();
+
+		int capacity = Array.getLength(buffer);
+
+		/*
+		 * If the partial token left over fills the whole buffer, no amount of
+		 * feeding will ever complete it. A token exactly filling the buffer
+		 * is still fine if the feed ends next, so we only fail once there is
+		 * more content that can't be appended to it.
+		 */
+		if (length > 0 && bLength == capacity) {
+			ParseException e = createParseException(Type.MALFORMED,
+					"A single token exceeds the parser's buffer capacity of "
+							+ capacity + ".", bIndex);
+
+			if (!recoverFromErrors)
+				throw e;
+
+			// Skip the token like any other malformed content.
+			errorCount++;
+			recoveryPending = true;
+
+			parseAvailableTokens(existingTokenList);
+			compactBuffer();
+		}
+
+		int count = Math.min(length, capacity - bLength);
+
+		if (count > 0) {
+			System.arraycopy(chunk, index, buffer, bEndIndex, count);
+
+			bLength += count;
+			bEndIndex += count;
+		}
+
+		parseAvailableTokens(existingTokenList);
+
+		return count;
+	}
+
+	public ParserState<ST> saveState() throws IllegalStateException {
+		if (feedInput == null || feedInput.ended)
+			throw new IllegalStateException(
+					"The parser's state can only be saved while content is being fed to it.");
+
+		// Copy only the content we are still holding on to.
+		int keepLength = bEndIndex - bIndex;
+
+		if (keepLength < 0)
+			keepLength = 0;
+
+		ST pending = createBuffer(keepLength);
+
+		if (keepLength > 0)
+			System.arraycopy(buffer, bIndex, pending, 0, keepLength);
+
+		return new ParserState<ST>(pending, getPosition(), tokenCount,
+				errorCount, recoveryPending, stopped, getCheckpointState());
+	}
+
+	public void restoreState(ParserState<ST> state)
+			throws IllegalArgumentException, UnsupportedOperationException {
+		if (state == null)
+			throw new IllegalArgumentException("state cannot be null");
+
+		int pendingLength = state.getPendingLength();
+		int capacity = Array.getLength(buffer);
+
+		if (pendingLength > capacity)
+			throw new IllegalArgumentException("state.getPendingLength() ["
+					+ pendingLength + "] must be <= buffer capacity ["
+					+ capacity + "]");
+
+		beginFeedImpl();
+
+		if (pendingLength > 0)
+			System.arraycopy(state.getPending(), 0, buffer, 0, pendingLength);
+
+		bLength = pendingLength;
+		bEndIndex = pendingLength;
+
+		bPosition = state.getPosition();
+		tokenCount = state.getTokenCount();
+		errorCount = state.getErrorCount();
+		recoveryPending = state.isRecoveryPending();
+		stopped = state.isStopped();
+
+		lastCheckpointPosition = bPosition;
+		lastCheckpointTokenCount = tokenCount;
+
+		restoreCheckpointState(state.getState());
+	}
+
+	public void endFeed(List<IToken<TT, VT, ST>> existingTokenList)
+			throws IllegalArgumentException, IllegalStateException,
+			ParseException {
+		if (existingTokenList == null)
+			throw new IllegalArgumentException(
+					"existingTokenList cannot be null");
+		if (feedInput == null || feedInput.ended)
+			throw new IllegalStateException(
+					"beginFeed() must be called before the feed can be ended.");
+
+		// Everything left in the buffer is now the end of the input.
+		feedInput.ended = true;
+
+		parseAvailableTokens(existingTokenList);
+		stop();
+	}
+
 	/**
 	 * Convenience method used to do the following work that is common to all
 	 * parser implementations:
@@ -219,15 +679,8 @@ public abstract class AbstractParser<IT, TT, VT, ST> implements
 			return 0;
 		}
 
-		// Calculate how much data is being kept.
-		int keepLength = bEndIndex - bIndex;
-
-		// If needed, move "kept" data to the front of the buffer.
-		if (keepLength > 0)
-			System.arraycopy(buffer, bIndex, buffer, 0, keepLength);
-
-		// Reset index to point back at the front of the buffer
-		bIndex = 0;
+		// Move the data being kept (if any) to the front of the buffer.
+		int keepLength = compactBuffer();
 
 		// Fill remainder of buffer beginning after the kept data (if any).
 		bLength = input.read(buffer, (keepLength == 0 ? 0 : keepLength));
@@ -259,42 +712,336 @@ public abstract class AbstractParser<IT, TT, VT, ST> implements
 		// Check if we can parse.
 		if (!isStopped()) {
 			// Attempt to parse the next token.
-			token = parseTokenImpl(bIndex, bEndIndex - bIndex);
+			token = attemptParseToken();
 
 			// If we failed, we need to refill the buffer and retry.
 			if (token == null) {
-				try {
-					// Refresh the buffer with new data.
-					refillBuffer();
-				} catch (IOException e) {
-					throw new ParseException(
-							Type.IO,
-							this,
-							"An exception occurred while trying to refill the parser's read buffer before the 2nd attempt at parsing the next token.",
-							e);
-				}
-
-				// Try a 2nd time to parse the token
-				token = parseTokenImpl(bIndex, bEndIndex - bIndex);
+				int readLength;
+
+				/*
+				 * Keep refilling and retrying as long as the refill gives us
+				 * new data. An input is free to return less data than the
+				 * buffer can hold (e.g. a socket), and malformed content being
+				 * skipped can span more than one buffer's worth of data.
+				 */
+				do {
+					try {
+						// Refresh the buffer with new data.
+						readLength = refillBuffer();
+					} catch (IOException e) {
+						throw new ParseException(
+								Type.IO,
+								this,
+								"An exception occurred while trying to refill the parser's read buffer before the 2nd attempt at parsing the next token.",
+								e);
+					}
+
+					// Try a 2nd time to parse the token
+					token = attemptParseToken();
+				} while (token == null && readLength > 0);
 
 				// If we failed again, stop the parser. It's done.
 				if (token == null)
 					stop();
 			}
 
-			/*
-			 * Update the buffer index position if we parsed a token. +1 is
-			 * added manually to account for the delimiter that was hit but
-			 * isn't part of the token itself.
-			 */
+			// Update the buffer index position if we parsed a token.
 			if (token != null)
-				bIndex += token.getLength() + 1;
+				tokenParsed(token);
 		}
 
 		// Return the parsed token to the caller or null if we got nothing.
 		return token;
 	}
 
+	/**
+	 * Used to update <code>bIndex</code> to point at the beginning of the
+	 * content following the given <code>token</code> that was just parsed.
+	 * <p/>
+	 * This base implementation assumes every token is followed by a single
+	 * delimiter and adds <code>token.getLength() + 1</code> to
+	 * <code>bIndex</code>. Subclasses whose tokens are surrounded by content
+	 * of any other length (e.g. quotes or multi-unit delimiters) should
+	 * override this method.
+	 * 
+	 * @param token
+	 *            The token that was just parsed.
+	 */
+	protected void advanceIndex(IToken<TT, VT, ST> token) {
+		/*
+		 * +1 is added manually to account for the delimiter that was hit but
+		 * isn't part of the token itself.
+		 */
+		bIndex += token.getLength() + 1;
+	}
+
+	/**
+	 * Used to determine if the parser is at a point, between tokens, that
+	 * parsing can safely be resumed from; {@link Checkpoint}s are only created
+	 * when this returns <code>true</code>.
+	 * <p/>
+	 * This base implementation always returns <code>true</code>. Subclasses
+	 * whose tokens depend on the tokens before them (e.g. fields within a
+	 * record) should override this to only allow checkpoints at the
+	 * appropriate boundaries.
+	 * 
+	 * @return <code>true</code> if parsing can be resumed from the current
+	 *         position, otherwise <code>false</code>.
+	 */
+	protected boolean isCheckpointSafe() {
+		return true;
+	}
+
+	/**
+	 * Used to get any parser-specific state that must be recorded in a
+	 * {@link Checkpoint} (or {@link ParserState}) to resume parsing from the
+	 * current position.
+	 * 
+	 * @return the parser-specific state or <code>null</code> if none is
+	 *         needed. This base implementation returns <code>null</code>.
+	 */
+	protected long[] getCheckpointState() {
+		return null;
+	}
+
+	/**
+	 * Used to restore the parser-specific state previously returned by
+	 * {@link #getCheckpointState()}.
+	 * 
+	 * @param state
+	 *            The parser-specific state recorded in the checkpoint; may be
+	 *            <code>null</code>. This base implementation does nothing.
+	 */
+	protected void restoreCheckpointState(long[] state) {
+		// no-op
+	}
+
+	/**
+	 * Used to determine if the underlying <code>input</code> has been
+	 * exhausted, meaning the content remaining in the <code>buffer</code> is
+	 * all the content left to parse.
+	 * <p/>
+	 * Subclasses can use this from {@link #parseTokenImpl(int, int)} to decide
+	 * if a token that runs to the end of the <code>buffer</code> is complete
+	 * or needs more data.
+	 * 
+	 * @return <code>true</code> if no more data can be read from the
+	 *         <code>input</code>, otherwise <code>false</code>.
+	 */
+	protected boolean isEndOfInput() {
+		return (input == null || input.isEmpty());
+	}
+
+	/**
+	 * Used to create the exception describing a {@link Type#MALFORMED} (or
+	 * similar) failure detected at the given <code>index</code> within the
+	 * <code>buffer</code>.
+	 * <p/>
+	 * If {@link #isReusingException()} is <code>true</code>, the same
+	 * {@link StacklessParseException} instance is updated and returned every
+	 * time, otherwise a new {@link ParseException} is created.
+	 * <p/>
+	 * Subclasses should use this method to create exceptions thrown from
+	 * {@link #parseTokenImpl(int, int)} for bad content so the failure can be
+	 * made cheap or recovered from when the caller asks for it.
+	 * 
+	 * @param type
+	 *            The type of the failure.
+	 * @param message
+	 *            The message describing the failure.
+	 * @param index
+	 *            The index within the <code>buffer</code> at which the failure
+	 *            was detected.
+	 * 
+	 * @return the exception describing the failure.
+	 */
+	protected ParseException createParseException(Type type, String message,
+			int index) {
+		long position = (index < 0 ? ArrayUtils.INVALID_INDEX : bPosition
+				+ index);
+
+		if (!reuseException)
+			return new ParseException(type, this, message, index, position);
+
+		if (exception == null)
+			exception = new StacklessParseException(this);
+
+		return exception.update(type, message, index, position);
+	}
+
+	/**
+	 * Used to find the point in the <code>buffer</code>, at or after
+	 * <code>index</code>, that parsing can safely resume from after malformed
+	 * content was found at <code>index</code>.
+	 * <p/>
+	 * This is typically the index immediately following the next delimiter.
+	 * The returned index must be greater than <code>index</code> so the
+	 * parser is guaranteed to make progress.
+	 * <p/>
+	 * This base implementation is unable to find a recovery point and always
+	 * returns {@link ArrayUtils#INVALID_INDEX}, causing all remaining content
+	 * to be skipped. Subclasses that support error recovery should override
+	 * this method.
+	 * 
+	 * @param index
+	 *            The index in the <code>buffer</code> to begin searching at.
+	 * @param length
+	 *            The number of elements in the <code>buffer</code> to search.
+	 * 
+	 * @return the index to resume parsing at or
+	 *         {@link ArrayUtils#INVALID_INDEX} if no recovery point exists in
+	 *         the given range.
+	 */
+	protected int indexOfRecoveryPoint(int index, int length) {
+		return ArrayUtils.INVALID_INDEX;
+	}
+
+	private int compactBuffer() {
+		ST target = buffer;
+
+		// Let the listener take the current buffer over, if it wants to.
+		if (refillListener != null) {
+			target = refillListener.bufferRefilling(buffer, this);
+
+			if (target == null
+					|| Array.getLength(target) != Array.getLength(buffer))
+				throw new IllegalStateException(
+						"The refill listener must return a buffer with the same capacity as the parser's buffer.");
+		}
+
+		// Calculate how much data is being kept.
+		int keepLength = bEndIndex - bIndex;
+
+		// Account for the data being discarded from the front of the buffer.
+		if (keepLength < 0) {
+			bPosition += (bEndIndex > 0 ? bEndIndex : 0);
+			keepLength = 0;
+		} else if (bIndex > 0)
+			bPosition += bIndex;
+
+		// If needed, move "kept" data to the front of the (new) buffer.
+		if (keepLength > 0 && (bIndex > 0 || target != buffer))
+			System.arraycopy(buffer, bIndex, target, 0, keepLength);
+
+		buffer = target;
+
+		// Reset index to point back at the front of the buffer
+		bIndex = 0;
+		bLength = keepLength;
+		bEndIndex = keepLength;
+
+		return keepLength;
+	}
+
+	private void parseAvailableTokens(List<IToken<TT, VT, ST>> tokenList)
+			throws ParseException {
+		IToken<TT, VT, ST> token;
+
+		while (!stopped && (token = attemptParseToken()) != null) {
+			tokenParsed(token);
+			tokenList.add(token);
+		}
+	}
+
+	private void tokenParsed(IToken<TT, VT, ST> token) {
+		/*
+		 * Stamp the absolute position on the token while its index is still
+		 * relative to the current contents of the buffer.
+		 */
+		if (token instanceof AbstractToken)
+			((AbstractToken<?, ?, ?>) token).position = bPosition
+					+ token.getIndex();
+
+		tokenCount++;
+		advanceIndex(token);
+
+		if (checkpointListener != null) {
+			long position = getPosition();
+			boolean due = (checkpointTokenInterval > 0 && tokenCount
+					- lastCheckpointTokenCount >= checkpointTokenInterval)
+					|| (checkpointByteInterval > 0 && position
+							- lastCheckpointPosition >= checkpointByteInterval);
+
+			if (due && isCheckpointSafe()) {
+				lastCheckpointTokenCount = tokenCount;
+				lastCheckpointPosition = position;
+
+				checkpointListener.checkpointReached(new Checkpoint(position,
+						tokenCount, getCheckpointState()), this);
+			}
+		}
+	}
+
+	private IToken<TT, VT, ST> attemptParseToken() throws ParseException {
+		while (true) {
+			// Finish skipping past malformed content first, if needed.
+			if (recoveryPending && !skipToRecoveryPoint(bIndex))
+				return null;
+
+			try {
+				return parseTokenImpl(bIndex, bEndIndex - bIndex);
+			} catch (ParseException e) {
+				if (!recoverFromErrors || e.getType() != Type.MALFORMED)
+					throw e;
+
+				errorCount++;
+				recoveryPending = true;
+
+				// Start skipping from where the failure was found if we can.
+				int eIndex = e.getIndex();
+
+				if (eIndex > bIndex && eIndex < bEndIndex)
+					bIndex = eIndex;
+			}
+		}
+	}
+
+	private boolean skipToRecoveryPoint(int index) {
+		int rIndex = indexOfRecoveryPoint(index, bEndIndex - index);
+
+		// Skip everything we have if the recovery point isn't in the buffer.
+		if (rIndex == ArrayUtils.INVALID_INDEX) {
+			bIndex = bEndIndex;
+			return false;
+		}
+
+		bIndex = rIndex;
+		recoveryPending = false;
+
+		return true;
+	}
+
+	/**
+	 * Class used as the <code>input</code> of a parser while it is being fed
+	 * content; it never provides data itself and only reports itself empty
+	 * once the feed has been ended.
+	 * 
+	 * @author Riyad Kalla (software@thebuzzmedia.com)
+	 */
+	private class FeedInput implements IInput<IT, ST> {
+		private boolean ended;
+
+		public IT getSource() {
+			return null;
+		}
+
+		public boolean isEmpty() {
+			return ended;
+		}
+
+		public int read(ST buffer) {
+			return 0;
+		}
+
+		public int read(ST buffer, int index) {
+			return 0;
+		}
+
+		public int read(ST buffer, int index, int length) {
+			return 0;
+		}
+	}
+
 	protected abstract ST createBuffer(int capacity)
 			throws IllegalArgumentException;
 
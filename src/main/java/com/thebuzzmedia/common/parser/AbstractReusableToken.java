@@ -15,6 +15,8 @@
  */
 package com.thebuzzmedia.common.parser;
 
+import com.thebuzzmedia.common.util.ArrayUtils;
+
 public abstract class AbstractReusableToken<TT, VT, ST> extends
 		AbstractToken<TT, VT, ST> {
 	public AbstractReusableToken() {
@@ -48,5 +50,6 @@ public abstract class AbstractReusableToken<TT, VT, ST> extends
 		this.source = source;
 		this.index = index;
 		this.length = length;
+		this.position = ArrayUtils.INVALID_INDEX;
 	}
 }
\ No newline at end of file
@@ -22,6 +22,7 @@ public abstract class AbstractToken<TT, VT, ST> implements IToken<TT, VT, ST> {
 
 	protected int index = ArrayUtils.INVALID_INDEX;
 	protected int length = 0;
+	protected long position = ArrayUtils.INVALID_INDEX;
 
 	protected ST source = null;
 
@@ -52,7 +53,8 @@ public abstract class AbstractToken<TT, VT, ST> implements IToken<TT, VT, ST> {
 	public String toString() {
 		return this.getClass().getName() + "@" + hashCode() + "[type="
 				+ (type == null ? "" : type) + ", index=" + index + ", length="
-				+ length + ", source=" + (source == null ? "" : source) + "]";
+				+ length + ", position=" + position + ", source="
+				+ (source == null ? "" : source) + "]";
 	}
 
 	public TT getType() {
@@ -70,4 +72,8 @@ public abstract class AbstractToken<TT, VT, ST> implements IToken<TT, VT, ST> {
 	public int getLength() {
 		return length;
 	}
+
+	public long getPosition() {
+		return position;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser;
+
+import java.io.Serializable;
+
+/**
+ * Immutable record of a point in a parser's input that parsing can later be
+ * resumed from, without re-parsing everything before it.
+ * <p/>
+ * A checkpoint consists of the absolute position in the input the next token
+ * begins at, the number of tokens parsed before that position and any
+ * additional state the particular parser needs to resume correctly (e.g. the
+ * current line number).
+ * <p/>
+ * To resume from a checkpoint, position the input at {@link #getPosition()},
+ * set it on a parser of the same type and configuration and then call
+ * {@link AbstractParser#restore(Checkpoint)}.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ * 
+ * @see ICheckpointListener
+ * @see CheckpointIndex
+ */
+public class Checkpoint implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private long position;
+	private long tokenCount;
+	private long[] state;
+
+	public Checkpoint(long position, long tokenCount, long[] state)
+			throws IllegalArgumentException {
+		if (position < 0 || tokenCount < 0)
+			throw new IllegalArgumentException("position [" + position
+					+ "] and tokenCount [" + tokenCount + "] must be >= 0");
+
+		this.position = position;
+		this.tokenCount = tokenCount;
+		this.state = state;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+
+		if (state != null) {
+			for (int i = 0; i < state.length; i++)
+				builder.append(i == 0 ? "" : ",").append(state[i]);
+		}
+
+		return this.getClass().getName() + "@" + hashCode() + "[position="
+				+ position + ", tokenCount=" + tokenCount + ", state=["
+				+ builder + "]]";
+	}
+
+	/**
+	 * Used to get the absolute position in the input that parsing resumes at.
+	 * 
+	 * @return the absolute position in the input that parsing resumes at.
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Used to get the number of tokens that were parsed before
+	 * {@link #getPosition()}.
+	 * 
+	 * @return the number of tokens that were parsed before
+	 *         {@link #getPosition()}.
+	 */
+	public long getTokenCount() {
+		return tokenCount;
+	}
+
+	/**
+	 * Used to get the parser-specific state needed to resume parsing, if any.
+	 * 
+	 * @return the parser-specific state needed to resume parsing or
+	 *         <code>null</code> if the parser doesn't need any.
+	 */
+	public long[] getState() {
+		return state;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,198 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sparse index of the {@link Checkpoint}s passed while parsing an input,
+ * ordered by position.
+ * <p/>
+ * An index is built by registering it as a parser's
+ * {@link ICheckpointListener}. After a crash (or simply to process a portion
+ * of a large input), {@link #findCheckpoint(long)} finds the nearest
+ * checkpoint at or before a given position that parsing can be resumed from.
+ * <p/>
+ * Indices can be persisted with {@link #write(DataOutput)} and loaded again
+ * with {@link #read(DataInput)}.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class CheckpointIndex implements ICheckpointListener {
+	private List<Checkpoint> checkpointList = new ArrayList<Checkpoint>();
+
+	public void checkpointReached(Checkpoint checkpoint,
+			IParser<?, ?, ?, ?> parser) {
+		addCheckpoint(checkpoint);
+	}
+
+	public int getCheckpointCount() {
+		return checkpointList.size();
+	}
+
+	public Checkpoint getCheckpoint(int index) throws IllegalArgumentException {
+		if (index < 0 || index >= checkpointList.size())
+			throw new IllegalArgumentException("index [" + index
+					+ "] must be >= 0 and < getCheckpointCount() ["
+					+ getCheckpointCount() + "]");
+
+		return checkpointList.get(index);
+	}
+
+	/**
+	 * Used to add a checkpoint to this index.
+	 * <p/>
+	 * Checkpoints must be added in order of position. A checkpoint that is not
+	 * past the last checkpoint in the index is ignored; this happens naturally
+	 * when a parser resumed from a checkpoint in this index passes checkpoints
+	 * the index already contains.
+	 * 
+	 * @param checkpoint
+	 *            The checkpoint to add.
+	 * 
+	 * @return <code>true</code> if the checkpoint was added, otherwise
+	 *         <code>false</code> if it was ignored.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>checkpoint</code> is <code>null</code>.
+	 */
+	public boolean addCheckpoint(Checkpoint checkpoint)
+			throws IllegalArgumentException {
+		if (checkpoint == null)
+			throw new IllegalArgumentException("checkpoint cannot be null");
+
+		int size = checkpointList.size();
+
+		if (size > 0
+				&& checkpoint.getPosition() <= checkpointList.get(size - 1)
+						.getPosition())
+			return false;
+
+		checkpointList.add(checkpoint);
+		return true;
+	}
+
+	/**
+	 * Used to find the checkpoint with the greatest position that is less
+	 * than or equal to the given position.
+	 * 
+	 * @param position
+	 *            The absolute position in the input.
+	 * 
+	 * @return the checkpoint with the greatest position that is less than or
+	 *         equal to the given position or <code>null</code> if there isn't
+	 *         one (parsing must then begin at the start of the input).
+	 */
+	public Checkpoint findCheckpoint(long position) {
+		int low = 0;
+		int high = checkpointList.size() - 1;
+		Checkpoint result = null;
+
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			Checkpoint checkpoint = checkpointList.get(mid);
+
+			if (checkpoint.getPosition() <= position) {
+				result = checkpoint;
+				low = mid + 1;
+			} else
+				high = mid - 1;
+		}
+
+		return result;
+	}
+
+	public void clear() {
+		checkpointList.clear();
+	}
+
+	/**
+	 * Used to write this index to the given output.
+	 * 
+	 * @param out
+	 *            The output to write to.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>out</code> is <code>null</code>.
+	 * @throws IOException
+	 *             if any error occurs while writing to <code>out</code>.
+	 */
+	public void write(DataOutput out) throws IllegalArgumentException,
+			IOException {
+		if (out == null)
+			throw new IllegalArgumentException("out cannot be null");
+
+		out.writeInt(checkpointList.size());
+
+		for (int i = 0, size = checkpointList.size(); i < size; i++) {
+			Checkpoint checkpoint = checkpointList.get(i);
+			long[] state = checkpoint.getState();
+
+			out.writeLong(checkpoint.getPosition());
+			out.writeLong(checkpoint.getTokenCount());
+			out.writeInt(state == null ? -1 : state.length);
+
+			if (state != null) {
+				for (int j = 0; j < state.length; j++)
+					out.writeLong(state[j]);
+			}
+		}
+	}
+
+	/**
+	 * Used to read an index previously written with {@link #write(DataOutput)}
+	 * from the given input.
+	 * 
+	 * @param in
+	 *            The input to read from.
+	 * 
+	 * @return the index that was read.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>in</code> is <code>null</code>.
+	 * @throws IOException
+	 *             if any error occurs while reading from <code>in</code>.
+	 */
+	public static CheckpointIndex read(DataInput in)
+			throws IllegalArgumentException, IOException {
+		if (in == null)
+			throw new IllegalArgumentException("in cannot be null");
+
+		CheckpointIndex index = new CheckpointIndex();
+
+		for (int i = 0, size = in.readInt(); i < size; i++) {
+			long position = in.readLong();
+			long tokenCount = in.readLong();
+			int stateLength = in.readInt();
+			long[] state = null;
+
+			if (stateLength >= 0) {
+				state = new long[stateLength];
+
+				for (int j = 0; j < stateLength; j++)
+					state[j] = in.readLong();
+			}
+
+			index.addCheckpoint(new Checkpoint(position, tokenCount, state));
+		}
+
+		return index;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,57 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser;
+
+import com.thebuzzmedia.common.parser.IDelimitedTokenizer.DelimiterMode;
+
+/**
+ * {@link ParserState} of a delimited tokenizer, additionally recording the
+ * delimiters and {@link DelimiterMode} it was fed content with.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ * 
+ * @param <DT>
+ *            The type of the delimiters.
+ * @param <ST>
+ *            The type of the tokenizer's read buffer.
+ */
+public class DelimitedParserState<DT, ST> extends ParserState<ST> {
+	private static final long serialVersionUID = 1L;
+
+	private DT delimiters;
+	private DelimiterMode mode;
+
+	public DelimitedParserState(ParserState<ST> state, DT delimiters,
+			DelimiterMode mode) throws IllegalArgumentException {
+		super(state);
+
+		if (delimiters == null)
+			throw new IllegalArgumentException("delimiters cannot be null");
+		if (mode == null)
+			throw new IllegalArgumentException("mode cannot be null");
+
+		this.delimiters = delimiters;
+		this.mode = mode;
+	}
+
+	public DT getDelimiters() {
+		return delimiters;
+	}
+
+	public DelimiterMode getDelimiterMode() {
+		return mode;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser;
+
+/**
+ * Interface used to define a listener notified by a parser every time it
+ * passes a {@link Checkpoint} in its input.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ * 
+ * @see AbstractParser#setCheckpointListener(ICheckpointListener, long, long)
+ */
+public interface ICheckpointListener {
+	/**
+	 * Used to notify the listener that the parser has passed the given
+	 * checkpoint.
+	 * 
+	 * @param checkpoint
+	 *            The checkpoint that was passed.
+	 * @param parser
+	 *            The parser that passed the checkpoint.
+	 */
+	public void checkpointReached(Checkpoint checkpoint,
+			IParser<?, ?, ?, ?> parser);
+}
\ No newline at end of file
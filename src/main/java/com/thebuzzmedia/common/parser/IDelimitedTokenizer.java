@@ -46,13 +46,73 @@ import com.thebuzzmedia.common.io.IInput;
 public interface IDelimitedTokenizer<IT, DT, TT, VT, ST> extends
 		ITokenizer<IT, TT, VT, ST> {
 	public enum DelimiterMode {
-		MATCH_ANY, MATCH_EXACT;
+		/**
+		 * Tokens are separated by any one of the delimiter units (e.g. any of
+		 * the bytes in a <code>byte[]</code> of delimiters).
+		 */
+		MATCH_ANY,
+
+		/**
+		 * Tokens are separated by the exact sequence of delimiter units.
+		 */
+		MATCH_EXACT,
+
+		/**
+		 * Tokens are separated by any one of several exact sequences of
+		 * delimiter units (e.g. a <code>byte[][]</code> of delimiters). Only
+		 * supported by tokenizers whose delimiter type is a set of sequences.
+		 */
+		MATCH_ANY_SEQUENCE;
+	}
+
+	/**
+	 * Policy used to decide what happens to the empty tokens between adjacent
+	 * delimiters.
+	 */
+	public enum EmptyTokenPolicy {
+		/**
+		 * Runs of delimiters are treated as a single delimiter; empty tokens
+		 * are never returned. This is the default.
+		 */
+		COLLAPSE,
+
+		/**
+		 * Every delimiter ends a token, so adjacent delimiters produce empty
+		 * tokens; required by positional formats. The content following the
+		 * last delimiter of the input is returned as the last token, even if
+		 * it is empty.
+		 */
+		PRESERVE,
+
+		/**
+		 * Like {@link #PRESERVE}, except the delimiters at the beginning and
+		 * end of the input are skipped; no empty tokens are returned before
+		 * the first or after the last non-empty token. A run of delimiters
+		 * following an empty token must fit in the buffer.
+		 */
+		TRIM;
 	}
 
 	public DT getDelimiters();
 
 	public DelimiterMode getDelimiterMode();
 
+	public EmptyTokenPolicy getEmptyTokenPolicy();
+
+	/**
+	 * Used to set the policy deciding what happens to the empty tokens
+	 * between adjacent delimiters. The policy is part of the tokenizer's
+	 * configuration and is kept across inputs.
+	 * 
+	 * @param policy
+	 *            The policy to use.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>policy</code> is <code>null</code>.
+	 */
+	public void setEmptyTokenPolicy(EmptyTokenPolicy policy)
+			throws IllegalArgumentException;
+
 	public void setInput(IInput<IT, ST> input, DT delimiters, DelimiterMode mode)
 			throws IllegalArgumentException;
 }
\ No newline at end of file
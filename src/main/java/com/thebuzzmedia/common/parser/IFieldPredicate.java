@@ -0,0 +1,47 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser;
+
+/**
+ * Interface used to define a cheap test of the raw bytes of a single field
+ * that parsers supporting filters (e.g.
+ * {@link com.thebuzzmedia.common.parser.general.CSVTokenizer}) evaluate at
+ * the beginning of every record; records the predicate rejects are skipped
+ * without any of their fields being tokenized.
+ * <p/>
+ * Predicates are evaluated directly against the parser's buffer and should
+ * neither allocate nor keep a reference to it.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ * 
+ * @see com.thebuzzmedia.common.parser.general.FieldPredicates
+ */
+public interface IFieldPredicate {
+	/**
+	 * Used to test the content of a field.
+	 * 
+	 * @param buffer
+	 *            The buffer containing the field.
+	 * @param index
+	 *            The index of the first byte of the field.
+	 * @param length
+	 *            The number of bytes in the field.
+	 * 
+	 * @return <code>true</code> if the record containing the field should be
+	 *         parsed or <code>false</code> if it should be skipped.
+	 */
+	public boolean accept(byte[] buffer, int index, int length);
+}
\ No newline at end of file
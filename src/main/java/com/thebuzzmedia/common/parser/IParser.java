@@ -23,6 +23,17 @@ import com.thebuzzmedia.common.io.IInput;
 /**
  * Interface used to define the base properties shared by all parsers
  * implemented in this library.
+ * <p/>
+ * <strong>Threading</strong>: parsers, their buffers and the tokens they
+ * return are owned by a single thread at a time and are not thread-safe. No
+ * parser in this library locks or waits on a monitor, so the only blocking a
+ * parse does is inside the {@link IInput} read calls made while refilling the
+ * buffer; a parser can be handed from one thread to another between calls
+ * (e.g. when used from a task scheduled on a pool) as long as the hand-off
+ * itself is safely published. Where shared state truly needs locking (e.g.
+ * coordinating worker threads) the library uses
+ * <code>java.util.concurrent</code> locks and queues rather than
+ * <code>synchronized</code>.
  * 
  * @author Riyad Kalla (software@thebuzzmedia.com)
  * 
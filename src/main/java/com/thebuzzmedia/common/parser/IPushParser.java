@@ -0,0 +1,172 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.List;
+
+import com.thebuzzmedia.common.io.IInput;
+
+/**
+ * Interface used to define a "push"-style parser.
+ * <p/>
+ * Unlike the other parser types, which pull data from an {@link IInput} and
+ * block while it is read, push parsers are handed their content by the
+ * caller in arbitrary chunks as it becomes available (e.g. from a
+ * non-blocking socket) and return the tokens each chunk completed. Content of
+ * a token that is not complete yet is kept in the parser's read buffer until
+ * the chunk completing it is fed, so the memory used per parser is bounded by
+ * the size of its buffer.
+ * <p/>
+ * A feed is started with {@link #beginFeed()}, fed any number of chunks with
+ * {@link #feed(Object, int, int, List)} and completed with
+ * {@link #endFeed(List)}, which parses whatever content is left as the end of
+ * the input.
+ * <p/>
+ * A feed in progress can be suspended with {@link #saveState()}, releasing
+ * the parser (e.g. back to a pool) while the connection is idle, and resumed
+ * later on any parser of the same type and configuration with
+ * {@link #restoreState(ParserState)}.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ * 
+ * @param <IT>
+ *            The type of the input that this parser will process (e.g.
+ *            {@link InputStream}, <code>byte[]</code>, {@link Reader}, etc).
+ *            <p/>
+ *            This is also the IT (input type) for the {@link IInput} the parser
+ *            will process.
+ * @param <TT>
+ *            The type of the token, if necessary. If not needed, simply use a
+ *            type of {@link Void}.
+ * @param <VT>
+ *            The type of the values returned by {@link IToken#getValue()}.
+ * @param <ST>
+ *            The type of the <code>source</code> that the tokens created by
+ *            this parser reference and pull {@link IToken#getValue()} values
+ *            from. This is also the type of the chunks fed to the parser.
+ */
+public interface IPushParser<IT, TT, VT, ST> extends IParser<IT, TT, VT, ST> {
+	/**
+	 * Used to reset the parser and prepare it to be fed content with
+	 * {@link #feed(Object, int, int, List)} instead of reading it from an
+	 * {@link IInput}.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the parser cannot be fed content this way (e.g. because
+	 *             it re-uses a single token instance or needs more information
+	 *             to begin parsing).
+	 */
+	public void beginFeed() throws UnsupportedOperationException;
+
+	/**
+	 * Used to feed the given chunk of content to the parser, adding every
+	 * token it completes to the given list.
+	 * <p/>
+	 * At most as much of the chunk as fits in the parser's read buffer is
+	 * consumed per call; the number of elements consumed is returned and the
+	 * caller is expected to feed the remainder of the chunk again after
+	 * handling the tokens. The chunk is copied, so it can be re-used by the
+	 * caller as soon as this method returns.
+	 * <p/>
+	 * Tokens reference the parser's read buffer and are only valid until the
+	 * next call to this method or {@link #endFeed(List)}.
+	 * 
+	 * @param chunk
+	 *            The chunk containing the content.
+	 * @param index
+	 *            The index in <code>chunk</code> the content starts at.
+	 * @param length
+	 *            The number of elements of content.
+	 * @param existingTokenList
+	 *            An existing list to add the completed tokens to.
+	 * 
+	 * @return the number of elements of the chunk that were consumed.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>chunk</code> or <code>existingTokenList</code> is
+	 *             <code>null</code> or if <code>index</code> and
+	 *             <code>length</code> are out of bounds.
+	 * @throws IllegalStateException
+	 *             if {@link #beginFeed()} has not been called or the feed has
+	 *             already been ended.
+	 * @throws ParseException
+	 *             if the content is malformed or a single token does not fit
+	 *             in the parser's read buffer; the latter is only detected
+	 *             once more content has to be appended to a token already
+	 *             filling the buffer.
+	 */
+	public int feed(ST chunk, int index, int length,
+			List<IToken<TT, VT, ST>> existingTokenList)
+			throws IllegalArgumentException, IllegalStateException,
+			ParseException;
+
+	/**
+	 * Used to signal the end of the content being fed, adding every token
+	 * parsed from the content remaining in the parser's read buffer to the
+	 * given list. The parser is stopped once this method returns.
+	 * 
+	 * @param existingTokenList
+	 *            An existing list to add the remaining tokens to.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>existingTokenList</code> is <code>null</code>.
+	 * @throws IllegalStateException
+	 *             if {@link #beginFeed()} has not been called or the feed has
+	 *             already been ended.
+	 * @throws ParseException
+	 *             if the remaining content is malformed.
+	 */
+	public void endFeed(List<IToken<TT, VT, ST>> existingTokenList)
+			throws IllegalArgumentException, IllegalStateException,
+			ParseException;
+
+	/**
+	 * Used to snapshot the minimal state of the feed in progress: the content
+	 * of the partial token the parser is holding on to (copied) and whatever
+	 * else is needed to continue parsing where it left off.
+	 * <p/>
+	 * The parser itself is left untouched and can be reset or re-used for a
+	 * different feed afterwards.
+	 * 
+	 * @return the state of the feed in progress.
+	 * 
+	 * @throws IllegalStateException
+	 *             if no feed is in progress.
+	 */
+	public ParserState<ST> saveState() throws IllegalStateException;
+
+	/**
+	 * Used to reset the parser and continue the feed recorded in the given
+	 * state; the next chunk fed to the parser is appended to the pending
+	 * content of the state.
+	 * 
+	 * @param state
+	 *            The state of a feed previously returned by
+	 *            {@link #saveState()} from a parser of the same type and
+	 *            configuration.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>state</code> is <code>null</code> or its pending
+	 *             content does not fit in this parser's read buffer.
+	 * @throws UnsupportedOperationException
+	 *             if the parser cannot be fed content (see
+	 *             {@link #beginFeed()}).
+	 */
+	public void restoreState(ParserState<ST> state)
+			throws IllegalArgumentException, UnsupportedOperationException;
+}
\ No newline at end of file
@@ -0,0 +1,51 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser;
+
+/**
+ * Interface used to define a listener notified by a parser every time it is
+ * about to compact its buffer and refill it from its input, giving the
+ * listener a chance to take ownership of the buffer.
+ * <p/>
+ * Tokens reference the parser's buffer as their <code>source</code>, so
+ * their content is normally only valid until the next refill overwrites it.
+ * A listener that returns a replacement buffer keeps the current one (and
+ * every token referencing it) intact; the parser copies the content it is
+ * still holding on to into the replacement and continues with that.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ * 
+ * @param <ST>
+ *            The type of the parser's buffer.
+ * 
+ * @see AbstractParser#setRefillListener(IRefillListener)
+ */
+public interface IRefillListener<ST> {
+	/**
+	 * Used to notify the listener that the parser is about to compact and
+	 * refill the given buffer, whose content is still intact.
+	 * 
+	 * @param buffer
+	 *            The parser's current buffer.
+	 * @param parser
+	 *            The parser refilling its buffer.
+	 * 
+	 * @return the buffer the parser should continue with; either
+	 *         <code>buffer</code> itself or a replacement of the same
+	 *         capacity that the parser takes ownership of.
+	 */
+	public ST bufferRefilling(ST buffer, IParser<?, ?, ?, ST> parser);
+}
\ No newline at end of file
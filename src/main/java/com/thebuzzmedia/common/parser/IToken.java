@@ -99,4 +99,20 @@ public interface IToken<TT, VT, ST> {
 	 *         <code>value</code>.
 	 */
 	public int getLength();
+
+	/**
+	 * Used to get the absolute position, within the input the
+	 * <code>source</code> was read from, that the value marked by this token
+	 * begins.
+	 * <p/>
+	 * Unlike {@link #getIndex()}, which is relative to the parser's read
+	 * buffer and changes meaning every time the buffer is refilled, this value
+	 * identifies the same location in the original input forever and is
+	 * suitable for recording (e.g. to resume parsing or seek back to the token
+	 * later).
+	 * 
+	 * @return the absolute position, within the input, that the value marked
+	 *         by this token begins or <code>-1</code> if unknown.
+	 */
+	public long getPosition();
 }
\ No newline at end of file
@@ -15,6 +15,8 @@
  */
 package com.thebuzzmedia.common.parser;
 
+import com.thebuzzmedia.common.util.ArrayUtils;
+
 /**
  * A specialized {@link RuntimeException} thrown by all parser implementations
  * implementations of The Buzz Media's common-parser library to indicate a
@@ -27,6 +29,10 @@ package com.thebuzzmedia.common.parser;
  * The original, underlying exception can be retrieved with {@link #getCause()}
  * and a human-readable message describing the failure can be retrieved with
  * {@link #getMessage()}.
+ * <p/>
+ * When known, the location of the failure is available from
+ * {@link #getIndex()} (the offset within the parser's read buffer) and
+ * {@link #getPosition()} (the absolute offset within the input).
  * 
  * @author Riyad Kalla (software@thebuzzmedia.com)
  */
@@ -38,8 +44,11 @@ public class ParseException extends RuntimeException {
 		UNSPECIFIED, NO_INPUT, INCOMPLETE_INPUT, IO, MALFORMED;
 	}
 
-	private Type type;
-	private IParser source;
+	protected Type type;
+	protected IParser source;
+
+	protected int index = ArrayUtils.INVALID_INDEX;
+	protected long position = ArrayUtils.INVALID_INDEX;
 
 	public ParseException(Type type, IParser source, String message) {
 		this(type, source, message, null);
@@ -53,6 +62,14 @@ public class ParseException extends RuntimeException {
 		this.source = source;
 	}
 
+	public ParseException(Type type, IParser source, String message,
+			int index, long position) {
+		this(type, source, message, null);
+
+		this.index = index;
+		this.position = position;
+	}
+
 	@Override
 	public String toString() {
 		String message = getMessage();
@@ -61,7 +78,8 @@ public class ParseException extends RuntimeException {
 		// Avoid NPE's from toString'ing nulls with ?: conditionals.
 		return this.getClass().getName() + "@" + hashCode() + "[type="
 				+ (type == null ? "" : type) + ", source="
-				+ (source == null ? "" : source) + ", message="
+				+ (source == null ? "" : source) + ", index=" + index
+				+ ", position=" + position + ", message="
 				+ (message == null ? "" : message) + ", cause="
 				+ (cause == null ? "" : cause) + "]";
 	}
@@ -73,4 +91,30 @@ public class ParseException extends RuntimeException {
 	public Object getSource() {
 		return source;
 	}
+
+	/**
+	 * Used to get the index within the parser's read buffer at which the
+	 * failure was detected.
+	 * 
+	 * @return the index within the parser's read buffer at which the failure
+	 *         was detected or {@link ArrayUtils#INVALID_INDEX} if unknown.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Used to get the absolute offset within the parser's input at which the
+	 * failure was detected.
+	 * <p/>
+	 * Unlike {@link #getIndex()}, this value is not affected by the parser
+	 * compacting and refilling its read buffer.
+	 * 
+	 * @return the absolute offset within the parser's input at which the
+	 *         failure was detected or {@link ArrayUtils#INVALID_INDEX} if
+	 *         unknown.
+	 */
+	public long getPosition() {
+		return position;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+
+/**
+ * Immutable snapshot of the minimal state of a parser being fed content (see
+ * {@link IPushParser}), used to suspend a parse without keeping the parser
+ * (and its read buffer) around.
+ * <p/>
+ * A snapshot holds only the content of the partial token the parser was
+ * holding on to, the absolute position of that content in the input, the
+ * token and error counts, the stopped and recovery flags and any
+ * parser-specific state (the same state recorded in a {@link Checkpoint}).
+ * For an idle connection this is typically a few dozen bytes instead of a
+ * parser with a full read buffer, and the parser itself can be returned to a
+ * pool. When more content arrives, any parser of the same type and
+ * configuration can pick the parse back up with
+ * {@link IPushParser#restoreState(ParserState)}.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ * 
+ * @param <ST>
+ *            The type of the parser's read buffer (and the snapshot of its
+ *            pending content).
+ */
+public class ParserState<ST> implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private ST pending;
+	private int pendingLength;
+	private long position;
+	private long tokenCount;
+	private int errorCount;
+	private boolean recoveryPending;
+	private boolean stopped;
+	private long[] state;
+
+	public ParserState(ST pending, long position, long tokenCount,
+			int errorCount, boolean recoveryPending, boolean stopped,
+			long[] state) throws IllegalArgumentException {
+		if (pending == null)
+			throw new IllegalArgumentException("pending cannot be null");
+		if (position < 0 || tokenCount < 0 || errorCount < 0)
+			throw new IllegalArgumentException("position [" + position
+					+ "], tokenCount [" + tokenCount + "] and errorCount ["
+					+ errorCount + "] must be >= 0");
+
+		this.pending = pending;
+		this.pendingLength = Array.getLength(pending);
+		this.position = position;
+		this.tokenCount = tokenCount;
+		this.errorCount = errorCount;
+		this.recoveryPending = recoveryPending;
+		this.stopped = stopped;
+		this.state = state;
+	}
+
+	protected ParserState(ParserState<ST> state)
+			throws IllegalArgumentException {
+		this(state.pending, state.position, state.tokenCount,
+				state.errorCount, state.recoveryPending, state.stopped,
+				state.state);
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getName() + "@" + hashCode()
+				+ "[pendingLength=" + pendingLength + ", position="
+				+ position + ", tokenCount=" + tokenCount + ", errorCount="
+				+ errorCount + ", recoveryPending=" + recoveryPending
+				+ ", stopped=" + stopped + "]";
+	}
+
+	/**
+	 * Used to get a copy of the content the parser had not finished parsing
+	 * yet, sized exactly to fit the content.
+	 * 
+	 * @return the content the parser had not finished parsing yet.
+	 */
+	public ST getPending() {
+		return pending;
+	}
+
+	public int getPendingLength() {
+		return pendingLength;
+	}
+
+	/**
+	 * Used to get the absolute position in the input of the first element of
+	 * the pending content.
+	 * 
+	 * @return the absolute position in the input of the first element of the
+	 *         pending content.
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	public long getTokenCount() {
+		return tokenCount;
+	}
+
+	public int getErrorCount() {
+		return errorCount;
+	}
+
+	public boolean isRecoveryPending() {
+		return recoveryPending;
+	}
+
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Used to get the parser-specific state needed to resume parsing, if any.
+	 * 
+	 * @return the parser-specific state needed to resume parsing or
+	 *         <code>null</code> if the parser doesn't need any.
+	 */
+	public long[] getState() {
+		return state;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,84 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser;
+
+/**
+ * A {@link ParseException} that never captures a stack trace and whose details
+ * can be updated so a single instance can be re-thrown by the same parser.
+ * <p/>
+ * Capturing a stack trace is by far the most expensive part of creating an
+ * exception. Parsers that report malformed content frequently (e.g. when
+ * processing dirty input with error recovery turned on) can use instances of
+ * this class to make reporting those failures nearly free.
+ * <p/>
+ * Because instances are re-used, a caller must not hold on to an instance
+ * after the parser that threw it continues parsing; the details of the
+ * exception will be overwritten by the next failure.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class StacklessParseException extends ParseException {
+	private static final long serialVersionUID = 1L;
+
+	private String message;
+
+	public StacklessParseException(IParser<?, ?, ?, ?> source) {
+		super(Type.UNSPECIFIED, source, null);
+	}
+
+	/**
+	 * Overridden to skip capturing the stack trace entirely.
+	 * <p/>
+	 * This is invoked from the {@link Throwable} constructor before any of
+	 * this class's fields are initialized, so it must not depend on them.
+	 */
+	@Override
+	public Throwable fillInStackTrace() {
+		return this;
+	}
+
+	@Override
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Used to update the details of this exception before (re)throwing it.
+	 * 
+	 * @param type
+	 *            The type of the failure.
+	 * @param message
+	 *            The message describing the failure.
+	 * @param index
+	 *            The index within the parser's read buffer at which the failure
+	 *            was detected.
+	 * @param position
+	 *            The absolute offset within the parser's input at which the
+	 *            failure was detected.
+	 * 
+	 * @return this exception, for convenience in <code>throw</code>
+	 *         statements.
+	 */
+	public StacklessParseException update(Type type, String message,
+			int index, long position) {
+		this.type = type;
+		this.message = message;
+		this.index = index;
+		this.position = position;
+
+		return this;
+	}
+}
\ No newline at end of file
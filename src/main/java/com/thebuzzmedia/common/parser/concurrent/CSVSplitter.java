@@ -0,0 +1,391 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Class used to split RFC 4180 formatted files into regions that each begin
+ * at the start of a record, so they can be tokenized in parallel (see
+ * {@link ParallelParseDriver#setSplit(long, CSVSplitter)}) with the same
+ * result as tokenizing the whole file sequentially.
+ * <p/>
+ * Whether a newline ends a record depends on the quotes before it, back to
+ * the beginning of the file. Instead of reading the file front to back, it
+ * is cut into chunks that are all scanned in parallel, each one
+ * speculatively from every state the CSV grammar can be in at its first byte
+ * (inside or outside quotes, at the start of a field, after a CR and so
+ * on). Speculations that reach the same state are merged, so in practice
+ * every chunk is scanned once "inside quotes" and once "outside quotes".
+ * Each speculation records the state it ends in and the first record start
+ * it found. A quick pass over the chunks, in order, then resolves the actual
+ * state at the beginning of each chunk from the end state of the one before
+ * it, keeping the record start found by the right speculation and
+ * discarding the others.
+ * <p/>
+ * The scanning follows the same rules as
+ * {@link com.thebuzzmedia.common.parser.general.CSVTokenizer}: quotes only
+ * have meaning at the beginning of a field, CR, LF and CRLF all end a record
+ * and content following a closing quote that isn't a separator or newline is
+ * malformed up to the next LF (where error recovery resumes).
+ * <p/>
+ * Instances of this class are immutable and can be shared between threads.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class CSVSplitter {
+	private static final int SCAN_BUFFER_SIZE = 8192;
+
+	/*
+	 * Classes of bytes, as used by the CSV field scanner.
+	 */
+	private static final int DATA = 0;
+	private static final int QUOTE = 1;
+	private static final int SEPARATOR = 2;
+	private static final int CR = 3;
+	private static final int LF = 4;
+	private static final int CLASS_COUNT = 5;
+
+	/*
+	 * States of the CSV grammar; RECORD_START and FIELD_START behave the same
+	 * but only the former is the beginning of a record.
+	 */
+	private static final int RECORD_START = 0;
+	private static final int FIELD_START = 1;
+	private static final int UNQUOTED = 2;
+	private static final int QUOTED = 3;
+	private static final int QUOTE_IN_QUOTED = 4;
+	private static final int AFTER_CR = 5;
+	private static final int INVALID = 6;
+	private static final int STATE_COUNT = 7;
+
+	/**
+	 * Transitions, indexed by <code>state * CLASS_COUNT + class</code>.
+	 */
+	private static final int[] TRANSITIONS = {
+			// RECORD_START
+			UNQUOTED, QUOTED, FIELD_START, AFTER_CR, RECORD_START,
+			// FIELD_START
+			UNQUOTED, QUOTED, FIELD_START, AFTER_CR, RECORD_START,
+			// UNQUOTED
+			UNQUOTED, UNQUOTED, FIELD_START, AFTER_CR, RECORD_START,
+			// QUOTED
+			QUOTED, QUOTE_IN_QUOTED, QUOTED, QUOTED, QUOTED,
+			// QUOTE_IN_QUOTED
+			INVALID, QUOTED, FIELD_START, AFTER_CR, RECORD_START,
+			// AFTER_CR, a lone CR ends the record before the current byte.
+			UNQUOTED, QUOTED, FIELD_START, AFTER_CR, RECORD_START,
+			// INVALID
+			INVALID, INVALID, INVALID, INVALID, RECORD_START };
+
+	private final byte[] classes;
+
+	public CSVSplitter() {
+		this((byte) ',', (byte) '"');
+	}
+
+	public CSVSplitter(byte separator, byte quote)
+			throws IllegalArgumentException {
+		if (separator == quote || separator == '\r' || separator == '\n')
+			throw new IllegalArgumentException("separator [" + separator
+					+ "] must not be the quote [" + quote
+					+ "], CR or LF character");
+		if (quote == '\r' || quote == '\n')
+			throw new IllegalArgumentException("quote [" + quote
+					+ "] must not be the CR or LF character");
+
+		classes = new byte[256];
+		classes[quote & 0xFF] = QUOTE;
+		classes[separator & 0xFF] = SEPARATOR;
+		classes['\r'] = CR;
+		classes['\n'] = LF;
+	}
+
+	/**
+	 * Used to split the given file into regions of roughly
+	 * <code>splitSize</code> bytes that each begin at the start of a record,
+	 * scanning its chunks in parallel on the given executor.
+	 * <p/>
+	 * A region can be larger than <code>splitSize</code> when a record (e.g.
+	 * a quoted field with embedded newlines) spans more than one chunk.
+	 * 
+	 * @param file
+	 *            The file to split.
+	 * @param splitSize
+	 *            The size of the chunks the file is scanned in.
+	 * @param executor
+	 *            The executor the chunks are scanned on.
+	 * 
+	 * @return the offsets, in ascending order, that every region begins at
+	 *         followed by the length of the file; region <code>i</code> runs
+	 *         from <code>offsets[i]</code> to <code>offsets[i + 1]</code>.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>file</code> or <code>executor</code> is
+	 *             <code>null</code> or if <code>splitSize</code> is &lt;= 0.
+	 * @throws IOException
+	 *             if the file could not be read or the calling thread was
+	 *             interrupted while waiting for the chunks to be scanned.
+	 */
+	public long[] split(File file, long splitSize, ExecutorService executor)
+			throws IllegalArgumentException, IOException {
+		if (file == null)
+			throw new IllegalArgumentException("file cannot be null");
+		if (splitSize <= 0)
+			throw new IllegalArgumentException("splitSize [" + splitSize
+					+ "] must be > 0");
+		if (executor == null)
+			throw new IllegalArgumentException("executor cannot be null");
+
+		long fileLength = file.length();
+		List<Future<Speculation>> futures = new ArrayList<Future<Speculation>>();
+
+		for (long start = 0; start < fileLength; start += splitSize)
+			futures.add(executor.submit(new ChunkTask(file, start, Math.min(
+					splitSize, fileLength - start))));
+
+		List<Speculation> chunks = new ArrayList<Speculation>(futures.size());
+
+		try {
+			for (Future<Speculation> future : futures)
+				chunks.add(future.get());
+		} catch (InterruptedException e) {
+			cancel(futures);
+			Thread.currentThread().interrupt();
+
+			InterruptedIOException ioe = new InterruptedIOException(
+					"Interrupted while waiting for the chunks of the file to be scanned");
+			ioe.initCause(e);
+			throw ioe;
+		} catch (ExecutionException e) {
+			cancel(futures);
+			Throwable cause = e.getCause();
+
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+
+			IOException ioe = new IOException("Unable to scan the file");
+			ioe.initCause(cause);
+			throw ioe;
+		}
+
+		return resolve(chunks, fileLength);
+	}
+
+	/**
+	 * Used to resolve the actual state at the beginning of every chunk, in
+	 * order, keeping the first record start found by the speculation that
+	 * began in that state.
+	 */
+	private long[] resolve(List<Speculation> chunks, long fileLength) {
+		List<Long> offsets = new ArrayList<Long>();
+		int state = RECORD_START;
+
+		offsets.add(Long.valueOf(0));
+
+		for (int i = 0; i < chunks.size(); i++) {
+			Speculation chunk = chunks.get(i);
+			long start = (state == RECORD_START ? chunk.position
+					: chunk.recordStarts[state]);
+
+			// A record spanning the whole chunk joins it to the last region.
+			if (i > 0 && start != -1 && start < fileLength)
+				offsets.add(Long.valueOf(start));
+
+			state = chunk.endStates[state];
+		}
+
+		long[] result = new long[offsets.size() + 1];
+
+		for (int i = 0; i < offsets.size(); i++)
+			result[i] = offsets.get(i).longValue();
+
+		result[offsets.size()] = fileLength;
+
+		return result;
+	}
+
+	private void cancel(List<Future<Speculation>> futures) {
+		for (Future<Speculation> future : futures)
+			future.cancel(true);
+	}
+
+	/**
+	 * Class used to scan a single chunk from every possible starting state at
+	 * once; every path holds the set of starting states (as a bitmask) that
+	 * have led to its current state.
+	 * 
+	 * @author Riyad Kalla (software@thebuzzmedia.com)
+	 */
+	private class Speculation {
+		private long position;
+		private long end;
+
+		private int paths;
+		private int[] states;
+		private int[] masks;
+		private int unresolved;
+
+		private long[] recordStarts;
+		private int[] endStates;
+
+		private Speculation(long position, long length) {
+			this.position = position;
+			this.end = position + length;
+
+			paths = STATE_COUNT;
+			states = new int[STATE_COUNT];
+			masks = new int[STATE_COUNT];
+			unresolved = (1 << STATE_COUNT) - 1;
+			recordStarts = new long[STATE_COUNT];
+
+			for (int s = 0; s < STATE_COUNT; s++) {
+				states[s] = s;
+				masks[s] = 1 << s;
+				recordStarts[s] = -1;
+			}
+		}
+
+		/**
+		 * Used to scan the next <code>length</code> bytes of the chunk,
+		 * beginning at <code>offset</code> within it.
+		 */
+		private void scan(byte[] buffer, int index, int length, long offset) {
+			byte[] classes = CSVSplitter.this.classes;
+			int[] states = this.states;
+
+			for (int i = index, stop = index + length; i < stop; i++) {
+				int c = classes[buffer[i] & 0xFF];
+
+				for (int p = 0; p < paths; p++) {
+					int from = states[p];
+					int to = TRANSITIONS[from * CLASS_COUNT + c];
+
+					states[p] = to;
+
+					if ((unresolved & masks[p]) == 0)
+						continue;
+
+					// A record begins after an LF or at the byte after a CR.
+					if (from == AFTER_CR && c != LF)
+						recordStarted(p, offset + i - index);
+					else if (to == RECORD_START)
+						recordStarted(p, offset + i - index + 1);
+				}
+
+				if (paths > 1)
+					merge();
+			}
+		}
+
+		private void finish() {
+			endStates = new int[STATE_COUNT];
+
+			for (int p = 0; p < paths; p++) {
+				for (int s = 0; s < STATE_COUNT; s++) {
+					if ((masks[p] & (1 << s)) != 0)
+						endStates[s] = states[p];
+				}
+			}
+		}
+
+		private void recordStarted(int path, long start) {
+			// A record starting at the end of the chunk is in its end state.
+			if (start == end)
+				return;
+
+			for (int s = 0; s < STATE_COUNT; s++) {
+				if ((masks[path] & unresolved & (1 << s)) != 0)
+					recordStarts[s] = start;
+			}
+
+			unresolved &= ~masks[path];
+		}
+
+		private void merge() {
+			for (int p = 1; p < paths; p++) {
+				for (int q = 0; q < p; q++) {
+					if (states[q] != states[p])
+						continue;
+
+					// Speculations that meet follow the same path from now on.
+					masks[q] |= masks[p];
+					paths--;
+					states[p] = states[paths];
+					masks[p] = masks[paths];
+					p--;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Class used to read and scan a single chunk of a file on a worker thread.
+	 * 
+	 * @author Riyad Kalla (software@thebuzzmedia.com)
+	 */
+	private class ChunkTask implements Callable<Speculation> {
+		private File file;
+		private long position;
+		private long length;
+
+		private ChunkTask(File file, long position, long length) {
+			this.file = file;
+			this.position = position;
+			this.length = length;
+		}
+
+		public Speculation call() throws Exception {
+			Speculation speculation = new Speculation(position, length);
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+			try {
+				byte[] buffer = new byte[(int) Math.min(SCAN_BUFFER_SIZE,
+						length)];
+				long offset = position;
+
+				raf.seek(position);
+
+				while (offset < position + length) {
+					int read = raf.read(buffer, 0, (int) Math.min(
+							buffer.length, position + length - offset));
+
+					if (read <= 0)
+						throw new IOException("Unexpected end of file ["
+								+ file + "] at offset " + offset);
+
+					speculation.scan(buffer, 0, read, offset);
+					offset += read;
+				}
+			} finally {
+				raf.close();
+			}
+
+			speculation.finish();
+			return speculation;
+		}
+	}
+}
\ No newline at end of file
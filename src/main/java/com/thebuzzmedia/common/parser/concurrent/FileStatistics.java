@@ -0,0 +1,77 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.concurrent;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class used to collect the statistics of a file processed by a
+ * {@link ParallelParseDriver}.
+ * <p/>
+ * When a file is split into regions, each region is processed on its own
+ * worker thread and adds its counts to the same instance, so the counters are
+ * atomic. {@link #getNanos()} is the total CPU-side processing time across
+ * regions, not the elapsed time.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class FileStatistics {
+	private File file;
+
+	AtomicInteger pendingRegions;
+	AtomicLong bytes;
+	AtomicLong tokens;
+	AtomicLong nanos;
+
+	FileStatistics(File file) {
+		this.file = file;
+
+		pendingRegions = new AtomicInteger();
+		bytes = new AtomicLong();
+		tokens = new AtomicLong();
+		nanos = new AtomicLong();
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getName() + "@" + hashCode() + "[file=" + file
+				+ ", bytes=" + bytes + ", tokens=" + tokens + ", nanos="
+				+ nanos + ", bytesPerSecond=" + getBytesPerSecond() + "]";
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	public long getTokens() {
+		return tokens.get();
+	}
+
+	public long getNanos() {
+		return nanos.get();
+	}
+
+	public long getBytesPerSecond() {
+		long time = nanos.get();
+		return (time == 0 ? 0 : (long) (bytes.get() * 1000000000d / time));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,50 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.concurrent;
+
+import java.io.File;
+
+import com.thebuzzmedia.common.parser.IToken;
+
+/**
+ * Interface used to receive the tokens parsed by a {@link ParallelParseDriver}
+ * along with the file they came from.
+ * <p/>
+ * <strong>Threading</strong>: methods on this interface are called
+ * concurrently from the driver's worker threads and must be thread-safe. The
+ * tokens handed to {@link #tokenParsed(File, IToken)} may be re-used by the
+ * tokenizer that produced them once the method returns.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ * 
+ * @param <TT>
+ *            The type of the tokens.
+ * @param <VT>
+ *            The type of the values the tokens return.
+ */
+public interface IFileCallback<TT, VT> {
+	public void tokenParsed(File file, IToken<TT, VT, byte[]> token);
+
+	/**
+	 * Called once every region of the given file has been parsed.
+	 * 
+	 * @param file
+	 *            The file that was parsed.
+	 * @param statistics
+	 *            The final statistics for the file.
+	 */
+	public void fileParsed(File file, FileStatistics statistics);
+}
\ No newline at end of file
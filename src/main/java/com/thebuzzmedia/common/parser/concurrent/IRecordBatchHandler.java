@@ -0,0 +1,32 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.concurrent;
+
+/**
+ * Interface used to receive the batches of records routed to the partitions
+ * of a {@link PartitionedDispatcher}.
+ * <p/>
+ * <strong>Threading</strong>: every partition is drained by its own worker
+ * thread, so this method is called concurrently for different partitions and
+ * must be thread-safe across them; the batches of any one partition are
+ * always handed over by the same thread, in the order their records were
+ * parsed. A batch is only valid until the method returns.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public interface IRecordBatchHandler {
+	public void batchReceived(int partition, RecordBatch batch);
+}
\ No newline at end of file
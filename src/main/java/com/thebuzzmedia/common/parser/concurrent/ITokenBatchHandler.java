@@ -0,0 +1,36 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.concurrent;
+
+/**
+ * Interface used to receive the batches of tokens handed off by a
+ * {@link TokenPipeline}.
+ * <p/>
+ * <strong>Threading</strong>: {@link #batchReceived(TokenBatch)} is always
+ * called from the pipeline's single consumer thread, in the order the tokens
+ * were parsed. The batch (and the spans it describes) is only valid until
+ * the method returns; copy out anything that must be kept longer.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ * 
+ * @param <TT>
+ *            The type of the tokens.
+ * @param <VT>
+ *            The type of the values the tokens return.
+ */
+public interface ITokenBatchHandler<TT, VT> {
+	public void batchReceived(TokenBatch<TT, VT> batch);
+}
\ No newline at end of file
@@ -0,0 +1,86 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.thebuzzmedia.common.io.IInput;
+import com.thebuzzmedia.common.parser.ITokenizer;
+
+/**
+ * Interface used by {@link ParallelParseDriver} to create the tokenizers and
+ * inputs it needs to process files (or regions of files) on its worker
+ * threads.
+ * <p/>
+ * Tokenizers are created lazily, at most one per concurrently running task,
+ * and are {@link ITokenizer#reset()} and re-used for every subsequent file or
+ * region; implementations do not need to be thread-safe as long as the
+ * tokenizers they return do not share state.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ * 
+ * @param <IT>
+ *            The type of the input the created tokenizers process.
+ * @param <TT>
+ *            The type of the tokens the created tokenizers return.
+ * @param <VT>
+ *            The type of the values the created tokens return.
+ */
+public interface ITokenizerFactory<IT, TT, VT> {
+	public ITokenizer<IT, TT, VT, byte[]> createTokenizer();
+
+	/**
+	 * Used to create the input providing the bytes of the given region of the
+	 * given file.
+	 * <p/>
+	 * When the driver splits files, <code>position</code> and
+	 * <code>length</code> are always aligned to the split delimiter, so the
+	 * region holds whole records. The driver closes inputs that implement
+	 * {@link java.io.Closeable} once the region has been processed.
+	 * 
+	 * @param file
+	 *            The file being processed.
+	 * @param position
+	 *            The position in the file the region starts at.
+	 * @param length
+	 *            The number of bytes in the region.
+	 * 
+	 * @return an input providing the bytes of the region (e.g.
+	 *         {@link com.thebuzzmedia.common.parser.io.FileRegionInput} for
+	 *         tokenizers processing <code>byte[]</code> input).
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be opened.
+	 */
+	public IInput<IT, byte[]> createInput(File file, long position, long length)
+			throws IOException;
+
+	/**
+	 * Used to hand the given input to the given tokenizer (e.g. with
+	 * {@link ITokenizer#setInput(IInput)}, or the variant of it accepting
+	 * delimiters for delimited tokenizers).
+	 * 
+	 * @param tokenizer
+	 *            A tokenizer created by {@link #createTokenizer()} that has
+	 *            been reset.
+	 * @param input
+	 *            An input created by
+	 *            {@link #createInput(File, long, long)}.
+	 */
+	public void setInput(ITokenizer<IT, TT, VT, byte[]> tokenizer,
+			IInput<IT, byte[]> input);
+}
\ No newline at end of file
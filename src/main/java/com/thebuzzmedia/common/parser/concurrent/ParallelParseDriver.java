@@ -0,0 +1,424 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.concurrent;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.thebuzzmedia.common.io.IInput;
+import com.thebuzzmedia.common.parser.AbstractParser;
+import com.thebuzzmedia.common.parser.IToken;
+import com.thebuzzmedia.common.parser.ITokenizer;
+import com.thebuzzmedia.common.parser.ParseException;
+import com.thebuzzmedia.common.parser.ParseException.Type;
+
+/**
+ * Class used to tokenize many files concurrently on an
+ * {@link ExecutorService}, handing every token to a single thread-safe
+ * {@link IFileCallback}.
+ * <p/>
+ * Every file is turned into one or more tasks; files larger than the split size
+ * (see {@link #setSplit(long, byte)}) are cut into regions whose boundaries are
+ * moved forward to just past the next split delimiter (e.g. a newline), so
+ * every region holds whole records and no record is parsed twice. CSV files,
+ * whose newlines can be inside quoted fields, are split at record boundaries
+ * found by a {@link CSVSplitter} instead (see
+ * {@link #setSplit(long, CSVSplitter)}). The tokenizer of a region starts at
+ * the region's offset, so {@link IToken#getPosition()} is always relative to
+ * the start of the file. Tasks are submitted largest first, so with a
+ * fixed-size pool (whose workers all pull from one shared queue) idle workers
+ * keep picking up the remaining work and a few huge files do not end up holding
+ * up the run.
+ * <p/>
+ * Tokenizers are pooled: a task takes an idle tokenizer (creating one from
+ * the {@link ITokenizerFactory} only when none is idle), resets it and
+ * returns it to the pool when done, so at most one tokenizer exists per
+ * concurrently running task.
+ * <p/>
+ * When per-file order is preserved ({@link #setPreserveOrder(boolean)}),
+ * files are never split; every file is tokenized front to back by a single
+ * worker so its tokens reach the callback in order (tokens of different files
+ * still interleave).
+ * <p/>
+ * Instances of this class are not meant to run more than one
+ * {@link #parse(Collection, IFileCallback)} at a time.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ * 
+ * @param <IT>
+ *            The type of the input the tokenizers process.
+ * @param <TT>
+ *            The type of the tokens.
+ * @param <VT>
+ *            The type of the values the tokens return.
+ */
+public class ParallelParseDriver<IT, TT, VT> {
+	/**
+	 * Split size used to indicate that files should never be split.
+	 */
+	public static final long NO_SPLIT = 0;
+
+	private static final int SCAN_BUFFER_SIZE = 8192;
+
+	private ITokenizerFactory<IT, TT, VT> factory;
+	private ExecutorService executor;
+
+	private boolean preserveOrder;
+	private long splitSize = NO_SPLIT;
+	private byte splitDelimiter;
+	private CSVSplitter splitter;
+
+	private Queue<ITokenizer<IT, TT, VT, byte[]>> tokenizerPool;
+
+	public ParallelParseDriver(ITokenizerFactory<IT, TT, VT> factory,
+			ExecutorService executor) throws IllegalArgumentException {
+		if (factory == null)
+			throw new IllegalArgumentException("factory cannot be null");
+		if (executor == null)
+			throw new IllegalArgumentException("executor cannot be null");
+
+		this.factory = factory;
+		this.executor = executor;
+
+		tokenizerPool = new ConcurrentLinkedQueue<ITokenizer<IT, TT, VT, byte[]>>();
+	}
+
+	public boolean isPreservingOrder() {
+		return preserveOrder;
+	}
+
+	public void setPreserveOrder(boolean preserveOrder) {
+		this.preserveOrder = preserveOrder;
+	}
+
+	public long getSplitSize() {
+		return splitSize;
+	}
+
+	public byte getSplitDelimiter() {
+		return splitDelimiter;
+	}
+
+	public CSVSplitter getSplitter() {
+		return splitter;
+	}
+
+	/**
+	 * Used to enable splitting of files larger than <code>splitSize</code>
+	 * bytes into regions of roughly that size that each end just after an
+	 * occurrence of <code>delimiter</code>.
+	 * <p/>
+	 * Only enable splitting when every occurrence of the delimiter ends a
+	 * record (e.g. newline-delimited logs, but not CSV with quoted newlines;
+	 * see {@link #setSplit(long, CSVSplitter)}) and the inputs created by the factory read the file as-is (not
+	 * decompressed).
+	 * 
+	 * @param splitSize
+	 *            The size regions should be split into, or {@link #NO_SPLIT}
+	 *            to process every file as one region.
+	 * @param delimiter
+	 *            The byte that ends records.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>splitSize</code> is &lt; 0.
+	 */
+	public void setSplit(long splitSize, byte delimiter)
+			throws IllegalArgumentException {
+		if (splitSize < 0)
+			throw new IllegalArgumentException("splitSize [" + splitSize
+					+ "] must be >= 0");
+
+		this.splitSize = splitSize;
+		this.splitDelimiter = delimiter;
+		this.splitter = null;
+	}
+
+	/**
+	 * Used to enable splitting of CSV files larger than <code>splitSize</code>
+	 * bytes into regions that each begin at the start of a record, as found
+	 * by the given <code>splitter</code>; regions are tokenized in parallel
+	 * with the same result as tokenizing the whole file.
+	 * <p/>
+	 * Finding the record boundaries takes a parallel pass over every split
+	 * file, on this driver's executor, before any of it is tokenized. The
+	 * inputs created by the factory must read the file as-is (not
+	 * decompressed).
+	 * 
+	 * @param splitSize
+	 *            The size regions should be split into, or {@link #NO_SPLIT}
+	 *            to process every file as one region.
+	 * @param splitter
+	 *            The splitter used to find record boundaries.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>splitSize</code> is &lt; 0 or if
+	 *             <code>splitter</code> is <code>null</code>.
+	 */
+	public void setSplit(long splitSize, CSVSplitter splitter)
+			throws IllegalArgumentException {
+		if (splitSize < 0)
+			throw new IllegalArgumentException("splitSize [" + splitSize
+					+ "] must be >= 0");
+		if (splitter == null)
+			throw new IllegalArgumentException("splitter cannot be null");
+
+		this.splitSize = splitSize;
+		this.splitter = splitter;
+	}
+
+	/**
+	 * Used to tokenize all the given files, blocking until every one of them
+	 * has been processed or one of them fails.
+	 * 
+	 * @param files
+	 *            The files to tokenize.
+	 * @param callback
+	 *            The callback all tokens (and per-file completions) are
+	 *            reported to.
+	 * 
+	 * @return the statistics of every file, in the order of
+	 *         <code>files</code>.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>files</code> or <code>callback</code> is
+	 *             <code>null</code>.
+	 * @throws ParseException
+	 *             if tokenizing any of the files fails; the first failure is
+	 *             re-thrown (wrapped if it wasn't a {@link ParseException})
+	 *             and all remaining tasks are cancelled.
+	 */
+	public List<FileStatistics> parse(Collection<File> files,
+			IFileCallback<TT, VT> callback) throws IllegalArgumentException,
+			ParseException {
+		if (files == null)
+			throw new IllegalArgumentException("files cannot be null");
+		if (callback == null)
+			throw new IllegalArgumentException("callback cannot be null");
+
+		List<FileStatistics> statsList = new ArrayList<FileStatistics>(files
+				.size());
+		List<RegionTask> tasks = new ArrayList<RegionTask>();
+
+		try {
+			for (File file : files) {
+				FileStatistics stats = new FileStatistics(file);
+
+				statsList.add(stats);
+				createTasks(file, stats, callback, tasks);
+			}
+		} catch (IOException e) {
+			throw new ParseException(Type.IO, null,
+					"Unable to split the input files", e);
+		}
+
+		// Largest regions first so the tail of the run stays balanced.
+		Collections.sort(tasks, new Comparator<RegionTask>() {
+			public int compare(RegionTask t1, RegionTask t2) {
+				return (t1.length < t2.length ? 1 : (t1.length == t2.length ? 0
+						: -1));
+			}
+		});
+
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(tasks.size());
+
+		for (RegionTask task : tasks)
+			futures.add(executor.submit(task));
+
+		try {
+			for (Future<Void> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			cancel(futures);
+			Thread.currentThread().interrupt();
+
+			throw new ParseException(Type.IO, null,
+					"Interrupted while waiting for the input files", e);
+		} catch (ExecutionException e) {
+			cancel(futures);
+			Throwable cause = e.getCause();
+
+			if (cause instanceof ParseException)
+				throw (ParseException) cause;
+			else
+				throw new ParseException(Type.IO, null,
+						"Unable to parse the input files", cause);
+		}
+
+		return statsList;
+	}
+
+	protected void createTasks(File file, FileStatistics stats,
+			IFileCallback<TT, VT> callback, List<RegionTask> tasks)
+			throws IOException {
+		long fileLength = file.length();
+
+		if (preserveOrder || splitSize == NO_SPLIT || fileLength <= splitSize) {
+			stats.pendingRegions.set(1);
+			tasks.add(new RegionTask(file, 0, fileLength, stats, callback));
+			return;
+		}
+
+		List<RegionTask> fileTasks = new ArrayList<RegionTask>();
+
+		if (splitter != null) {
+			long[] offsets = splitter.split(file, splitSize, executor);
+
+			for (int i = 0; i + 1 < offsets.length; i++)
+				fileTasks.add(new RegionTask(file, offsets[i], offsets[i + 1]
+						- offsets[i], stats, callback));
+
+			stats.pendingRegions.set(fileTasks.size());
+			tasks.addAll(fileTasks);
+			return;
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+		try {
+			byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+			long start = 0;
+
+			while (start < fileLength) {
+				long end = start + splitSize;
+
+				// Move the boundary to just past the next delimiter.
+				if (end < fileLength)
+					end = indexAfterDelimiter(raf, end - 1, fileLength, buffer);
+				else
+					end = fileLength;
+
+				fileTasks.add(new RegionTask(file, start, end - start, stats,
+						callback));
+				start = end;
+			}
+		} finally {
+			raf.close();
+		}
+
+		stats.pendingRegions.set(fileTasks.size());
+		tasks.addAll(fileTasks);
+	}
+
+	protected long indexAfterDelimiter(RandomAccessFile raf, long position,
+			long fileLength, byte[] buffer) throws IOException {
+		raf.seek(position);
+
+		while (position < fileLength) {
+			int read = raf.read(buffer);
+
+			if (read <= 0)
+				break;
+
+			for (int i = 0; i < read; i++) {
+				if (buffer[i] == splitDelimiter)
+					return position + i + 1;
+			}
+
+			position += read;
+		}
+
+		return fileLength;
+	}
+
+	private void cancel(List<Future<Void>> futures) {
+		for (Future<Void> future : futures)
+			future.cancel(true);
+	}
+
+	/**
+	 * Class used to represent the tokenization of a single region of a file on
+	 * a worker thread.
+	 * 
+	 * @author Riyad Kalla (software@thebuzzmedia.com)
+	 */
+	protected class RegionTask implements Callable<Void> {
+		private File file;
+		private long position;
+		private long length;
+
+		private FileStatistics stats;
+		private IFileCallback<TT, VT> callback;
+
+		public RegionTask(File file, long position, long length,
+				FileStatistics stats, IFileCallback<TT, VT> callback) {
+			this.file = file;
+			this.position = position;
+			this.length = length;
+			this.stats = stats;
+			this.callback = callback;
+		}
+
+		public Void call() throws Exception {
+			long startTime = System.nanoTime();
+			long tokens = 0;
+
+			ITokenizer<IT, TT, VT, byte[]> tokenizer = tokenizerPool.poll();
+
+			if (tokenizer == null)
+				tokenizer = factory.createTokenizer();
+			else
+				tokenizer.reset();
+
+			IInput<IT, byte[]> input = factory.createInput(file, position,
+					length);
+
+			try {
+				factory.setInput(tokenizer, input);
+
+				// Keep token positions relative to the file, not the region.
+				if (position > 0
+						&& tokenizer instanceof AbstractParser<?, ?, ?, ?>)
+					((AbstractParser<?, ?, ?, ?>) tokenizer)
+							.setStartPosition(position);
+
+				IToken<TT, VT, byte[]> token;
+
+				while ((token = tokenizer.nextToken()) != null) {
+					tokens++;
+					callback.tokenParsed(file, token);
+				}
+			} finally {
+				if (input instanceof Closeable)
+					((Closeable) input).close();
+
+				tokenizer.reset();
+				tokenizerPool.offer(tokenizer);
+			}
+
+			stats.bytes.addAndGet(length);
+			stats.tokens.addAndGet(tokens);
+			stats.nanos.addAndGet(System.nanoTime() - startTime);
+
+			if (stats.pendingRegions.decrementAndGet() == 0)
+				callback.fileParsed(file, stats);
+
+			return null;
+		}
+	}
+}
\ No newline at end of file
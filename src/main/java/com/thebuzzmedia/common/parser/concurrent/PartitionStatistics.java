@@ -0,0 +1,112 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.concurrent;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class used to collect the statistics of a single partition of a
+ * {@link PartitionedDispatcher}.
+ * <p/>
+ * The counters are updated live by the parsing thread (records, bytes,
+ * blocked time and queue depth) and by the partition's worker (batches and
+ * handler time), so they can be polled from any thread while a run is in
+ * progress. {@link #getBlockedNanos()} is the time the parsing thread spent
+ * waiting for room in this partition's queue, i.e. how much this partition
+ * throttled the parser.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class PartitionStatistics {
+	private int partition;
+	private Queue<RecordBatch> queue;
+
+	AtomicLong records;
+	AtomicLong bytes;
+	AtomicLong batches;
+	AtomicLong blockedNanos;
+	AtomicLong handlerNanos;
+	AtomicInteger maxQueueDepth;
+
+	PartitionStatistics(int partition, Queue<RecordBatch> queue) {
+		this.partition = partition;
+		this.queue = queue;
+
+		records = new AtomicLong();
+		bytes = new AtomicLong();
+		batches = new AtomicLong();
+		blockedNanos = new AtomicLong();
+		handlerNanos = new AtomicLong();
+		maxQueueDepth = new AtomicInteger();
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getName() + "@" + hashCode() + "[partition="
+				+ partition + ", records=" + records + ", bytes=" + bytes
+				+ ", batches=" + batches + ", blockedNanos=" + blockedNanos
+				+ ", handlerNanos=" + handlerNanos + ", queueDepth="
+				+ getQueueDepth() + ", maxQueueDepth=" + maxQueueDepth + "]";
+	}
+
+	public int getPartition() {
+		return partition;
+	}
+
+	public long getRecords() {
+		return records.get();
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	public long getBatches() {
+		return batches.get();
+	}
+
+	public long getBlockedNanos() {
+		return blockedNanos.get();
+	}
+
+	public long getHandlerNanos() {
+		return handlerNanos.get();
+	}
+
+	/**
+	 * Used to get the number of batches currently waiting in this
+	 * partition's queue.
+	 * 
+	 * @return the current depth of the queue.
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	public int getMaxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+
+	void updateMaxQueueDepth() {
+		int depth = queue.size();
+
+		// Only the parsing thread raises the maximum, no CAS loop needed.
+		if (depth > maxQueueDepth.get())
+			maxQueueDepth.set(depth);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,555 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.thebuzzmedia.common.parser.ICallbackParser;
+import com.thebuzzmedia.common.parser.ICallbackParser.ICallback;
+import com.thebuzzmedia.common.parser.IToken;
+import com.thebuzzmedia.common.parser.ParseException;
+import com.thebuzzmedia.common.parser.ParseException.Type;
+
+/**
+ * Class used to fan the records parsed by an {@link ICallbackParser} out to a
+ * fixed number of partitions, each drained by its own worker thread, while
+ * keeping all the records with the same key in order.
+ * <p/>
+ * The dispatcher is the parser's callback: as soon as the key field of a
+ * record arrives, it hashes the field (see
+ * {@link #partitionOf(byte[], int, int)}) straight from the parser's buffer,
+ * without creating a <code>String</code>, to pick the partition; the fields
+ * of the record are copied once, directly into the pending batch of that
+ * partition (only fields preceding the key field are held aside until
+ * then). A record ends with the token whose type is the record end type
+ * given to the constructor (e.g. <code>CSVToken.Type.LAST_FIELD</code> when
+ * dispatching the records of a <code>CSVParser</code>).
+ * <p/>
+ * Records are grouped into {@link RecordBatch}es of up to
+ * {@link #getBatchSize()} records per partition and handed to the worker
+ * through a bounded queue of {@link #getQueueCapacity()} batches. When a
+ * partition falls behind and its queue fills up, the parsing thread blocks
+ * until there is room again (backpressure), so memory use stays bounded no
+ * matter how skewed the keys are. Every partition reports its progress, the
+ * time it held the parser back and its queue depth through a
+ * {@link PartitionStatistics} that can be polled while the run is going.
+ * <p/>
+ * The executor must be able to run one worker per partition at the same time
+ * as the parse. Instances of this class are not meant to run more than one
+ * {@link #parse(ICallbackParser, IRecordBatchHandler)} at a time.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ * 
+ * @param <IT>
+ *            The type of the input the parser processes.
+ * @param <TT>
+ *            The type of the tokens.
+ * @param <VT>
+ *            The type of the values the tokens return.
+ */
+public class PartitionedDispatcher<IT, TT, VT> {
+	public static final int DEFAULT_QUEUE_CAPACITY = 16;
+	public static final int DEFAULT_BATCH_SIZE = 256;
+
+	private static final int DEFAULT_DATA_CAPACITY = 8192;
+	private static final long POLL_TIMEOUT_MILLIS = 10;
+
+	/**
+	 * Batch queued to a worker to tell it that no more records are coming.
+	 */
+	private static final RecordBatch END_OF_INPUT = new RecordBatch(1, 0);
+
+	private int partitions;
+	private int keyField;
+	private TT recordEndType;
+	private ExecutorService executor;
+
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	private List<BlockingQueue<RecordBatch>> queues;
+	private List<Queue<RecordBatch>> batchPools;
+	private List<PartitionStatistics> statsList;
+
+	private volatile boolean aborted;
+
+	/**
+	 * Creates a dispatcher routing records by the field at the given index.
+	 * 
+	 * @param partitions
+	 *            The number of partitions (and worker threads).
+	 * @param keyField
+	 *            The index, within its record, of the field whose content is
+	 *            hashed to pick the partition. Records with fewer fields are
+	 *            treated as having an empty key.
+	 * @param recordEndType
+	 *            The type of the token that ends a record, or
+	 *            <code>null</code> if every token is a record of its own.
+	 * @param executor
+	 *            The executor the workers are run on.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>partitions</code> is &lt; 1, if
+	 *             <code>keyField</code> is &lt; 0 or if <code>executor</code>
+	 *             is <code>null</code>.
+	 */
+	public PartitionedDispatcher(int partitions, int keyField,
+			TT recordEndType, ExecutorService executor)
+			throws IllegalArgumentException {
+		if (partitions < 1)
+			throw new IllegalArgumentException("partitions [" + partitions
+					+ "] must be >= 1");
+		if (keyField < 0)
+			throw new IllegalArgumentException("keyField [" + keyField
+					+ "] must be >= 0");
+		if (executor == null)
+			throw new IllegalArgumentException("executor cannot be null");
+
+		this.partitions = partitions;
+		this.keyField = keyField;
+		this.recordEndType = recordEndType;
+		this.executor = executor;
+
+		statsList = Collections.emptyList();
+	}
+
+	public int getPartitions() {
+		return partitions;
+	}
+
+	public int getKeyField() {
+		return keyField;
+	}
+
+	public TT getRecordEndType() {
+		return recordEndType;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * Used to set how many batches can wait in the queue of a partition
+	 * before the parsing thread blocks.
+	 * 
+	 * @param queueCapacity
+	 *            The capacity of every partition's queue.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>queueCapacity</code> is &lt; 1.
+	 */
+	public void setQueueCapacity(int queueCapacity)
+			throws IllegalArgumentException {
+		if (queueCapacity < 1)
+			throw new IllegalArgumentException("queueCapacity ["
+					+ queueCapacity + "] must be >= 1");
+
+		this.queueCapacity = queueCapacity;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Used to set how many records are grouped into a batch before it is
+	 * queued to its partition.
+	 * 
+	 * @param batchSize
+	 *            The number of records per batch.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>batchSize</code> is &lt; 1.
+	 */
+	public void setBatchSize(int batchSize) throws IllegalArgumentException {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("batchSize [" + batchSize
+					+ "] must be >= 1");
+
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Used to get the statistics of every partition of the current (or last)
+	 * run; they are updated live while the run is in progress.
+	 * 
+	 * @return the statistics of every partition, in partition order.
+	 */
+	public List<PartitionStatistics> getStatistics() {
+		return statsList;
+	}
+
+	/**
+	 * Used to parse the parser's current input on the calling thread,
+	 * dispatching every record to the handler on the worker of its
+	 * partition, and block until every record was handled or either side
+	 * fails.
+	 * 
+	 * @param parser
+	 *            The parser to run.
+	 * @param handler
+	 *            The handler all the batches of records are handed to.
+	 * 
+	 * @return the statistics of every partition, in partition order.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>parser</code> or <code>handler</code> is
+	 *             <code>null</code>.
+	 * @throws ParseException
+	 *             if parsing fails or the handler throws an exception (which
+	 *             is re-thrown wrapped if it wasn't a {@link ParseException}).
+	 */
+	public List<PartitionStatistics> parse(
+			ICallbackParser<IT, TT, VT, byte[]> parser,
+			IRecordBatchHandler handler) throws IllegalArgumentException,
+			ParseException {
+		if (parser == null)
+			throw new IllegalArgumentException("parser cannot be null");
+		if (handler == null)
+			throw new IllegalArgumentException("handler cannot be null");
+
+		queues = new ArrayList<BlockingQueue<RecordBatch>>(partitions);
+		batchPools = new ArrayList<Queue<RecordBatch>>(partitions);
+		List<PartitionStatistics> stats = new ArrayList<PartitionStatistics>(
+				partitions);
+
+		for (int i = 0; i < partitions; i++) {
+			BlockingQueue<RecordBatch> queue = new ArrayBlockingQueue<RecordBatch>(
+					queueCapacity);
+
+			queues.add(queue);
+			batchPools.add(new ConcurrentLinkedQueue<RecordBatch>());
+			stats.add(new PartitionStatistics(i, queue));
+		}
+
+		statsList = Collections.unmodifiableList(stats);
+		aborted = false;
+
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(partitions);
+
+		for (int i = 0; i < partitions; i++)
+			futures.add(executor.submit(new Worker(i, handler)));
+
+		Router router = new Router();
+		ParseException parseException = null;
+
+		try {
+			parser.parse(router);
+			router.flush();
+		} catch (ParseException e) {
+			parseException = e;
+			aborted = true;
+		} catch (RuntimeException e) {
+			aborted = true;
+			throw e;
+		}
+
+		try {
+			for (Future<Void> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			aborted = true;
+			cancel(futures);
+			Thread.currentThread().interrupt();
+
+			throw new ParseException(Type.IO, null,
+					"Interrupted while waiting for the partitions", e);
+		} catch (ExecutionException e) {
+			cancel(futures);
+			Throwable cause = e.getCause();
+
+			// Report the parser's failure over the abort it caused.
+			if (parseException == null) {
+				if (cause instanceof ParseException)
+					throw (ParseException) cause;
+				else
+					throw new ParseException(Type.IO, null,
+							"Unable to handle the dispatched records", cause);
+			}
+		}
+
+		if (parseException != null)
+			throw parseException;
+
+		return statsList;
+	}
+
+	/**
+	 * Used to pick the partition of a record from the content of its key
+	 * field.
+	 * <p/>
+	 * The default implementation hashes the bytes with 32-bit FNV-1a and
+	 * spreads the high bits into the low ones before taking the remainder,
+	 * so keys that differ only slightly still spread out evenly. Subclasses
+	 * can override this to, e.g., route on a prefix of the key; the result
+	 * must only depend on the content of the key.
+	 * 
+	 * @param source
+	 *            The buffer holding the key.
+	 * @param index
+	 *            The index of the key within <code>source</code>.
+	 * @param length
+	 *            The length of the key.
+	 * 
+	 * @return the partition, between <code>0</code> and
+	 *         {@link #getPartitions()} (exclusive).
+	 */
+	protected int partitionOf(byte[] source, int index, int length) {
+		int hash = 0x811C9DC5;
+
+		for (int i = index, end = index + length; i < end; i++)
+			hash = (hash ^ (source[i] & 0xFF)) * 0x01000193;
+
+		hash ^= (hash >>> 16);
+		return (hash & 0x7FFFFFFF) % partitions;
+	}
+
+	private void cancel(List<Future<Void>> futures) {
+		for (Future<Void> future : futures)
+			future.cancel(true);
+	}
+
+	/**
+	 * Class used to represent the parsing side of the dispatcher, the
+	 * callback that copies records out of the parser and queues them to
+	 * their partitions.
+	 * 
+	 * @author Riyad Kalla (software@thebuzzmedia.com)
+	 */
+	private class Router implements ICallback<IT, TT, VT, byte[]> {
+		private RecordBatch[] pending;
+
+		/*
+		 * The record being received; its fields go to the pending batch of
+		 * its partition once the key field was seen, before that they are
+		 * held in prefix.
+		 */
+		private int fieldCount;
+		private long recordPosition;
+		private int partition = -1;
+		private RecordBatch target;
+		private RecordBatch prefix;
+
+		private Router() {
+			pending = new RecordBatch[partitions];
+			prefix = new RecordBatch(Math.max(keyField, 1), 256);
+		}
+
+		public void tokenParsed(IToken<TT, VT, byte[]> token,
+				ICallbackParser<IT, TT, VT, byte[]> parser) {
+			if (aborted) {
+				parser.stop();
+				return;
+			}
+
+			byte[] source = token.getSource();
+			int index = token.getIndex();
+			int length = token.getLength();
+
+			if (fieldCount == 0)
+				recordPosition = token.getPosition();
+
+			if (target != null)
+				target.addField(source, index, length);
+			else if (fieldCount == keyField) {
+				selectPartition(partitionOf(source, index, length));
+				target.addField(source, index, length);
+			} else
+				prefix.addField(source, index, length);
+
+			fieldCount++;
+			TT type = token.getType();
+
+			if (recordEndType == null
+					|| (type != null && type.equals(recordEndType))) {
+				if (!endRecord())
+					parser.stop();
+			}
+		}
+
+		/**
+		 * Used to route any incomplete last record and queue every pending
+		 * batch, followed by the end of input marker.
+		 */
+		private void flush() {
+			if (fieldCount > 0 && !endRecord())
+				return;
+
+			for (int i = 0; i < partitions; i++) {
+				if (pending[i] != null && !send(i, pending[i]))
+					return;
+
+				pending[i] = null;
+
+				if (!send(i, END_OF_INPUT))
+					return;
+			}
+		}
+
+		/**
+		 * Used to direct the rest of the current record to the pending batch
+		 * of the given partition, moving any fields held aside to it first.
+		 */
+		private void selectPartition(int partition) {
+			RecordBatch batch = pending[partition];
+
+			if (batch == null) {
+				batch = batchPools.get(partition).poll();
+
+				if (batch == null)
+					batch = new RecordBatch(batchSize, DEFAULT_DATA_CAPACITY);
+
+				pending[partition] = batch;
+			}
+
+			if (fieldCount > 0) {
+				batch.addFields(prefix);
+				prefix.clear();
+			}
+
+			this.partition = partition;
+			target = batch;
+		}
+
+		/**
+		 * Used to end the current record in the pending batch of its
+		 * partition, queuing the batch once it is full.
+		 * 
+		 * @return <code>false</code> if the run was aborted, otherwise
+		 *         <code>true</code>.
+		 */
+		private boolean endRecord() {
+			// A record without the key field has an empty key.
+			if (target == null)
+				selectPartition(partitionOf(prefix.getData(), 0, 0));
+
+			RecordBatch batch = target;
+			int partition = this.partition;
+
+			batch.endRecord(recordPosition);
+			statsList.get(partition).records.incrementAndGet();
+
+			fieldCount = 0;
+			this.partition = -1;
+			target = null;
+
+			if (batch.getRecordCount() < batchSize)
+				return true;
+
+			pending[partition] = null;
+			return send(partition, batch);
+		}
+
+		/**
+		 * Used to queue the batch to its partition, blocking while the queue
+		 * is full.
+		 * 
+		 * @return <code>false</code> if the run was aborted while waiting,
+		 *         otherwise <code>true</code>.
+		 */
+		private boolean send(int partition, RecordBatch batch) {
+			BlockingQueue<RecordBatch> queue = queues.get(partition);
+			PartitionStatistics stats = statsList.get(partition);
+
+			if (!queue.offer(batch)) {
+				long startTime = System.nanoTime();
+
+				try {
+					while (!queue.offer(batch, POLL_TIMEOUT_MILLIS,
+							TimeUnit.MILLISECONDS)) {
+						if (aborted)
+							return false;
+					}
+				} catch (InterruptedException e) {
+					aborted = true;
+					Thread.currentThread().interrupt();
+
+					return false;
+				} finally {
+					stats.blockedNanos.addAndGet(System.nanoTime() - startTime);
+				}
+			}
+
+			stats.bytes.addAndGet(batch.getDataLength());
+			stats.updateMaxQueueDepth();
+
+			return true;
+		}
+	}
+
+	/**
+	 * Class used to represent the worker draining the queue of a single
+	 * partition on a thread of the executor.
+	 * 
+	 * @author Riyad Kalla (software@thebuzzmedia.com)
+	 */
+	private class Worker implements Callable<Void> {
+		private int partition;
+		private IRecordBatchHandler handler;
+
+		private Worker(int partition, IRecordBatchHandler handler) {
+			this.partition = partition;
+			this.handler = handler;
+		}
+
+		public Void call() throws Exception {
+			BlockingQueue<RecordBatch> queue = queues.get(partition);
+			Queue<RecordBatch> pool = batchPools.get(partition);
+			PartitionStatistics stats = statsList.get(partition);
+
+			try {
+				while (!aborted) {
+					RecordBatch batch = queue.poll(POLL_TIMEOUT_MILLIS,
+							TimeUnit.MILLISECONDS);
+
+					if (batch == null)
+						continue;
+					if (batch == END_OF_INPUT)
+						break;
+
+					long startTime = System.nanoTime();
+					handler.batchReceived(partition, batch);
+
+					stats.handlerNanos.addAndGet(System.nanoTime() - startTime);
+					stats.batches.incrementAndGet();
+
+					batch.clear();
+					pool.offer(batch);
+				}
+			} catch (Exception e) {
+				aborted = true;
+				throw e;
+			} catch (Error e) {
+				aborted = true;
+				throw e;
+			}
+
+			return null;
+		}
+	}
+}
\ No newline at end of file
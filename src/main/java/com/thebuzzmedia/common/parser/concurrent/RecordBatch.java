@@ -0,0 +1,204 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.concurrent;
+
+/**
+ * Class used to represent a batch of records copied out of a parser's buffer
+ * by a {@link PartitionedDispatcher}, all of them belonging to the same
+ * partition.
+ * <p/>
+ * The content of every field is packed back to back into one
+ * <code>byte[]</code> ({@link #getData()}); fields are addressed by their
+ * record and their index within that record, in the order they were parsed.
+ * Batches are re-used by the dispatcher once they were handled.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class RecordBatch {
+	private byte[] data;
+	private int dataLength;
+
+	private int[] fieldIndices;
+	private int[] fieldLengths;
+	private int fieldCount;
+
+	private int[] recordStarts;
+	private long[] positions;
+	private int recordCount;
+
+	RecordBatch(int recordCapacity, int dataCapacity) {
+		data = new byte[dataCapacity];
+		fieldIndices = new int[recordCapacity];
+		fieldLengths = new int[recordCapacity];
+		recordStarts = new int[recordCapacity + 1];
+		positions = new long[recordCapacity];
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getName() + "@" + hashCode() + "[recordCount="
+				+ recordCount + ", fieldCount=" + fieldCount + ", dataLength="
+				+ dataLength + "]";
+	}
+
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Used to get the buffer the content of every field is packed into;
+	 * only the first {@link #getDataLength()} bytes are used.
+	 * 
+	 * @return the buffer holding the content of the fields.
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	public int getDataLength() {
+		return dataLength;
+	}
+
+	/**
+	 * Used to get the position of the first field of the given record within
+	 * the parser's input.
+	 * 
+	 * @param record
+	 *            The index of the record in this batch.
+	 * 
+	 * @return the position of the record.
+	 */
+	public long getPosition(int record) {
+		checkRecord(record);
+		return positions[record];
+	}
+
+	public int getFieldCount(int record) {
+		checkRecord(record);
+		return recordStarts[record + 1] - recordStarts[record];
+	}
+
+	public int getFieldIndex(int record, int field) {
+		return fieldIndices[fieldOffset(record, field)];
+	}
+
+	public int getFieldLength(int record, int field) {
+		return fieldLengths[fieldOffset(record, field)];
+	}
+
+	/**
+	 * Used to get a copy of the content of the given field.
+	 * 
+	 * @param record
+	 *            The index of the record in this batch.
+	 * @param field
+	 *            The index of the field within the record.
+	 * 
+	 * @return a copy of the content of the field.
+	 */
+	public byte[] getField(int record, int field) {
+		int i = fieldOffset(record, field);
+		byte[] value = new byte[fieldLengths[i]];
+
+		// Check if there is any data to copy.
+		if (value.length > 0)
+			System.arraycopy(data, fieldIndices[i], value, 0, value.length);
+
+		return value;
+	}
+
+	/**
+	 * Used to append a field to the record currently being built.
+	 */
+	void addField(byte[] source, int index, int length) {
+		if (fieldCount == fieldIndices.length) {
+			fieldIndices = grow(fieldIndices);
+			fieldLengths = grow(fieldLengths);
+		}
+
+		if (dataLength + length > data.length) {
+			byte[] newData = new byte[Math.max(data.length * 2, dataLength
+					+ length)];
+			System.arraycopy(data, 0, newData, 0, dataLength);
+			data = newData;
+		}
+
+		System.arraycopy(source, index, data, dataLength, length);
+
+		fieldIndices[fieldCount] = dataLength;
+		fieldLengths[fieldCount] = length;
+		fieldCount++;
+		dataLength += length;
+	}
+
+	/**
+	 * Used to end the record currently being built; every field added since
+	 * the last record ended belongs to it.
+	 */
+	void endRecord(long position) {
+		if (recordCount == positions.length) {
+			long[] newPositions = new long[positions.length * 2];
+			System.arraycopy(positions, 0, newPositions, 0, recordCount);
+			positions = newPositions;
+			recordStarts = grow(recordStarts);
+		}
+
+		positions[recordCount] = position;
+		recordStarts[++recordCount] = fieldCount;
+	}
+
+	/**
+	 * Used to append copies of the fields of the record the given batch is
+	 * currently building to the record this batch is building.
+	 */
+	void addFields(RecordBatch batch) {
+		int start = batch.recordStarts[batch.recordCount];
+
+		for (int i = start; i < batch.fieldCount; i++)
+			addField(batch.data, batch.fieldIndices[i], batch.fieldLengths[i]);
+	}
+
+	void clear() {
+		dataLength = 0;
+		fieldCount = 0;
+		recordCount = 0;
+	}
+
+	private int fieldOffset(int record, int field)
+			throws IndexOutOfBoundsException {
+		int count = getFieldCount(record);
+
+		if (field < 0 || field >= count)
+			throw new IndexOutOfBoundsException("field [" + field
+					+ "] must be >= 0 and < getFieldCount(record) [" + count
+					+ "]");
+
+		return recordStarts[record] + field;
+	}
+
+	private void checkRecord(int record) throws IndexOutOfBoundsException {
+		if (record < 0 || record >= recordCount)
+			throw new IndexOutOfBoundsException("record [" + record
+					+ "] must be >= 0 and < getRecordCount() [" + recordCount
+					+ "]");
+	}
+
+	private static int[] grow(int[] array) {
+		int[] newArray = new int[array.length * 2];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+}
\ No newline at end of file
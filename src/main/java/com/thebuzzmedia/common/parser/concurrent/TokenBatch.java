@@ -0,0 +1,158 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.concurrent;
+
+import com.thebuzzmedia.common.parser.IToken;
+
+/**
+ * Class used to represent one slot of a {@link TokenPipeline}'s ring buffer:
+ * the spans (type, source, index, length and position) of a run of
+ * consecutive tokens.
+ * <p/>
+ * Batches are preallocated and re-used by the pipeline; spans are copied out
+ * of the tokens as they are parsed, so they stay correct even when the
+ * tokenizer re-uses its token instance. The sources they point into are kept
+ * intact until the consumer is done with the batch.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ * 
+ * @param <TT>
+ *            The type of the tokens.
+ * @param <VT>
+ *            The type of the values the tokens return.
+ */
+public class TokenBatch<TT, VT> {
+	int count;
+	boolean reusingToken;
+
+	/**
+	 * Buffer that is released to the pipeline once this batch was handled,
+	 * or <code>null</code>.
+	 */
+	byte[] releasedBuffer;
+
+	private Object[] types;
+	private byte[][] sources;
+	private int[] indices;
+	private int[] lengths;
+	private long[] positions;
+	private Object[] tokens;
+
+	TokenBatch(int capacity) {
+		types = new Object[capacity];
+		sources = new byte[capacity][];
+		indices = new int[capacity];
+		lengths = new int[capacity];
+		positions = new long[capacity];
+		tokens = new Object[capacity];
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getName() + "@" + hashCode() + "[count="
+				+ count + ", capacity=" + indices.length + "]";
+	}
+
+	/**
+	 * Used to get the number of tokens in this batch.
+	 * 
+	 * @return the number of tokens in this batch.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	@SuppressWarnings("unchecked")
+	public TT getType(int i) {
+		checkIndex(i);
+		return (TT) types[i];
+	}
+
+	public byte[] getSource(int i) {
+		checkIndex(i);
+		return sources[i];
+	}
+
+	public int getIndex(int i) {
+		checkIndex(i);
+		return indices[i];
+	}
+
+	public int getLength(int i) {
+		checkIndex(i);
+		return lengths[i];
+	}
+
+	public long getPosition(int i) {
+		checkIndex(i);
+		return positions[i];
+	}
+
+	/**
+	 * Used to get the token the tokenizer returned for the given entry.
+	 * 
+	 * @param i
+	 *            The index of the entry in this batch.
+	 * 
+	 * @return the token the tokenizer returned.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the tokenizer re-uses its token instance, in which case
+	 *             only the spans of the entries are available.
+	 */
+	@SuppressWarnings("unchecked")
+	public IToken<TT, VT, byte[]> getToken(int i) throws IllegalStateException {
+		checkIndex(i);
+
+		if (reusingToken)
+			throw new IllegalStateException(
+					"The tokenizer re-uses its token instance, only the token spans are available.");
+
+		return (IToken<TT, VT, byte[]>) tokens[i];
+	}
+
+	boolean isFull() {
+		return count == indices.length;
+	}
+
+	void add(IToken<TT, VT, byte[]> token) {
+		types[count] = token.getType();
+		sources[count] = token.getSource();
+		indices[count] = token.getIndex();
+		lengths[count] = token.getLength();
+		positions[count] = token.getPosition();
+		tokens[count] = (reusingToken ? null : token);
+		count++;
+	}
+
+	void clear() {
+		// Drop references so released buffers and tokens can be collected.
+		for (int i = 0; i < count; i++) {
+			types[i] = null;
+			sources[i] = null;
+			tokens[i] = null;
+		}
+
+		count = 0;
+		releasedBuffer = null;
+	}
+
+	private void checkIndex(int i) throws IndexOutOfBoundsException {
+		if (i < 0 || i >= count)
+			throw new IndexOutOfBoundsException("i [" + i
+					+ "] must be >= 0 and < getCount() [" + count + "]");
+	}
+}
\ No newline at end of file
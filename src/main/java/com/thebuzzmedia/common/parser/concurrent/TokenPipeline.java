@@ -0,0 +1,376 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.concurrent;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.thebuzzmedia.common.parser.AbstractTokenizer;
+import com.thebuzzmedia.common.parser.IParser;
+import com.thebuzzmedia.common.parser.IRefillListener;
+import com.thebuzzmedia.common.parser.IToken;
+import com.thebuzzmedia.common.parser.ParseException;
+import com.thebuzzmedia.common.parser.ParseException.Type;
+
+/**
+ * Class used to overlap tokenizing with consuming the tokens: the calling
+ * thread runs the tokenizer and publishes the tokens, in
+ * {@link TokenBatch}es, into a preallocated single-producer/single-consumer
+ * ring buffer that a consumer thread drains and hands to an
+ * {@link ITokenBatchHandler}.
+ * <p/>
+ * The ring buffer is lock-free: the producer and consumer each own a cursor
+ * (the next batch to publish and the next batch to handle) and only ever
+ * read the other's, so the only synchronization is one volatile write per
+ * batch on each side. When the ring is full (or empty) the waiting thread
+ * idles according to the configured {@link WaitStrategy}.
+ * <p/>
+ * Tokens are handed off zero-copy; every span points into the tokenizer's
+ * buffer. To keep those spans valid until the consumer is done with them,
+ * the pipeline installs an {@link IRefillListener} on the tokenizer: instead
+ * of overwriting its buffer on the next refill, the tokenizer continues with
+ * a spare buffer and the full one is released back to the pipeline's pool
+ * only after the consumer handled the last batch pointing into it. A run
+ * therefore holds at most one buffer per batch in flight (plus the
+ * tokenizer's own), and typically just two or three.
+ * <p/>
+ * Instances of this class are not meant to run more than one
+ * {@link #parse(ITokenBatchHandler, ExecutorService)} at a time.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ * 
+ * @param <IT>
+ *            The type of the input the tokenizer processes.
+ * @param <TT>
+ *            The type of the tokens.
+ * @param <VT>
+ *            The type of the values the tokens return.
+ */
+public class TokenPipeline<IT, TT, VT> {
+	public static final int DEFAULT_RING_SIZE = 64;
+	public static final int DEFAULT_BATCH_SIZE = 256;
+
+	private AbstractTokenizer<IT, TT, VT, byte[]> tokenizer;
+	private WaitStrategy waitStrategy;
+
+	private TokenBatch<TT, VT>[] ring;
+	private int mask;
+
+	private Queue<byte[]> bufferPool;
+
+	/**
+	 * Sequence of the next batch the producer will publish; every batch
+	 * before it is visible to the consumer.
+	 */
+	private volatile long published;
+
+	/**
+	 * Sequence of the next batch the consumer will handle; every batch before
+	 * it can be re-used by the producer.
+	 */
+	private volatile long consumed;
+
+	private volatile boolean producerDone;
+	private volatile boolean aborted;
+
+	public TokenPipeline(AbstractTokenizer<IT, TT, VT, byte[]> tokenizer)
+			throws IllegalArgumentException {
+		this(tokenizer, DEFAULT_RING_SIZE, DEFAULT_BATCH_SIZE,
+				WaitStrategy.YIELD);
+	}
+
+	public TokenPipeline(AbstractTokenizer<IT, TT, VT, byte[]> tokenizer,
+			int ringSize, int batchSize, WaitStrategy waitStrategy)
+			throws IllegalArgumentException {
+		if (tokenizer == null)
+			throw new IllegalArgumentException("tokenizer cannot be null");
+		if (ringSize < 2 || (ringSize & (ringSize - 1)) != 0)
+			throw new IllegalArgumentException("ringSize [" + ringSize
+					+ "] must be a power of two >= 2");
+		if (batchSize < 1)
+			throw new IllegalArgumentException("batchSize [" + batchSize
+					+ "] must be >= 1");
+		if (waitStrategy == null)
+			throw new IllegalArgumentException("waitStrategy cannot be null");
+
+		this.tokenizer = tokenizer;
+		this.waitStrategy = waitStrategy;
+
+		// Generic arrays can't be created directly.
+		@SuppressWarnings("unchecked")
+		TokenBatch<TT, VT>[] batches = (TokenBatch<TT, VT>[]) new TokenBatch<?, ?>[
+				ringSize];
+
+		ring = batches;
+		mask = ringSize - 1;
+
+		for (int i = 0; i < ringSize; i++)
+			ring[i] = new TokenBatch<TT, VT>(batchSize);
+
+		bufferPool = new ConcurrentLinkedQueue<byte[]>();
+	}
+
+	public AbstractTokenizer<IT, TT, VT, byte[]> getTokenizer() {
+		return tokenizer;
+	}
+
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	public int getRingSize() {
+		return ring.length;
+	}
+
+	/**
+	 * Used to tokenize the tokenizer's current input on the calling thread
+	 * while the given handler consumes the tokens on a thread of the given
+	 * executor, blocking until every token was handled or either side fails.
+	 * 
+	 * @param handler
+	 *            The handler all the batches of tokens are handed to.
+	 * @param executor
+	 *            The executor the consumer is run on; it must have a thread
+	 *            available, otherwise the producer stalls once the ring is
+	 *            full.
+	 * 
+	 * @return the number of tokens that were handed off.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>handler</code> or <code>executor</code> is
+	 *             <code>null</code>.
+	 * @throws ParseException
+	 *             if tokenizing fails or the handler throws an exception
+	 *             (which is re-thrown wrapped if it wasn't a
+	 *             {@link ParseException}).
+	 */
+	public long parse(ITokenBatchHandler<TT, VT> handler,
+			ExecutorService executor) throws IllegalArgumentException,
+			ParseException {
+		if (handler == null)
+			throw new IllegalArgumentException("handler cannot be null");
+		if (executor == null)
+			throw new IllegalArgumentException("executor cannot be null");
+
+		boolean reusingToken = tokenizer.isReusingToken();
+
+		// Drop anything a failed run left behind.
+		for (TokenBatch<TT, VT> batch : ring) {
+			batch.clear();
+			batch.reusingToken = reusingToken;
+		}
+
+		published = 0;
+		consumed = 0;
+		producerDone = false;
+		aborted = false;
+
+		Producer producer = new Producer();
+		Future<Void> future = executor.submit(new Consumer(handler));
+		ParseException parseException = null;
+
+		tokenizer.setRefillListener(producer);
+
+		try {
+			producer.run();
+		} catch (ParseException e) {
+			parseException = e;
+			aborted = true;
+		} catch (RuntimeException e) {
+			aborted = true;
+			throw e;
+		} finally {
+			producerDone = true;
+			tokenizer.setRefillListener(null);
+		}
+
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			aborted = true;
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+
+			throw new ParseException(Type.IO, null,
+					"Interrupted while waiting for the consumer", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			// Report the tokenizer's failure over the abort it caused.
+			if (parseException == null) {
+				if (cause instanceof ParseException)
+					throw (ParseException) cause;
+				else
+					throw new ParseException(Type.IO, null,
+							"Unable to consume the parsed tokens", cause);
+			}
+		}
+
+		if (parseException != null)
+			throw parseException;
+
+		return producer.tokenCount;
+	}
+
+	/**
+	 * Used to wait until the slot for the given sequence is free again.
+	 * 
+	 * @return <code>false</code> if the consumer aborted while waiting,
+	 *         otherwise <code>true</code>.
+	 */
+	private boolean awaitSlot(long sequence) {
+		for (int attempt = 0; sequence - consumed >= ring.length; attempt++) {
+			if (aborted)
+				return false;
+
+			waitStrategy.idle(attempt);
+		}
+
+		return !aborted;
+	}
+
+	/**
+	 * Class used to represent the tokenizing side of the pipeline, run on the
+	 * thread calling {@link TokenPipeline#parse(ITokenBatchHandler,
+	 * ExecutorService)}.
+	 * 
+	 * @author Riyad Kalla (software@thebuzzmedia.com)
+	 */
+	private class Producer implements IRefillListener<byte[]> {
+		private long tokenCount;
+		private TokenBatch<TT, VT> batch;
+
+		private Producer() {
+			// Slot 0 is always free at the start of a run.
+			batch = ring[0];
+		}
+
+		public byte[] bufferRefilling(byte[] buffer,
+				IParser<?, ?, ?, byte[]> parser) {
+			/*
+			 * Publish what was parsed so far (even nothing) along with the
+			 * buffer it points into; the buffer comes back to the pool once
+			 * the consumer is done with the batch and every one before it.
+			 */
+			batch.releasedBuffer = buffer;
+
+			// The consumer is gone, nothing needs the buffer anymore.
+			if (!publish())
+				return buffer;
+
+			byte[] spare = bufferPool.poll();
+			return (spare == null ? new byte[buffer.length] : spare);
+		}
+
+		private void run() throws ParseException {
+			IToken<TT, VT, byte[]> token;
+
+			while (!aborted && (token = tokenizer.nextToken()) != null) {
+				batch.add(token);
+				tokenCount++;
+
+				if (batch.isFull() && !publish())
+					break;
+			}
+
+			if (batch.count > 0)
+				publish();
+		}
+
+		/**
+		 * Used to publish the current batch and claim the next slot.
+		 * 
+		 * @return <code>false</code> if the consumer aborted, otherwise
+		 *         <code>true</code>.
+		 */
+		private boolean publish() {
+			long next = published + 1;
+
+			// Volatile write, makes the batch visible to the consumer.
+			published = next;
+
+			if (!awaitSlot(next))
+				return false;
+
+			batch = ring[(int) next & mask];
+			return true;
+		}
+	}
+
+	/**
+	 * Class used to represent the consuming side of the pipeline, run on a
+	 * thread of the executor.
+	 * 
+	 * @author Riyad Kalla (software@thebuzzmedia.com)
+	 */
+	private class Consumer implements Callable<Void> {
+		private ITokenBatchHandler<TT, VT> handler;
+
+		private Consumer(ITokenBatchHandler<TT, VT> handler) {
+			this.handler = handler;
+		}
+
+		public Void call() throws Exception {
+			long next = 0;
+			int attempt = 0;
+
+			try {
+				while (!aborted) {
+					// Read the flag first; published is final once it is set.
+					boolean done = producerDone;
+					long available = published;
+
+					if (next == available) {
+						if (done)
+							break;
+
+						waitStrategy.idle(attempt++);
+						continue;
+					}
+
+					attempt = 0;
+
+					// Drain everything published so far, then ack it at once.
+					for (; next < available; next++) {
+						TokenBatch<TT, VT> batch = ring[(int) next & mask];
+
+						if (batch.count > 0)
+							handler.batchReceived(batch);
+
+						if (batch.releasedBuffer != null)
+							bufferPool.offer(batch.releasedBuffer);
+
+						batch.clear();
+					}
+
+					consumed = next;
+				}
+			} catch (Exception e) {
+				aborted = true;
+				throw e;
+			} catch (Error e) {
+				aborted = true;
+				throw e;
+			}
+
+			return null;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,67 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.concurrent;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Enum used to define how the threads of a {@link TokenPipeline} wait for
+ * each other when the ring buffer between them is empty (consumer) or full
+ * (producer).
+ * <p/>
+ * The strategies trade latency against CPU use: {@link #SPIN} reacts the
+ * fastest but burns a whole core while waiting, {@link #YIELD} lets other
+ * runnable threads use the core and {@link #PARK} sleeps briefly, which is
+ * the only sensible choice when there are fewer cores than busy threads.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public enum WaitStrategy {
+	SPIN {
+		@Override
+		void idle(int attempt) {
+			// busy-wait
+		}
+	},
+	YIELD {
+		@Override
+		void idle(int attempt) {
+			Thread.yield();
+		}
+	},
+	PARK {
+		@Override
+		void idle(int attempt) {
+			// Spin through short gaps before giving up the core.
+			if (attempt < SPIN_ATTEMPTS)
+				return;
+
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	};
+
+	private static final int SPIN_ATTEMPTS = 100;
+	private static final long PARK_NANOS = 50000;
+
+	/**
+	 * Used to wait a little before the thread checks the ring buffer again.
+	 * 
+	 * @param attempt
+	 *            The number of times the thread has already waited for the
+	 *            current condition.
+	 */
+	abstract void idle(int attempt);
+}
\ No newline at end of file
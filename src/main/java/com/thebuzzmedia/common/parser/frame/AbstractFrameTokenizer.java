@@ -0,0 +1,361 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.frame;
+
+import com.thebuzzmedia.common.parser.AbstractTokenizer;
+import com.thebuzzmedia.common.parser.IToken;
+import com.thebuzzmedia.common.parser.ParseException;
+import com.thebuzzmedia.common.parser.ParseException.Type;
+import com.thebuzzmedia.common.util.ArrayUtils;
+
+/**
+ * Base class for tokenizers of length-prefixed (framed) content, where every
+ * frame is a header declaring the length of the payload that follows it and
+ * an optional fixed trailer.
+ * <p/>
+ * Subclasses only parse headers (see {@link #parseHeader(int, int, boolean)});
+ * payloads are never scanned, <code>bIndex</code> is moved straight over them
+ * and they are returned as {@link FrameToken}s referencing the content in the
+ * buffer. A payload that does not fit in the buffer is returned as a series
+ * of zero-copy chunks, one per buffer's worth of data, instead of the buffer
+ * growing to hold it.
+ * <p/>
+ * A framed stream can't be resynchronized after malformed content, so with
+ * error recovery turned on the rest of the input is skipped.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public abstract class AbstractFrameTokenizer<TT> extends
+		AbstractTokenizer<byte[], TT, byte[], byte[]> {
+	private static final int HEADER = 0;
+	private static final int PAYLOAD = 1;
+	private static final int TRAILER = 2;
+
+	protected long maxFrameLength = Long.MAX_VALUE;
+
+	private byte[] trailer;
+	private FrameToken<TT> reusableToken = new FrameToken<TT>();
+
+	/*
+	 * Where in the current frame we are; the type and length of its payload,
+	 * how much of the payload was returned already and if it is followed by
+	 * the trailer.
+	 */
+	private int phase;
+	protected TT frameType;
+	private long frameLength;
+	private long frameOffset;
+	private boolean frameTrailer;
+
+	/**
+	 * Creates a new tokenizer.
+	 * 
+	 * @param trailer
+	 *            The bytes following the payload of every frame that begins
+	 *            with {@link #beginFrame(Object, long, boolean)} requesting
+	 *            one; may be empty, but not <code>null</code>.
+	 * @param reuseToken
+	 *            If the same token instance should be returned every time.
+	 * @param bufferCapacity
+	 *            The capacity of the buffer; payloads larger than this are
+	 *            returned in chunks.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>trailer</code> is <code>null</code> or if
+	 *             <code>bufferCapacity</code> is &lt; <code>1</code>.
+	 */
+	public AbstractFrameTokenizer(byte[] trailer, boolean reuseToken,
+			int bufferCapacity) throws IllegalArgumentException {
+		super(bufferCapacity);
+
+		// A payload is returned in buffer-sized chunks, it needs at least 1.
+		if (bufferCapacity < 1)
+			throw new IllegalArgumentException("bufferCapacity ["
+					+ bufferCapacity + "] must be >= 1");
+		if (trailer == null)
+			throw new IllegalArgumentException("trailer cannot be null");
+
+		this.trailer = trailer;
+		this.reuseToken = reuseToken;
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		endFrame();
+	}
+
+	public long getMaxFrameLength() {
+		return maxFrameLength;
+	}
+
+	/**
+	 * Used to set the largest payload length a header may declare; frames
+	 * declaring longer payloads are treated as malformed. This guards against
+	 * garbage in the header causing a huge payload to be read.
+	 * 
+	 * @param maxFrameLength
+	 *            The maximum payload length.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>maxFrameLength</code> is &lt; <code>0</code>.
+	 */
+	public void setMaxFrameLength(long maxFrameLength)
+			throws IllegalArgumentException {
+		if (maxFrameLength < 0)
+			throw new IllegalArgumentException("maxFrameLength ["
+					+ maxFrameLength + "] must be >= 0");
+
+		this.maxFrameLength = maxFrameLength;
+	}
+
+	@Override
+	protected byte[] createBuffer(int capacity) throws IllegalArgumentException {
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity [" + capacity
+					+ "] must be >= 0");
+
+		return new byte[capacity];
+	}
+
+	@Override
+	protected IToken<TT, byte[], byte[]> parseTokenImpl(int index, int length)
+			throws ParseException {
+		boolean endOfInput = isEndOfInput();
+		int end = index + length;
+
+		while (true) {
+			switch (phase) {
+			case HEADER:
+				// Clean end of the input (or of the data we have so far).
+				if (index == end)
+					return null;
+
+				int hLength = parseHeader(index, end - index, endOfInput);
+
+				if (hLength == ArrayUtils.INVALID_INDEX) {
+					if (endOfInput)
+						throw malformed("Truncated frame header.", index);
+
+					// A header filling the buffer can never be completed.
+					if (index == 0 && end == buffer.length)
+						throw malformed("Frame header exceeds the buffer "
+								+ "capacity of " + buffer.length + " bytes.",
+								index);
+
+					return null;
+				}
+
+				if (phase != PAYLOAD)
+					throw new IllegalStateException(
+							"parseHeader(int, int, boolean) must call beginFrame(TT, long, boolean) before returning a header length.");
+
+				index = bIndex = index + hLength;
+				break;
+
+			case PAYLOAD:
+				long remaining = frameLength - frameOffset;
+				int available = end - index;
+
+				if (remaining <= available)
+					return createToken(index, (int) remaining);
+
+				if (available == 0) {
+					if (endOfInput)
+						throw malformed("Truncated frame payload; "
+								+ remaining + " bytes missing.", index);
+
+					return null;
+				}
+
+				// Wait for the rest of the payload if it can fit.
+				if (!endOfInput
+						&& (remaining <= buffer.length || end < buffer.length))
+					return null;
+
+				/*
+				 * The rest of the payload can never fit in the buffer (or the
+				 * input ended early); return what we have as a chunk.
+				 */
+				return createToken(index, available);
+
+			default:
+				if (end - index < trailer.length) {
+					if (endOfInput)
+						throw malformed("Truncated frame trailer.", index);
+
+					return null;
+				}
+
+				for (int i = 0; i < trailer.length; i++) {
+					if (buffer[index + i] != trailer[i])
+						throw malformed("Invalid frame trailer.", index + i);
+				}
+
+				index = bIndex = index + trailer.length;
+				endFrame();
+			}
+		}
+	}
+
+	@Override
+	protected void advanceIndex(IToken<TT, byte[], byte[]> token) {
+		bIndex += token.getLength();
+		frameOffset += token.getLength();
+
+		if (frameOffset == frameLength) {
+			if (frameTrailer)
+				phase = TRAILER;
+			else
+				endFrame();
+		}
+	}
+
+	/**
+	 * Overridden to only allow checkpoints between frames.
+	 */
+	@Override
+	protected boolean isCheckpointSafe() {
+		return (phase == HEADER);
+	}
+
+	/**
+	 * Overridden to record where in the current frame the tokenizer is;
+	 * always between frames at a checkpoint, but not necessarily for a saved
+	 * {@link com.thebuzzmedia.common.parser.ParserState}.
+	 */
+	@Override
+	protected long[] getCheckpointState() {
+		return new long[] { phase, frameLength, frameOffset,
+				(frameTrailer ? 1 : 0) };
+	}
+
+	@Override
+	protected void restoreCheckpointState(long[] state) {
+		endFrame();
+
+		if (state != null && state.length > 3 && state[0] != HEADER) {
+			phase = (int) state[0];
+			frameLength = state[1];
+			frameOffset = state[2];
+			frameTrailer = (state[3] == 1);
+		}
+	}
+
+	/**
+	 * Used by {@link #parseHeader(int, int, boolean)} to describe the frame
+	 * whose header it parsed.
+	 * 
+	 * @param type
+	 *            The type of the frame given to its tokens; may be
+	 *            <code>null</code>.
+	 * @param payloadLength
+	 *            The length of the payload following the header.
+	 * @param trailer
+	 *            <code>true</code> if the payload is followed by the trailer
+	 *            this tokenizer was created with.
+	 * 
+	 * @throws ParseException
+	 *             if <code>payloadLength</code> is &lt; <code>0</code> or
+	 *             &gt; {@link #getMaxFrameLength()}.
+	 */
+	protected void beginFrame(TT type, long payloadLength, boolean trailer)
+			throws ParseException {
+		if (payloadLength < 0 || payloadLength > maxFrameLength)
+			throw malformed("Frame length [" + payloadLength
+					+ "] must be >= 0 and <= " + maxFrameLength + ".", bIndex);
+
+		phase = PAYLOAD;
+		frameType = type;
+		frameLength = payloadLength;
+		frameOffset = 0;
+		frameTrailer = trailer;
+	}
+
+	/**
+	 * Used to parse the length of a non-negative decimal integer without
+	 * allocating.
+	 * 
+	 * @return the decoded value or {@link ArrayUtils#INVALID_INDEX} if the
+	 *         content is empty, contains anything other than digits or does
+	 *         not fit in a <code>long</code>.
+	 */
+	protected static long parseLength(byte[] buffer, int index, int length) {
+		if (length == 0)
+			return ArrayUtils.INVALID_INDEX;
+
+		long value = 0;
+
+		for (int end = index + length; index < end; index++) {
+			int digit = buffer[index] - '0';
+
+			if (digit < 0 || digit > 9
+					|| value > (Long.MAX_VALUE - digit) / 10)
+				return ArrayUtils.INVALID_INDEX;
+
+			value = value * 10 + digit;
+		}
+
+		return value;
+	}
+
+	private FrameToken<TT> createToken(int index, int length) {
+		FrameToken<TT> token = (reuseToken ? reusableToken
+				: new FrameToken<TT>());
+		token.setValue(frameType, buffer, index, length, frameLength,
+				frameOffset);
+
+		return token;
+	}
+
+	private ParseException malformed(String message, int index) {
+		// Nothing that follows can be trusted, start over with a new frame.
+		endFrame();
+
+		return createParseException(Type.MALFORMED, message, index);
+	}
+
+	private void endFrame() {
+		phase = HEADER;
+		frameType = null;
+		frameLength = 0;
+		frameOffset = 0;
+		frameTrailer = false;
+	}
+
+	/**
+	 * Used to parse the header of the frame beginning at <code>index</code>
+	 * in the <code>buffer</code>. Implementations must call
+	 * {@link #beginFrame(Object, long, boolean)} before returning the length
+	 * of the header.
+	 * 
+	 * @param index
+	 *            The index of the first byte of the header.
+	 * @param length
+	 *            The number of bytes available in the <code>buffer</code>;
+	 *            always &gt; <code>0</code>.
+	 * @param endOfInput
+	 *            <code>true</code> if no more data can be read.
+	 * 
+	 * @return the length of the header or {@link ArrayUtils#INVALID_INDEX} if
+	 *         more data is needed to parse it.
+	 * 
+	 * @throws ParseException
+	 *             if the header is malformed.
+	 */
+	protected abstract int parseHeader(int index, int length,
+			boolean endOfInput) throws ParseException;
+}
\ No newline at end of file
@@ -0,0 +1,147 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.frame;
+
+import com.thebuzzmedia.common.parser.AbstractReusableToken;
+
+/**
+ * Token representing the payload of a frame, or one chunk of it, parsed by an
+ * {@link AbstractFrameTokenizer}.
+ * <p/>
+ * The bounds of the token mark payload content within the tokenizer's buffer;
+ * headers and trailers are never part of a token. Payloads that fit in the
+ * tokenizer's buffer are returned as a single token, larger payloads are
+ * returned as a series of chunks in the order they appear in the input. Use
+ * {@link #getFrameOffset()} and {@link #isLastChunk()} to reassemble them.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class FrameToken<TT> extends AbstractReusableToken<TT, byte[], byte[]> {
+	protected long frameLength;
+	protected long frameOffset;
+
+	public FrameToken() {
+		// default constructor
+	}
+
+	public FrameToken(TT type, byte[] source, int index, int length,
+			long frameLength, long frameOffset) throws IllegalArgumentException {
+		super(type, source, index, length);
+
+		this.frameLength = frameLength;
+		this.frameOffset = frameOffset;
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getName() + "@" + hashCode() + "[type="
+				+ (type == null ? "" : type) + ", frameLength=" + frameLength
+				+ ", frameOffset=" + frameOffset + ", position=" + position
+				+ ", index=" + index + ", length=" + length + ", source="
+				+ (source == null ? "" : source) + "]";
+	}
+
+	public byte[] getValue() {
+		byte[] value = new byte[length];
+
+		// Check if there is any data to copy.
+		if (length > 0)
+			System.arraycopy(source, index, value, 0, length);
+
+		return value;
+	}
+
+	/**
+	 * Used to decode the content of this token as a decimal integer (an
+	 * optional leading <code>-</code> followed by digits) without allocating;
+	 * e.g. RESP integers and array lengths.
+	 * 
+	 * @return the decoded value.
+	 * 
+	 * @throws NumberFormatException
+	 *             if the content is not a decimal integer that fits in a
+	 *             <code>long</code>.
+	 */
+	public long getLongValue() throws NumberFormatException {
+		int i = index;
+		int end = index + length;
+		boolean negative = (i < end && source[i] == '-');
+
+		if (negative)
+			i++;
+
+		if (i == end)
+			throw new NumberFormatException("Token content is empty.");
+
+		// Accumulate negatively so Long.MIN_VALUE can be represented.
+		long limit = (negative ? Long.MIN_VALUE : -Long.MAX_VALUE);
+		long value = 0;
+
+		for (; i < end; i++) {
+			int digit = source[i] - '0';
+
+			if (digit < 0 || digit > 9 || value < limit / 10
+					|| (value *= 10) < limit + digit)
+				throw new NumberFormatException("Token content is not a "
+						+ "decimal integer that fits in a long.");
+
+			value -= digit;
+		}
+
+		return (negative ? value : -value);
+	}
+
+	/**
+	 * Used to get the total length of the payload this token is a part of.
+	 * 
+	 * @return the total length of the payload.
+	 */
+	public long getFrameLength() {
+		return frameLength;
+	}
+
+	/**
+	 * Used to get the offset of the content of this token within its payload;
+	 * always <code>0</code> unless the payload was too big for the
+	 * tokenizer's buffer.
+	 * 
+	 * @return the offset of this chunk within its payload.
+	 */
+	public long getFrameOffset() {
+		return frameOffset;
+	}
+
+	/**
+	 * Used to determine if this token holds the end of its payload; always
+	 * <code>true</code> unless the payload was too big for the tokenizer's
+	 * buffer.
+	 * 
+	 * @return <code>true</code> if this is the last (or only) chunk of its
+	 *         payload, otherwise <code>false</code>.
+	 */
+	public boolean isLastChunk() {
+		return (frameOffset + length == frameLength);
+	}
+
+	protected void setValue(TT type, byte[] source, int index, int length,
+			long frameLength, long frameOffset)
+			throws IllegalArgumentException {
+		super.setValue(type, source, index, length);
+
+		this.frameLength = frameLength;
+		this.frameOffset = frameOffset;
+	}
+}
\ No newline at end of file
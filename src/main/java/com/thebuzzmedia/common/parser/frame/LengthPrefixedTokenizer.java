@@ -0,0 +1,58 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.frame;
+
+import com.thebuzzmedia.common.parser.ParseException;
+import com.thebuzzmedia.common.util.ArrayUtils;
+
+/**
+ * Tokenizer used to parse frames made of a 4-byte, big-endian, unsigned
+ * payload length followed by the payload; one {@link FrameToken} is returned
+ * per payload (or chunk of a payload too big for the buffer).
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class LengthPrefixedTokenizer extends AbstractFrameTokenizer<Void> {
+	public static final int HEADER_LENGTH = 4;
+
+	public LengthPrefixedTokenizer() {
+		this(false);
+	}
+
+	public LengthPrefixedTokenizer(boolean reuseToken) {
+		this(reuseToken, DEFAULT_BUFFER_CAPACITY);
+	}
+
+	public LengthPrefixedTokenizer(boolean reuseToken, int bufferCapacity)
+			throws IllegalArgumentException {
+		super(new byte[0], reuseToken, bufferCapacity);
+	}
+
+	@Override
+	protected int parseHeader(int index, int length, boolean endOfInput)
+			throws ParseException {
+		if (length < HEADER_LENGTH)
+			return ArrayUtils.INVALID_INDEX;
+
+		long payloadLength = ((buffer[index] & 0xFFL) << 24)
+				| ((buffer[index + 1] & 0xFF) << 16)
+				| ((buffer[index + 2] & 0xFF) << 8)
+				| (buffer[index + 3] & 0xFF);
+
+		beginFrame(null, payloadLength, false);
+		return HEADER_LENGTH;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,74 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.frame;
+
+import com.thebuzzmedia.common.parser.ParseException;
+import com.thebuzzmedia.common.parser.ParseException.Type;
+import com.thebuzzmedia.common.util.ArrayUtils;
+
+/**
+ * Tokenizer used to parse netstrings (<code>&lt;length&gt;:&lt;payload&gt;,</code>
+ * where the length is written as decimal digits); one {@link FrameToken} is
+ * returned per payload (or chunk of a payload too big for the buffer).
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class NetstringTokenizer extends AbstractFrameTokenizer<Void> {
+	/**
+	 * Enough digits for any length that fits in a <code>long</code>.
+	 */
+	private static final int MAX_DIGITS = 19;
+
+	private static final byte[] TRAILER = { ',' };
+
+	public NetstringTokenizer() {
+		this(false);
+	}
+
+	public NetstringTokenizer(boolean reuseToken) {
+		this(reuseToken, DEFAULT_BUFFER_CAPACITY);
+	}
+
+	public NetstringTokenizer(boolean reuseToken, int bufferCapacity)
+			throws IllegalArgumentException {
+		super(TRAILER, reuseToken, bufferCapacity);
+	}
+
+	@Override
+	protected int parseHeader(int index, int length, boolean endOfInput)
+			throws ParseException {
+		int end = index + Math.min(length, MAX_DIGITS + 1);
+
+		for (int i = index; i < end; i++) {
+			if (buffer[i] == ':') {
+				long payloadLength = parseLength(buffer, index, i - index);
+
+				if (payloadLength == ArrayUtils.INVALID_INDEX)
+					throw createParseException(Type.MALFORMED,
+							"Invalid netstring length.", index);
+
+				beginFrame(null, payloadLength, true);
+				return i - index + 1;
+			}
+		}
+
+		if (length > MAX_DIGITS)
+			throw createParseException(Type.MALFORMED,
+					"Netstring length is missing its ':' terminator.", index);
+
+		return ArrayUtils.INVALID_INDEX;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,145 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.frame;
+
+import com.thebuzzmedia.common.parser.ParseException;
+import com.thebuzzmedia.common.util.ArrayUtils;
+
+/**
+ * Tokenizer used to parse the Redis serialization protocol (RESP); one
+ * {@link FrameToken} is returned per value, typed with the kind of value it
+ * holds.
+ * <p/>
+ * Bulk strings are framed by their declared length and never scanned; bulk
+ * strings too big for the buffer are returned in chunks. Simple strings,
+ * errors and integers are returned with the content of their line. Arrays
+ * are returned as an {@link Type#ARRAY} token holding the element count (see
+ * {@link FrameToken#getLongValue()}) followed by the tokens of their
+ * elements. Null bulk strings and null arrays are returned as empty
+ * {@link Type#NULL} tokens.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class RESPTokenizer extends AbstractFrameTokenizer<RESPTokenizer.Type> {
+	public enum Type {
+		SIMPLE_STRING, ERROR, INTEGER, BULK_STRING, ARRAY, NULL;
+	}
+
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	public RESPTokenizer() {
+		this(false);
+	}
+
+	public RESPTokenizer(boolean reuseToken) {
+		this(reuseToken, DEFAULT_BUFFER_CAPACITY);
+	}
+
+	public RESPTokenizer(boolean reuseToken, int bufferCapacity)
+			throws IllegalArgumentException {
+		super(CRLF, reuseToken, bufferCapacity);
+	}
+
+	@Override
+	protected int parseHeader(int index, int length, boolean endOfInput)
+			throws ParseException {
+		Type type;
+
+		switch (buffer[index]) {
+		case '+':
+			type = Type.SIMPLE_STRING;
+			break;
+
+		case '-':
+			type = Type.ERROR;
+			break;
+
+		case ':':
+			type = Type.INTEGER;
+			break;
+
+		case '$':
+			type = Type.BULK_STRING;
+			break;
+
+		case '*':
+			type = Type.ARRAY;
+			break;
+
+		default:
+			throw createParseException(ParseException.Type.MALFORMED,
+					"Unknown RESP type '" + (char) buffer[index] + "'.", index);
+		}
+
+		// Find the end of the line; a CR must be followed by its LF.
+		int end = index + length;
+		int crIndex = index + 1;
+
+		while (crIndex < end && buffer[crIndex] != '\r')
+			crIndex++;
+
+		if (crIndex + 1 >= end)
+			return ArrayUtils.INVALID_INDEX;
+
+		int lineLength = crIndex - index - 1;
+		boolean nil = (lineLength == 2 && buffer[index + 1] == '-'
+				&& buffer[index + 2] == '1');
+
+		if (nil && (type == Type.BULK_STRING || type == Type.ARRAY)) {
+			beginFrame(Type.NULL, 0, false);
+			return lineLength + 3;
+		}
+
+		// Everything but bulk strings is returned with the rest of its line.
+		if (type != Type.BULK_STRING) {
+			beginFrame(type, lineLength, true);
+			return 1;
+		}
+
+		long payloadLength = parseLength(buffer, index + 1, lineLength);
+
+		if (payloadLength == ArrayUtils.INVALID_INDEX
+				|| buffer[crIndex + 1] != '\n')
+			throw createParseException(ParseException.Type.MALFORMED,
+					"Invalid bulk string length.", index);
+
+		beginFrame(type, payloadLength, true);
+		return lineLength + 3;
+	}
+
+	/**
+	 * Overridden to also record the type of the current value.
+	 */
+	@Override
+	protected long[] getCheckpointState() {
+		long[] state = super.getCheckpointState();
+		long[] typed = new long[state.length + 1];
+
+		System.arraycopy(state, 0, typed, 0, state.length);
+		typed[state.length] = (frameType == null ? -1 : frameType.ordinal());
+
+		return typed;
+	}
+
+	@Override
+	protected void restoreCheckpointState(long[] state) {
+		super.restoreCheckpointState(state);
+
+		if (state != null && state.length > 4 && state[4] >= 0
+				&& state[4] < Type.values().length)
+			frameType = Type.values()[(int) state[4]];
+	}
+}
\ No newline at end of file
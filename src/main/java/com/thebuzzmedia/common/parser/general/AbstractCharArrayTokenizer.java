@@ -0,0 +1,432 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.general;
+
+import com.thebuzzmedia.common.parser.AbstractDelimitedTokenizer;
+import com.thebuzzmedia.common.parser.IToken;
+import com.thebuzzmedia.common.parser.ParseException;
+import com.thebuzzmedia.common.parser.ParseException.Type;
+import com.thebuzzmedia.common.util.ArrayUtils;
+
+/**
+ * Base class for tokenizers splitting <code>char[]</code> content on single
+ * char ({@link DelimiterMode#MATCH_ANY}) or exact sequence (
+ * {@link DelimiterMode#MATCH_EXACT}) delimiters.
+ * <p/>
+ * This class implements the scanning; subclasses only decide what kind of
+ * token to create for the bounds that were found, given the index of the
+ * delimiter that ended the token while it is still in the buffer.
+ * <p/>
+ * When the content consists of records (e.g. lines of delimited fields), a
+ * projection can be set with {@link #setProjection(char, int...)} so only the
+ * wanted fields of every record are turned into tokens; the others are
+ * skipped by counting delimiters and the rest of a record following its last
+ * wanted field is skipped with a single scan for the record delimiter.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ * 
+ * @param <TT>
+ *            The type of the tokens created.
+ */
+public abstract class AbstractCharArrayTokenizer<TT> extends
+		AbstractDelimitedTokenizer<char[], char[], TT, char[], char[]> {
+	private int nextIndex;
+	private boolean lastTokenParsed;
+
+	/*
+	 * Projection (wanted is null when there is none) and the index within its
+	 * record of the next field and of the field last returned.
+	 */
+	private boolean[] wanted;
+	private char recordDelimiter;
+	private int fieldOrdinal;
+	private int ordinal;
+
+	public AbstractCharArrayTokenizer(int bufferCapacity)
+			throws IllegalArgumentException {
+		super(bufferCapacity);
+	}
+
+	@Override
+	protected char[] createBuffer(int capacity) throws IllegalArgumentException {
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity [" + capacity
+					+ "] must be >= 0");
+
+		return new char[capacity];
+	}
+
+	@Override
+	protected void prepareDelimiters(char[] delimiters, DelimiterMode mode)
+			throws IllegalArgumentException {
+		if (mode == DelimiterMode.MATCH_ANY_SEQUENCE)
+			throw new IllegalArgumentException("mode [" + mode
+					+ "] is not supported by this tokenizer");
+
+		if (wanted != null) {
+			if (mode != DelimiterMode.MATCH_ANY)
+				throw new IllegalArgumentException("mode [" + mode
+						+ "] cannot be used with a projection");
+
+			boolean found = false;
+
+			for (int i = 0; !found && i < delimiters.length; i++)
+				found = (delimiters[i] == recordDelimiter);
+
+			if (!found)
+				throw new IllegalArgumentException("delimiters must contain "
+						+ "the projection's record delimiter ["
+						+ recordDelimiter + "]");
+		}
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+
+		lastTokenParsed = false;
+		fieldOrdinal = 0;
+		ordinal = 0;
+	}
+
+	/**
+	 * Used to get the index, within its record, of the field last returned
+	 * when a projection is set.
+	 * 
+	 * @return the index, within its record, of the field last returned.
+	 */
+	public int getFieldOrdinal() {
+		return ordinal;
+	}
+
+	/**
+	 * Used to set the fields, by their index within their record, that should
+	 * be turned into tokens; all other fields are skipped.
+	 * <p/>
+	 * Fields are counted positionally (every delimiter ends a field,
+	 * regardless of the {@link EmptyTokenPolicy}) and a record ends at the
+	 * <code>recordDelimiter</code>, which must be one of the delimiters. A
+	 * projection can only be used in {@link DelimiterMode#MATCH_ANY} mode.
+	 * 
+	 * @param recordDelimiter
+	 *            The delimiter ending every record (e.g. <code>'\n'</code>).
+	 * @param ordinals
+	 *            The indices of the wanted fields.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>ordinals</code> is empty or any of them is &lt;
+	 *             <code>0</code>.
+	 * 
+	 * @see #getFieldOrdinal()
+	 */
+	public void setProjection(char recordDelimiter, int... ordinals)
+			throws IllegalArgumentException {
+		if (ordinals == null || ordinals.length == 0)
+			throw new IllegalArgumentException(
+					"ordinals must contain at least 1 ordinal");
+
+		int max = 0;
+
+		for (int i = 0; i < ordinals.length; i++) {
+			if (ordinals[i] < 0)
+				throw new IllegalArgumentException("ordinals[" + i + "] ["
+						+ ordinals[i] + "] must be >= 0");
+
+			max = Math.max(max, ordinals[i]);
+		}
+
+		boolean[] wanted = new boolean[max + 1];
+
+		for (int i = 0; i < ordinals.length; i++)
+			wanted[ordinals[i]] = true;
+
+		this.wanted = wanted;
+		this.recordDelimiter = recordDelimiter;
+	}
+
+	/**
+	 * Used to remove the projection, turning every field into a token again.
+	 */
+	public void clearProjection() {
+		wanted = null;
+	}
+
+	@Override
+	protected IToken<TT, char[], char[]> parseTokenImpl(int index, int length)
+			throws ParseException {
+		if (wanted != null)
+			return parseProjectedToken(index, length);
+
+		// Token start/end indices
+		int tsIndex = index;
+		int teIndex = ArrayUtils.INVALID_INDEX;
+		int end = index + length;
+
+		boolean preserve = (emptyTokenPolicy == EmptyTokenPolicy.PRESERVE);
+		boolean trim = (emptyTokenPolicy == EmptyTokenPolicy.TRIM);
+
+		/*
+		 * Skip the delimiters preceding the token when empty tokens are
+		 * collapsed, or trimmed and this is the beginning of the input.
+		 */
+		if ((!preserve && !trim) || (trim && tokenCount == 0)) {
+			tsIndex = indexAfterDelimiters(tsIndex, length);
+
+			/*
+			 * Nothing but delimiters; they are never returned, so drop them
+			 * right away instead of letting a long run of them fill the
+			 * buffer.
+			 */
+			if (tsIndex == ArrayUtils.INVALID_INDEX) {
+				bIndex = end;
+				return null;
+			}
+
+			bIndex = tsIndex;
+		}
+
+		// Find the delimiter ending the token.
+		teIndex = indexOfDelimiter(tsIndex, end - tsIndex);
+
+		if (teIndex == ArrayUtils.INVALID_INDEX) {
+			/*
+			 * At the end of the input whatever follows the last delimiter is
+			 * the last token; only returned when empty if empty tokens are
+			 * preserved and it does follow a delimiter.
+			 */
+			if (isEndOfInput() && !lastTokenParsed
+					&& (tsIndex < end || (preserve && tokenCount > 0))) {
+				lastTokenParsed = true;
+				nextIndex = end;
+
+				return createToken(tsIndex, end, false);
+			}
+
+			return null;
+		}
+
+		/*
+		 * When trimming, an empty token is only returned once we know a
+		 * non-empty token follows it; if the delimiters after it fill the
+		 * whole buffer, we never will.
+		 */
+		if (trim && teIndex == tsIndex && !isContentFollowing(teIndex, end)) {
+			if (tsIndex == 0 && end == buffer.length && !isEndOfInput())
+				throw createParseException(Type.MALFORMED,
+						"Run of delimiters exceeds the buffer capacity of "
+								+ buffer.length + ".", tsIndex);
+
+			return null;
+		}
+
+		nextIndex = teIndex
+				+ (mode == DelimiterMode.MATCH_EXACT ? delimiters.length : 1);
+
+		return createToken(tsIndex, teIndex, true);
+	}
+
+	/**
+	 * Used to parse the next wanted field when a projection is set.
+	 */
+	private IToken<TT, char[], char[]> parseProjectedToken(int index,
+			int length) {
+		int tsIndex = index;
+		int end = index + length;
+
+		while (true) {
+			// Nothing else wanted in this record, jump straight to its end.
+			if (fieldOrdinal >= wanted.length) {
+				int rIndex = indexOfRecordDelimiter(tsIndex, end);
+
+				// Nothing we skipped needs to be kept.
+				if (rIndex == ArrayUtils.INVALID_INDEX) {
+					bIndex = end;
+					return null;
+				}
+
+				tsIndex = bIndex = rIndex + 1;
+				fieldOrdinal = 0;
+			}
+
+			int teIndex = ArrayUtils.indexOfAnyNoCheck(delimiters, buffer,
+					tsIndex, end - tsIndex);
+
+			if (teIndex == ArrayUtils.INVALID_INDEX) {
+				// The last field of the input isn't followed by a delimiter.
+				if (isEndOfInput() && !lastTokenParsed && tsIndex < end
+						&& wanted[fieldOrdinal]) {
+					lastTokenParsed = true;
+					ordinal = fieldOrdinal;
+					nextIndex = end;
+
+					return createToken(tsIndex, end, false);
+				}
+
+				return null;
+			}
+
+			int fOrdinal = fieldOrdinal;
+			fieldOrdinal = (buffer[teIndex] == recordDelimiter ? 0
+					: fOrdinal + 1);
+
+			if (wanted[fOrdinal]) {
+				ordinal = fOrdinal;
+				nextIndex = teIndex + 1;
+
+				return createToken(tsIndex, teIndex, true);
+			}
+
+			tsIndex = bIndex = teIndex + 1;
+		}
+	}
+
+	/**
+	 * Overridden to only allow checkpoints at the beginning of a record when
+	 * a projection is set.
+	 */
+	@Override
+	protected boolean isCheckpointSafe() {
+		return (wanted == null || fieldOrdinal == 0);
+	}
+
+	@Override
+	protected long[] getCheckpointState() {
+		return (wanted == null ? null : new long[] { fieldOrdinal });
+	}
+
+	@Override
+	protected void restoreCheckpointState(long[] state) {
+		fieldOrdinal = (state != null && state.length > 0 ? (int) state[0] : 0);
+	}
+
+	/**
+	 * Overridden to continue after the delimiter that ended the token,
+	 * including any delimiters skipped before the token began.
+	 */
+	@Override
+	protected void advanceIndex(IToken<TT, char[], char[]> token) {
+		bIndex = nextIndex;
+	}
+
+	@Override
+	protected int indexOfRecoveryPoint(int index, int length) {
+		int rIndex = ArrayUtils.INVALID_INDEX;
+
+		// Resume parsing immediately after the next delimiter.
+		switch (mode) {
+		case MATCH_ANY:
+			rIndex = ArrayUtils.indexOfAnyNoCheck(delimiters, buffer, index,
+					length);
+
+			if (rIndex != ArrayUtils.INVALID_INDEX)
+				rIndex++;
+			break;
+
+		case MATCH_EXACT:
+			rIndex = ArrayUtils.indexOfNoCheck(delimiters, buffer, index,
+					length);
+
+			if (rIndex != ArrayUtils.INVALID_INDEX)
+				rIndex += delimiters.length;
+			break;
+		}
+
+		return rIndex;
+	}
+
+	/**
+	 * Used to find the index of the first element at or after
+	 * <code>index</code> that is not a delimiter.
+	 */
+	private int indexAfterDelimiters(int index, int length) {
+		if (mode == DelimiterMode.MATCH_EXACT)
+			return ArrayUtils.indexAfterNoCheck(delimiters, buffer, index,
+					length);
+		else
+			return ArrayUtils.indexAfterAnyNoCheck(delimiters, buffer, index,
+					length);
+	}
+
+	/**
+	 * Used to determine if anything other than delimiters follows
+	 * <code>index</code>. In {@link DelimiterMode#MATCH_EXACT} mode content at
+	 * the end of the buffer that could still be the start of a delimiter
+	 * only counts at the end of the input.
+	 */
+	private boolean isContentFollowing(int index, int end) {
+		int cIndex = indexAfterDelimiters(index, end - index);
+
+		if (cIndex == ArrayUtils.INVALID_INDEX)
+			return false;
+		if (mode != DelimiterMode.MATCH_EXACT || isEndOfInput()
+				|| end - cIndex >= delimiters.length)
+			return true;
+
+		// Content unless the rest of the buffer starts a delimiter.
+		for (int i = 0; cIndex + i < end; i++) {
+			if (buffer[cIndex + i] != delimiters[i])
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Used to find the index of the first record delimiter between
+	 * <code>index</code> (inclusive) and <code>end</code> (exclusive).
+	 */
+	private int indexOfRecordDelimiter(int index, int end) {
+		char rd = recordDelimiter;
+
+		for (; index < end; index++) {
+			if (buffer[index] == rd)
+				return index;
+		}
+
+		return ArrayUtils.INVALID_INDEX;
+	}
+
+	/**
+	 * Used to find the index of the first delimiter at or after
+	 * <code>index</code>.
+	 */
+	private int indexOfDelimiter(int index, int length) {
+		if (mode == DelimiterMode.MATCH_EXACT)
+			return ArrayUtils.indexOfNoCheck(delimiters, buffer, index, length);
+		else
+			return ArrayUtils.indexOfAnyNoCheck(delimiters, buffer, index,
+					length);
+	}
+
+	/**
+	 * Used to create the token for the content between
+	 * <code>tsIndex</code> (inclusive) and <code>teIndex</code> (exclusive)
+	 * in the <code>buffer</code>.
+	 * 
+	 * @param tsIndex
+	 *            The index the token starts at.
+	 * @param teIndex
+	 *            The index the token ends at.
+	 * @param delimited
+	 *            <code>true</code> if the token was ended by a delimiter,
+	 *            found at <code>teIndex</code>, or <code>false</code> if it
+	 *            is the last token of the input and no delimiter follows it.
+	 * 
+	 * @return the token.
+	 */
+	protected abstract IToken<TT, char[], char[]> createToken(int tsIndex,
+			int teIndex, boolean delimited);
+}
\ No newline at end of file
@@ -15,14 +15,10 @@
  */
 package com.thebuzzmedia.common.parser.general;
 
-import com.thebuzzmedia.common.parser.AbstractDelimitedTokenizer;
 import com.thebuzzmedia.common.parser.AbstractReusableToken;
 import com.thebuzzmedia.common.parser.IToken;
-import com.thebuzzmedia.common.parser.ParseException;
-import com.thebuzzmedia.common.util.ArrayUtils;
 
-public class ByteArrayTokenizer extends
-		AbstractDelimitedTokenizer<byte[], byte[], Void, byte[], byte[]> {
+public class ByteArrayTokenizer extends AbstractByteArrayTokenizer<Void> {
 	private ReusableByteArrayToken reusableToken = new ReusableByteArrayToken();
 
 	public ByteArrayTokenizer() {
@@ -50,70 +46,15 @@ public class ByteArrayTokenizer extends
 	 */
 
 	@Override
-	protected byte[] createBuffer(int capacity) throws IllegalArgumentException {
-		if (capacity < 0)
-			throw new IllegalArgumentException("capacity [" + capacity
-					+ "] must be >= 0");
-
-		return new byte[capacity];
-	}
-
-	@Override
-	protected IToken<Void, byte[], byte[]> parseTokenImpl(int index, int length)
-			throws ParseException {
-		// Token start/end indices
-		int tsIndex = index;
-		int teIndex = ArrayUtils.INVALID_INDEX;
-		IToken<Void, byte[], byte[]> token = null;
-
-		// Scan for start/end based on our delim mode.
-		switch (mode) {
-		case MATCH_ANY:
-			// Find first non-delim value.
-			tsIndex = ArrayUtils.indexAfterAnyNoCheck(delimiters, buffer,
-					tsIndex, length);
-
-			// Check if we found a start before trying to find end.
-			if (tsIndex != ArrayUtils.INVALID_INDEX) {
-				// Update remaining length
-				length -= (tsIndex - index);
-
-				// Now find first delim value after our start.
-				teIndex = ArrayUtils.indexOfAnyNoCheck(delimiters, buffer,
-						tsIndex, length);
-			}
-			break;
-
-		case MATCH_EXACT:
-			// Find first non-delim value after exact-matching delim.
-			tsIndex = ArrayUtils.indexAfterNoCheck(delimiters, buffer, tsIndex,
-					length);
-
-			// Check if we found a start before trying to find end.
-			if (tsIndex != ArrayUtils.INVALID_INDEX) {
-				// Update remaining length
-				length -= (tsIndex - index);
-
-				// Now find the first exact-match delim occurrence after.
-				teIndex = ArrayUtils.indexOfNoCheck(delimiters, buffer,
-						tsIndex, length);
-			}
-			break;
-		}
-
-		// Check to make sure we have valid indices marked or return null
-		if (tsIndex != ArrayUtils.INVALID_INDEX
-				&& teIndex != ArrayUtils.INVALID_INDEX) {
-			// Check if we are reusing a token or creating a new one.
-			if (reuseToken) {
-				reusableToken.setValue(buffer, teIndex, (teIndex - tsIndex));
-				token = reusableToken;
-			} else
-				token = new ReusableByteArrayToken(buffer, teIndex,
-						(teIndex - tsIndex));
-		}
-
-		return token;
+	protected IToken<Void, byte[], byte[]> createToken(int tsIndex,
+			int teIndex, boolean delimited) {
+		// Check if we are reusing a token or creating a new one.
+		if (reuseToken) {
+			reusableToken.setValue(buffer, tsIndex, (teIndex - tsIndex));
+			return reusableToken;
+		} else
+			return new ReusableByteArrayToken(buffer, tsIndex,
+					(teIndex - tsIndex));
 	}
 
 	class ReusableByteArrayToken extends
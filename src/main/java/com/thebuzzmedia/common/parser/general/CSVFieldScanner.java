@@ -0,0 +1,611 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.general;
+
+import com.thebuzzmedia.common.parser.IFieldPredicate;
+import com.thebuzzmedia.common.parser.general.CSVToken.Type;
+import com.thebuzzmedia.common.util.ArrayUtils;
+
+/**
+ * Scanning logic shared by {@link CSVTokenizer} and {@link CSVParser} used to
+ * mark the bounds of the next RFC 4180 field in a buffer.
+ * <p/>
+ * The separator, quote and newline characters are all found with a single
+ * lookup table so each byte of an unquoted field is only inspected once.
+ * Scans that run out of data before the field is terminated report
+ * {@link #NEED_DATA} without changing any state; the owning parser refills its
+ * buffer (keeping the partial field) and scans the field again from the
+ * beginning, which correctly handles quoted fields, escaped quotes and CRLF
+ * sequences split across buffer boundaries.
+ * <p/>
+ * The scanner also keeps track of the index of the current field within its
+ * record and, when a projection is set, which of those fields are wanted;
+ * once a record has no wanted fields left, {@link #indexAfterRecord} skips the
+ * rest of it in a single pass.
+ * <p/>
+ * When predicates are set, {@link #filter} looks ahead at the leading fields
+ * of every record before any of them are marked and rejected records are
+ * skipped the same way.
+ * <p/>
+ * {@link #next} combines all of the above into the parsing loop of its
+ * owner, which only turns the result into a token or an exception; the
+ * scanner also holds all the state its owner's checkpoints are made of.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+class CSVFieldScanner {
+	static final int FOUND = 0;
+	static final int NEED_DATA = 1;
+	static final int MALFORMED = 2;
+	static final int REJECTED = 3;
+
+	private static final byte DATA = 0;
+	private static final byte QUOTE = 1;
+	private static final byte SEPARATOR = 2;
+	private static final byte CR = 3;
+	private static final byte LF = 4;
+
+	final byte separator;
+	final byte quote;
+
+	private final byte[] table;
+
+	/*
+	 * Results of the last scan. Only valid after scan(...) returns FOUND (or
+	 * errorIndex after MALFORMED, along with errorMessage after next(...)
+	 * does).
+	 */
+	Type type;
+	int tsIndex;
+	int teIndex;
+	int nextIndex;
+	int errorIndex;
+	String errorMessage;
+	int ordinal;
+
+	/*
+	 * Index of the first byte the owning parser still needs after
+	 * next(...) returns.
+	 */
+	int keepIndex;
+	boolean quoted;
+	boolean escaped;
+
+	/*
+	 * Index within its record of the next field to be found and, when a
+	 * projection is set, the fields wanted by their index (null if all are).
+	 */
+	int fieldOrdinal;
+	boolean[] wanted;
+
+	/*
+	 * Predicates by the index of the field they test (null if there are
+	 * none), if the current record has passed them and if the rest of the
+	 * current record is being skipped because it did not.
+	 */
+	IFieldPredicate[] predicates;
+	boolean recordAccepted;
+	boolean rejecting;
+
+	/*
+	 * Index that indexAfterRecord(...) can resume from after it returns
+	 * INVALID_INDEX.
+	 */
+	int resumeIndex;
+
+	/*
+	 * true if the last field found was terminated by a separator, meaning
+	 * another (possibly empty) field must follow even if the input ends.
+	 */
+	boolean afterSeparator;
+
+	CSVFieldScanner(byte separator, byte quote)
+			throws IllegalArgumentException {
+		if (separator == quote || separator == '\r' || separator == '\n')
+			throw new IllegalArgumentException("separator [" + separator
+					+ "] must not be the quote [" + quote
+					+ "], CR or LF character");
+		if (quote == '\r' || quote == '\n')
+			throw new IllegalArgumentException("quote [" + quote
+					+ "] must not be the CR or LF character");
+
+		this.separator = separator;
+		this.quote = quote;
+
+		table = new byte[256];
+		table[quote & 0xFF] = QUOTE;
+		table[separator & 0xFF] = SEPARATOR;
+		table['\r'] = CR;
+		table['\n'] = LF;
+	}
+
+	void reset() {
+		afterSeparator = false;
+		fieldOrdinal = 0;
+		recordAccepted = false;
+		rejecting = false;
+	}
+
+	void setProjection(int... ordinals) throws IllegalArgumentException {
+		if (ordinals == null || ordinals.length == 0) {
+			wanted = null;
+			return;
+		}
+
+		int max = 0;
+
+		for (int i = 0; i < ordinals.length; i++) {
+			if (ordinals[i] < 0)
+				throw new IllegalArgumentException("ordinals[" + i + "] ["
+						+ ordinals[i] + "] must be >= 0");
+
+			max = Math.max(max, ordinals[i]);
+		}
+
+		boolean[] wanted = new boolean[max + 1];
+
+		for (int i = 0; i < ordinals.length; i++)
+			wanted[ordinals[i]] = true;
+
+		this.wanted = wanted;
+	}
+
+	void setPredicate(int ordinal, IFieldPredicate predicate)
+			throws IllegalArgumentException {
+		if (ordinal < 0)
+			throw new IllegalArgumentException("ordinal [" + ordinal
+					+ "] must be >= 0");
+
+		if (predicate == null) {
+			if (predicates != null && ordinal < predicates.length) {
+				predicates[ordinal] = null;
+
+				// Trim the table so filter(...) stops at the last predicate.
+				int length = predicates.length;
+
+				while (length > 0 && predicates[length - 1] == null)
+					length--;
+
+				if (length == 0)
+					predicates = null;
+				else if (length < predicates.length) {
+					IFieldPredicate[] trimmed = new IFieldPredicate[length];
+					System.arraycopy(predicates, 0, trimmed, 0, length);
+					predicates = trimmed;
+				}
+			}
+
+			return;
+		}
+
+		if (predicates == null || ordinal >= predicates.length) {
+			IFieldPredicate[] grown = new IFieldPredicate[ordinal + 1];
+
+			if (predicates != null)
+				System.arraycopy(predicates, 0, grown, 0, predicates.length);
+
+			predicates = grown;
+		}
+
+		predicates[ordinal] = predicate;
+	}
+
+	void clearPredicates() {
+		predicates = null;
+		recordAccepted = false;
+	}
+
+	/**
+	 * Used to find the next wanted field at or after <code>index</code>,
+	 * skipping rejected records and fields that are not wanted along the
+	 * way; the owning parser's buffer index must be moved to
+	 * <code>keepIndex</code> whatever the result.
+	 * 
+	 * @return {@link #FOUND} if a wanted field was marked,
+	 *         {@link #NEED_DATA} if more data is needed or
+	 *         {@link #MALFORMED} if the content is not valid CSV or can't fit
+	 *         in the buffer, described by <code>errorMessage</code> and
+	 *         <code>errorIndex</code>.
+	 */
+	int next(byte[] buffer, int index, int length, boolean endOfInput) {
+		int end = index + length;
+
+		while (true) {
+			if (isSkippingRecord()) {
+				int rIndex = indexAfterRecord(buffer, index, end - index,
+						endOfInput);
+
+				// Keep the field we need to resume skipping from.
+				if (rIndex == ArrayUtils.INVALID_INDEX) {
+					index = resumeIndex;
+					break;
+				}
+
+				index = rIndex;
+				continue;
+			}
+
+			int status = FOUND;
+
+			if (isFiltering())
+				status = filter(buffer, index, end - index, endOfInput);
+
+			if (status == FOUND)
+				status = scan(buffer, index, end - index, endOfInput);
+
+			if (status == REJECTED) {
+				index = nextIndex;
+				continue;
+			} else if (status == NEED_DATA)
+				break;
+			else if (status == MALFORMED) {
+				keepIndex = index;
+				errorMessage = "Malformed quoted field.";
+				return MALFORMED;
+			}
+
+			keepIndex = index;
+
+			if (isWanted())
+				return FOUND;
+
+			index = nextIndex;
+		}
+
+		keepIndex = index;
+
+		// A field (or filtered fields) filling the buffer can't be completed.
+		if (index == 0 && end == buffer.length && !endOfInput) {
+			errorIndex = index;
+			errorMessage = (isFiltering() ? "Filtered fields exceed"
+					: "Field exceeds")
+					+ " the buffer capacity of " + buffer.length + " bytes.";
+			return MALFORMED;
+		}
+
+		return NEED_DATA;
+	}
+
+	/**
+	 * Used to set the value of the given token to the field last found.
+	 */
+	CSVToken setToken(CSVToken token, byte[] buffer) {
+		token.setValue(type, buffer, tsIndex, teIndex - tsIndex, ordinal,
+				quote, quoted, escaped);
+
+		return token;
+	}
+
+	/**
+	 * Used to determine if the next field begins a record, the only place a
+	 * checkpoint can be taken.
+	 */
+	boolean isRecordStart() {
+		return !afterSeparator;
+	}
+
+	/**
+	 * Used to get the state of the current record: if the next field follows
+	 * a separator, its index within the record and if the record was
+	 * rejected.
+	 */
+	long[] getState() {
+		return new long[] { (afterSeparator ? 1 : 0), fieldOrdinal,
+				(rejecting ? 1 : 0) };
+	}
+
+	void restoreState(long[] state) {
+		int length = (state == null ? 0 : state.length);
+
+		afterSeparator = (length > 0 && state[0] == 1);
+		fieldOrdinal = (length > 1 ? (int) state[1] : 0);
+		rejecting = (length > 2 && state[2] == 1);
+	}
+
+	/**
+	 * Used to determine if the record beginning at the next field has to be
+	 * run through {@link #filter} before any of its fields are marked.
+	 */
+	boolean isFiltering() {
+		return (predicates != null && fieldOrdinal == 0 && !recordAccepted);
+	}
+
+	/**
+	 * Used to determine if the field last found is wanted by the projection.
+	 */
+	boolean isWanted() {
+		return (wanted == null || (ordinal < wanted.length && wanted[ordinal]));
+	}
+
+	/**
+	 * Used to determine if none of the remaining fields of the current record
+	 * are wanted by the projection.
+	 */
+	boolean isSkippingRecord() {
+		return (rejecting || (wanted != null && fieldOrdinal >= wanted.length));
+	}
+
+	/**
+	 * Used to test the fields of the record beginning at <code>index</code>
+	 * against the predicates without marking any of them; on
+	 * {@link #FOUND} the record was accepted and its first field can be
+	 * scanned as usual.
+	 * <p/>
+	 * A record that ends before the field a predicate tests is rejected.
+	 * 
+	 * @return {@link #FOUND} if the record passed every predicate,
+	 *         {@link #REJECTED} if it did not, in which case
+	 *         <code>nextIndex</code> is where the rest of it is skipped from
+	 *         using {@link #indexAfterRecord}, or the result of the
+	 *         {@link #scan} that ran out of data or failed.
+	 */
+	int filter(byte[] buffer, int index, int length, boolean endOfInput) {
+		IFieldPredicate[] predicates = this.predicates;
+		int end = index + length;
+
+		for (int i = index;;) {
+			int status = scan(buffer, i, end - i, endOfInput);
+
+			if (status != FOUND) {
+				fieldOrdinal = 0;
+				afterSeparator = false;
+				return status;
+			}
+
+			IFieldPredicate p = predicates[ordinal];
+
+			if (p != null && !p.accept(buffer, tsIndex, teIndex - tsIndex)) {
+				rejecting = (type == Type.FIELD);
+				return REJECTED;
+			}
+
+			// Every predicate passed, back up to the start of the record.
+			if (ordinal + 1 == predicates.length) {
+				fieldOrdinal = 0;
+				afterSeparator = false;
+				recordAccepted = true;
+				return FOUND;
+			}
+
+			// The record is missing a field that has to be tested.
+			if (type == Type.LAST_FIELD)
+				return REJECTED;
+
+			i = nextIndex;
+		}
+	}
+
+	/**
+	 * Used to mark the bounds of the field beginning at <code>index</code>.
+	 * 
+	 * @return {@link #FOUND} if a complete field was marked, {@link #NEED_DATA}
+	 *         if more data is needed to find the end of the field or
+	 *         {@link #MALFORMED} if the content is not valid CSV.
+	 */
+	int scan(byte[] buffer, int index, int length, boolean endOfInput) {
+		int end = index + length;
+
+		// Nothing left; a trailing separator still implies an empty field.
+		if (length <= 0) {
+			if (endOfInput && afterSeparator)
+				return found(Type.LAST_FIELD, index, index, index, false,
+						false);
+
+			return NEED_DATA;
+		}
+
+		int i = index;
+
+		// Quoted field
+		if (table[buffer[i] & 0xFF] == QUOTE) {
+			boolean escaped = false;
+
+			for (i++;;) {
+				// Find the next quote, it either escapes a quote or closes.
+				while (i < end && buffer[i] != quote)
+					i++;
+
+				if (i == end) {
+					if (!endOfInput)
+						return NEED_DATA;
+
+					errorIndex = index;
+					return MALFORMED;
+				}
+
+				int q = i++;
+
+				// Closing quote at the very end of the content.
+				if (i == end) {
+					if (!endOfInput)
+						return NEED_DATA;
+
+					return found(Type.LAST_FIELD, index + 1, q, end, true,
+							escaped);
+				}
+
+				switch (table[buffer[i] & 0xFF]) {
+				case QUOTE:
+					escaped = true;
+					i++;
+					break;
+
+				case SEPARATOR:
+					return found(Type.FIELD, index + 1, q, i + 1, true, escaped);
+
+				case LF:
+					return found(Type.LAST_FIELD, index + 1, q, i + 1, true,
+							escaped);
+
+				case CR:
+					return foundCR(buffer, index + 1, q, i, end, endOfInput,
+							true, escaped);
+
+				default:
+					errorIndex = i;
+					return MALFORMED;
+				}
+			}
+		}
+
+		// Unquoted field; quotes in the middle of it are treated as data.
+		while (i < end && table[buffer[i] & 0xFF] < SEPARATOR)
+			i++;
+
+		if (i == end) {
+			if (!endOfInput)
+				return NEED_DATA;
+
+			return found(Type.LAST_FIELD, index, end, end, false, false);
+		}
+
+		switch (table[buffer[i] & 0xFF]) {
+		case SEPARATOR:
+			return found(Type.FIELD, index, i, i + 1, false, false);
+
+		case LF:
+			return found(Type.LAST_FIELD, index, i, i + 1, false, false);
+
+		default:
+			return foundCR(buffer, index, i, i, end, endOfInput, false, false);
+		}
+	}
+
+	/**
+	 * Used to find the index of the beginning of the next record, at or after
+	 * <code>index</code>, that parsing can resume at after malformed content.
+	 */
+	int indexOfNextRecord(byte[] buffer, int index, int length) {
+		for (int end = index + length; index < end; index++) {
+			if (buffer[index] == '\n') {
+				reset();
+				return index + 1;
+			}
+		}
+
+		return ArrayUtils.INVALID_INDEX;
+	}
+
+	/**
+	 * Used to skip the rest of the current record, beginning at the field
+	 * starting at <code>index</code>, without marking any of its fields.
+	 * 
+	 * @return the index of the beginning of the next record or
+	 *         {@link ArrayUtils#INVALID_INDEX} if more data is needed, in
+	 *         which case <code>resumeIndex</code> is the beginning of the
+	 *         field skipping has to be resumed from.
+	 */
+	int indexAfterRecord(byte[] buffer, int index, int length,
+			boolean endOfInput) {
+		int end = index + length;
+		int fsIndex = index;
+
+		for (int i = index; i < end;) {
+			switch (table[buffer[i] & 0xFF]) {
+			case QUOTE:
+				// Quotes only have meaning at the beginning of a field.
+				if (i == fsIndex) {
+					for (i++;; i += 2) {
+						while (i < end && buffer[i] != quote)
+							i++;
+
+						// Can't tell yet if the quote is doubled or closing.
+						if (i + 1 >= end) {
+							if (!endOfInput)
+								return needData(fsIndex);
+
+							return endRecord(end);
+						}
+
+						if (buffer[i + 1] != quote)
+							break;
+					}
+				}
+
+				i++;
+				break;
+
+			case SEPARATOR:
+				fsIndex = ++i;
+				break;
+
+			case LF:
+				return endRecord(i + 1);
+
+			case CR:
+				// Can't tell yet if this is a CRLF split across buffers.
+				if (i + 1 == end && !endOfInput)
+					return needData(fsIndex);
+
+				return endRecord((i + 1 < end && buffer[i + 1] == '\n') ? i + 2
+						: i + 1);
+
+			default:
+				i++;
+			}
+		}
+
+		// The input ended in the middle of the record.
+		if (endOfInput)
+			return endRecord(end);
+
+		return needData(fsIndex);
+	}
+
+	private int needData(int resumeIndex) {
+		this.resumeIndex = resumeIndex;
+		return ArrayUtils.INVALID_INDEX;
+	}
+
+	private int endRecord(int nextIndex) {
+		reset();
+
+		return nextIndex;
+	}
+
+	private int foundCR(byte[] buffer, int tsIndex, int teIndex, int crIndex,
+			int end, boolean endOfInput, boolean quoted, boolean escaped) {
+		int next = crIndex + 1;
+
+		// Can't tell yet if this is a CRLF split across buffers.
+		if (next == end && !endOfInput)
+			return NEED_DATA;
+
+		if (next < end && buffer[next] == '\n')
+			next++;
+
+		return found(Type.LAST_FIELD, tsIndex, teIndex, next, quoted, escaped);
+	}
+
+	private int found(Type type, int tsIndex, int teIndex, int nextIndex,
+			boolean quoted, boolean escaped) {
+		this.type = type;
+		this.tsIndex = tsIndex;
+		this.teIndex = teIndex;
+		this.nextIndex = nextIndex;
+		this.quoted = quoted;
+		this.escaped = escaped;
+
+		afterSeparator = (type == Type.FIELD);
+		ordinal = fieldOrdinal;
+		fieldOrdinal = (afterSeparator ? fieldOrdinal + 1 : 0);
+
+		if (!afterSeparator)
+			recordAccepted = false;
+
+		return FOUND;
+	}
+}
\ No newline at end of file
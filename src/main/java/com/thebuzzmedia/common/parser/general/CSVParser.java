@@ -0,0 +1,161 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.general;
+
+import com.thebuzzmedia.common.parser.AbstractCallbackParser;
+import com.thebuzzmedia.common.parser.IFieldPredicate;
+import com.thebuzzmedia.common.parser.IToken;
+import com.thebuzzmedia.common.parser.ParseException;
+import com.thebuzzmedia.common.parser.ParseException.Type;
+
+/**
+ * Callback parser used to parse RFC 4180 formatted content (CSV, TSV, etc.),
+ * delivering a {@link CSVToken} to the callback for every field.
+ * <p/>
+ * Fields may be quoted, contain escaped (doubled) quotes and contain embedded
+ * separator, CR and LF characters. Records may be terminated by LF, CRLF or
+ * CR. The last field in every record is delivered with a type of
+ * {@link CSVToken.Type#LAST_FIELD}, so callbacks can batch rows.
+ * <p/>
+ * Tokens reference the field content directly in the tokenizer's buffer; no
+ * data is copied until {@link CSVToken#getValue()} is called. This parser
+ * shares its scanning logic with {@link CSVTokenizer}.
+ * <p/>
+ * When error recovery is turned on, malformed records are skipped up to the
+ * beginning of the next line.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class CSVParser extends
+		AbstractCallbackParser<byte[], CSVToken.Type, byte[], byte[]> {
+	private CSVFieldScanner scanner;
+	private CSVToken reusableToken = new CSVToken();
+
+	public CSVParser() {
+		this(false);
+	}
+
+	public CSVParser(boolean reuseToken) {
+		this(reuseToken, DEFAULT_BUFFER_CAPACITY);
+	}
+
+	public CSVParser(boolean reuseToken, int bufferCapacity)
+			throws IllegalArgumentException {
+		this(CSVTokenizer.DEFAULT_SEPARATOR, CSVTokenizer.DEFAULT_QUOTE,
+				reuseToken, bufferCapacity);
+	}
+
+	public CSVParser(byte separator, byte quote, boolean reuseToken,
+			int bufferCapacity) throws IllegalArgumentException {
+		super(bufferCapacity);
+
+		this.reuseToken = reuseToken;
+		scanner = new CSVFieldScanner(separator, quote);
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		scanner.reset();
+	}
+
+	public byte getSeparator() {
+		return scanner.separator;
+	}
+
+	public byte getQuote() {
+		return scanner.quote;
+	}
+
+	/**
+	 * @see CSVTokenizer#setProjection(int...)
+	 */
+	public void setProjection(int... ordinals) throws IllegalArgumentException {
+		scanner.setProjection(ordinals);
+	}
+
+	/**
+	 * @see CSVTokenizer#setPredicate(int, IFieldPredicate)
+	 */
+	public void setPredicate(int ordinal, IFieldPredicate predicate)
+			throws IllegalArgumentException {
+		scanner.setPredicate(ordinal, predicate);
+	}
+
+	/**
+	 * @see CSVTokenizer#clearPredicates()
+	 */
+	public void clearPredicates() {
+		scanner.clearPredicates();
+	}
+
+	@Override
+	protected byte[] createBuffer(int capacity) throws IllegalArgumentException {
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity [" + capacity
+					+ "] must be >= 0");
+
+		return new byte[capacity];
+	}
+
+	@Override
+	protected IToken<CSVToken.Type, byte[], byte[]> parseTokenImpl(int index,
+			int length) throws ParseException {
+		int status = scanner.next(buffer, index, length, isEndOfInput());
+		bIndex = scanner.keepIndex;
+
+		if (status == CSVFieldScanner.MALFORMED)
+			throw createParseException(Type.MALFORMED, scanner.errorMessage,
+					scanner.errorIndex);
+
+		return (status == CSVFieldScanner.FOUND ? scanner.setToken(
+				(reuseToken ? reusableToken : new CSVToken()), buffer) : null);
+	}
+
+	@Override
+	protected void advanceIndex(IToken<CSVToken.Type, byte[], byte[]> token) {
+		bIndex = scanner.nextIndex;
+	}
+
+	/**
+	 * Overridden to only allow checkpoints at the beginning of a record.
+	 */
+	@Override
+	protected boolean isCheckpointSafe() {
+		return scanner.isRecordStart();
+	}
+
+	/**
+	 * Overridden to record if the next field follows a separator, its index
+	 * within the record and if the record was rejected; always the
+	 * beginning of a record at a checkpoint, but not necessarily for a saved
+	 * {@link com.thebuzzmedia.common.parser.ParserState}.
+	 */
+	@Override
+	protected long[] getCheckpointState() {
+		return scanner.getState();
+	}
+
+	@Override
+	protected void restoreCheckpointState(long[] state) {
+		scanner.restoreState(state);
+	}
+
+	@Override
+	protected int indexOfRecoveryPoint(int index, int length) {
+		return scanner.indexOfNextRecord(buffer, index, length);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,158 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.general;
+
+import com.thebuzzmedia.common.parser.AbstractReusableToken;
+
+/**
+ * Token representing a single field parsed from RFC 4180 formatted content by
+ * {@link CSVTokenizer} or {@link CSVParser}.
+ * <p/>
+ * The bounds of the token mark the raw content of the field within the
+ * parser's buffer, excluding any enclosing quotes. No data is copied until
+ * {@link #getValue()} is called, and escaped (doubled) quotes are only
+ * unescaped if the field actually contained any.
+ * <p/>
+ * The type of the token is {@link Type#LAST_FIELD} when the field was the last
+ * one in its record, making it easy for callers to detect record boundaries
+ * and batch rows. {@link #getOrdinal()} gives the index of the field within
+ * its record, which is needed to tell fields apart when only some of them are
+ * parsed (see {@link CSVTokenizer#setProjection(int...)}).
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class CSVToken extends
+		AbstractReusableToken<CSVToken.Type, byte[], byte[]> {
+	public enum Type {
+		/**
+		 * A field followed by more fields in the same record.
+		 */
+		FIELD,
+		/**
+		 * The last field in a record.
+		 */
+		LAST_FIELD;
+	}
+
+	protected int ordinal;
+	protected byte quote;
+	protected boolean quoted;
+	protected boolean escaped;
+
+	public CSVToken() {
+		// default constructor
+	}
+
+	public CSVToken(Type type, byte[] source, int index, int length,
+			int ordinal, byte quote, boolean quoted, boolean escaped)
+			throws IllegalArgumentException {
+		super(type, source, index, length);
+
+		this.ordinal = ordinal;
+		this.quote = quote;
+		this.quoted = quoted;
+		this.escaped = escaped;
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getName() + "@" + hashCode() + "[type="
+				+ (type == null ? "" : type) + ", index=" + index + ", length="
+				+ length + ", ordinal=" + ordinal + ", quoted=" + quoted + ", escaped=" + escaped
+				+ ", source=" + (source == null ? "" : source) + "]";
+	}
+
+	public byte[] getValue() {
+		// Fast path, nothing to unescape so just copy the raw field.
+		if (!escaped) {
+			byte[] value = new byte[length];
+
+			// Check if there is any data to copy.
+			if (length > 0)
+				System.arraycopy(source, index, value, 0, length);
+
+			return value;
+		}
+
+		int vLength = 0;
+		byte[] tmp = new byte[length];
+
+		// Collapse every doubled quote into a single quote.
+		for (int i = index, end = index + length; i < end; i++) {
+			byte b = source[i];
+			tmp[vLength++] = b;
+
+			if (b == quote)
+				i++;
+		}
+
+		byte[] value = new byte[vLength];
+		System.arraycopy(tmp, 0, value, 0, vLength);
+
+		return value;
+	}
+
+	/**
+	 * Used to determine if this field was the last one in its record.
+	 * 
+	 * @return <code>true</code> if this field was the last one in its record,
+	 *         otherwise <code>false</code>.
+	 */
+	public boolean isLastField() {
+		return (type == Type.LAST_FIELD);
+	}
+
+	/**
+	 * Used to get the index of this field within its record.
+	 * 
+	 * @return the index of this field within its record.
+	 */
+	public int getOrdinal() {
+		return ordinal;
+	}
+
+	/**
+	 * Used to determine if this field was enclosed in quotes.
+	 * 
+	 * @return <code>true</code> if this field was enclosed in quotes,
+	 *         otherwise <code>false</code>.
+	 */
+	public boolean isQuoted() {
+		return quoted;
+	}
+
+	/**
+	 * Used to determine if the raw content of this field contains escaped
+	 * (doubled) quotes that {@link #getValue()} will unescape.
+	 * 
+	 * @return <code>true</code> if the raw content of this field contains
+	 *         escaped quotes, otherwise <code>false</code>.
+	 */
+	public boolean isEscaped() {
+		return escaped;
+	}
+
+	protected void setValue(Type type, byte[] source, int index, int length,
+			int ordinal, byte quote, boolean quoted, boolean escaped)
+			throws IllegalArgumentException {
+		super.setValue(type, source, index, length);
+
+		this.ordinal = ordinal;
+		this.quote = quote;
+		this.quoted = quoted;
+		this.escaped = escaped;
+	}
+}
\ No newline at end of file
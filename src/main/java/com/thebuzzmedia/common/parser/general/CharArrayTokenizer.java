@@ -15,14 +15,10 @@
  */
 package com.thebuzzmedia.common.parser.general;
 
-import com.thebuzzmedia.common.parser.AbstractDelimitedTokenizer;
 import com.thebuzzmedia.common.parser.AbstractReusableToken;
 import com.thebuzzmedia.common.parser.IToken;
-import com.thebuzzmedia.common.parser.ParseException;
-import com.thebuzzmedia.common.util.ArrayUtils;
 
-public class CharArrayTokenizer extends
-		AbstractDelimitedTokenizer<char[], char[], Void, char[], char[]> {
+public class CharArrayTokenizer extends AbstractCharArrayTokenizer<Void> {
 	private ReusableCharArrayToken reusableToken = new ReusableCharArrayToken();
 
 	public CharArrayTokenizer() {
@@ -50,71 +46,15 @@ public class CharArrayTokenizer extends
 	 */
 
 	@Override
-	protected char[] createBuffer(int capacity) throws IllegalArgumentException {
-		if (capacity < 0)
-			throw new IllegalArgumentException("capacity [" + capacity
-					+ "] must be >= 0");
-
-		return new char[capacity];
-	}
-
-	@Override
-	protected IToken<Void, char[], char[]> parseTokenImpl(int index, int length)
-			throws ParseException {
-		// Token start/end indices
-		int tsIndex = index;
-		int teIndex = ArrayUtils.INVALID_INDEX;
-		IToken<Void, char[], char[]> token = null;
-
-		// Scan for start/end based on our delim mode.
-		switch (mode) {
-		case MATCH_ANY:
-			// Find first non-delim value.
-			tsIndex = ArrayUtils.indexAfterAnyNoCheck(delimiters, buffer,
-					tsIndex, length);
-
-			// Check if we found a start before trying to find end.
-			if (tsIndex != ArrayUtils.INVALID_INDEX) {
-				// Update remaining length
-				length -= (tsIndex - index);
-
-				// Now find first delim value after our start.
-				teIndex = ArrayUtils.indexOfAnyNoCheck(delimiters, buffer,
-						tsIndex, length);
-			}
-			break;
-
-		case MATCH_EXACT:
-			// Find first non-delim value after exact-matching delim.
-			tsIndex = ArrayUtils.indexAfterNoCheck(delimiters, buffer, tsIndex,
-					length);
-
-			// Check if we found a start before trying to find end.
-			if (tsIndex != ArrayUtils.INVALID_INDEX) {
-				// Update remaining length
-				length -= (tsIndex - index);
-
-				// Now find the first exact-match delim occurrence after.
-				teIndex = ArrayUtils.indexOfNoCheck(delimiters, buffer,
-						tsIndex, length);
-			}
-			break;
-		}
-
-		// Check to make sure we have valid indices marked or return null
-		if (tsIndex != ArrayUtils.INVALID_INDEX
-				&& teIndex != ArrayUtils.INVALID_INDEX) {
-			// Check if we are reusing a token or creating a new one.
-			if (reuseToken) {
-				reusableToken
-						.setValue(buffer, tsIndex, (teIndex - tsIndex));
-				token = reusableToken;
-			} else
-				token = new ReusableCharArrayToken(buffer, tsIndex,
-						(teIndex - tsIndex));
-		}
-
-		return token;
+	protected IToken<Void, char[], char[]> createToken(int tsIndex,
+			int teIndex, boolean delimited) {
+		// Check if we are reusing a token or creating a new one.
+		if (reuseToken) {
+			reusableToken.setValue(buffer, tsIndex, (teIndex - tsIndex));
+			return reusableToken;
+		} else
+			return new ReusableCharArrayToken(buffer, tsIndex,
+					(teIndex - tsIndex));
 	}
 
 	class ReusableCharArrayToken extends
@@ -0,0 +1,158 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.general;
+
+import com.thebuzzmedia.common.parser.IFieldPredicate;
+
+/**
+ * Factory for the common {@link IFieldPredicate}s used to filter records
+ * while they are tokenized.
+ * <p/>
+ * All of the predicates compare raw bytes; none of them decode or copy the
+ * field they are given. Quoted CSV fields are tested without their
+ * surrounding quotes, but escaped (doubled) quotes inside them are not
+ * unescaped first.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class FieldPredicates {
+	private FieldPredicates() {
+		// no instances
+	}
+
+	/**
+	 * Used to create a predicate accepting fields equal to
+	 * <code>value</code>.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>value</code> is <code>null</code>.
+	 */
+	public static IFieldPredicate equalTo(byte[] value)
+			throws IllegalArgumentException {
+		if (value == null)
+			throw new IllegalArgumentException("value cannot be null");
+
+		return new EqualTo(value.clone(), true);
+	}
+
+	/**
+	 * Used to create a predicate accepting fields beginning with
+	 * <code>prefix</code>.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>prefix</code> is <code>null</code>.
+	 */
+	public static IFieldPredicate startsWith(byte[] prefix)
+			throws IllegalArgumentException {
+		if (prefix == null)
+			throw new IllegalArgumentException("prefix cannot be null");
+
+		return new EqualTo(prefix.clone(), false);
+	}
+
+	/**
+	 * Used to create a predicate accepting fields holding a decimal integer
+	 * (an optional leading <code>+</code> or <code>-</code> followed by
+	 * digits) between <code>min</code> and <code>max</code>, inclusive.
+	 * Fields holding anything else, including values that do not fit in a
+	 * <code>long</code>, are rejected.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>min</code> is &gt; <code>max</code>.
+	 */
+	public static IFieldPredicate between(long min, long max)
+			throws IllegalArgumentException {
+		if (min > max)
+			throw new IllegalArgumentException("min [" + min
+					+ "] must be <= max [" + max + "]");
+
+		return new Between(min, max);
+	}
+
+	private static class EqualTo implements IFieldPredicate {
+		private byte[] value;
+		private boolean exact;
+
+		EqualTo(byte[] value, boolean exact) {
+			this.value = value;
+			this.exact = exact;
+		}
+
+		public boolean accept(byte[] buffer, int index, int length) {
+			byte[] value = this.value;
+
+			if (exact ? length != value.length : length < value.length)
+				return false;
+
+			for (int i = 0; i < value.length; i++) {
+				if (buffer[index + i] != value[i])
+					return false;
+			}
+
+			return true;
+		}
+	}
+
+	private static class Between implements IFieldPredicate {
+		private long min;
+		private long max;
+
+		Between(long min, long max) {
+			this.min = min;
+			this.max = max;
+		}
+
+		public boolean accept(byte[] buffer, int index, int length) {
+			int end = index + length;
+
+			if (index == end)
+				return false;
+
+			boolean negative = (buffer[index] == '-');
+
+			if (negative || buffer[index] == '+') {
+				if (++index == end)
+					return false;
+			}
+
+			/*
+			 * Accumulate negatively so Long.MIN_VALUE can be represented;
+			 * overflow is detected before every step.
+			 */
+			long limit = (negative ? Long.MIN_VALUE : -Long.MAX_VALUE);
+			long value = 0;
+
+			for (; index < end; index++) {
+				int digit = buffer[index] - '0';
+
+				if (digit < 0 || digit > 9 || value < limit / 10)
+					return false;
+
+				value *= 10;
+
+				if (value < limit + digit)
+					return false;
+
+				value -= digit;
+			}
+
+			if (!negative)
+				value = -value;
+
+			return (value >= min && value <= max);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,90 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.general;
+
+import com.thebuzzmedia.common.parser.AbstractReusableToken;
+import com.thebuzzmedia.common.parser.general.CSVToken.Type;
+
+/**
+ * Token representing a single field parsed from fixed-width content by
+ * {@link FixedWidthTokenizer}.
+ * <p/>
+ * The bounds of the token mark the content of the column within the
+ * tokenizer's buffer, without its padding when trimming is turned on. As with
+ * {@link CSVToken}, the type of the token is {@link Type#LAST_FIELD} when the
+ * field was the last column of its record, and {@link #getOrdinal()} gives
+ * the index of its column.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class FixedWidthToken extends AbstractReusableToken<Type, byte[], byte[]> {
+	protected int ordinal;
+
+	public FixedWidthToken() {
+		// default constructor
+	}
+
+	public FixedWidthToken(Type type, byte[] source, int index, int length,
+			int ordinal) throws IllegalArgumentException {
+		super(type, source, index, length);
+
+		this.ordinal = ordinal;
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getName() + "@" + hashCode() + "[type="
+				+ (type == null ? "" : type) + ", ordinal=" + ordinal
+				+ ", position=" + position + ", index=" + index + ", length="
+				+ length + ", source=" + (source == null ? "" : source) + "]";
+	}
+
+	public byte[] getValue() {
+		byte[] value = new byte[length];
+
+		// Check if there is any data to copy.
+		if (length > 0)
+			System.arraycopy(source, index, value, 0, length);
+
+		return value;
+	}
+
+	/**
+	 * Used to determine if this field was the last column in its record.
+	 * 
+	 * @return <code>true</code> if this field was the last column in its
+	 *         record, otherwise <code>false</code>.
+	 */
+	public boolean isLastField() {
+		return (type == Type.LAST_FIELD);
+	}
+
+	/**
+	 * Used to get the index of the column this field was parsed from.
+	 * 
+	 * @return the index of the column of this field.
+	 */
+	public int getOrdinal() {
+		return ordinal;
+	}
+
+	protected void setValue(Type type, byte[] source, int index, int length,
+			int ordinal) throws IllegalArgumentException {
+		super.setValue(type, source, index, length);
+
+		this.ordinal = ordinal;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,288 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.general;
+
+import com.thebuzzmedia.common.parser.AbstractTokenizer;
+import com.thebuzzmedia.common.parser.IToken;
+import com.thebuzzmedia.common.parser.ParseException;
+import com.thebuzzmedia.common.parser.ParseException.Type;
+import com.thebuzzmedia.common.util.ArrayUtils;
+
+/**
+ * Tokenizer used to parse fixed-width content (e.g. mainframe exports) into a
+ * series of {@link FixedWidthToken}s; one per column.
+ * <p/>
+ * The offset of every column within a record is computed once from the
+ * column layout, so the bounds of every field are found with arithmetic
+ * alone; the content of a field is never scanned unless trimming is turned
+ * on, in which case only its padding is. Records may be followed by a
+ * terminator (LF by default, or none for back-to-back records) which is
+ * verified, but not scanned for; the terminator of the last record in the
+ * input is optional.
+ * <p/>
+ * Records may straddle buffer refills; only the field being returned has to
+ * fit in the buffer.
+ * <p/>
+ * When error recovery is turned on, records with a missing terminator are
+ * skipped up to the next terminator.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class FixedWidthTokenizer extends
+		AbstractTokenizer<byte[], CSVToken.Type, byte[], byte[]> {
+	public static final byte[] DEFAULT_TERMINATOR = { '\n' };
+	public static final byte DEFAULT_PADDING = ' ';
+
+	/*
+	 * Offset of every column from the beginning of its record, followed by
+	 * the length of the record's data.
+	 */
+	private int[] offsets;
+	private byte[] terminator;
+
+	private boolean trim;
+	private byte padding = DEFAULT_PADDING;
+
+	private int column;
+	private int nextIndex;
+	private FixedWidthToken reusableToken = new FixedWidthToken();
+
+	public FixedWidthTokenizer(int... widths) throws IllegalArgumentException {
+		this(widths, DEFAULT_TERMINATOR, false, DEFAULT_BUFFER_CAPACITY);
+	}
+
+	/**
+	 * Creates a new tokenizer.
+	 * 
+	 * @param widths
+	 *            The width, in bytes, of every column of a record.
+	 * @param terminator
+	 *            The bytes following every record; may be empty, but not
+	 *            <code>null</code>.
+	 * @param reuseToken
+	 *            If the same token instance should be returned every time.
+	 * @param bufferCapacity
+	 *            The capacity of the buffer; it must be able to hold the
+	 *            widest column followed by the terminator.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>widths</code> is <code>null</code> or empty, if
+	 *             any width is &lt; <code>1</code>, if
+	 *             <code>terminator</code> is <code>null</code> or if
+	 *             <code>bufferCapacity</code> is too small.
+	 */
+	public FixedWidthTokenizer(int[] widths, byte[] terminator,
+			boolean reuseToken, int bufferCapacity)
+			throws IllegalArgumentException {
+		super(bufferCapacity);
+
+		if (widths == null || widths.length == 0)
+			throw new IllegalArgumentException(
+					"widths cannot be null or empty");
+		if (terminator == null)
+			throw new IllegalArgumentException("terminator cannot be null");
+
+		offsets = new int[widths.length + 1];
+
+		int maxWidth = 0;
+
+		for (int i = 0; i < widths.length; i++) {
+			if (widths[i] < 1)
+				throw new IllegalArgumentException("widths[" + i + "] ["
+						+ widths[i] + "] must be >= 1");
+			if (offsets[i] > Integer.MAX_VALUE - widths[i])
+				throw new IllegalArgumentException(
+						"The sum of all widths must be <= Integer.MAX_VALUE");
+
+			offsets[i + 1] = offsets[i] + widths[i];
+			maxWidth = Math.max(maxWidth, widths[i]);
+		}
+
+		if (bufferCapacity < maxWidth + terminator.length)
+			throw new IllegalArgumentException("bufferCapacity ["
+					+ bufferCapacity + "] must be >= "
+					+ (maxWidth + terminator.length)
+					+ " (the widest column followed by the terminator)");
+
+		this.terminator = terminator;
+		this.reuseToken = reuseToken;
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		column = 0;
+	}
+
+	/**
+	 * Used to get the number of columns in every record.
+	 * 
+	 * @return the number of columns in every record.
+	 */
+	public int getColumnCount() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * Used to get the length of every record, including its terminator.
+	 * 
+	 * @return the length of every record.
+	 */
+	public int getRecordLength() {
+		return offsets[offsets.length - 1] + terminator.length;
+	}
+
+	public boolean isTrimming() {
+		return trim;
+	}
+
+	public byte getPadding() {
+		return padding;
+	}
+
+	/**
+	 * Used to turn trimming of the padding on either side of every field on
+	 * or off.
+	 * 
+	 * @param trim
+	 *            <code>true</code> to return fields without their padding.
+	 * @param padding
+	 *            The byte columns are padded with (e.g. a space).
+	 */
+	public void setTrim(boolean trim, byte padding) {
+		this.trim = trim;
+		this.padding = padding;
+	}
+
+	@Override
+	protected byte[] createBuffer(int capacity) throws IllegalArgumentException {
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity [" + capacity
+					+ "] must be >= 0");
+
+		return new byte[capacity];
+	}
+
+	@Override
+	protected IToken<CSVToken.Type, byte[], byte[]> parseTokenImpl(int index,
+			int length) throws ParseException {
+		boolean endOfInput = isEndOfInput();
+		int[] offsets = this.offsets;
+		int c = column;
+		int end = index + length;
+
+		// Clean end of the input (or of the data we have so far).
+		if (c == 0 && index == end)
+			return null;
+
+		int teIndex = index + (offsets[c + 1] - offsets[c]);
+		boolean lastField = (c + 2 == offsets.length);
+
+		// The last field is only returned once its terminator is verified.
+		int next = (lastField ? teIndex + terminator.length : teIndex);
+
+		if (next > end) {
+			if (!endOfInput)
+				return null;
+
+			if (teIndex > end)
+				throw createParseException(Type.MALFORMED,
+						"Truncated record; column " + c + " is missing "
+								+ (teIndex - end) + " bytes.", index);
+
+			// The terminator of the last record in the input is optional.
+			if (teIndex != end)
+				throw createParseException(Type.MALFORMED,
+						"Truncated record terminator.", teIndex);
+
+			next = end;
+		} else if (lastField) {
+			for (int i = 0; i < terminator.length; i++) {
+				if (buffer[teIndex + i] != terminator[i])
+					throw createParseException(Type.MALFORMED,
+							"Record is not followed by its terminator.",
+							teIndex + i);
+			}
+		}
+
+		int tsIndex = index;
+
+		if (trim) {
+			byte pad = padding;
+
+			while (tsIndex < teIndex && buffer[tsIndex] == pad)
+				tsIndex++;
+
+			while (teIndex > tsIndex && buffer[teIndex - 1] == pad)
+				teIndex--;
+		}
+
+		nextIndex = next;
+
+		FixedWidthToken token = (reuseToken ? reusableToken
+				: new FixedWidthToken());
+		token.setValue((lastField ? CSVToken.Type.LAST_FIELD
+				: CSVToken.Type.FIELD), buffer, tsIndex, teIndex - tsIndex, c);
+
+		return token;
+	}
+
+	@Override
+	protected void advanceIndex(IToken<CSVToken.Type, byte[], byte[]> token) {
+		bIndex = nextIndex;
+		column = (column + 2 == offsets.length ? 0 : column + 1);
+	}
+
+	/**
+	 * Overridden to only allow checkpoints at the beginning of a record.
+	 */
+	@Override
+	protected boolean isCheckpointSafe() {
+		return (column == 0);
+	}
+
+	/**
+	 * Overridden to record the column of the next field; always the first at
+	 * a checkpoint, but not necessarily for a saved
+	 * {@link com.thebuzzmedia.common.parser.ParserState}.
+	 */
+	@Override
+	protected long[] getCheckpointState() {
+		return new long[] { column };
+	}
+
+	@Override
+	protected void restoreCheckpointState(long[] state) {
+		column = (state != null && state.length > 0 && state[0] >= 0
+				&& state[0] < offsets.length - 1 ? (int) state[0] : 0);
+	}
+
+	@Override
+	protected int indexOfRecoveryPoint(int index, int length) {
+		// Without a terminator there is no way to find the next record.
+		if (terminator.length == 0)
+			return ArrayUtils.INVALID_INDEX;
+
+		int tIndex = ArrayUtils.indexOfNoCheck(terminator, buffer, index,
+				length);
+
+		if (tIndex == ArrayUtils.INVALID_INDEX)
+			return tIndex;
+
+		column = 0;
+		return tIndex + terminator.length;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,102 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.general;
+
+import java.util.ArrayList;
+
+import com.thebuzzmedia.common.parser.AbstractContainerToken;
+import com.thebuzzmedia.common.parser.IToken;
+
+/**
+ * Token representing a single element (a record, a field within it, a
+ * sub-field within that and so on) parsed by {@link HierarchicalTokenizer}.
+ * <p/>
+ * The bounds of the token mark the raw content of the element within the
+ * tokenizer's buffer; in {@link HierarchicalTokenizer.Mode#NESTED} mode the
+ * elements it contains, one level deeper, are its child tokens. The type of
+ * the token is the level of the delimiter that ended it, or
+ * <code>null</code> if it was ended by the end of the input.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class HierarchicalToken extends
+		AbstractContainerToken<Integer, byte[], byte[]> {
+	protected int depth;
+
+	public HierarchicalToken() {
+		this.mode = BoundsMode.FIXED;
+	}
+
+	public HierarchicalToken(Integer type, byte[] source, int index,
+			int length, int depth) throws IllegalArgumentException {
+		super(type, source, index, length, BoundsMode.FIXED);
+
+		this.depth = depth;
+	}
+
+	public byte[] getValue() {
+		byte[] value = new byte[length];
+
+		// Check if there is any data to copy.
+		if (length > 0)
+			System.arraycopy(source, index, value, 0, length);
+
+		return value;
+	}
+
+	/**
+	 * Used to get the depth of this element in its record; the record itself
+	 * has a depth of <code>0</code>.
+	 * 
+	 * @return the depth of this element in its record.
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	protected void setValue(Integer type, byte[] source, int index,
+			int length, int depth, long position)
+			throws IllegalArgumentException {
+		if (source == null)
+			throw new IllegalArgumentException("source cannot be null");
+		if (index < 0 || length < 0)
+			throw new IllegalArgumentException("index [" + index
+					+ "] and length [" + length + "] must be >= 0");
+
+		this.type = type;
+		this.source = source;
+		this.index = index;
+		this.length = length;
+		this.depth = depth;
+		this.position = position;
+
+		// Drop the children of the last element this token was used for.
+		if (tokenList != null)
+			tokenList.clear();
+	}
+
+	/**
+	 * Used by the tokenizer to add a child whose bounds are known to be
+	 * within this element; unlike {@link #addToken}, an empty child at the
+	 * very end of this element is allowed.
+	 */
+	void addChild(HierarchicalToken token) {
+		if (tokenList == null)
+			tokenList = new ArrayList<IToken<Integer, byte[], byte[]>>(2);
+
+		tokenList.add(token);
+	}
+}
\ No newline at end of file
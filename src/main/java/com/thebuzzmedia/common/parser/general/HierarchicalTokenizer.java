@@ -0,0 +1,421 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.general;
+
+import com.thebuzzmedia.common.parser.AbstractTokenizer;
+import com.thebuzzmedia.common.parser.IToken;
+import com.thebuzzmedia.common.parser.ParseException;
+import com.thebuzzmedia.common.parser.ParseException.Type;
+import com.thebuzzmedia.common.util.ArrayUtils;
+
+/**
+ * Tokenizer used to parse content with several levels of nesting, each with
+ * its own delimiter, in a single pass (e.g. records separated by LF, fields
+ * by tab, sub-fields by ',' and key/value pairs by '=').
+ * <p/>
+ * The delimiters are given in order from the outermost level (level
+ * <code>0</code>, which ends records) inward; a delimiter ends the current
+ * element at its own level and at every level deeper than it. Every byte is
+ * looked up in a single table and inspected only once, even when a record
+ * straddles buffer refills, and no content is copied.
+ * <p/>
+ * Tokens are returned in one of two modes (see {@link Mode}):
+ * <ul>
+ * <li>{@link Mode#NESTED}: one {@link HierarchicalToken} per record, holding
+ * a child token per field, each holding a child token per sub-field and so
+ * on, down to the deepest level.</li>
+ * <li>{@link Mode#FLAT}: one {@link HierarchicalToken} per element of the
+ * deepest level, typed with the level of the delimiter that ended it; a
+ * token of type <code>1</code> ends the current field, <code>0</code> the
+ * current record and so on, which is enough to rebuild every level.</li>
+ * </ul>
+ * In both modes the type of a token is <code>null</code> when it was ended
+ * by the end of the input instead of a delimiter.
+ * <p/>
+ * In {@link Mode#NESTED} mode every record, and in {@link Mode#FLAT} mode
+ * every element, has to fit in the buffer. When error recovery is turned on,
+ * the rest of a record that doesn't is skipped.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class HierarchicalTokenizer extends
+		AbstractTokenizer<byte[], Integer, byte[], byte[]> {
+	public enum Mode {
+		/**
+		 * A tree of tokens is returned for every record.
+		 */
+		NESTED,
+		/**
+		 * A token is returned for every element of the deepest level, typed
+		 * with the level of the delimiter that ended it.
+		 */
+		FLAT;
+	}
+
+	private static final int NO_DELIMITER = -1;
+
+	private byte[] delimiters;
+	private Mode mode;
+
+	/**
+	 * The level of every byte plus one; <code>0</code> for content.
+	 */
+	private byte[] levels = new byte[256];
+
+	/*
+	 * Progress through the current record (NESTED) or element (FLAT), all
+	 * relative to bIndex so it survives compaction of the buffer: where the
+	 * scan continues from, where the current element of every level begins
+	 * and the elements closed so far (depth, start, end and delimiter level,
+	 * in the order they were closed).
+	 */
+	private int scanOffset;
+	private int[] starts;
+	private int[] spans = new int[64];
+	private int spanCount;
+
+	/*
+	 * Level of the delimiter that ended the last token; a deeper one means
+	 * the current record isn't over even if the input is.
+	 */
+	private int lastLevel;
+	private int nextIndex;
+
+	private HierarchicalToken[] stack = new HierarchicalToken[16];
+	private HierarchicalToken[] pool = new HierarchicalToken[16];
+	private int poolIndex;
+
+	public HierarchicalTokenizer(byte... delimiters)
+			throws IllegalArgumentException {
+		this(delimiters, Mode.NESTED, false, DEFAULT_BUFFER_CAPACITY);
+	}
+
+	/**
+	 * Creates a new tokenizer.
+	 * 
+	 * @param delimiters
+	 *            The delimiter of every level, from the outermost (records)
+	 *            inward.
+	 * @param mode
+	 *            How tokens are returned.
+	 * @param reuseToken
+	 *            If the same token instances should be returned every time.
+	 * @param bufferCapacity
+	 *            The capacity of the buffer.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>delimiters</code> is <code>null</code> or empty,
+	 *             if any delimiter is repeated or if <code>mode</code> is
+	 *             <code>null</code>.
+	 */
+	public HierarchicalTokenizer(byte[] delimiters, Mode mode,
+			boolean reuseToken, int bufferCapacity)
+			throws IllegalArgumentException {
+		super(bufferCapacity);
+
+		if (delimiters == null || delimiters.length == 0)
+			throw new IllegalArgumentException(
+					"delimiters cannot be null or empty");
+		if (delimiters.length > Byte.MAX_VALUE)
+			throw new IllegalArgumentException("delimiters.length ["
+					+ delimiters.length + "] must be <= " + Byte.MAX_VALUE);
+		if (mode == null)
+			throw new IllegalArgumentException("mode cannot be null");
+
+		for (int i = 0; i < delimiters.length; i++) {
+			int d = delimiters[i] & 0xFF;
+
+			if (levels[d] != 0)
+				throw new IllegalArgumentException("delimiters[" + i + "] ["
+						+ delimiters[i] + "] must not be repeated");
+
+			levels[d] = (byte) (i + 1);
+		}
+
+		this.delimiters = delimiters.clone();
+		this.mode = mode;
+		this.reuseToken = reuseToken;
+
+		starts = new int[delimiters.length];
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+
+		lastLevel = 0;
+		clearProgress();
+	}
+
+	public byte[] getDelimiters() {
+		return delimiters.clone();
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	@Override
+	protected byte[] createBuffer(int capacity) throws IllegalArgumentException {
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity [" + capacity
+					+ "] must be >= 0");
+
+		return new byte[capacity];
+	}
+
+	@Override
+	protected IToken<Integer, byte[], byte[]> parseTokenImpl(int index,
+			int length) throws ParseException {
+		if (mode == Mode.FLAT)
+			return parseElement(index, index + length, isEndOfInput());
+		else
+			return parseRecord(index, index + length, isEndOfInput());
+	}
+
+	@Override
+	protected void advanceIndex(IToken<Integer, byte[], byte[]> token) {
+		Integer type = token.getType();
+
+		bIndex = nextIndex;
+		lastLevel = (type == null ? 0 : type.intValue());
+		clearProgress();
+	}
+
+	/**
+	 * Overridden to only allow checkpoints at the beginning of a record.
+	 */
+	@Override
+	protected boolean isCheckpointSafe() {
+		return (lastLevel == 0);
+	}
+
+	/**
+	 * Overridden to record the level of the delimiter that ended the last
+	 * token; always <code>0</code> at a checkpoint, but not necessarily for a
+	 * saved {@link com.thebuzzmedia.common.parser.ParserState}. The progress
+	 * through a partially scanned record is not recorded, it is scanned again
+	 * from its beginning instead.
+	 */
+	@Override
+	protected long[] getCheckpointState() {
+		return new long[] { lastLevel };
+	}
+
+	@Override
+	protected void restoreCheckpointState(long[] state) {
+		lastLevel = (state != null && state.length > 0 && state[0] >= 0
+				&& state[0] < delimiters.length ? (int) state[0] : 0);
+		clearProgress();
+	}
+
+	@Override
+	protected int indexOfRecoveryPoint(int index, int length) {
+		byte delimiter = delimiters[0];
+
+		clearProgress();
+
+		for (int i = index, end = index + length; i < end; i++) {
+			if (buffer[i] == delimiter) {
+				lastLevel = 0;
+				return i + 1;
+			}
+		}
+
+		return ArrayUtils.INVALID_INDEX;
+	}
+
+	private IToken<Integer, byte[], byte[]> parseElement(int index, int end,
+			boolean endOfInput) throws ParseException {
+		byte[] buffer = this.buffer;
+		byte[] levels = this.levels;
+		int i = index + scanOffset;
+
+		while (i < end && levels[buffer[i] & 0xFF] == 0)
+			i++;
+
+		if (i < end) {
+			nextIndex = i + 1;
+			return createToken(Integer.valueOf(levels[buffer[i] & 0xFF] - 1),
+					index, i - index, delimiters.length - 1);
+		}
+
+		if (!endOfInput) {
+			scanOffset = i - index;
+			return needData(index, end, "Element");
+		}
+
+		// A record ended by a delimiter has no empty element after it.
+		if (index == end && lastLevel == 0)
+			return null;
+
+		nextIndex = end;
+		return createToken(null, index, end - index, delimiters.length - 1);
+	}
+
+	private IToken<Integer, byte[], byte[]> parseRecord(int index, int end,
+			boolean endOfInput) throws ParseException {
+		byte[] buffer = this.buffer;
+		byte[] levels = this.levels;
+		int deepest = delimiters.length - 1;
+		int i = index + scanOffset;
+
+		while (i < end) {
+			int level = levels[buffer[i] & 0xFF] - 1;
+
+			if (level == NO_DELIMITER) {
+				i++;
+				continue;
+			}
+
+			// Close the current element of this level and every deeper one.
+			int offset = i - index;
+
+			for (int depth = deepest; depth >= level; depth--) {
+				closeSpan(depth, offset, level);
+				starts[depth] = offset + 1;
+			}
+
+			i++;
+
+			if (level == 0) {
+				nextIndex = i;
+				return buildRecord(index);
+			}
+		}
+
+		if (!endOfInput) {
+			scanOffset = i - index;
+			return needData(index, end, "Record");
+		}
+
+		if (index == end && spanCount == 0)
+			return null;
+
+		for (int depth = deepest; depth >= 0; depth--)
+			closeSpan(depth, end - index, NO_DELIMITER);
+
+		nextIndex = end;
+		return buildRecord(index);
+	}
+
+	private IToken<Integer, byte[], byte[]> needData(int index, int end,
+			String what) throws ParseException {
+		// Nothing can be returned if the buffer can't make room for more.
+		if (index == 0 && end == buffer.length) {
+			clearProgress();
+
+			throw createParseException(Type.MALFORMED, what
+					+ " exceeds the buffer capacity of " + buffer.length
+					+ " bytes.", index);
+		}
+
+		return null;
+	}
+
+	private void closeSpan(int depth, int offset, int level) {
+		if (spanCount + 4 > spans.length) {
+			int[] grown = new int[spans.length * 2];
+			System.arraycopy(spans, 0, grown, 0, spanCount);
+			spans = grown;
+		}
+
+		spans[spanCount++] = depth;
+		spans[spanCount++] = starts[depth];
+		spans[spanCount++] = offset;
+		spans[spanCount++] = level;
+	}
+
+	/**
+	 * Used to build the tree of tokens for the record beginning at
+	 * <code>index</code> from its elements; they were closed children first,
+	 * so the children of every element are the deeper tokens on top of the
+	 * stack when it is reached.
+	 */
+	private HierarchicalToken buildRecord(int index) {
+		int top = 0;
+
+		poolIndex = 0;
+
+		for (int s = 0; s < spanCount; s += 4) {
+			int depth = spans[s];
+			int start = spans[s + 1];
+			int level = spans[s + 3];
+			HierarchicalToken token = createToken(
+					(level == NO_DELIMITER ? null : Integer.valueOf(level)),
+					index + start, spans[s + 2] - start, depth);
+
+			int first = top;
+
+			while (first > 0 && stack[first - 1].depth > depth)
+				first--;
+
+			for (int c = first; c < top; c++) {
+				token.addChild(stack[c]);
+				stack[c] = null;
+			}
+
+			if (first == stack.length) {
+				HierarchicalToken[] grown = new HierarchicalToken[stack.length * 2];
+				System.arraycopy(stack, 0, grown, 0, first);
+				stack = grown;
+			}
+
+			stack[first] = token;
+			top = first + 1;
+		}
+
+		HierarchicalToken record = stack[0];
+		stack[0] = null;
+
+		return record;
+	}
+
+	private HierarchicalToken createToken(Integer type, int tIndex,
+			int tLength, int depth) {
+		HierarchicalToken token;
+
+		if (!reuseToken)
+			token = new HierarchicalToken();
+		else {
+			// Every token of the record needs its own pooled instance.
+			if (poolIndex == pool.length) {
+				HierarchicalToken[] grown = new HierarchicalToken[pool.length * 2];
+				System.arraycopy(pool, 0, grown, 0, pool.length);
+				pool = grown;
+			}
+
+			if (pool[poolIndex] == null)
+				pool[poolIndex] = new HierarchicalToken();
+
+			token = pool[poolIndex++];
+		}
+
+		// Children aren't returned by the parser, so stamp them here.
+		token.setValue(type, buffer, tIndex, tLength, depth, bPosition
+				+ tIndex);
+		return token;
+	}
+
+	private void clearProgress() {
+		scanOffset = 0;
+		spanCount = 0;
+		poolIndex = 0;
+
+		for (int i = 0; i < starts.length; i++)
+			starts[i] = 0;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,129 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.general;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Perfect hash table used by {@link KeyValueTokenizer} to map the bytes of a
+ * key straight to its ID.
+ * <p/>
+ * A seed is searched for (growing the table when none is found) under which
+ * every known key hashes to its own slot, so a lookup costs one hash of the
+ * key, one probe and one comparison to reject unknown keys.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+class KeyTable {
+	static final int UNKNOWN_KEY = -1;
+
+	private static final int SEEDS_PER_SIZE = 1024;
+
+	private int seed;
+	private int mask;
+	private int[] ids;
+	private byte[][] keys;
+
+	KeyTable(String... keys) throws IllegalArgumentException {
+		byte[][] encoded = new byte[keys.length][];
+
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == null)
+				throw new IllegalArgumentException("keys[" + i
+						+ "] cannot be null");
+
+			try {
+				encoded[i] = keys[i].getBytes("UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				// Every JVM is required to support UTF-8.
+				throw new RuntimeException(e);
+			}
+
+			for (int j = 0; j < i; j++) {
+				if (keys[j].equals(keys[i]))
+					throw new IllegalArgumentException("keys[" + i + "] ["
+							+ keys[i] + "] must not be repeated");
+			}
+		}
+
+		int size = 2;
+
+		while (size < keys.length * 2)
+			size <<= 1;
+
+		for (;; size <<= 1) {
+			for (int seed = 0; seed < SEEDS_PER_SIZE; seed++) {
+				if (build(encoded, seed, size))
+					return;
+			}
+		}
+	}
+
+	int lookup(byte[] buffer, int index, int length) {
+		int id = ids[hash(seed, buffer, index, length) & mask];
+
+		if (id == UNKNOWN_KEY)
+			return UNKNOWN_KEY;
+
+		byte[] key = keys[id];
+
+		if (key.length != length)
+			return UNKNOWN_KEY;
+
+		for (int i = 0; i < length; i++) {
+			if (key[i] != buffer[index + i])
+				return UNKNOWN_KEY;
+		}
+
+		return id;
+	}
+
+	private boolean build(byte[][] encoded, int seed, int size) {
+		int[] ids = new int[size];
+
+		for (int i = 0; i < size; i++)
+			ids[i] = UNKNOWN_KEY;
+
+		for (int i = 0; i < encoded.length; i++) {
+			int slot = hash(seed, encoded[i], 0, encoded[i].length)
+					& (size - 1);
+
+			if (ids[slot] != UNKNOWN_KEY)
+				return false;
+
+			ids[slot] = i;
+		}
+
+		this.seed = seed;
+		this.mask = size - 1;
+		this.ids = ids;
+		this.keys = encoded;
+
+		return true;
+	}
+
+	/**
+	 * FNV-1a, starting from a basis derived from the seed.
+	 */
+	private static int hash(int seed, byte[] buffer, int index, int length) {
+		int h = 0x811C9DC5 ^ (seed * 0x9E3779B9);
+
+		for (int i = index, end = index + length; i < end; i++)
+			h = (h ^ (buffer[i] & 0xFF)) * 0x01000193;
+
+		return h ^ (h >>> 16);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,195 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.general;
+
+import com.thebuzzmedia.common.parser.AbstractReusableToken;
+
+/**
+ * Token representing a single key/value pair parsed by
+ * {@link KeyValueTokenizer}.
+ * <p/>
+ * The bounds of the token mark the raw value of the pair within the
+ * tokenizer's buffer, excluding any enclosing quotes; the bounds of the key
+ * are available from {@link #getKeyIndex()} and {@link #getKeyLength()} and,
+ * when the key is one of the tokenizer's known keys, {@link #getKeyId()}
+ * identifies it without looking at its bytes. Escape sequences (in quoted
+ * values) and percent-encoding are only decoded when {@link #getValue()} is
+ * called, and only if the value actually contains any.
+ * <p/>
+ * The type of the token is {@link CSVToken.Type#LAST_FIELD} when the pair was
+ * the last one in its record.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class KeyValueToken extends
+		AbstractReusableToken<CSVToken.Type, byte[], byte[]> {
+	protected int keyId = KeyValueTokenizer.UNKNOWN_KEY;
+	protected int keyIndex;
+	protected int keyLength;
+	protected boolean quoted;
+	protected boolean escaped;
+	protected boolean encoded;
+
+	public KeyValueToken() {
+		// default constructor
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getName() + "@" + hashCode() + "[type="
+				+ (type == null ? "" : type) + ", keyId=" + keyId
+				+ ", position=" + position + ", index=" + index + ", length="
+				+ length + ", keyIndex=" + keyIndex + ", keyLength="
+				+ keyLength + ", source=" + (source == null ? "" : source)
+				+ "]";
+	}
+
+	/**
+	 * Used to get the value of this pair; backslash escapes in a quoted value
+	 * and, if the tokenizer decodes them, percent-encoded bytes and
+	 * <code>+</code> (as a space) are decoded. Malformed percent-encoding is
+	 * copied as-is.
+	 */
+	public byte[] getValue() {
+		// Fast path, nothing to decode so just copy the raw value.
+		if (!escaped && !encoded) {
+			byte[] value = new byte[length];
+
+			// Check if there is any data to copy.
+			if (length > 0)
+				System.arraycopy(source, index, value, 0, length);
+
+			return value;
+		}
+
+		int vLength = 0;
+		byte[] tmp = new byte[length];
+
+		for (int i = index, end = index + length; i < end; i++) {
+			byte b = source[i];
+
+			if (escaped && b == '\\' && i + 1 < end)
+				b = source[++i];
+			else if (encoded && b == '+')
+				b = ' ';
+			else if (encoded && b == '%' && i + 2 < end) {
+				int hi = hexValue(source[i + 1]);
+				int lo = hexValue(source[i + 2]);
+
+				if (hi >= 0 && lo >= 0) {
+					b = (byte) ((hi << 4) | lo);
+					i += 2;
+				}
+			}
+
+			tmp[vLength++] = b;
+		}
+
+		byte[] value = new byte[vLength];
+		System.arraycopy(tmp, 0, value, 0, vLength);
+
+		return value;
+	}
+
+	/**
+	 * Used to get a copy of the raw bytes of the key of this pair.
+	 * 
+	 * @return a copy of the raw bytes of the key of this pair.
+	 */
+	public byte[] getKey() {
+		byte[] key = new byte[keyLength];
+
+		// Check if there is any data to copy.
+		if (keyLength > 0)
+			System.arraycopy(source, keyIndex, key, 0, keyLength);
+
+		return key;
+	}
+
+	/**
+	 * Used to get the ID of the key of this pair, its index within the known
+	 * keys of the tokenizer (see {@link KeyValueTokenizer#setKeys(String...)}).
+	 * 
+	 * @return the ID of the key of this pair or
+	 *         {@link KeyValueTokenizer#UNKNOWN_KEY} if it is not a known key.
+	 */
+	public int getKeyId() {
+		return keyId;
+	}
+
+	/**
+	 * Used to get the index of the key of this pair within the source.
+	 * 
+	 * @return the index of the key of this pair.
+	 */
+	public int getKeyIndex() {
+		return keyIndex;
+	}
+
+	/**
+	 * Used to get the length of the key of this pair within the source.
+	 * 
+	 * @return the length of the key of this pair.
+	 */
+	public int getKeyLength() {
+		return keyLength;
+	}
+
+	/**
+	 * Used to determine if this pair was the last one in its record.
+	 * 
+	 * @return <code>true</code> if this pair was the last one in its record,
+	 *         otherwise <code>false</code>.
+	 */
+	public boolean isLastPair() {
+		return (type == CSVToken.Type.LAST_FIELD);
+	}
+
+	/**
+	 * Used to determine if the value of this pair was enclosed in quotes.
+	 * 
+	 * @return <code>true</code> if the value of this pair was enclosed in
+	 *         quotes, otherwise <code>false</code>.
+	 */
+	public boolean isQuoted() {
+		return quoted;
+	}
+
+	protected void setValue(CSVToken.Type type, byte[] source, int index,
+			int length, int keyId, int keyIndex, int keyLength,
+			boolean quoted, boolean escaped, boolean encoded)
+			throws IllegalArgumentException {
+		super.setValue(type, source, index, length);
+
+		this.keyId = keyId;
+		this.keyIndex = keyIndex;
+		this.keyLength = keyLength;
+		this.quoted = quoted;
+		this.escaped = escaped;
+		this.encoded = encoded;
+	}
+
+	private static int hexValue(byte b) {
+		if (b >= '0' && b <= '9')
+			return b - '0';
+		else if (b >= 'a' && b <= 'f')
+			return b - 'a' + 10;
+		else if (b >= 'A' && b <= 'F')
+			return b - 'A' + 10;
+
+		return -1;
+	}
+}
\ No newline at end of file
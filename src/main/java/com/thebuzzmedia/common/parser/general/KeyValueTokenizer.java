@@ -0,0 +1,536 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.general;
+
+import com.thebuzzmedia.common.parser.AbstractTokenizer;
+import com.thebuzzmedia.common.parser.IToken;
+import com.thebuzzmedia.common.parser.ParseException;
+import com.thebuzzmedia.common.parser.ParseException.Type;
+import com.thebuzzmedia.common.util.ArrayUtils;
+
+/**
+ * Tokenizer used to parse records of key/value pairs, such as
+ * <code>k1=v1 k2="v 2" k3=v3</code> log lines or
+ * <code>a=1&amp;b=%20x</code> query strings, into a series of
+ * {@link KeyValueToken}s; one per pair.
+ * <p/>
+ * Pairs are separated by one or more pair separators (a space by default)
+ * and records by the record delimiter (LF by default); a CR is treated like
+ * a pair separator so CRLF line endings are handled. A pair without a
+ * key/value separator is a key with an empty value (e.g. a flag).
+ * <p/>
+ * Values can be quoted (with backslash escapes) and percent-encoded; neither
+ * is decoded until {@link KeyValueToken#getValue()} is called.
+ * <p/>
+ * When the keys a caller is interested in are known up front (see
+ * {@link #setKeys(String...)}), they are compiled into a perfect hash table
+ * and every token carries the ID of its key, so callers can dispatch on an
+ * <code>int</code> instead of building a <code>String</code> or map per
+ * record; pairs with other keys can optionally be skipped without creating
+ * tokens for them at all (see {@link #setSkipUnknownKeys(boolean)}).
+ * <p/>
+ * Every pair has to fit in the buffer; when unknown keys are skipped, so do
+ * the skipped pairs following it in its record and the key of the next pair
+ * that is returned. When error recovery is turned on, malformed records
+ * are skipped up to the next record delimiter.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class KeyValueTokenizer extends
+		AbstractTokenizer<byte[], CSVToken.Type, byte[], byte[]> {
+	/**
+	 * Key ID of pairs whose key is not one of the known keys.
+	 */
+	public static final int UNKNOWN_KEY = KeyTable.UNKNOWN_KEY;
+
+	public static final byte DEFAULT_PAIR_SEPARATOR = ' ';
+	public static final byte DEFAULT_KEY_VALUE_SEPARATOR = '=';
+	public static final byte DEFAULT_RECORD_DELIMITER = '\n';
+	public static final byte DEFAULT_QUOTE = '"';
+
+	private static final int FOUND = 0;
+	private static final int NEED_DATA = 1;
+	private static final int MALFORMED = 2;
+
+	/*
+	 * Classes of bytes.
+	 */
+	private static final byte DATA = 0;
+	private static final byte PAIR_SEPARATOR = 1;
+	private static final byte RECORD_DELIMITER = 2;
+	private static final byte KEY_VALUE_SEPARATOR = 3;
+
+	private final byte pairSeparator;
+	private final byte keyValueSeparator;
+	private final byte recordDelimiter;
+	private final byte[] table = new byte[256];
+
+	private boolean quoting = true;
+	private byte quote = DEFAULT_QUOTE;
+	private boolean percentDecoding;
+
+	private String[] keys = new String[0];
+	private KeyTable keyTable = new KeyTable();
+	private boolean skipUnknownKeys;
+
+	/*
+	 * Results of the last scanPair(...); only valid after it returns FOUND.
+	 */
+	private int kIndex;
+	private int kLength;
+	private int vIndex;
+	private int vLength;
+	private int pairEnd;
+	private boolean quoted;
+	private boolean escaped;
+	private boolean encoded;
+
+	private boolean inRecord;
+	private int nextIndex;
+	private KeyValueToken reusableToken = new KeyValueToken();
+
+	public KeyValueTokenizer() {
+		this(false);
+	}
+
+	public KeyValueTokenizer(boolean reuseToken) {
+		this(reuseToken, DEFAULT_BUFFER_CAPACITY);
+	}
+
+	public KeyValueTokenizer(boolean reuseToken, int bufferCapacity)
+			throws IllegalArgumentException {
+		this(DEFAULT_PAIR_SEPARATOR, DEFAULT_KEY_VALUE_SEPARATOR,
+				DEFAULT_RECORD_DELIMITER, reuseToken, bufferCapacity);
+	}
+
+	/**
+	 * Creates a new tokenizer.
+	 * 
+	 * @param pairSeparator
+	 *            The byte separating pairs (e.g. a space or <code>&amp;</code>
+	 *            ).
+	 * @param keyValueSeparator
+	 *            The byte separating a key from its value.
+	 * @param recordDelimiter
+	 *            The byte separating records.
+	 * @param reuseToken
+	 *            If the same token instance should be returned every time.
+	 * @param bufferCapacity
+	 *            The capacity of the buffer.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if any two of the separators and the delimiter are the same
+	 *             or if any of them is CR.
+	 */
+	public KeyValueTokenizer(byte pairSeparator, byte keyValueSeparator,
+			byte recordDelimiter, boolean reuseToken, int bufferCapacity)
+			throws IllegalArgumentException {
+		super(bufferCapacity);
+
+		if (pairSeparator == keyValueSeparator
+				|| pairSeparator == recordDelimiter
+				|| keyValueSeparator == recordDelimiter)
+			throw new IllegalArgumentException("pairSeparator ["
+					+ pairSeparator + "], keyValueSeparator ["
+					+ keyValueSeparator + "] and recordDelimiter ["
+					+ recordDelimiter + "] must all be different");
+		if (pairSeparator == '\r' || keyValueSeparator == '\r'
+				|| recordDelimiter == '\r')
+			throw new IllegalArgumentException(
+					"No separator or delimiter can be the CR character");
+
+		this.pairSeparator = pairSeparator;
+		this.keyValueSeparator = keyValueSeparator;
+		this.recordDelimiter = recordDelimiter;
+		this.reuseToken = reuseToken;
+
+		table[pairSeparator & 0xFF] = PAIR_SEPARATOR;
+		table['\r'] = PAIR_SEPARATOR;
+		table[recordDelimiter & 0xFF] = RECORD_DELIMITER;
+		table[keyValueSeparator & 0xFF] = KEY_VALUE_SEPARATOR;
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		inRecord = false;
+	}
+
+	public byte getPairSeparator() {
+		return pairSeparator;
+	}
+
+	public byte getKeyValueSeparator() {
+		return keyValueSeparator;
+	}
+
+	public byte getRecordDelimiter() {
+		return recordDelimiter;
+	}
+
+	public boolean isQuoting() {
+		return quoting;
+	}
+
+	public byte getQuote() {
+		return quote;
+	}
+
+	/**
+	 * Used to turn quoted values on or off; a value beginning with the quote
+	 * runs to the next quote that is not escaped with a backslash, and may
+	 * contain separators and delimiters.
+	 * 
+	 * @param quoting
+	 *            <code>true</code> to recognize quoted values.
+	 * @param quote
+	 *            The quote character.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>quote</code> is one of the separators, the record
+	 *             delimiter or a backslash.
+	 */
+	public void setQuoting(boolean quoting, byte quote)
+			throws IllegalArgumentException {
+		if (table[quote & 0xFF] != DATA || quote == '\\')
+			throw new IllegalArgumentException("quote [" + quote
+					+ "] must not be a separator, the record delimiter or a "
+					+ "backslash");
+
+		this.quoting = quoting;
+		this.quote = quote;
+	}
+
+	public boolean isPercentDecoding() {
+		return percentDecoding;
+	}
+
+	/**
+	 * Used to turn decoding of percent-encoded bytes (and <code>+</code> as
+	 * a space) in values on or off, as used by URL query strings. Keys are
+	 * always returned and matched as-is.
+	 * 
+	 * @param percentDecoding
+	 *            <code>true</code> to decode percent-encoded values.
+	 */
+	public void setPercentDecoding(boolean percentDecoding) {
+		this.percentDecoding = percentDecoding;
+	}
+
+	public String[] getKeys() {
+		return keys.clone();
+	}
+
+	/**
+	 * Used to set the keys that are identified by ID in the tokens returned
+	 * (see {@link KeyValueToken#getKeyId()}); the ID of a key is its index
+	 * in <code>keys</code>.
+	 * <p/>
+	 * Keys are matched against the raw bytes of a pair's key, encoded as
+	 * UTF-8, with a single probe of a perfect hash table built here.
+	 * 
+	 * @param keys
+	 *            The known keys, or none to clear them.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if any key is <code>null</code> or repeated.
+	 */
+	public void setKeys(String... keys) throws IllegalArgumentException {
+		if (keys == null)
+			keys = new String[0];
+
+		// Build first so a bad key leaves the current keys in place.
+		keyTable = new KeyTable(keys);
+		this.keys = keys.clone();
+	}
+
+	public boolean isSkippingUnknownKeys() {
+		return skipUnknownKeys;
+	}
+
+	/**
+	 * Used to skip pairs whose key is not one of the known keys without
+	 * creating tokens for them. A record with no known keys produces no
+	 * tokens at all.
+	 * 
+	 * @param skipUnknownKeys
+	 *            <code>true</code> to skip pairs with unknown keys.
+	 */
+	public void setSkipUnknownKeys(boolean skipUnknownKeys) {
+		this.skipUnknownKeys = skipUnknownKeys;
+	}
+
+	@Override
+	protected byte[] createBuffer(int capacity) throws IllegalArgumentException {
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity [" + capacity
+					+ "] must be >= 0");
+
+		return new byte[capacity];
+	}
+
+	@Override
+	protected IToken<CSVToken.Type, byte[], byte[]> parseTokenImpl(int index,
+			int length) throws ParseException {
+		boolean endOfInput = isEndOfInput();
+		int end = index + length;
+		int i = index;
+		int pairIndex;
+		int keyId;
+
+		// Find the next pair to return, skipping empty records and unknowns.
+		while (true) {
+			i = indexAfterSeparators(i, end);
+
+			if (i == end) {
+				bIndex = i;
+				return null;
+			}
+
+			if (buffer[i] == recordDelimiter) {
+				inRecord = false;
+				bIndex = ++i;
+				continue;
+			}
+
+			int status = scanPair(i, end, endOfInput);
+
+			pairIndex = i;
+
+			if (status == NEED_DATA)
+				return needData(pairIndex, end);
+			else if (status == MALFORMED)
+				throw createParseException(Type.MALFORMED,
+						"Unterminated or malformed quoted value.", i);
+
+			keyId = keyTable.lookup(buffer, kIndex, kLength);
+
+			if (keyId != UNKNOWN_KEY || !skipUnknownKeys)
+				break;
+
+			inRecord = true;
+			bIndex = i = pairEnd;
+		}
+
+		int tsIndex = vIndex;
+		int tLength = vLength;
+		int tkIndex = kIndex;
+		int tkLength = kLength;
+		boolean tQuoted = quoted;
+		boolean tEscaped = escaped;
+		boolean tEncoded = encoded;
+		boolean last = false;
+
+		// Find out if the record ends before the next pair worth returning.
+		for (int j = pairEnd;;) {
+			j = indexAfterSeparators(j, end);
+
+			if (j == end) {
+				if (!endOfInput)
+					return needData(pairIndex, end);
+
+				last = true;
+				nextIndex = end;
+				break;
+			}
+
+			if (buffer[j] == recordDelimiter) {
+				last = true;
+				nextIndex = j + 1;
+				break;
+			}
+
+			nextIndex = j;
+
+			if (!skipUnknownKeys)
+				break;
+
+			// Only the key is needed to tell if the next pair is returned.
+			int kEnd = indexOfKeyEnd(j, end);
+
+			if (kEnd == end && !endOfInput)
+				return needData(pairIndex, end);
+
+			if (keyTable.lookup(buffer, j, kEnd - j) != UNKNOWN_KEY)
+				break;
+
+			int status = scanPair(j, end, endOfInput);
+
+			if (status == NEED_DATA)
+				return needData(pairIndex, end);
+
+			// Leave failures to be reported when the pair is reached.
+			if (status == MALFORMED)
+				break;
+
+			j = pairEnd;
+		}
+
+		KeyValueToken token = (reuseToken ? reusableToken
+				: new KeyValueToken());
+		token.setValue((last ? CSVToken.Type.LAST_FIELD : CSVToken.Type.FIELD),
+				buffer, tsIndex, tLength, keyId, tkIndex, tkLength, tQuoted,
+				tEscaped, tEncoded);
+
+		return token;
+	}
+
+	@Override
+	protected void advanceIndex(IToken<CSVToken.Type, byte[], byte[]> token) {
+		bIndex = nextIndex;
+		inRecord = (token.getType() == CSVToken.Type.FIELD);
+	}
+
+	/**
+	 * Overridden to only allow checkpoints at the beginning of a record.
+	 */
+	@Override
+	protected boolean isCheckpointSafe() {
+		return !inRecord;
+	}
+
+	/**
+	 * Overridden to record if the next pair continues a record; never at a
+	 * checkpoint, but possibly for a saved
+	 * {@link com.thebuzzmedia.common.parser.ParserState}.
+	 */
+	@Override
+	protected long[] getCheckpointState() {
+		return new long[] { (inRecord ? 1 : 0) };
+	}
+
+	@Override
+	protected void restoreCheckpointState(long[] state) {
+		inRecord = (state != null && state.length > 0 && state[0] == 1);
+	}
+
+	@Override
+	protected int indexOfRecoveryPoint(int index, int length) {
+		for (int i = index, end = index + length; i < end; i++) {
+			if (buffer[i] == recordDelimiter) {
+				inRecord = false;
+				return i + 1;
+			}
+		}
+
+		return ArrayUtils.INVALID_INDEX;
+	}
+
+	/**
+	 * Used to mark the bounds of the key and value of the pair beginning at
+	 * <code>index</code>.
+	 * 
+	 * @return {@link #FOUND} if a complete pair was marked, {@link #NEED_DATA}
+	 *         if more data is needed to find the end of the pair or
+	 *         {@link #MALFORMED} if a quoted value is unterminated or
+	 *         followed by anything but a separator or delimiter.
+	 */
+	private int scanPair(int index, int end, boolean endOfInput) {
+		byte[] buffer = this.buffer;
+		byte[] table = this.table;
+		int i = indexOfKeyEnd(index, end);
+
+		if (i == end && !endOfInput)
+			return NEED_DATA;
+
+		kIndex = index;
+		kLength = i - index;
+		quoted = false;
+		escaped = false;
+		encoded = false;
+
+		// A key without a value.
+		if (i == end || table[buffer[i] & 0xFF] != KEY_VALUE_SEPARATOR) {
+			vIndex = i;
+			vLength = 0;
+			pairEnd = i;
+			return FOUND;
+		}
+
+		vIndex = ++i;
+
+		if (quoting && i < end && buffer[i] == quote) {
+			vIndex = ++i;
+
+			while (i < end && buffer[i] != quote) {
+				if (buffer[i] == '\\') {
+					escaped = true;
+					i++;
+				}
+
+				i++;
+			}
+
+			if (i >= end)
+				return (endOfInput ? MALFORMED : NEED_DATA);
+
+			vLength = i - vIndex;
+			pairEnd = ++i;
+
+			// The closing quote has to end the pair.
+			if (i < end && table[buffer[i] & 0xFF] == DATA)
+				return MALFORMED;
+		} else {
+			// Separators are allowed within a value.
+			while (i < end && (table[buffer[i] & 0xFF] == DATA
+					|| table[buffer[i] & 0xFF] == KEY_VALUE_SEPARATOR))
+				i++;
+
+			if (i == end && !endOfInput)
+				return NEED_DATA;
+
+			vLength = i - vIndex;
+			pairEnd = i;
+		}
+
+		if (percentDecoding) {
+			for (int j = vIndex, stop = vIndex + vLength; j < stop; j++) {
+				if (buffer[j] == '%' || buffer[j] == '+') {
+					encoded = true;
+					break;
+				}
+			}
+		}
+
+		return FOUND;
+	}
+
+	private int indexOfKeyEnd(int i, int end) {
+		while (i < end && table[buffer[i] & 0xFF] == DATA)
+			i++;
+
+		return i;
+	}
+
+	private int indexAfterSeparators(int i, int end) {
+		while (i < end && table[buffer[i] & 0xFF] == PAIR_SEPARATOR)
+			i++;
+
+		return i;
+	}
+
+	private IToken<CSVToken.Type, byte[], byte[]> needData(int index, int end)
+			throws ParseException {
+		// Nothing can be returned if the buffer can't make room for more.
+		if (index == 0 && end == buffer.length)
+			throw createParseException(Type.MALFORMED,
+					"Pair exceeds the buffer capacity of " + buffer.length
+							+ " bytes.", index);
+
+		bIndex = index;
+		return null;
+	}
+}
\ No newline at end of file
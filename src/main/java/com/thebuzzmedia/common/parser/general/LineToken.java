@@ -0,0 +1,78 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.general;
+
+import com.thebuzzmedia.common.parser.AbstractReusableToken;
+
+/**
+ * Token representing a single line parsed by {@link LineTokenizer}.
+ * <p/>
+ * The bounds of the token mark the content of the line within the tokenizer's
+ * buffer, excluding the line terminator. In addition to its bounds, the token
+ * carries the (1-based) number of the line, which remains accurate no matter
+ * how many times the tokenizer has refilled its buffer.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class LineToken extends AbstractReusableToken<Void, byte[], byte[]> {
+	protected long lineNumber;
+
+	public LineToken() {
+		// default constructor
+	}
+
+	public LineToken(byte[] source, int index, int length, long lineNumber)
+			throws IllegalArgumentException {
+		super(source, index, length);
+
+		this.lineNumber = lineNumber;
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getName() + "@" + hashCode() + "[lineNumber="
+				+ lineNumber + ", position=" + position + ", index=" + index
+				+ ", length=" + length + ", source="
+				+ (source == null ? "" : source) + "]";
+	}
+
+	public byte[] getValue() {
+		byte[] value = new byte[length];
+
+		// Check if there is any data to copy.
+		if (length > 0)
+			System.arraycopy(source, index, value, 0, length);
+
+		return value;
+	}
+
+	/**
+	 * Used to get the number of this line within the input; the first line is
+	 * line <code>1</code>.
+	 * 
+	 * @return the number of this line within the input.
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	protected void setValue(byte[] source, int index, int length,
+			long lineNumber) throws IllegalArgumentException {
+		super.setValue(source, index, length);
+
+		this.lineNumber = lineNumber;
+	}
+}
\ No newline at end of file
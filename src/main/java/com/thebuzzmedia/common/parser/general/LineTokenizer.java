@@ -0,0 +1,269 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.general;
+
+import com.thebuzzmedia.common.parser.AbstractTokenizer;
+import com.thebuzzmedia.common.parser.IToken;
+import com.thebuzzmedia.common.parser.ParseException;
+import com.thebuzzmedia.common.parser.ParseException.Type;
+import com.thebuzzmedia.common.util.ArrayUtils;
+
+/**
+ * Tokenizer used to split content into lines, returning a {@link LineToken}
+ * for every line.
+ * <p/>
+ * Lines may be terminated by LF, CRLF or CR; a CRLF sequence split across a
+ * buffer refill is correctly treated as a single terminator. Unlike splitting
+ * on <code>"\r\n"</code> with {@link ByteArrayTokenizer}, empty lines are
+ * returned as empty tokens and a last line without a terminator is returned
+ * as well. Every token carries its line number along with its absolute
+ * position in the input ({@link LineToken#getPosition()}).
+ * <p/>
+ * A maximum line length can be given to guard against runaway content. The
+ * buffer is always sized large enough to hold a line of the maximum length
+ * (plus its terminator), and any line exceeding the maximum is reported as
+ * {@link Type#MALFORMED}; with error recovery turned on, such lines are
+ * skipped (but still counted).
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class LineTokenizer extends
+		AbstractTokenizer<byte[], Void, byte[], byte[]> {
+	/**
+	 * Value used to indicate that line length is only limited by the capacity
+	 * of the buffer.
+	 */
+	public static final int NO_MAX_LINE_LENGTH = 0;
+
+	private int maxLineLength;
+
+	private long lineNumber;
+	private int nextIndex;
+	private boolean skipLF;
+
+	private LineToken reusableToken = new LineToken();
+
+	public LineTokenizer() {
+		this(false);
+	}
+
+	public LineTokenizer(boolean reuseToken) {
+		this(reuseToken, DEFAULT_BUFFER_CAPACITY);
+	}
+
+	public LineTokenizer(boolean reuseToken, int bufferCapacity)
+			throws IllegalArgumentException {
+		this(reuseToken, bufferCapacity, NO_MAX_LINE_LENGTH);
+	}
+
+	/**
+	 * Create a tokenizer that rejects lines longer than
+	 * <code>maxLineLength</code>.
+	 * <p/>
+	 * If <code>bufferCapacity</code> is too small to hold a line of
+	 * <code>maxLineLength</code> plus a CRLF terminator, the buffer is created
+	 * with a capacity of <code>maxLineLength + 2</code> instead.
+	 * 
+	 * @param reuseToken
+	 *            <code>true</code> to re-use the same token instance for every
+	 *            line.
+	 * @param bufferCapacity
+	 *            The size of the read buffer that will be created.
+	 * @param maxLineLength
+	 *            The maximum length of a line (excluding its terminator) or
+	 *            {@link #NO_MAX_LINE_LENGTH}.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>bufferCapacity</code> or
+	 *             <code>maxLineLength</code> is &lt; <code>0</code>.
+	 */
+	public LineTokenizer(boolean reuseToken, int bufferCapacity,
+			int maxLineLength) throws IllegalArgumentException {
+		super(calculateCapacity(bufferCapacity, maxLineLength));
+
+		this.reuseToken = reuseToken;
+		this.maxLineLength = maxLineLength;
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+
+		lineNumber = 0;
+		skipLF = false;
+	}
+
+	public int getMaxLineLength() {
+		return maxLineLength;
+	}
+
+	/**
+	 * Used to get the number of lines returned (or skipped due to errors) so
+	 * far.
+	 * 
+	 * @return the number of lines returned or skipped so far.
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	@Override
+	protected byte[] createBuffer(int capacity) throws IllegalArgumentException {
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity [" + capacity
+					+ "] must be >= 0");
+
+		return new byte[capacity];
+	}
+
+	@Override
+	protected IToken<Void, byte[], byte[]> parseTokenImpl(int index, int length)
+			throws ParseException {
+		// Finish a CRLF that was split across the last refill.
+		if (skipLF && length > 0) {
+			skipLF = false;
+
+			if (buffer[index] == '\n') {
+				bIndex = ++index;
+				length--;
+			}
+		}
+
+		int end = index + length;
+		int teIndex = indexOfTerminator(buffer, index, end);
+
+		if (maxLineLength > 0) {
+			int lineLength = (teIndex == ArrayUtils.INVALID_INDEX ? length
+					: teIndex - index);
+
+			// Guard before the end of the line is even found.
+			if (lineLength > maxLineLength)
+				throw createParseException(Type.MALFORMED, "Line "
+						+ (lineNumber + 1) + " exceeds the max line length of "
+						+ maxLineLength + " bytes.", index);
+		}
+
+		if (teIndex == ArrayUtils.INVALID_INDEX) {
+			if (!isEndOfInput()) {
+				// A line that fills the whole buffer can never be completed.
+				if (index == 0 && length == buffer.length)
+					throw createParseException(Type.MALFORMED, "Line "
+							+ (lineNumber + 1)
+							+ " exceeds the buffer capacity of "
+							+ buffer.length + " bytes.", index);
+
+				return null;
+			}
+
+			// Last line without a terminator.
+			if (length <= 0)
+				return null;
+
+			teIndex = end;
+			nextIndex = end;
+		} else
+			nextIndex = indexAfterTerminator(buffer, teIndex, end);
+
+		LineToken token = (reuseToken ? reusableToken : new LineToken());
+		token.setValue(buffer, index, teIndex - index, ++lineNumber);
+
+		return token;
+	}
+
+	@Override
+	protected void advanceIndex(IToken<Void, byte[], byte[]> token) {
+		bIndex = nextIndex;
+	}
+
+	@Override
+	protected long[] getCheckpointState() {
+		return new long[] { lineNumber, (skipLF ? 1 : 0) };
+	}
+
+	@Override
+	protected void restoreCheckpointState(long[] state) {
+		if (state == null || state.length != 2)
+			throw new IllegalArgumentException(
+					"state must contain the line number and skipLF flag");
+
+		lineNumber = state[0];
+		skipLF = (state[1] == 1);
+	}
+
+	@Override
+	protected int indexOfRecoveryPoint(int index, int length) {
+		int end = index + length;
+		int teIndex = indexOfTerminator(buffer, index, end);
+
+		if (teIndex == ArrayUtils.INVALID_INDEX)
+			return ArrayUtils.INVALID_INDEX;
+
+		// The skipped line still counts.
+		lineNumber++;
+		return indexAfterTerminator(buffer, teIndex, end);
+	}
+
+	/**
+	 * Used to find the first CR or LF in the given range of the buffer.
+	 */
+	private static int indexOfTerminator(byte[] buffer, int index, int end) {
+		for (; index < end; index++) {
+			byte b = buffer[index];
+
+			/*
+			 * A single unsigned comparison rejects nearly every byte (both CR
+			 * and LF are <= CR), keeping the common path of the loop as tight
+			 * as a memchr.
+			 */
+			if ((b & 0xFF) <= '\r' && (b == '\n' || b == '\r'))
+				return index;
+		}
+
+		return ArrayUtils.INVALID_INDEX;
+	}
+
+	/**
+	 * Used to get the index after the terminator beginning at
+	 * <code>teIndex</code>, remembering to skip a leading LF after the next
+	 * refill if a CR is the last byte in the buffer.
+	 */
+	private int indexAfterTerminator(byte[] buffer, int teIndex, int end) {
+		int next = teIndex + 1;
+
+		if (buffer[teIndex] == '\r') {
+			if (next < end) {
+				if (buffer[next] == '\n')
+					next++;
+			} else
+				skipLF = true;
+		}
+
+		return next;
+	}
+
+	private static int calculateCapacity(int bufferCapacity, int maxLineLength)
+			throws IllegalArgumentException {
+		if (maxLineLength < 0)
+			throw new IllegalArgumentException("maxLineLength ["
+					+ maxLineLength + "] must be >= 0");
+
+		// Make sure the longest allowed line and a CRLF always fit.
+		if (maxLineLength > 0 && bufferCapacity < maxLineLength + 2)
+			return maxLineLength + 2;
+
+		return bufferCapacity;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,403 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.general;
+
+import java.util.Arrays;
+
+import com.thebuzzmedia.common.parser.AbstractDelimitedTokenizer;
+import com.thebuzzmedia.common.parser.AbstractReusableToken;
+import com.thebuzzmedia.common.parser.IToken;
+import com.thebuzzmedia.common.parser.ParseException;
+import com.thebuzzmedia.common.parser.ParseException.Type;
+import com.thebuzzmedia.common.util.ArrayUtils;
+
+/**
+ * Tokenizer used to split <code>byte[]</code> content on any one of several
+ * multi-byte delimiter sequences (e.g. <code>"\r\n"</code>, <code>"||"</code>
+ * and <code>"&lt;EOR&gt;"</code>) in a single linear pass, using
+ * {@link DelimiterMode#MATCH_ANY_SEQUENCE}.
+ * <p/>
+ * The delimiters are compiled into an Aho-Corasick automaton stored as a
+ * dense transition table (one <code>int</code> per state per byte value), so
+ * scanning costs one table lookup per byte no matter how many delimiters
+ * there are. Bytes that cannot start any delimiter are skipped with a
+ * first-byte filter while the automaton is in its initial state.
+ * <p/>
+ * The type of every token ({@link IToken#getType()}) is the index, within the
+ * delimiters, of the delimiter that ended it, or {@link #NO_DELIMITER} for
+ * the last token of the input when it isn't followed by a delimiter. When
+ * delimiters overlap, the one that ends first wins and, of those ending at
+ * the same position, the longest. Empty tokens (adjacent delimiters) are
+ * handled according to the {@link EmptyTokenPolicy}.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class MultiDelimiterTokenizer extends
+		AbstractDelimitedTokenizer<byte[], byte[][], Integer, byte[], byte[]> {
+	/**
+	 * Token type used for the last token of the input when no delimiter
+	 * follows it.
+	 */
+	public static final Integer NO_DELIMITER = Integer.valueOf(-1);
+
+	private static final int ROOT = 0;
+
+	private ReusableMultiDelimiterToken reusableToken = new ReusableMultiDelimiterToken();
+
+	/*
+	 * The compiled automaton: transitions[state * 256 + byte] gives the next
+	 * state and matches[state] the index of the longest delimiter ending at
+	 * that state (or -1); depths[state] is the length of the input the state
+	 * represents.
+	 */
+	private byte[][] compiledDelimiters;
+	private int[] transitions;
+	private int[] matches;
+	private int[] depths;
+	private boolean[] firstBytes;
+
+	// Results of the last indexOfMatchEnd call.
+	private int lastMatch;
+	private int lastState;
+
+	private int nextIndex;
+	private boolean lastTokenParsed;
+
+	public MultiDelimiterTokenizer() {
+		this(false);
+	}
+
+	public MultiDelimiterTokenizer(boolean reuseToken) {
+		this(reuseToken, DEFAULT_BUFFER_CAPACITY);
+	}
+
+	public MultiDelimiterTokenizer(boolean reuseToken, int bufferCapacity)
+			throws IllegalArgumentException {
+		super(bufferCapacity);
+		this.reuseToken = reuseToken;
+	}
+
+	@Override
+	protected byte[] createBuffer(int capacity) throws IllegalArgumentException {
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity [" + capacity
+					+ "] must be >= 0");
+
+		return new byte[capacity];
+	}
+
+	@Override
+	protected void prepareDelimiters(byte[][] delimiters, DelimiterMode mode)
+			throws IllegalArgumentException {
+		if (mode != DelimiterMode.MATCH_ANY_SEQUENCE)
+			throw new IllegalArgumentException("mode [" + mode
+					+ "] is not supported by this tokenizer, only "
+					+ DelimiterMode.MATCH_ANY_SEQUENCE + " is");
+		if (delimiters.length == 0)
+			throw new IllegalArgumentException(
+					"delimiters must contain at least 1 delimiter");
+
+		for (int i = 0; i < delimiters.length; i++) {
+			if (delimiters[i] == null || delimiters[i].length == 0)
+				throw new IllegalArgumentException("delimiters[" + i
+						+ "] cannot be null or empty");
+		}
+
+		// Tokenizers are typically re-used with the same delimiters.
+		if (!Arrays.deepEquals(delimiters, compiledDelimiters))
+			compile(delimiters);
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+
+		lastTokenParsed = false;
+	}
+
+	@Override
+	protected IToken<Integer, byte[], byte[]> parseTokenImpl(int index,
+			int length) throws ParseException {
+		int tsIndex = index;
+		int end = index + length;
+
+		boolean preserve = (emptyTokenPolicy == EmptyTokenPolicy.PRESERVE);
+		boolean trim = (emptyTokenPolicy == EmptyTokenPolicy.TRIM);
+
+		while (true) {
+			int meIndex = indexOfMatchEnd(tsIndex, end);
+
+			// No delimiter in what we have; the token may need more data.
+			if (meIndex == ArrayUtils.INVALID_INDEX) {
+				/*
+				 * At the end of the input whatever follows the last delimiter
+				 * is the last token; only returned when empty if empty tokens
+				 * are preserved and it does follow a delimiter.
+				 */
+				if (isEndOfInput()) {
+					if (lastTokenParsed
+							|| (tsIndex == end && !(preserve && tokenCount > 0)))
+						return null;
+
+					lastTokenParsed = true;
+					return createToken(NO_DELIMITER, tsIndex, end - tsIndex,
+							end);
+				}
+
+				if (end - tsIndex >= buffer.length)
+					throw createParseException(Type.MALFORMED,
+							"Token exceeds the buffer capacity of "
+									+ buffer.length + " bytes.", tsIndex);
+
+				return null;
+			}
+
+			int dIndex = lastMatch;
+			int teIndex = meIndex - compiledDelimiters[dIndex].length;
+
+			if (teIndex == tsIndex && !preserve) {
+				// Skip empty tokens when collapsing or at the start of input.
+				if (!trim || tokenCount == 0) {
+					tsIndex = meIndex;
+					bIndex = tsIndex;
+					continue;
+				}
+
+				// When trimming, only return it if a non-empty token follows.
+				if (!isContentFollowing(meIndex, end))
+					return null;
+			}
+
+			return createToken(Integer.valueOf(dIndex), tsIndex, teIndex
+					- tsIndex, meIndex);
+		}
+	}
+
+	@Override
+	protected void advanceIndex(IToken<Integer, byte[], byte[]> token) {
+		bIndex = nextIndex;
+	}
+
+	@Override
+	protected int indexOfRecoveryPoint(int index, int length) {
+		// Resume parsing immediately after the next delimiter.
+		return indexOfMatchEnd(index, index + length);
+	}
+
+	/**
+	 * Used to run the automaton from <code>index</code> until the first
+	 * delimiter is matched, storing the index of the delimiter in
+	 * <code>lastMatch</code> and the automaton's final state in
+	 * <code>lastState</code>.
+	 * 
+	 * @return the index immediately following the matched delimiter or
+	 *         {@link ArrayUtils#INVALID_INDEX} if no delimiter ends before
+	 *         <code>end</code>.
+	 */
+	private int indexOfMatchEnd(int index, int end) {
+		int s = ROOT;
+		lastMatch = -1;
+
+		for (int i = index; i < end; i++) {
+			// Skip everything that can't start a delimiter.
+			if (s == ROOT) {
+				while (i < end && !firstBytes[buffer[i] & 0xFF])
+					i++;
+
+				if (i == end)
+					break;
+			}
+
+			s = transitions[(s << 8) | (buffer[i] & 0xFF)];
+
+			if ((lastMatch = matches[s]) != -1) {
+				lastState = s;
+				return i + 1;
+			}
+		}
+
+		lastState = s;
+		return ArrayUtils.INVALID_INDEX;
+	}
+
+	/**
+	 * Used to determine if content other than delimiters is found at or after
+	 * <code>index</code>, skipping over any delimiters directly following each
+	 * other.
+	 * 
+	 * @return <code>true</code> if content follows, <code>false</code> if
+	 *         only delimiters do (or it can't be told without more data).
+	 */
+	private boolean isContentFollowing(int index, int end) {
+		while (index < end) {
+			int meIndex = indexOfMatchEnd(index, end);
+
+			/*
+			 * Without another delimiter, content follows unless everything
+			 * left could still be the start of one.
+			 */
+			if (meIndex == ArrayUtils.INVALID_INDEX)
+				return (depths[lastState] < end - index || isEndOfInput());
+
+			// The next delimiter doesn't start right here, content does.
+			if (meIndex - compiledDelimiters[lastMatch].length > index)
+				return true;
+
+			index = meIndex;
+		}
+
+		return false;
+	}
+
+	private IToken<Integer, byte[], byte[]> createToken(Integer type,
+			int index, int length, int nextIndex) {
+		this.nextIndex = nextIndex;
+
+		if (reuseToken) {
+			reusableToken.setValue(type, buffer, index, length);
+			return reusableToken;
+		} else
+			return new ReusableMultiDelimiterToken(type, buffer, index, length);
+	}
+
+	private void compile(byte[][] delimiters) {
+		// Upper bound on the number of states: 1 + the total delimiter length.
+		int capacity = 1;
+
+		for (int i = 0; i < delimiters.length; i++)
+			capacity += delimiters[i].length;
+
+		int[] trie = new int[capacity << 8];
+		int[] out = new int[capacity];
+		int[] fail = new int[capacity];
+		int[] depth = new int[capacity];
+		boolean[] first = new boolean[256];
+		int stateCount = 1;
+
+		Arrays.fill(trie, -1);
+		Arrays.fill(out, -1);
+
+		// Build the trie of all the delimiters.
+		for (int i = 0; i < delimiters.length; i++) {
+			byte[] delimiter = delimiters[i];
+			int state = ROOT;
+
+			first[delimiter[0] & 0xFF] = true;
+
+			for (int j = 0; j < delimiter.length; j++) {
+				int t = (state << 8) | (delimiter[j] & 0xFF);
+
+				if (trie[t] == -1) {
+					depth[stateCount] = j + 1;
+					trie[t] = stateCount++;
+				}
+
+				state = trie[t];
+			}
+
+			// The first of duplicate delimiters wins.
+			if (out[state] == -1)
+				out[state] = i;
+		}
+
+		/*
+		 * Breadth-first, fill in the missing transitions with the transitions
+		 * of the failure state (the longest proper suffix that is also in the
+		 * trie) turning the trie into a DFA. A state without a delimiter of its
+		 * own inherits the match of its failure state; a delimiter ending at a
+		 * state is always longer than one inherited from a suffix.
+		 */
+		int[] queue = new int[stateCount];
+		int head = 0;
+		int tail = 0;
+
+		for (int b = 0; b < 256; b++) {
+			int next = trie[b];
+
+			if (next == -1)
+				trie[b] = ROOT;
+			else {
+				fail[next] = ROOT;
+				queue[tail++] = next;
+			}
+		}
+
+		while (head < tail) {
+			int state = queue[head++];
+
+			if (out[state] == -1)
+				out[state] = out[fail[state]];
+
+			for (int b = 0; b < 256; b++) {
+				int t = (state << 8) | b;
+				int next = trie[t];
+
+				if (next == -1)
+					trie[t] = trie[(fail[state] << 8) | b];
+				else {
+					fail[next] = trie[(fail[state] << 8) | b];
+					queue[tail++] = next;
+				}
+			}
+		}
+
+		transitions = (stateCount == capacity ? trie : copyOf(trie,
+				stateCount << 8));
+		matches = (stateCount == capacity ? out : copyOf(out, stateCount));
+		depths = (stateCount == capacity ? depth : copyOf(depth, stateCount));
+		firstBytes = first;
+
+		// Keep a private copy so later changes to the caller's arrays are seen.
+		compiledDelimiters = new byte[delimiters.length][];
+
+		for (int i = 0; i < delimiters.length; i++)
+			compiledDelimiters[i] = delimiters[i].clone();
+	}
+
+	private static int[] copyOf(int[] array, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, length);
+		return copy;
+	}
+
+	class ReusableMultiDelimiterToken extends
+			AbstractReusableToken<Integer, byte[], byte[]> {
+		public ReusableMultiDelimiterToken() {
+			// default constructor
+		}
+
+		public ReusableMultiDelimiterToken(Integer type, byte[] source,
+				int index, int length) {
+			super(type, source, index, length);
+		}
+
+		@Override
+		protected void setValue(Integer type, byte[] source, int index,
+				int length) throws IllegalArgumentException {
+			super.setValue(type, source, index, length);
+		}
+
+		public byte[] getValue() {
+			byte[] value = new byte[length];
+
+			// Check if there is any data to copy.
+			if (length > 0)
+				System.arraycopy(source, index, value, 0, length);
+
+			return value;
+		}
+	}
+}
\ No newline at end of file
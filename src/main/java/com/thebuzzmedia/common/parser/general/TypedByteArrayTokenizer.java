@@ -0,0 +1,92 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.general;
+
+import com.thebuzzmedia.common.parser.AbstractReusableToken;
+import com.thebuzzmedia.common.parser.IToken;
+
+/**
+ * Variant of {@link ByteArrayTokenizer} whose tokens are typed with the
+ * delimiter that ended them ({@link IToken#getType()}), recorded while the
+ * token is scanned so callers never need to look back into the buffer.
+ * <p/>
+ * In {@link DelimiterMode#MATCH_ANY} mode the type is the delimiter byte that
+ * was hit; in {@link DelimiterMode#MATCH_EXACT} mode it is always the first
+ * byte of the delimiter sequence. The last token of the input is typed
+ * <code>null</code> when no delimiter follows it. Boxing a <code>byte</code>
+ * never allocates ({@link Byte#valueOf(byte)} caches every value).
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class TypedByteArrayTokenizer extends AbstractByteArrayTokenizer<Byte> {
+	private ReusableTypedByteArrayToken reusableToken = new ReusableTypedByteArrayToken();
+
+	public TypedByteArrayTokenizer() {
+		this(false);
+	}
+
+	public TypedByteArrayTokenizer(boolean reuseToken) {
+		this(reuseToken, DEFAULT_BUFFER_CAPACITY);
+	}
+
+	public TypedByteArrayTokenizer(boolean reuseToken, int bufferCapacity)
+			throws IllegalArgumentException {
+		super(bufferCapacity);
+		this.reuseToken = reuseToken;
+	}
+
+	@Override
+	protected IToken<Byte, byte[], byte[]> createToken(int tsIndex,
+			int teIndex, boolean delimited) {
+		Byte type = (delimited ? Byte.valueOf(buffer[teIndex]) : null);
+
+		// Check if we are reusing a token or creating a new one.
+		if (reuseToken) {
+			reusableToken.setValue(type, buffer, tsIndex, (teIndex - tsIndex));
+			return reusableToken;
+		} else
+			return new ReusableTypedByteArrayToken(type, buffer, tsIndex,
+					(teIndex - tsIndex));
+	}
+
+	class ReusableTypedByteArrayToken extends
+			AbstractReusableToken<Byte, byte[], byte[]> {
+		public ReusableTypedByteArrayToken() {
+			// default constructor
+		}
+
+		public ReusableTypedByteArrayToken(Byte type, byte[] source,
+				int index, int length) {
+			super(type, source, index, length);
+		}
+
+		@Override
+		protected void setValue(Byte type, byte[] source, int index,
+				int length) throws IllegalArgumentException {
+			super.setValue(type, source, index, length);
+		}
+
+		public byte[] getValue() {
+			byte[] value = new byte[length];
+
+			// Check if there is any data to copy.
+			if (length > 0)
+				System.arraycopy(source, index, value, 0, length);
+
+			return value;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,94 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.general;
+
+import com.thebuzzmedia.common.parser.AbstractReusableToken;
+import com.thebuzzmedia.common.parser.IToken;
+
+/**
+ * Variant of {@link CharArrayTokenizer} whose tokens are typed with the
+ * delimiter that ended them ({@link IToken#getType()}), recorded while the
+ * token is scanned so callers never need to look back into the buffer.
+ * <p/>
+ * In {@link DelimiterMode#MATCH_ANY} mode the type is the delimiter char that
+ * was hit; in {@link DelimiterMode#MATCH_EXACT} mode it is always the first
+ * char of the delimiter sequence. The last token of the input is typed
+ * <code>null</code> when no delimiter follows it. Boxing an ASCII delimiter
+ * never allocates ({@link Character#valueOf(char)} caches those values).
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class TypedCharArrayTokenizer extends
+		AbstractCharArrayTokenizer<Character> {
+	private ReusableTypedCharArrayToken reusableToken = new ReusableTypedCharArrayToken();
+
+	public TypedCharArrayTokenizer() {
+		this(false);
+	}
+
+	public TypedCharArrayTokenizer(boolean reuseToken) {
+		this(reuseToken, DEFAULT_BUFFER_CAPACITY);
+	}
+
+	public TypedCharArrayTokenizer(boolean reuseToken, int bufferCapacity)
+			throws IllegalArgumentException {
+		super(bufferCapacity);
+		this.reuseToken = reuseToken;
+	}
+
+	@Override
+	protected IToken<Character, char[], char[]> createToken(int tsIndex,
+			int teIndex, boolean delimited) {
+		Character type = (delimited ? Character.valueOf(buffer[teIndex])
+				: null);
+
+		// Check if we are reusing a token or creating a new one.
+		if (reuseToken) {
+			reusableToken.setValue(type, buffer, tsIndex, (teIndex - tsIndex));
+			return reusableToken;
+		} else
+			return new ReusableTypedCharArrayToken(type, buffer, tsIndex,
+					(teIndex - tsIndex));
+	}
+
+	class ReusableTypedCharArrayToken extends
+			AbstractReusableToken<Character, char[], char[]> {
+		public ReusableTypedCharArrayToken() {
+			// default constructor
+		}
+
+		public ReusableTypedCharArrayToken(Character type, char[] source,
+				int index, int length) {
+			super(type, source, index, length);
+		}
+
+		@Override
+		protected void setValue(Character type, char[] source, int index,
+				int length) throws IllegalArgumentException {
+			super.setValue(type, source, index, length);
+		}
+
+		public char[] getValue() {
+			char[] value = new char[length];
+
+			// Check if there is any data to copy.
+			if (length > 0)
+				System.arraycopy(source, index, value, 0, length);
+
+			return value;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,321 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.index;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Class used to access the records (and fields) of a data file directly,
+ * using an index previously built with {@link RecordIndexWriter}.
+ * <p/>
+ * Both the index and the data file are memory-mapped. Looking up a record
+ * only requires decoding the entries of the single index block containing it,
+ * after which the record or any of its fields are read straight out of the
+ * mapped data file; the data file is never scanned.
+ * <p/>
+ * Data files of any size are supported by mapping them in segments of
+ * {@link #SEGMENT_SIZE} bytes; the index file itself must be smaller than 2
+ * GB.
+ * <p/>
+ * Instances of this class decode and cache one record entry at a time and are
+ * not thread-safe; use one instance per thread.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class RecordIndex implements Closeable {
+	/**
+	 * The size of the segments the data file is mapped in.
+	 * <p/>
+	 * Value is: 1073741824 (1 GB)
+	 */
+	public static final int SEGMENT_SIZE = 1 << 30;
+
+	private RandomAccessFile indexRAF;
+	private RandomAccessFile dataRAF;
+
+	private MappedByteBuffer index;
+	private MappedByteBuffer[] segments;
+
+	private boolean hasFields;
+	private int blockSize;
+	private long recordCount;
+	private long blockCount;
+	private int directoryOffset;
+
+	// Cache of the last decoded entry.
+	private long cRecord = -1;
+	private long cPosition;
+	private int cLength;
+	private int cFieldCount;
+	private long[] cFieldPositions = new long[16];
+	private int[] cFieldLengths = new int[16];
+
+	private int iIndex;
+
+	public RecordIndex(File indexFile, File dataFile)
+			throws IllegalArgumentException, IOException {
+		if (indexFile == null)
+			throw new IllegalArgumentException("indexFile cannot be null");
+		if (dataFile == null)
+			throw new IllegalArgumentException("dataFile cannot be null");
+
+		try {
+			indexRAF = new RandomAccessFile(indexFile, "r");
+			dataRAF = new RandomAccessFile(dataFile, "r");
+
+			FileChannel indexChannel = indexRAF.getChannel();
+			long indexLength = indexChannel.size();
+
+			if (indexLength > Integer.MAX_VALUE
+					|| indexLength < RecordIndexWriter.HEADER_LENGTH
+							+ RecordIndexWriter.TRAILER_LENGTH)
+				throw new IOException("Index file [" + indexFile
+						+ "] has an invalid length of " + indexLength);
+
+			index = indexChannel.map(MapMode.READ_ONLY, 0, indexLength);
+
+			if (index.getInt(0) != RecordIndexWriter.MAGIC
+					|| index.get(4) != RecordIndexWriter.VERSION)
+				throw new IOException("File [" + indexFile
+						+ "] is not a supported record index file.");
+
+			hasFields = (index.get(5) & RecordIndexWriter.FLAG_FIELDS) != 0;
+			blockSize = index.getInt(6);
+
+			int trailer = (int) indexLength - RecordIndexWriter.TRAILER_LENGTH;
+			recordCount = index.getLong(trailer);
+			blockCount = index.getLong(trailer + 8);
+			directoryOffset = (int) index.getLong(trailer + 16);
+
+			if (blockSize < 1 || recordCount > blockCount * blockSize
+					|| directoryOffset + blockCount * 16 != trailer)
+				throw new IOException("Index file [" + indexFile
+						+ "] is corrupt.");
+
+			// Map the data file in segments.
+			FileChannel dataChannel = dataRAF.getChannel();
+			long dataLength = dataChannel.size();
+			segments = new MappedByteBuffer[(int) ((dataLength
+					+ SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+
+			for (int i = 0; i < segments.length; i++) {
+				long offset = (long) i * SEGMENT_SIZE;
+				segments[i] = dataChannel.map(MapMode.READ_ONLY, offset,
+						Math.min(SEGMENT_SIZE, dataLength - offset));
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Used to close the index and data files.
+	 * <p/>
+	 * Mapped regions remain valid (and the files cannot be deleted on some
+	 * platforms) until they are garbage collected.
+	 */
+	public void close() throws IOException {
+		try {
+			if (indexRAF != null)
+				indexRAF.close();
+		} finally {
+			indexRAF = null;
+
+			if (dataRAF != null)
+				dataRAF.close();
+
+			dataRAF = null;
+		}
+	}
+
+	public boolean hasFields() {
+		return hasFields;
+	}
+
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	public long getRecordPosition(long record) throws IllegalArgumentException {
+		decode(record);
+		return cPosition;
+	}
+
+	public int getRecordLength(long record) throws IllegalArgumentException {
+		decode(record);
+		return cLength;
+	}
+
+	public byte[] getRecord(long record) throws IllegalArgumentException {
+		decode(record);
+
+		byte[] value = new byte[cLength];
+		read(cPosition, value, 0, cLength);
+
+		return value;
+	}
+
+	public int getFieldCount(long record) throws IllegalArgumentException,
+			UnsupportedOperationException {
+		checkFields();
+		decode(record);
+
+		return cFieldCount;
+	}
+
+	public long getFieldPosition(long record, int field)
+			throws IllegalArgumentException, UnsupportedOperationException {
+		checkField(record, field);
+		return cFieldPositions[field];
+	}
+
+	public int getFieldLength(long record, int field)
+			throws IllegalArgumentException, UnsupportedOperationException {
+		checkField(record, field);
+		return cFieldLengths[field];
+	}
+
+	public byte[] getField(long record, int field)
+			throws IllegalArgumentException, UnsupportedOperationException {
+		checkField(record, field);
+
+		byte[] value = new byte[cFieldLengths[field]];
+		read(cFieldPositions[field], value, 0, value.length);
+
+		return value;
+	}
+
+	/**
+	 * Used to copy <code>length</code> bytes from the data file, beginning at
+	 * the given absolute <code>position</code>, into <code>buffer</code>.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>buffer</code> is <code>null</code> or the given
+	 *             range is outside of the data file or <code>buffer</code>.
+	 */
+	public void read(long position, byte[] buffer, int index, int length)
+			throws IllegalArgumentException {
+		if (buffer == null)
+			throw new IllegalArgumentException("buffer cannot be null");
+		if (position < 0 || index < 0 || length < 0
+				|| index + length > buffer.length)
+			throw new IllegalArgumentException("position [" + position
+					+ "], index [" + index + "] and length [" + length
+					+ "] must be >= 0 and (index + length) must be <= "
+					+ "buffer.length [" + buffer.length + "]");
+
+		while (length > 0) {
+			int segment = (int) (position / SEGMENT_SIZE);
+
+			if (segment >= segments.length)
+				throw new IllegalArgumentException("position [" + position
+						+ "] is past the end of the data file");
+
+			MappedByteBuffer data = segments[segment];
+			int offset = (int) (position % SEGMENT_SIZE);
+			int count = Math.min(length, data.limit() - offset);
+
+			// Duplicate so the position of the shared segment is untouched.
+			ByteBuffer view = data.duplicate();
+			view.position(offset);
+			view.get(buffer, index, count);
+
+			position += count;
+			index += count;
+			length -= count;
+		}
+	}
+
+	private void checkFields() throws UnsupportedOperationException {
+		if (!hasFields)
+			throw new UnsupportedOperationException(
+					"The index was built without fields.");
+	}
+
+	private void checkField(long record, int field)
+			throws IllegalArgumentException, UnsupportedOperationException {
+		checkFields();
+		decode(record);
+
+		if (field < 0 || field >= cFieldCount)
+			throw new IllegalArgumentException("field [" + field
+					+ "] must be >= 0 and < getFieldCount(" + record + ") ["
+					+ cFieldCount + "]");
+	}
+
+	private void decode(long record) throws IllegalArgumentException {
+		if (record < 0 || record >= recordCount)
+			throw new IllegalArgumentException("record [" + record
+					+ "] must be >= 0 and < getRecordCount() [" + recordCount
+					+ "]");
+
+		if (record == cRecord)
+			return;
+
+		long block = record / blockSize;
+		int directory = directoryOffset + (int) (block * 16);
+
+		iIndex = (int) index.getLong(directory);
+		long end = index.getLong(directory + 8);
+
+		// Decode the block's entries up to and including the record.
+		for (long r = block * blockSize; r <= record; r++) {
+			cPosition = end + readVarint();
+			cLength = (int) readVarint();
+			end = cPosition + cLength;
+
+			if (hasFields) {
+				cFieldCount = (int) readVarint();
+
+				if (cFieldCount > cFieldLengths.length) {
+					cFieldPositions = new long[cFieldCount];
+					cFieldLengths = new int[cFieldCount];
+				}
+
+				long fieldEnd = cPosition;
+
+				for (int i = 0; i < cFieldCount; i++) {
+					cFieldPositions[i] = fieldEnd + readVarint();
+					cFieldLengths[i] = (int) readVarint();
+
+					fieldEnd = cFieldPositions[i] + cFieldLengths[i];
+				}
+			}
+		}
+
+		cRecord = record;
+	}
+
+	private long readVarint() {
+		long value = 0;
+
+		for (int shift = 0;; shift += 7) {
+			byte b = index.get(iIndex++);
+			value |= (long) (b & 0x7F) << shift;
+
+			if (b >= 0)
+				return value;
+		}
+	}
+}
\ No newline at end of file
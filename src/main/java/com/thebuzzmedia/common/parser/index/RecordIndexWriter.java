@@ -0,0 +1,345 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.index;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import com.thebuzzmedia.common.parser.IToken;
+
+/**
+ * Class used to build a compact, on-disk index of the records (and optionally
+ * the fields within each record) of a data file in one pass, so the records
+ * can later be accessed directly with a {@link RecordIndex} instead of
+ * re-tokenizing the file.
+ * <p/>
+ * Records are typically added straight from the tokens of any tokenizer using
+ * {@link #add(IToken, boolean)}, relying on the absolute position of each
+ * token ({@link IToken#getPosition()}); they can also be added manually with
+ * {@link #startRecord(long)}, {@link #addField(long, int)} and
+ * {@link #endRecord(long)}. Records must be added in order of position.
+ * <p/>
+ * <h3>Format</h3>
+ * Record entries are delta and varint encoded: the start of a record is
+ * stored relative to the end of the previous record and the start of a field
+ * relative to the end of the previous field, so typical delimited data needs
+ * only 2-3 bytes per record and per field. Entries are grouped into blocks of
+ * {@link #getBlockSize()} records and a directory holding the location of
+ * every block is written at the end of the file, so any record can be found
+ * by decoding at most one block.
+ * 
+ * <pre>
+ * header:    int magic, byte version, byte flags, int blockSize
+ * entries:   varint start delta, varint length
+ *            [varint fieldCount, (varint start delta, varint length)*]
+ * directory: (long entry offset, long first record position)*
+ * trailer:   long recordCount, long blockCount, long directory offset
+ * </pre>
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class RecordIndexWriter implements Closeable {
+	public static final int DEFAULT_BLOCK_SIZE = 64;
+
+	static final int MAGIC = 0x54425249;
+	static final byte VERSION = 1;
+	static final byte FLAG_FIELDS = 0x01;
+
+	static final int HEADER_LENGTH = 10;
+	static final int TRAILER_LENGTH = 24;
+
+	private boolean indexFields;
+	private int blockSize;
+
+	private DataOutputStream out;
+	private long outPosition;
+
+	private long recordCount;
+	private long previousEnd;
+
+	private int blockCount;
+	private long[] blockOffsets = new long[64];
+	private long[] blockPositions = new long[64];
+
+	private boolean inRecord;
+	private long recordPosition;
+	private long fieldEnd;
+	private int fieldCount;
+	private long[] fieldPositions = new long[16];
+	private int[] fieldLengths = new int[16];
+
+	private byte[] varintBuffer = new byte[10];
+
+	public RecordIndexWriter(File indexFile, boolean indexFields)
+			throws IllegalArgumentException, IOException {
+		this(indexFile, indexFields, DEFAULT_BLOCK_SIZE);
+	}
+
+	public RecordIndexWriter(File indexFile, boolean indexFields,
+			int blockSize) throws IllegalArgumentException, IOException {
+		if (indexFile == null)
+			throw new IllegalArgumentException("indexFile cannot be null");
+		if (blockSize < 1)
+			throw new IllegalArgumentException("blockSize [" + blockSize
+					+ "] must be >= 1");
+
+		this.indexFields = indexFields;
+		this.blockSize = blockSize;
+
+		out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(indexFile), 65536));
+
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeByte(indexFields ? FLAG_FIELDS : 0);
+		out.writeInt(blockSize);
+		outPosition = HEADER_LENGTH;
+	}
+
+	public boolean isIndexingFields() {
+		return indexFields;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Used to add the given token to the index.
+	 * <p/>
+	 * The first token added after the end of a record starts a new record
+	 * (beginning at the token's position), every token is added as a field
+	 * (if fields are being indexed) and the record is ended after the token if
+	 * <code>endOfRecord</code> is <code>true</code>. For tokenizers returning
+	 * whole records (e.g. lines), simply pass <code>true</code> every time.
+	 * 
+	 * @param token
+	 *            The token to add.
+	 * @param endOfRecord
+	 *            <code>true</code> if the token is the last one in its record.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>token</code> is <code>null</code>, its position is
+	 *             unknown or it is positioned before the previous token.
+	 * @throws IOException
+	 *             if any error occurs while writing to the index file.
+	 */
+	public void add(IToken<?, ?, ?> token, boolean endOfRecord)
+			throws IllegalArgumentException, IOException {
+		if (token == null)
+			throw new IllegalArgumentException("token cannot be null");
+
+		long position = token.getPosition();
+		int length = token.getLength();
+
+		if (!inRecord)
+			startRecord(position);
+
+		if (indexFields)
+			addField(position, length);
+
+		if (endOfRecord)
+			endRecord(position + length);
+	}
+
+	/**
+	 * Used to begin a new record at the given absolute position in the data
+	 * file.
+	 * 
+	 * @param position
+	 *            The absolute position the record begins at.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if a record is already started or <code>position</code> is
+	 *             before the end of the previous record.
+	 */
+	public void startRecord(long position) throws IllegalArgumentException {
+		if (inRecord)
+			throw new IllegalArgumentException(
+					"The previous record has not been ended. Use endRecord(long) first.");
+		if (position < previousEnd)
+			throw new IllegalArgumentException("position [" + position
+					+ "] must be >= the end of the previous record ["
+					+ previousEnd + "]");
+
+		inRecord = true;
+		recordPosition = position;
+		fieldEnd = position;
+		fieldCount = 0;
+	}
+
+	/**
+	 * Used to add a field to the current record. This is ignored if fields
+	 * are not being indexed.
+	 * 
+	 * @param position
+	 *            The absolute position the field begins at.
+	 * @param length
+	 *            The length of the field.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if no record has been started, <code>length</code> is &lt;
+	 *             <code>0</code> or <code>position</code> is before the end of
+	 *             the previous field.
+	 */
+	public void addField(long position, int length)
+			throws IllegalArgumentException {
+		if (!inRecord)
+			throw new IllegalArgumentException(
+					"No record has been started. Use startRecord(long) first.");
+		if (length < 0)
+			throw new IllegalArgumentException("length [" + length
+					+ "] must be >= 0");
+		if (position < fieldEnd)
+			throw new IllegalArgumentException("position [" + position
+					+ "] must be >= the end of the previous field [" + fieldEnd
+					+ "]");
+
+		if (!indexFields)
+			return;
+
+		// Grow the field arrays if needed.
+		if (fieldCount == fieldLengths.length) {
+			long[] positions = new long[fieldCount * 2];
+			int[] lengths = new int[fieldCount * 2];
+
+			System.arraycopy(fieldPositions, 0, positions, 0, fieldCount);
+			System.arraycopy(fieldLengths, 0, lengths, 0, fieldCount);
+
+			fieldPositions = positions;
+			fieldLengths = lengths;
+		}
+
+		fieldPositions[fieldCount] = position;
+		fieldLengths[fieldCount++] = length;
+		fieldEnd = position + length;
+	}
+
+	/**
+	 * Used to end the current record and write its entry to the index.
+	 * 
+	 * @param endPosition
+	 *            The absolute position (exclusive) the record ends at,
+	 *            excluding any record delimiter.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if no record has been started or <code>endPosition</code> is
+	 *             before the end of the last field in the record, or describes
+	 *             a record longer than {@link Integer#MAX_VALUE}.
+	 * @throws IOException
+	 *             if any error occurs while writing to the index file.
+	 */
+	public void endRecord(long endPosition) throws IllegalArgumentException,
+			IOException {
+		if (!inRecord)
+			throw new IllegalArgumentException(
+					"No record has been started. Use startRecord(long) first.");
+		if (endPosition < fieldEnd
+				|| endPosition - recordPosition > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("endPosition [" + endPosition
+					+ "] must be >= the end of the last field [" + fieldEnd
+					+ "] and describe a record no longer than "
+					+ Integer.MAX_VALUE);
+
+		// Start a new block every blockSize records.
+		if (recordCount % blockSize == 0) {
+			if (blockCount == blockOffsets.length) {
+				long[] offsets = new long[blockCount * 2];
+				long[] positions = new long[blockCount * 2];
+
+				System.arraycopy(blockOffsets, 0, offsets, 0, blockCount);
+				System.arraycopy(blockPositions, 0, positions, 0, blockCount);
+
+				blockOffsets = offsets;
+				blockPositions = positions;
+			}
+
+			blockOffsets[blockCount] = outPosition;
+			blockPositions[blockCount++] = recordPosition;
+			previousEnd = recordPosition;
+		}
+
+		writeVarint(recordPosition - previousEnd);
+		writeVarint(endPosition - recordPosition);
+
+		if (indexFields) {
+			long previousFieldEnd = recordPosition;
+			writeVarint(fieldCount);
+
+			for (int i = 0; i < fieldCount; i++) {
+				writeVarint(fieldPositions[i] - previousFieldEnd);
+				writeVarint(fieldLengths[i]);
+
+				previousFieldEnd = fieldPositions[i] + fieldLengths[i];
+			}
+		}
+
+		recordCount++;
+		previousEnd = endPosition;
+		inRecord = false;
+	}
+
+	/**
+	 * Used to write the block directory and trailer and close the index file.
+	 * A record that was started but not ended is discarded.
+	 * 
+	 * @throws IOException
+	 *             if any error occurs while writing to the index file.
+	 */
+	public void close() throws IOException {
+		if (out == null)
+			return;
+
+		try {
+			long directoryOffset = outPosition;
+
+			for (int i = 0; i < blockCount; i++) {
+				out.writeLong(blockOffsets[i]);
+				out.writeLong(blockPositions[i]);
+			}
+
+			out.writeLong(recordCount);
+			out.writeLong(blockCount);
+			out.writeLong(directoryOffset);
+		} finally {
+			out.close();
+			out = null;
+		}
+	}
+
+	private void writeVarint(long value) throws IOException {
+		int length = 0;
+
+		// 7 bits at a time, low bits first, high bit set on all but the last.
+		while ((value & ~0x7FL) != 0) {
+			varintBuffer[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		varintBuffer[length++] = (byte) value;
+
+		out.write(varintBuffer, 0, length);
+		outPosition += length;
+	}
+}
\ No newline at end of file
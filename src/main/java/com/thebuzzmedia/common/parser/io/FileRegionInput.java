@@ -0,0 +1,130 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.thebuzzmedia.common.io.IInput;
+
+/**
+ * {@link IInput} implementation used to feed a region of a file to a parser.
+ * <p/>
+ * Data is read with positional {@link FileChannel} reads straight into the
+ * caller's buffer, so many instances can read different regions of the same
+ * file concurrently (e.g. when a large file is split up for parallel
+ * parsing).
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class FileRegionInput implements IInput<byte[], byte[]>, Closeable {
+	private File source;
+	private RandomAccessFile raf;
+	private FileChannel channel;
+
+	private long position;
+	private long endPosition;
+
+	public FileRegionInput(File source) throws IllegalArgumentException,
+			IOException {
+		this(source, 0, (source == null ? 0 : source.length()));
+	}
+
+	public FileRegionInput(File source, long position, long length)
+			throws IllegalArgumentException, IOException {
+		if (source == null)
+			throw new IllegalArgumentException("source cannot be null");
+		if (position < 0 || length < 0)
+			throw new IllegalArgumentException("position [" + position
+					+ "] and length [" + length + "] must be >= 0");
+
+		this.source = source;
+		this.position = position;
+		this.endPosition = position + length;
+
+		raf = new RandomAccessFile(source, "r");
+		channel = raf.getChannel();
+	}
+
+	/**
+	 * Always returns <code>null</code>; the content of this input is read from a file
+	 * rather than held in a <code>byte[]</code>, see {@link #getFile()}.
+	 */
+	public byte[] getSource() {
+		return null;
+	}
+
+	public File getFile() {
+		return source;
+	}
+
+	public boolean isEmpty() {
+		return (position >= endPosition);
+	}
+
+	public int read(byte[] buffer) throws IllegalArgumentException,
+			IOException {
+		if (buffer == null)
+			throw new IllegalArgumentException("buffer cannot be null");
+
+		return read(buffer, 0, buffer.length);
+	}
+
+	public int read(byte[] buffer, int index) throws IllegalArgumentException,
+			IOException {
+		if (buffer == null)
+			throw new IllegalArgumentException("buffer cannot be null");
+
+		return read(buffer, index, buffer.length - index);
+	}
+
+	public int read(byte[] buffer, int index, int length)
+			throws IllegalArgumentException, IOException {
+		if (buffer == null)
+			throw new IllegalArgumentException("buffer cannot be null");
+		if (index < 0 || length < 0 || index + length > buffer.length)
+			throw new IllegalArgumentException("index [" + index
+					+ "] and length [" + length
+					+ "] must be >= 0 and (index + length) must be <= "
+					+ "buffer.length [" + buffer.length + "]");
+
+		int count = (int) Math.min(length, endPosition - position);
+
+		if (count <= 0)
+			return 0;
+
+		int read = channel.read(ByteBuffer.wrap(buffer, index, count),
+				position);
+
+		// The file was truncated underneath us.
+		if (read < 0) {
+			endPosition = position;
+			return 0;
+		}
+
+		position += read;
+		return read;
+	}
+
+	public void close() throws IOException {
+		endPosition = position;
+		raf.close();
+	}
+}
\ No newline at end of file
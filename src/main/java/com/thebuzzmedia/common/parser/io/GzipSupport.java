@@ -0,0 +1,92 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.io;
+
+import java.io.IOException;
+
+/**
+ * Constants and helpers for the GZIP file format (RFC 1952) shared by
+ * {@link InflaterInput} and {@link ParallelGzipInput}.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+class GzipSupport {
+	static final int ID1 = 0x1F;
+	static final int ID2 = 0x8B;
+	static final int CM_DEFLATE = 8;
+
+	static final int FHCRC = 0x02;
+	static final int FEXTRA = 0x04;
+	static final int FNAME = 0x08;
+	static final int FCOMMENT = 0x10;
+
+	static final int HEADER_LENGTH = 10;
+	static final int TRAILER_LENGTH = 8;
+
+	/**
+	 * Used to get the length of the header of the GZIP member stored at the
+	 * beginning of <code>member</code>.
+	 * 
+	 * @throws IOException
+	 *             if the member does not begin with a valid header.
+	 */
+	static int headerLength(byte[] member, int length) throws IOException {
+		if (length < HEADER_LENGTH + TRAILER_LENGTH
+				|| (member[0] & 0xFF) != ID1 || (member[1] & 0xFF) != ID2
+				|| member[2] != CM_DEFLATE)
+			throw new IOException("Invalid GZIP member header.");
+
+		int flags = member[3] & 0xFF;
+		int i = HEADER_LENGTH;
+
+		if ((flags & FEXTRA) != 0)
+			i += 2 + readShort(member, i);
+
+		if ((flags & FNAME) != 0)
+			i = skipString(member, i, length);
+
+		if ((flags & FCOMMENT) != 0)
+			i = skipString(member, i, length);
+
+		if ((flags & FHCRC) != 0)
+			i += 2;
+
+		if (i > length - TRAILER_LENGTH)
+			throw new IOException("Truncated GZIP member header.");
+
+		return i;
+	}
+
+	static int readShort(byte[] buffer, int index) {
+		return (buffer[index] & 0xFF) | ((buffer[index + 1] & 0xFF) << 8);
+	}
+
+	static int readInt(byte[] buffer, int index) {
+		return readShort(buffer, index) | (readShort(buffer, index + 2) << 16);
+	}
+
+	private static int skipString(byte[] buffer, int index, int length)
+			throws IOException {
+		while (index < length && buffer[index] != 0)
+			index++;
+
+		if (index == length)
+			throw new IOException("Truncated GZIP member header.");
+
+		// Skip the terminating zero as well.
+		return index + 1;
+	}
+}
\ No newline at end of file
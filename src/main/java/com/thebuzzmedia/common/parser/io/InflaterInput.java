@@ -0,0 +1,321 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.thebuzzmedia.common.io.IInput;
+
+/**
+ * {@link IInput} implementation used to feed compressed content (GZIP, ZLIB or
+ * raw DEFLATE) to a parser.
+ * <p/>
+ * Wrapping an {@link InputStream} in a {@link java.util.zip.GZIPInputStream}
+ * and then reading it through another input costs an extra copy of all the
+ * decompressed data. Instances of this class instead inflate directly into
+ * the region of the caller's buffer being filled; when used by a parser, the
+ * decompressed data is written right after the data the parser kept from its
+ * last refill and is never copied again.
+ * <p/>
+ * Multi-member GZIP files (e.g. files appended to with <code>cat</code>) are
+ * supported and the CRC and size of every member are verified.
+ * <p/>
+ * Like parsers, instances of this class are not thread-safe.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ * 
+ * @see ParallelGzipInput
+ */
+public class InflaterInput implements IInput<byte[], byte[]>, Closeable {
+	public static final int DEFAULT_BUFFER_CAPACITY = 32768;
+
+	public enum Format {
+		/**
+		 * GZIP file format (RFC 1952), including multi-member files.
+		 */
+		GZIP,
+		/**
+		 * ZLIB format (RFC 1950).
+		 */
+		ZLIB,
+		/**
+		 * Raw DEFLATE data (RFC 1951) with no header or trailer.
+		 */
+		DEFLATE;
+	}
+
+	private InputStream source;
+	private Format format;
+
+	private Inflater inflater;
+	private CRC32 crc;
+
+	private byte[] cBuffer;
+	private int cIndex;
+	private int cEndIndex;
+	private boolean sourceEmpty;
+
+	private boolean empty;
+	private boolean headerPending;
+
+	public InflaterInput(InputStream source, Format format)
+			throws IllegalArgumentException {
+		this(source, format, DEFAULT_BUFFER_CAPACITY);
+	}
+
+	public InflaterInput(InputStream source, Format format, int bufferCapacity)
+			throws IllegalArgumentException {
+		if (source == null)
+			throw new IllegalArgumentException("source cannot be null");
+		if (format == null)
+			throw new IllegalArgumentException("format cannot be null");
+		if (bufferCapacity < 1)
+			throw new IllegalArgumentException("bufferCapacity ["
+					+ bufferCapacity + "] must be >= 1");
+
+		this.source = source;
+		this.format = format;
+
+		inflater = new Inflater(format != Format.ZLIB);
+		crc = (format == Format.GZIP ? new CRC32() : null);
+		cBuffer = new byte[bufferCapacity];
+
+		headerPending = (format == Format.GZIP);
+	}
+
+	/**
+	 * Always returns <code>null</code>; the content of this input is inflated from a stream
+	 * rather than held in a <code>byte[]</code>, see {@link #getStream()}.
+	 */
+	public byte[] getSource() {
+		return null;
+	}
+
+	public InputStream getStream() {
+		return source;
+	}
+
+	public Format getFormat() {
+		return format;
+	}
+
+	public boolean isEmpty() {
+		return empty;
+	}
+
+	public int read(byte[] buffer) throws IllegalArgumentException,
+			IOException {
+		if (buffer == null)
+			throw new IllegalArgumentException("buffer cannot be null");
+
+		return read(buffer, 0, buffer.length);
+	}
+
+	public int read(byte[] buffer, int index) throws IllegalArgumentException,
+			IOException {
+		if (buffer == null)
+			throw new IllegalArgumentException("buffer cannot be null");
+
+		return read(buffer, index, buffer.length - index);
+	}
+
+	public int read(byte[] buffer, int index, int length)
+			throws IllegalArgumentException, IOException {
+		if (buffer == null)
+			throw new IllegalArgumentException("buffer cannot be null");
+		if (index < 0 || length < 0 || index + length > buffer.length)
+			throw new IllegalArgumentException("index [" + index
+					+ "] and length [" + length
+					+ "] must be >= 0 and (index + length) must be <= "
+					+ "buffer.length [" + buffer.length + "]");
+
+		int read = 0;
+
+		while (!empty && length > 0 && read == 0) {
+			if (headerPending) {
+				// Any data after a member must be another member.
+				if (!fill(1)) {
+					end();
+					break;
+				}
+
+				readHeader();
+				headerPending = false;
+			}
+
+			if (inflater.needsInput()) {
+				if (!fill(1))
+					throw new IOException(
+							"Unexpected end of compressed content.");
+
+				inflater.setInput(cBuffer, cIndex, cEndIndex - cIndex);
+				cIndex = cEndIndex;
+			}
+
+			try {
+				// Inflate straight into the caller's buffer.
+				read = inflater.inflate(buffer, index, length);
+			} catch (DataFormatException e) {
+				throw new IOException("Malformed compressed content: "
+						+ e.getMessage());
+			}
+
+			if (read > 0 && crc != null)
+				crc.update(buffer, index, read);
+
+			if (inflater.needsDictionary())
+				throw new IOException(
+						"Compressed content requiring a preset dictionary is not supported.");
+
+			if (inflater.finished())
+				memberFinished();
+		}
+
+		return read;
+	}
+
+	/**
+	 * Used to close the underlying source and release the native resources
+	 * held by this input.
+	 */
+	public void close() throws IOException {
+		empty = true;
+		inflater.end();
+		source.close();
+	}
+
+	private void memberFinished() throws IOException {
+		// Take back whatever compressed content the inflater didn't use.
+		cIndex = cEndIndex - inflater.getRemaining();
+
+		if (format == Format.GZIP) {
+			fillFully(GzipSupport.TRAILER_LENGTH);
+
+			if (GzipSupport.readInt(cBuffer, cIndex) != (int) crc.getValue()
+					|| GzipSupport.readInt(cBuffer, cIndex + 4) != (int) inflater
+							.getBytesWritten())
+				throw new IOException(
+						"GZIP member CRC or size check failed; the content is corrupt.");
+
+			cIndex += GzipSupport.TRAILER_LENGTH;
+
+			inflater.reset();
+			crc.reset();
+			headerPending = true;
+		} else {
+			// ZLIB trailer is verified by the inflater itself.
+			end();
+		}
+	}
+
+	private void readHeader() throws IOException {
+		fillFully(GzipSupport.HEADER_LENGTH);
+
+		if ((cBuffer[cIndex] & 0xFF) != GzipSupport.ID1
+				|| (cBuffer[cIndex + 1] & 0xFF) != GzipSupport.ID2
+				|| cBuffer[cIndex + 2] != GzipSupport.CM_DEFLATE)
+			throw new IOException("Invalid GZIP member header.");
+
+		int flags = cBuffer[cIndex + 3] & 0xFF;
+		cIndex += GzipSupport.HEADER_LENGTH;
+
+		if ((flags & GzipSupport.FEXTRA) != 0) {
+			fillFully(2);
+			int xLength = GzipSupport.readShort(cBuffer, cIndex);
+			cIndex += 2;
+			skip(xLength);
+		}
+
+		if ((flags & GzipSupport.FNAME) != 0)
+			skipString();
+
+		if ((flags & GzipSupport.FCOMMENT) != 0)
+			skipString();
+
+		if ((flags & GzipSupport.FHCRC) != 0)
+			skip(2);
+	}
+
+	private void skip(int length) throws IOException {
+		while (length > 0) {
+			if (!fill(1))
+				throw new IOException("Truncated GZIP member header.");
+
+			int count = Math.min(length, cEndIndex - cIndex);
+			cIndex += count;
+			length -= count;
+		}
+	}
+
+	private void skipString() throws IOException {
+		while (true) {
+			if (!fill(1))
+				throw new IOException("Truncated GZIP member header.");
+
+			if (cBuffer[cIndex++] == 0)
+				return;
+		}
+	}
+
+	private void fillFully(int length) throws IOException {
+		if (!fill(length))
+			throw new IOException("Unexpected end of compressed content.");
+	}
+
+	/**
+	 * Used to make sure at least <code>length</code> bytes of compressed
+	 * content are available in <code>cBuffer</code>, reading more from the
+	 * source if needed.
+	 * 
+	 * @return <code>true</code> if the content is available, otherwise
+	 *         <code>false</code> if the source ran out first.
+	 */
+	private boolean fill(int length) throws IOException {
+		if (cEndIndex - cIndex >= length)
+			return true;
+
+		// Move whatever is left to the front of the buffer.
+		int keepLength = cEndIndex - cIndex;
+
+		if (keepLength > 0)
+			System.arraycopy(cBuffer, cIndex, cBuffer, 0, keepLength);
+
+		cIndex = 0;
+		cEndIndex = keepLength;
+
+		while (!sourceEmpty && cEndIndex < length) {
+			int read = source.read(cBuffer, cEndIndex, cBuffer.length
+					- cEndIndex);
+
+			if (read < 0)
+				sourceEmpty = true;
+			else
+				cEndIndex += read;
+		}
+
+		return (cEndIndex - cIndex >= length);
+	}
+
+	private void end() {
+		empty = true;
+		inflater.end();
+	}
+}
\ No newline at end of file
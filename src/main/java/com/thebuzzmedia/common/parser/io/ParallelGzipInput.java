@@ -0,0 +1,359 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.thebuzzmedia.common.io.IInput;
+
+/**
+ * {@link IInput} implementation used to feed multi-member GZIP content to a
+ * parser, inflating the members in parallel on the threads of a given
+ * {@link ExecutorService} while preserving their order.
+ * <p/>
+ * The boundaries of a GZIP member can't be found without inflating it unless
+ * the member records its own compressed size. This input requires every
+ * member to do so with a <code>BC</code> extra subfield (the "blocked GZIP"
+ * layout produced by <code>bgzip</code> and many log archivers); a member
+ * without one causes an {@link IOException}, in which case
+ * {@link InflaterInput} must be used instead.
+ * <p/>
+ * Up to <code>maxPendingMembers</code> members are read ahead and inflated
+ * concurrently. Decompressed members are handed to the caller strictly in the
+ * order they appear in the file.
+ * <p/>
+ * Like parsers, instances of this class are not thread-safe; only the
+ * inflation work is spread across threads.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class ParallelGzipInput implements IInput<byte[], byte[]>,
+		Closeable {
+	private static final int BC_SUBFIELD_LENGTH = 6;
+
+	/**
+	 * Largest uncompressed size of a blocked GZIP member (BGZF).
+	 */
+	static final int MAX_MEMBER_SIZE = 65536;
+
+	private InputStream source;
+	private ExecutorService executor;
+	private int maxPendingMembers;
+
+	private LinkedList<Future<byte[]>> pendingList =
+			new LinkedList<Future<byte[]>>();
+	private boolean sourceEmpty;
+
+	private byte[] member;
+	private int mIndex;
+
+	private byte[] header = new byte[GzipSupport.HEADER_LENGTH + 2];
+
+	public ParallelGzipInput(InputStream source, ExecutorService executor,
+			int maxPendingMembers) throws IllegalArgumentException {
+		if (source == null)
+			throw new IllegalArgumentException("source cannot be null");
+		if (executor == null)
+			throw new IllegalArgumentException("executor cannot be null");
+		if (maxPendingMembers < 1)
+			throw new IllegalArgumentException("maxPendingMembers ["
+					+ maxPendingMembers + "] must be >= 1");
+
+		this.source = source;
+		this.executor = executor;
+		this.maxPendingMembers = maxPendingMembers;
+	}
+
+	/**
+	 * Always returns <code>null</code>; the content of this input is inflated from a stream
+	 * rather than held in a <code>byte[]</code>, see {@link #getStream()}.
+	 */
+	public byte[] getSource() {
+		return null;
+	}
+
+	public InputStream getStream() {
+		return source;
+	}
+
+	public boolean isEmpty() {
+		return (sourceEmpty && pendingList.isEmpty()
+				&& (member == null || mIndex >= member.length));
+	}
+
+	public int read(byte[] buffer) throws IllegalArgumentException,
+			IOException {
+		if (buffer == null)
+			throw new IllegalArgumentException("buffer cannot be null");
+
+		return read(buffer, 0, buffer.length);
+	}
+
+	public int read(byte[] buffer, int index) throws IllegalArgumentException,
+			IOException {
+		if (buffer == null)
+			throw new IllegalArgumentException("buffer cannot be null");
+
+		return read(buffer, index, buffer.length - index);
+	}
+
+	public int read(byte[] buffer, int index, int length)
+			throws IllegalArgumentException, IOException {
+		if (buffer == null)
+			throw new IllegalArgumentException("buffer cannot be null");
+		if (index < 0 || length < 0 || index + length > buffer.length)
+			throw new IllegalArgumentException("index [" + index
+					+ "] and length [" + length
+					+ "] must be >= 0 and (index + length) must be <= "
+					+ "buffer.length [" + buffer.length + "]");
+
+		int read = 0;
+
+		while (read < length) {
+			// Move on to the next member once the current one is used up.
+			if (member == null || mIndex >= member.length) {
+				// Don't block for the next member if we already have data.
+				if (read > 0 && !isNextMemberDone())
+					break;
+
+				if (!nextMember())
+					break;
+			}
+
+			int count = Math.min(length - read, member.length - mIndex);
+			System.arraycopy(member, mIndex, buffer, index + read, count);
+
+			mIndex += count;
+			read += count;
+		}
+
+		return read;
+	}
+
+	/**
+	 * Used to close the underlying source and cancel any inflation work still
+	 * pending. The executor is not shut down; it belongs to the caller.
+	 */
+	public void close() throws IOException {
+		sourceEmpty = true;
+
+		while (!pendingList.isEmpty())
+			pendingList.removeFirst().cancel(true);
+
+		member = null;
+		source.close();
+	}
+
+	private boolean isNextMemberDone() {
+		return (!pendingList.isEmpty() && pendingList.getFirst().isDone());
+	}
+
+	private boolean nextMember() throws IOException {
+		// Keep the pipeline full.
+		while (!sourceEmpty && pendingList.size() < maxPendingMembers) {
+			byte[] compressed = readMember();
+
+			if (compressed != null)
+				pendingList.add(executor.submit(new InflateTask(compressed)));
+		}
+
+		if (pendingList.isEmpty())
+			return false;
+
+		try {
+			member = pendingList.removeFirst().get();
+			mIndex = 0;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(
+					"Interrupted while waiting for a GZIP member to be inflated.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+
+			throw new IOException("Unable to inflate GZIP member: " + cause);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Used to read the next complete, still compressed, member from the
+	 * source using the size recorded in its <code>BC</code> subfield.
+	 * 
+	 * @return the compressed member or <code>null</code> if the source is
+	 *         empty.
+	 */
+	private byte[] readMember() throws IOException {
+		int read = readFully(header, 0, header.length);
+
+		if (read == 0) {
+			sourceEmpty = true;
+			return null;
+		}
+
+		if (read < header.length || (header[0] & 0xFF) != GzipSupport.ID1
+				|| (header[1] & 0xFF) != GzipSupport.ID2
+				|| header[2] != GzipSupport.CM_DEFLATE)
+			throw new IOException("Invalid GZIP member header.");
+
+		if ((header[3] & GzipSupport.FEXTRA) == 0)
+			throw new IOException(
+					"GZIP member does not record its compressed size (no extra field); use InflaterInput instead.");
+
+		int xLength = GzipSupport.readShort(header, GzipSupport.HEADER_LENGTH);
+		byte[] extra = new byte[xLength];
+
+		if (readFully(extra, 0, xLength) < xLength)
+			throw new IOException("Truncated GZIP member header.");
+
+		int blockSize = -1;
+
+		// Look for the BC subfield holding the total member size - 1.
+		for (int i = 0; i + 4 <= xLength;) {
+			int sLength = GzipSupport.readShort(extra, i + 2);
+
+			if (extra[i] == 'B' && extra[i + 1] == 'C' && sLength == 2) {
+				blockSize = GzipSupport.readShort(extra, i + 4) + 1;
+				break;
+			}
+
+			i += 4 + sLength;
+		}
+
+		int prefixLength = header.length + xLength;
+
+		if (blockSize < prefixLength + GzipSupport.TRAILER_LENGTH)
+			throw new IOException(
+					"GZIP member does not record a valid compressed size (no BC subfield); use InflaterInput instead.");
+
+		byte[] compressed = new byte[blockSize];
+		System.arraycopy(header, 0, compressed, 0, header.length);
+		System.arraycopy(extra, 0, compressed, header.length, xLength);
+
+		int remaining = blockSize - prefixLength;
+
+		if (readFully(compressed, prefixLength, remaining) < remaining)
+			throw new IOException("Truncated GZIP member.");
+
+		return compressed;
+	}
+
+	private int readFully(byte[] buffer, int index, int length)
+			throws IOException {
+		int read = 0;
+
+		while (read < length) {
+			int count = source.read(buffer, index + read, length - read);
+
+			if (count < 0)
+				break;
+
+			read += count;
+		}
+
+		return read;
+	}
+
+	/**
+	 * Task used to inflate and verify a single, complete GZIP member.
+	 */
+	static class InflateTask implements Callable<byte[]> {
+		private byte[] compressed;
+
+		InflateTask(byte[] compressed) {
+			this.compressed = compressed;
+		}
+
+		public byte[] call() throws IOException {
+			int length = compressed.length;
+			int hLength = GzipSupport.headerLength(compressed, length);
+			int tIndex = length - GzipSupport.TRAILER_LENGTH;
+
+			// ISIZE tells us exactly how big the output is.
+			int size = GzipSupport.readInt(compressed, tIndex + 4);
+
+			// Don't let a forged trailer make us allocate arbitrary amounts.
+			if (size < 0 || size > MAX_MEMBER_SIZE)
+				throw new IOException("GZIP member size [" + size
+						+ "] exceeds the blocked GZIP limit of "
+						+ MAX_MEMBER_SIZE
+						+ " bytes; the content is corrupt.");
+
+			byte[] data = new byte[size];
+
+			Inflater inflater = new Inflater(true);
+
+			try {
+				inflater.setInput(compressed, hLength, tIndex - hLength);
+
+				int read = 0;
+				byte[] overflow = new byte[1];
+
+				/*
+				 * Inflate until the deflate stream ends, not until ISIZE bytes
+				 * are out; empty members (e.g. the BGZF EOF block) still have
+				 * a final block to consume. Once the output is full anything
+				 * more goes to a scratch byte so an overrun is caught.
+				 */
+				while (!inflater.finished()) {
+					int count = (read < size ? inflater.inflate(data, read,
+							size - read) : inflater.inflate(overflow));
+
+					if (count == 0
+							&& (inflater.needsInput() || inflater
+									.needsDictionary()))
+						break;
+
+					read += count;
+
+					if (read > size)
+						break;
+				}
+
+				if (read != size || !inflater.finished())
+					throw new IOException(
+							"GZIP member size check failed; the content is corrupt.");
+			} catch (DataFormatException e) {
+				throw new IOException("Malformed compressed content: "
+						+ e.getMessage());
+			} finally {
+				inflater.end();
+			}
+
+			CRC32 crc = new CRC32();
+			crc.update(data, 0, size);
+
+			if ((int) crc.getValue() != GzipSupport.readInt(compressed, tIndex))
+				throw new IOException(
+						"GZIP member CRC check failed; the content is corrupt.");
+
+			return data;
+		}
+	}
+}
\ No newline at end of file
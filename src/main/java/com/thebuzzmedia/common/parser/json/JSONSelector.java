@@ -0,0 +1,501 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.json;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.thebuzzmedia.common.parser.IToken;
+import com.thebuzzmedia.common.parser.ParseException;
+
+/**
+ * Class used to read a handful of values out of every top-level JSON value
+ * (e.g. every line of JSON lines) parsed by a {@link JSONTokenizer}, without
+ * building a tree of the document.
+ * <p/>
+ * The selector is created with the paths of the wanted values, e.g.
+ * <code>user.id</code>, <code>tags[0]</code> or
+ * <code>items[2].price</code>, and walks each document only as deep as
+ * those paths go. Every other value is jumped over with
+ * {@link JSONTokenizer#skipValue()} and the rest of an object or array is
+ * skipped as soon as everything wanted from it has been found, so the cost of
+ * a document depends on the values read rather than its size.
+ * <p/>
+ * Only the selected values are kept: numbers are decoded without allocating
+ * and strings are copied, as they would otherwise be lost when the
+ * tokenizer's buffer is refilled. Keys are matched against their raw
+ * (escaped) form, and when a key appears more than once the first occurrence
+ * wins.
+ * <p/>
+ * Typical usage:
+ * 
+ * <pre>
+ * JSONSelector selector = new JSONSelector(&quot;user.id&quot;, &quot;status&quot;);
+ * 
+ * while (selector.select(tokenizer)) {
+ * 	if (selector.isFound(0))
+ * 		id = selector.getLongValue(0);
+ * }
+ * </pre>
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class JSONSelector {
+	private Node root = new Node();
+	private String[] paths;
+
+	/*
+	 * The value selected by every path in the last document.
+	 */
+	private JSONToken.Type[] types;
+	private long[] longValues;
+	private double[] doubleValues;
+	private byte[][] values;
+
+	/**
+	 * Creates a new selector.
+	 * 
+	 * @param paths
+	 *            The paths of the values to select; keys are separated by
+	 *            <code>.</code> and array indices are written as
+	 *            <code>[n]</code>. An empty path selects the document itself.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>paths</code> is <code>null</code> or empty or if
+	 *             any of the paths is <code>null</code> or malformed.
+	 */
+	public JSONSelector(String... paths) throws IllegalArgumentException {
+		if (paths == null || paths.length == 0)
+			throw new IllegalArgumentException(
+					"paths cannot be null or empty");
+
+		for (int i = 0; i < paths.length; i++)
+			add(paths[i], i);
+
+		this.paths = paths.clone();
+
+		types = new JSONToken.Type[paths.length];
+		longValues = new long[paths.length];
+		doubleValues = new double[paths.length];
+		values = new byte[paths.length][];
+	}
+
+	public String getPath(int path) throws IndexOutOfBoundsException {
+		return paths[path];
+	}
+
+	public int getPathCount() {
+		return paths.length;
+	}
+
+	/**
+	 * Used to parse the next top-level value from the tokenizer, selecting
+	 * the values of all the paths from it.
+	 * 
+	 * @param tokenizer
+	 *            The tokenizer to read the value from; it must be between
+	 *            top-level values.
+	 * 
+	 * @return <code>true</code> if a value was parsed or <code>false</code>
+	 *         if there are no more values.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>tokenizer</code> is <code>null</code>.
+	 * @throws IllegalStateException
+	 *             if <code>tokenizer</code> is in the middle of a value.
+	 * @throws ParseException
+	 *             if the content is malformed.
+	 */
+	public boolean select(JSONTokenizer tokenizer)
+			throws IllegalArgumentException, IllegalStateException,
+			ParseException {
+		if (tokenizer == null)
+			throw new IllegalArgumentException("tokenizer cannot be null");
+		if (tokenizer.getDepth() != 0)
+			throw new IllegalStateException(
+					"tokenizer must be between top-level values.");
+
+		for (int i = 0; i < types.length; i++) {
+			types[i] = null;
+			values[i] = null;
+		}
+
+		IToken<JSONToken.Type, byte[], byte[]> token = tokenizer.nextToken();
+
+		if (token == null)
+			return false;
+
+		selectValue(tokenizer, root, (JSONToken) token);
+		return true;
+	}
+
+	/**
+	 * Used to determine if the given path was found in the last document.
+	 */
+	public boolean isFound(int path) throws IndexOutOfBoundsException {
+		return (types[path] != null);
+	}
+
+	/**
+	 * Used to get the type of the value selected by the given path; for
+	 * objects and arrays this is the type of their start token.
+	 * 
+	 * @return the type of the value or <code>null</code> if the path was not
+	 *         found.
+	 */
+	public JSONToken.Type getType(int path) throws IndexOutOfBoundsException {
+		return types[path];
+	}
+
+	/**
+	 * Used to get the value selected by the given path as a
+	 * <code>long</code>.
+	 * 
+	 * @throws NumberFormatException
+	 *             if the value is not an integer that fits in a
+	 *             <code>long</code>.
+	 */
+	public long getLongValue(int path) throws IndexOutOfBoundsException,
+			NumberFormatException {
+		if (types[path] != JSONToken.Type.NUMBER || values[path] != null)
+			throw new NumberFormatException("Value of path [" + paths[path]
+					+ "] is not an integer that fits in a long.");
+
+		return longValues[path];
+	}
+
+	/**
+	 * Used to get the value selected by the given path as a
+	 * <code>double</code>.
+	 * 
+	 * @throws NumberFormatException
+	 *             if the value is not a number.
+	 */
+	public double getDoubleValue(int path) throws IndexOutOfBoundsException,
+			NumberFormatException {
+		if (types[path] != JSONToken.Type.NUMBER)
+			throw new NumberFormatException("Value of path [" + paths[path]
+					+ "] is not a number.");
+
+		return doubleValues[path];
+	}
+
+	/**
+	 * Used to get the value selected by the given path as a
+	 * <code>boolean</code>.
+	 * 
+	 * @return <code>true</code> if the value is <code>true</code>, otherwise
+	 *         <code>false</code>.
+	 */
+	public boolean getBooleanValue(int path) throws IndexOutOfBoundsException {
+		return (types[path] == JSONToken.Type.TRUE);
+	}
+
+	/**
+	 * Used to get the content of the value selected by the given path; the
+	 * decoded UTF-8 content of strings and the text of numbers that are not
+	 * integers fitting in a <code>long</code>.
+	 * 
+	 * @return the content of the value or <code>null</code> if the path was
+	 *         not found or selected any other kind of value.
+	 */
+	public byte[] getValue(int path) throws IndexOutOfBoundsException {
+		return values[path];
+	}
+
+	/**
+	 * Used to get the value selected by the given path as a string.
+	 * 
+	 * @return the string or <code>null</code> if the path was not found or
+	 *         did not select a string.
+	 */
+	public String getStringValue(int path) throws IndexOutOfBoundsException {
+		if (types[path] != JSONToken.Type.STRING)
+			return null;
+
+		try {
+			return new String(values[path], "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// Every JVM is required to support UTF-8.
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void selectValue(JSONTokenizer tokenizer, Node node,
+			JSONToken token) throws ParseException {
+		JSONToken.Type type = token.getType();
+
+		if (node.path >= 0)
+			store(node.path, token);
+
+		if (type == JSONToken.Type.OBJECT_START) {
+			if (node.keys == null)
+				tokenizer.skipContainer();
+			else
+				selectObject(tokenizer, node);
+		} else if (type == JSONToken.Type.ARRAY_START) {
+			if (node.elements == null)
+				tokenizer.skipContainer();
+			else
+				selectArray(tokenizer, node);
+		}
+	}
+
+	private void selectObject(JSONTokenizer tokenizer, Node node)
+			throws ParseException {
+		int remaining = node.keys.size();
+
+		try {
+			while (true) {
+				JSONToken token = (JSONToken) tokenizer.nextToken();
+
+				if (token == null || token.getType() != JSONToken.Type.KEY)
+					return;
+
+				Node child = node.findKey(token);
+
+				if (child == null || child.visited) {
+					tokenizer.skipValue();
+					continue;
+				}
+
+				child.visited = true;
+				selectValue(tokenizer, child, (JSONToken) tokenizer
+						.nextToken());
+
+				// Everything wanted from this object was found, skip the rest.
+				if (--remaining == 0) {
+					tokenizer.skipContainer();
+					return;
+				}
+			}
+		} finally {
+			node.clearVisited();
+		}
+	}
+
+	private void selectArray(JSONTokenizer tokenizer, Node node)
+			throws ParseException {
+		int depth = tokenizer.getDepth();
+		Node[] elements = node.elements;
+
+		for (int i = 0;; i++) {
+			// Everything wanted from this array was found, skip the rest.
+			if (i == elements.length) {
+				tokenizer.skipContainer();
+				return;
+			}
+
+			JSONToken token;
+
+			if (elements[i] == null) {
+				token = (JSONToken) tokenizer.skipValue();
+
+				// The end of this array rather than of a skipped element.
+				if (token == null
+						|| (token.getType() == JSONToken.Type.ARRAY_END
+								&& tokenizer.getDepth() < depth))
+					return;
+
+				continue;
+			}
+
+			token = (JSONToken) tokenizer.nextToken();
+
+			if (token == null || token.getType() == JSONToken.Type.ARRAY_END)
+				return;
+
+			selectValue(tokenizer, elements[i], token);
+		}
+	}
+
+	private void store(int path, JSONToken token) {
+		JSONToken.Type type = token.getType();
+		types[path] = type;
+
+		if (type == JSONToken.Type.STRING)
+			values[path] = token.getValue();
+		else if (type == JSONToken.Type.NUMBER) {
+			doubleValues[path] = token.getDoubleValue();
+
+			// Keep the text of numbers that don't fit in a long.
+			if (token.isIntegral() && isLong(token))
+				longValues[path] = token.getLongValue();
+			else
+				values[path] = token.getValue();
+		}
+	}
+
+	private static boolean isLong(JSONToken token) {
+		// Anything shorter than Long.MIN_VALUE can't overflow.
+		if (token.getLength() < 19)
+			return true;
+
+		try {
+			token.getLongValue();
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private void add(String path, int index) throws IllegalArgumentException {
+		if (path == null)
+			throw new IllegalArgumentException("paths[" + index
+					+ "] cannot be null");
+
+		Node node = root;
+		int length = path.length();
+		int i = 0;
+
+		while (i < length) {
+			char c = path.charAt(i);
+
+			if (c == '[') {
+				int close = path.indexOf(']', i);
+				int element;
+
+				try {
+					element = (close < 0 ? -1 : Integer.parseInt(path
+							.substring(i + 1, close)));
+				} catch (NumberFormatException e) {
+					element = -1;
+				}
+
+				if (element < 0)
+					throw new IllegalArgumentException("paths[" + index
+							+ "] [" + path + "] has an invalid array index");
+
+				node = node.element(element);
+				i = close + 1;
+
+				if (i < length && path.charAt(i) == '.')
+					i++;
+			} else {
+				int stop = i;
+
+				while (stop < length && path.charAt(stop) != '.'
+						&& path.charAt(stop) != '[')
+					stop++;
+
+				if (stop == i)
+					throw new IllegalArgumentException("paths[" + index
+							+ "] [" + path + "] has an empty key");
+
+				node = node.key(path.substring(i, stop));
+				i = (stop < length && path.charAt(stop) == '.' ? stop + 1
+						: stop);
+
+				if (i == length && path.charAt(length - 1) == '.')
+					throw new IllegalArgumentException("paths[" + index
+							+ "] [" + path + "] has an empty key");
+			}
+		}
+
+		if (node.path >= 0)
+			throw new IllegalArgumentException("paths[" + index + "] ["
+					+ path + "] duplicates paths[" + node.path + "]");
+
+		node.path = index;
+	}
+
+	/**
+	 * Class used to represent one step of one or more paths; its children are
+	 * the keys or array elements any path continues with.
+	 * 
+	 * @author Riyad Kalla (software@thebuzzmedia.com)
+	 */
+	private static class Node {
+		private int path = -1;
+		private boolean visited;
+
+		private List<Node> keys;
+		private byte[] key;
+		private Node[] elements;
+
+		Node key(String name) {
+			if (keys == null)
+				keys = new ArrayList<Node>(2);
+
+			byte[] bytes;
+
+			try {
+				bytes = name.getBytes("UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				// Every JVM is required to support UTF-8.
+				throw new RuntimeException(e);
+			}
+
+			for (int i = 0, size = keys.size(); i < size; i++) {
+				Node child = keys.get(i);
+
+				if (Arrays.equals(child.key, bytes))
+					return child;
+			}
+
+			Node child = new Node();
+			child.key = bytes;
+			keys.add(child);
+
+			return child;
+		}
+
+		Node element(int index) {
+			if (elements == null || elements.length <= index) {
+				Node[] grown = new Node[index + 1];
+
+				if (elements != null)
+					System.arraycopy(elements, 0, grown, 0, elements.length);
+
+				elements = grown;
+			}
+
+			if (elements[index] == null)
+				elements[index] = new Node();
+
+			return elements[index];
+		}
+
+		Node findKey(JSONToken token) {
+			byte[] source = token.getSource();
+			int index = token.getIndex();
+			int length = token.getLength();
+
+			outer: for (int i = 0, size = keys.size(); i < size; i++) {
+				byte[] key = keys.get(i).key;
+
+				if (key.length != length)
+					continue;
+
+				for (int j = 0; j < length; j++) {
+					if (key[j] != source[index + j])
+						continue outer;
+				}
+
+				return keys.get(i);
+			}
+
+			return null;
+		}
+
+		void clearVisited() {
+			for (int i = 0, size = keys.size(); i < size; i++)
+				keys.get(i).visited = false;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,371 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.json;
+
+import com.thebuzzmedia.common.parser.AbstractReusableToken;
+
+/**
+ * Token representing a single JSON token parsed by {@link JSONTokenizer}.
+ * <p/>
+ * The bounds of {@link Type#KEY} and {@link Type#STRING} tokens mark the raw
+ * content of the string within the tokenizer's buffer, excluding its quotes;
+ * escape sequences are only decoded when {@link #getValue()} is called. The
+ * bounds of all other tokens mark their literal text (e.g. <code>{</code> or
+ * <code>-1.5e3</code>).
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class JSONToken extends
+		AbstractReusableToken<JSONToken.Type, byte[], byte[]> {
+	public enum Type {
+		OBJECT_START, OBJECT_END, ARRAY_START, ARRAY_END, KEY, STRING, NUMBER,
+		TRUE, FALSE, NULL;
+	}
+
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+			1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+			1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	protected int depth;
+
+	public JSONToken() {
+		// default constructor
+	}
+
+	public JSONToken(Type type, byte[] source, int index, int length, int depth)
+			throws IllegalArgumentException {
+		super(type, source, index, length);
+
+		this.depth = depth;
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getName() + "@" + hashCode() + "[type="
+				+ (type == null ? "" : type) + ", depth=" + depth
+				+ ", position=" + position + ", index=" + index + ", length="
+				+ length + ", source=" + (source == null ? "" : source) + "]";
+	}
+
+	/**
+	 * Used to get the content of this token; for keys and strings, escape
+	 * sequences are decoded and the value is returned as UTF-8. Malformed
+	 * escape sequences are copied as-is.
+	 */
+	public byte[] getValue() {
+		int end = index + length;
+		int i = index;
+
+		// Fast path, nothing to decode so just copy the raw content.
+		if (type == Type.KEY || type == Type.STRING) {
+			while (i < end && source[i] != '\\')
+				i++;
+		} else
+			i = end;
+
+		if (i == end) {
+			byte[] value = new byte[length];
+
+			// Check if there is any data to copy.
+			if (length > 0)
+				System.arraycopy(source, index, value, 0, length);
+
+			return value;
+		}
+
+		// Decoded content is never longer than its escaped form.
+		byte[] tmp = new byte[length];
+		int vLength = i - index;
+		System.arraycopy(source, index, tmp, 0, vLength);
+
+		while (i < end) {
+			byte b = source[i];
+
+			if (b != '\\' || i + 1 == end) {
+				tmp[vLength++] = b;
+				i++;
+				continue;
+			}
+
+			byte e = source[i + 1];
+			int c;
+
+			switch (e) {
+			case '"':
+			case '\\':
+			case '/':
+				c = e;
+				break;
+			case 'b':
+				c = '\b';
+				break;
+			case 'f':
+				c = '\f';
+				break;
+			case 'n':
+				c = '\n';
+				break;
+			case 'r':
+				c = '\r';
+				break;
+			case 't':
+				c = '\t';
+				break;
+			case 'u':
+				c = decodeHex(i + 2, end);
+				break;
+			default:
+				c = -1;
+			}
+
+			// Malformed escapes are copied as-is.
+			if (c < 0) {
+				tmp[vLength++] = b;
+				i++;
+				continue;
+			}
+
+			if (e != 'u') {
+				tmp[vLength++] = (byte) c;
+				i += 2;
+				continue;
+			}
+
+			i += 6;
+
+			// Combine a surrogate pair split over two escapes.
+			if (c >= 0xD800 && c < 0xDC00 && i + 1 < end
+					&& source[i] == '\\' && source[i + 1] == 'u') {
+				int low = decodeHex(i + 2, end);
+
+				if (low >= 0xDC00 && low < 0xE000) {
+					c = 0x10000 + ((c - 0xD800) << 10) + (low - 0xDC00);
+					i += 6;
+				}
+			}
+
+			vLength = encodeUTF8(c, tmp, vLength);
+		}
+
+		byte[] value = new byte[vLength];
+		System.arraycopy(tmp, 0, value, 0, vLength);
+
+		return value;
+	}
+
+	/**
+	 * Used to determine if this is a {@link Type#NUMBER} without a fraction
+	 * or exponent.
+	 * 
+	 * @return <code>true</code> if this token is an integer, otherwise
+	 *         <code>false</code>.
+	 */
+	public boolean isIntegral() {
+		if (type != Type.NUMBER)
+			return false;
+
+		for (int i = index, end = index + length; i < end; i++) {
+			byte b = source[i];
+
+			if (b == '.' || b == 'e' || b == 'E')
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Used to decode this {@link Type#NUMBER} as a <code>long</code> without
+	 * allocating.
+	 * 
+	 * @return the decoded value.
+	 * 
+	 * @throws NumberFormatException
+	 *             if this token is not an integer (see {@link #isIntegral()})
+	 *             that fits in a <code>long</code>.
+	 */
+	public long getLongValue() throws NumberFormatException {
+		if (type != Type.NUMBER)
+			throw new NumberFormatException("Token type [" + type
+					+ "] is not a number.");
+
+		int i = index;
+		int end = index + length;
+		boolean negative = (i < end && source[i] == '-');
+
+		if (negative)
+			i++;
+
+		// Accumulate negatively so Long.MIN_VALUE can be represented.
+		long limit = (negative ? Long.MIN_VALUE : -Long.MAX_VALUE);
+		long value = 0;
+
+		for (; i < end; i++) {
+			int digit = source[i] - '0';
+
+			if (digit < 0 || digit > 9 || value < limit / 10
+					|| (value *= 10) < limit + digit)
+				throw new NumberFormatException("Token content is not an "
+						+ "integer that fits in a long.");
+
+			value -= digit;
+		}
+
+		return (negative ? value : -value);
+	}
+
+	/**
+	 * Used to decode this {@link Type#NUMBER} as a <code>double</code>.
+	 * <p/>
+	 * Numbers with at most 15 significant digits and a small exponent (the
+	 * vast majority) are decoded exactly without allocating; others fall
+	 * back to {@link Double#parseDouble(String)}.
+	 * 
+	 * @return the decoded value.
+	 * 
+	 * @throws NumberFormatException
+	 *             if this token is not a number.
+	 */
+	public double getDoubleValue() throws NumberFormatException {
+		if (type != Type.NUMBER)
+			throw new NumberFormatException("Token type [" + type
+					+ "] is not a number.");
+
+		int i = index;
+		int end = index + length;
+		boolean negative = (i < end && source[i] == '-');
+
+		if (negative)
+			i++;
+
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+
+		for (; i < end && source[i] >= '0' && source[i] <= '9'; i++) {
+			mantissa = mantissa * 10 + (source[i] - '0');
+
+			if (mantissa != 0)
+				digits++;
+		}
+
+		if (i < end && source[i] == '.') {
+			for (i++; i < end && source[i] >= '0' && source[i] <= '9'; i++) {
+				mantissa = mantissa * 10 + (source[i] - '0');
+				exponent--;
+
+				if (mantissa != 0)
+					digits++;
+			}
+		}
+
+		if (i < end && (source[i] == 'e' || source[i] == 'E')) {
+			boolean negativeExponent = (++i < end && source[i] == '-');
+
+			if (i < end && (source[i] == '-' || source[i] == '+'))
+				i++;
+
+			int e = 0;
+
+			// Saturate, anything this big is out of range anyway.
+			for (; i < end && source[i] >= '0' && source[i] <= '9'; i++)
+				e = Math.min(e * 10 + (source[i] - '0'), 100000);
+
+			exponent += (negativeExponent ? -e : e);
+		}
+
+		/*
+		 * Both the mantissa and the power of ten are exact doubles, so one
+		 * correctly rounded multiply or divide gives the exact result.
+		 */
+		if (digits <= 15 && exponent >= -22 && exponent <= 22) {
+			double value = (exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent]
+					: mantissa * POWERS_OF_TEN[exponent]);
+
+			return (negative ? -value : value);
+		}
+
+		char[] chars = new char[length];
+
+		for (int j = 0; j < length; j++)
+			chars[j] = (char) source[index + j];
+
+		return Double.parseDouble(new String(chars));
+	}
+
+	/**
+	 * Used to get the nesting depth of this token; tokens of a top-level
+	 * value have a depth of <code>0</code> and the start and end of a
+	 * container share the depth of the container.
+	 * 
+	 * @return the nesting depth of this token.
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	protected void setValue(Type type, byte[] source, int index, int length,
+			int depth) throws IllegalArgumentException {
+		super.setValue(type, source, index, length);
+
+		this.depth = depth;
+	}
+
+	private int decodeHex(int i, int end) {
+		if (i + 4 > end)
+			return -1;
+
+		int c = 0;
+
+		for (int stop = i + 4; i < stop; i++) {
+			int b = source[i];
+			int digit;
+
+			if (b >= '0' && b <= '9')
+				digit = b - '0';
+			else if (b >= 'a' && b <= 'f')
+				digit = b - 'a' + 10;
+			else if (b >= 'A' && b <= 'F')
+				digit = b - 'A' + 10;
+			else
+				return -1;
+
+			c = (c << 4) | digit;
+		}
+
+		return c;
+	}
+
+	private static int encodeUTF8(int c, byte[] dest, int index) {
+		if (c < 0x80)
+			dest[index++] = (byte) c;
+		else if (c < 0x800) {
+			dest[index++] = (byte) (0xC0 | (c >> 6));
+			dest[index++] = (byte) (0x80 | (c & 0x3F));
+		} else if (c < 0x10000) {
+			dest[index++] = (byte) (0xE0 | (c >> 12));
+			dest[index++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			dest[index++] = (byte) (0x80 | (c & 0x3F));
+		} else {
+			dest[index++] = (byte) (0xF0 | (c >> 18));
+			dest[index++] = (byte) (0x80 | ((c >> 12) & 0x3F));
+			dest[index++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			dest[index++] = (byte) (0x80 | (c & 0x3F));
+		}
+
+		return index;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,746 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.json;
+
+import com.thebuzzmedia.common.parser.AbstractTokenizer;
+import com.thebuzzmedia.common.parser.IPullParser;
+import com.thebuzzmedia.common.parser.IToken;
+import com.thebuzzmedia.common.parser.ParseException;
+import com.thebuzzmedia.common.util.ArrayUtils;
+
+/**
+ * Tokenizer used to parse JSON (RFC 4627) content, including a series of
+ * top-level values such as JSON lines, into a series of {@link JSONToken}s.
+ * <p/>
+ * Parsing is done in two stages. Stage 1 classifies the buffer 64 bytes at a
+ * time into bitmasks (quotes, backslashes, operators and whitespace) and uses
+ * bitwise arithmetic on them to find escaped characters, the regions inside
+ * strings and the start of every scalar, producing an index of the
+ * structural positions of the buffer without any per-byte branching. Stage 2
+ * walks that index to validate the structure of the content and return
+ * typed tokens; the content of strings is never scanned, their closing quote
+ * is the next entry in the index.
+ * <p/>
+ * The tokenizer can also be used as an {@link IPullParser} whose events are
+ * the types of the tokens.
+ * <p/>
+ * Strings are not checked for valid UTF-8 or escape sequences. When error
+ * recovery is turned on, malformed content is skipped up to the beginning of
+ * the next line, which suits JSON lines.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class JSONTokenizer extends
+		AbstractTokenizer<byte[], JSONToken.Type, byte[], byte[]> implements
+		IPullParser<byte[], JSONToken.Type, JSONToken.Type, byte[], byte[]> {
+	private static final byte QUOTE = 1;
+	private static final byte BACKSLASH = 2;
+	private static final byte OPERATOR = 4;
+	private static final byte WHITESPACE = 8;
+
+	private static final byte[] CLASSES = new byte[256];
+	private static final long EVEN_BITS = 0x5555555555555555L;
+
+	/*
+	 * What the structure of the content allows to come next.
+	 */
+	private static final int VALUE = 0;
+	private static final int VALUE_OR_END = 1;
+	private static final int KEY = 2;
+	private static final int KEY_OR_END = 3;
+	private static final int COLON = 4;
+	private static final int COMMA_OR_END = 5;
+
+	private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+	private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+	private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+
+	static {
+		CLASSES['"'] = QUOTE;
+		CLASSES['\\'] = BACKSLASH;
+		CLASSES['{'] = OPERATOR;
+		CLASSES['}'] = OPERATOR;
+		CLASSES['['] = OPERATOR;
+		CLASSES[']'] = OPERATOR;
+		CLASSES[':'] = OPERATOR;
+		CLASSES[','] = OPERATOR;
+		CLASSES[' '] = WHITESPACE;
+		CLASSES['\t'] = WHITESPACE;
+		CLASSES['\r'] = WHITESPACE;
+		CLASSES['\n'] = WHITESPACE;
+	}
+
+	/*
+	 * Stage 1: queue of structural indices found so far, how far the buffer
+	 * has been indexed (and at which buffer position) and the state carried
+	 * from the end of the last indexed block into the next one.
+	 */
+	private int[] structurals;
+	private int sHead;
+	private int sTail;
+	private int indexedEnd;
+	private long indexedPosition;
+	private long prevInString;
+	private long prevEscaped;
+	private long prevScalar;
+
+	/*
+	 * Stage 2: where in the buffer it continues from, what it expects next
+	 * and the stack of open containers (a set bit is an object).
+	 */
+	private int scanIndex = ArrayUtils.INVALID_INDEX;
+	private int nextIndex;
+	private int expect;
+	private int depth;
+	private long[] containers = new long[1];
+
+	/*
+	 * If the next value should be skipped and, while one is, the depth its
+	 * content ends at.
+	 */
+	private boolean skipRequested;
+	private int skipDepth = ArrayUtils.INVALID_INDEX;
+
+	private JSONToken token;
+	private JSONToken reusableToken = new JSONToken();
+
+	public JSONTokenizer() {
+		this(false);
+	}
+
+	public JSONTokenizer(boolean reuseToken) {
+		this(reuseToken, DEFAULT_BUFFER_CAPACITY);
+	}
+
+	public JSONTokenizer(boolean reuseToken, int bufferCapacity)
+			throws IllegalArgumentException {
+		super(bufferCapacity);
+
+		this.reuseToken = reuseToken;
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+
+		token = null;
+		scanIndex = ArrayUtils.INVALID_INDEX;
+		expect = VALUE;
+		depth = 0;
+		skipRequested = false;
+		skipDepth = ArrayUtils.INVALID_INDEX;
+	}
+
+	/**
+	 * Used to parse the next token and get its type.
+	 * 
+	 * @return the type of the next token or <code>null</code> if there are no
+	 *         more tokens.
+	 * 
+	 * @throws ParseException
+	 *             if the content is malformed.
+	 * 
+	 * @see #getToken()
+	 */
+	public JSONToken.Type nextEvent() throws ParseException {
+		IToken<JSONToken.Type, byte[], byte[]> token = nextToken();
+		return (token == null ? null : token.getType());
+	}
+
+	/**
+	 * Used to get the token parsed by the last call to {@link #nextEvent()}
+	 * (or {@link #nextToken()}).
+	 * 
+	 * @return the last token parsed or <code>null</code> if there is none.
+	 */
+	public IToken<JSONToken.Type, byte[], byte[]> getToken() {
+		return token;
+	}
+
+	/**
+	 * Used to skip the next value without creating tokens for (or
+	 * validating) anything inside it. The content of a container is jumped
+	 * over by balancing the brackets in the structural index; strings and
+	 * scalars within it are never looked at.
+	 * <p/>
+	 * If the next token is the end of the enclosing container there is no
+	 * value to skip and that token is returned instead. Skipping is only
+	 * supported when tokens are pulled from the tokenizer, not while it is
+	 * being fed.
+	 * 
+	 * @return the last token of the skipped value (the end of a container or
+	 *         the scalar itself) or <code>null</code> if there are no more
+	 *         tokens.
+	 * 
+	 * @throws ParseException
+	 *             if the content is malformed.
+	 */
+	public IToken<JSONToken.Type, byte[], byte[]> skipValue()
+			throws ParseException {
+		skipRequested = true;
+
+		try {
+			return nextToken();
+		} finally {
+			skipRequested = false;
+		}
+	}
+
+	/**
+	 * Used to skip the rest of the innermost open container, the same way
+	 * {@link #skipValue()} skips a container.
+	 * 
+	 * @return the end token of the container or <code>null</code> if there
+	 *         are no more tokens.
+	 * 
+	 * @throws IllegalStateException
+	 *             if no container is open.
+	 * @throws ParseException
+	 *             if the content is malformed.
+	 */
+	public IToken<JSONToken.Type, byte[], byte[]> skipContainer()
+			throws IllegalStateException, ParseException {
+		if (depth == 0)
+			throw new IllegalStateException("No container is open.");
+
+		skipDepth = depth - 1;
+		return nextToken();
+	}
+
+	/**
+	 * Used to get the nesting depth of the content following the last token.
+	 * 
+	 * @return the number of containers that are currently open.
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	@Override
+	protected byte[] createBuffer(int capacity) throws IllegalArgumentException {
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity [" + capacity
+					+ "] must be >= 0");
+
+		return new byte[capacity];
+	}
+
+	@Override
+	protected IToken<JSONToken.Type, byte[], byte[]> parseTokenImpl(int index,
+			int length) throws ParseException {
+		/*
+		 * Indices are only valid until the buffer is compacted (or bIndex is
+		 * moved by error recovery); re-index from bIndex, which is always
+		 * between tokens and so outside of any string.
+		 */
+		if (index != scanIndex || bPosition != indexedPosition)
+			resetIndex(index);
+
+		boolean endOfInput = isEndOfInput();
+		int end = index + length;
+
+		token = null;
+
+		while (true) {
+			if (sHead == sTail) {
+				if (indexedEnd < end) {
+					sHead = sTail = 0;
+					indexStructurals(end);
+					continue;
+				}
+
+				if (endOfInput && (depth > 0 || expect != VALUE))
+					throw malformed("Unexpected end of input.", end);
+
+				return null;
+			}
+
+			int sIndex = structurals[sHead];
+			byte b = buffer[sIndex];
+
+			// The closing quote is the next structural, if indexed yet.
+			if (b == '"' && sHead + 1 == sTail) {
+				if (indexedEnd < end) {
+					compactQueue();
+					indexStructurals(end);
+					continue;
+				}
+
+				if (endOfInput)
+					throw malformed("Unterminated string.", sIndex);
+
+				return needData(sIndex, end);
+			}
+
+			// Jump over the content of the value being skipped.
+			if (skipDepth != ArrayUtils.INVALID_INDEX) {
+				switch (b) {
+				case '{':
+				case '[':
+					depth++;
+					skip(sIndex + 1);
+					break;
+
+				case '}':
+				case ']':
+					if (--depth == skipDepth) {
+						skipDepth = ArrayUtils.INVALID_INDEX;
+						createToken(b == '}' ? JSONToken.Type.OBJECT_END
+								: JSONToken.Type.ARRAY_END, sIndex, 1, 1);
+						valueParsed();
+						return token;
+					}
+
+					skip(sIndex + 1);
+					break;
+
+				case '"':
+					sHead++;
+					skip(structurals[sHead] + 1);
+					break;
+
+				case ':':
+				case ',':
+					skip(sIndex + 1);
+					break;
+
+				default:
+					/*
+					 * Scalars are passed over without finding their end; if
+					 * the buffer is compacted before the next structural,
+					 * re-indexing finds the same scalar again.
+					 */
+					sHead++;
+					bIndex = scanIndex = sIndex;
+				}
+
+				continue;
+			}
+
+			switch (b) {
+			case '{':
+			case '[':
+				checkValue(sIndex);
+
+				if (skipRequested) {
+					push(b == '{');
+					skipDepth = depth - 1;
+					skip(sIndex + 1);
+					break;
+				}
+
+				createToken(b == '{' ? JSONToken.Type.OBJECT_START
+						: JSONToken.Type.ARRAY_START, sIndex, 1, 1);
+
+				push(b == '{');
+				expect = (b == '{' ? KEY_OR_END : VALUE_OR_END);
+				return token;
+
+			case '}':
+			case ']':
+				boolean object = (b == '}');
+				int emptyExpect = (object ? KEY_OR_END : VALUE_OR_END);
+
+				if (depth == 0 || isObject() != object
+						|| (expect != COMMA_OR_END && expect != emptyExpect))
+					throw malformed("Unexpected '" + (char) b + "'.", sIndex);
+
+				depth--;
+				createToken(object ? JSONToken.Type.OBJECT_END
+						: JSONToken.Type.ARRAY_END, sIndex, 1, 1);
+				valueParsed();
+				return token;
+
+			case ':':
+				if (expect != COLON)
+					throw malformed("Unexpected ':'.", sIndex);
+
+				expect = VALUE;
+				skip(sIndex + 1);
+				break;
+
+			case ',':
+				if (expect != COMMA_OR_END)
+					throw malformed("Unexpected ','.", sIndex);
+
+				expect = (isObject() ? KEY : VALUE);
+				skip(sIndex + 1);
+				break;
+
+			case '"':
+				int qIndex = structurals[sHead + 1];
+				boolean key = (expect == KEY || expect == KEY_OR_END);
+
+				if (!key)
+					checkValue(sIndex);
+
+				createToken(key ? JSONToken.Type.KEY : JSONToken.Type.STRING,
+						sIndex + 1, qIndex - sIndex - 1, 2);
+
+				if (key)
+					expect = COLON;
+				else
+					valueParsed();
+
+				return token;
+
+			default:
+				int eIndex = sIndex + 1;
+
+				while (eIndex < end
+						&& (CLASSES[buffer[eIndex] & 0xFF] & ~BACKSLASH) == 0)
+					eIndex++;
+
+				if (eIndex == end && !endOfInput)
+					return needData(sIndex, end);
+
+				checkValue(sIndex);
+				createToken(typeOf(sIndex, eIndex), sIndex, eIndex - sIndex, 1);
+				valueParsed();
+				return token;
+			}
+		}
+	}
+
+	@Override
+	protected void advanceIndex(IToken<JSONToken.Type, byte[], byte[]> token) {
+		bIndex = scanIndex = nextIndex;
+	}
+
+	/**
+	 * Overridden to only allow checkpoints between top-level values.
+	 */
+	@Override
+	protected boolean isCheckpointSafe() {
+		return (depth == 0 && expect == VALUE);
+	}
+
+	/**
+	 * Overridden to record what is expected next and the stack of open
+	 * containers; always empty at a checkpoint, but not necessarily for a
+	 * saved {@link com.thebuzzmedia.common.parser.ParserState}.
+	 */
+	@Override
+	protected long[] getCheckpointState() {
+		// Containers inside a value being skipped were never pushed.
+		int pushed = (skipDepth == ArrayUtils.INVALID_INDEX ? depth
+				: skipDepth);
+		int words = (pushed + 63) >>> 6;
+		long[] state = new long[3 + words];
+
+		state[0] = expect;
+		state[1] = depth;
+		state[2] = skipDepth;
+		System.arraycopy(containers, 0, state, 3, words);
+
+		return state;
+	}
+
+	@Override
+	protected void restoreCheckpointState(long[] state) {
+		expect = VALUE;
+		depth = 0;
+		skipDepth = ArrayUtils.INVALID_INDEX;
+		scanIndex = ArrayUtils.INVALID_INDEX;
+
+		if (state == null || state.length < 3 || state[1] < 0
+				|| state[2] >= state[1])
+			return;
+
+		int pushed = (int) (state[2] < 0 ? state[1] : state[2]);
+		int words = (pushed + 63) >>> 6;
+
+		if (state.length < 3 + words)
+			return;
+
+		if (containers.length < words)
+			containers = new long[words];
+
+		System.arraycopy(state, 3, containers, 0, words);
+		expect = (int) state[0];
+		depth = (int) state[1];
+		skipDepth = (int) state[2];
+	}
+
+	@Override
+	protected int indexOfRecoveryPoint(int index, int length) {
+		for (int end = index + length; index < end; index++) {
+			if (buffer[index] == '\n') {
+				expect = VALUE;
+				depth = 0;
+				skipDepth = ArrayUtils.INVALID_INDEX;
+				scanIndex = ArrayUtils.INVALID_INDEX;
+				return index + 1;
+			}
+		}
+
+		return ArrayUtils.INVALID_INDEX;
+	}
+
+	/**
+	 * Stage 1; used to add the structural indices of the buffer between the
+	 * end of what was already indexed and <code>end</code> to the queue.
+	 */
+	private void indexStructurals(int end) {
+		byte[] buffer = this.buffer;
+		int[] structurals = this.structurals;
+		int tail = sTail;
+
+		for (int p = indexedEnd; p < end; p += 64) {
+			int n = Math.min(64, end - p);
+			long quote = 0;
+			long backslash = 0;
+			long operator = 0;
+			long whitespace = 0;
+
+			// Classify the block into one bitmask per class of byte.
+			for (int i = 0; i < n; i++) {
+				int c = CLASSES[buffer[p + i] & 0xFF];
+
+				quote |= (long) (c & QUOTE) << i;
+				backslash |= (long) ((c >>> 1) & 1) << i;
+				operator |= (long) ((c >>> 2) & 1) << i;
+				whitespace |= (long) ((c >>> 3) & 1) << i;
+			}
+
+			long valid = (n == 64 ? -1L : (1L << n) - 1);
+
+			/*
+			 * Find the escaped characters; a run of backslashes escapes the
+			 * character following it only if the run has an odd length.
+			 * Adding the start of every run beginning on an odd bit to the
+			 * run itself carries through it, flipping the parity of the
+			 * runs that begin on odd bits.
+			 */
+			backslash &= ~prevEscaped;
+
+			long followsEscape = (backslash << 1) | prevEscaped;
+			long oddStarts = backslash & ~EVEN_BITS & ~followsEscape;
+			long evenStarts = oddStarts + backslash;
+			long escaped = (EVEN_BITS ^ (evenStarts << 1)) & followsEscape;
+
+			prevEscaped = ((backslash & ~escaped) >>> (n - 1)) & 1;
+
+			/*
+			 * The prefix XOR of the unescaped quotes sets every bit from an
+			 * opening quote up to (not including) its closing quote.
+			 */
+			quote &= ~escaped & valid;
+
+			long inString = quote;
+			inString ^= inString << 1;
+			inString ^= inString << 2;
+			inString ^= inString << 4;
+			inString ^= inString << 8;
+			inString ^= inString << 16;
+			inString ^= inString << 32;
+			inString ^= prevInString;
+
+			prevInString = -((inString >>> (n - 1)) & 1);
+
+			// Scalars start wherever a run of non-structural bytes does.
+			long scalar = ~(operator | whitespace | quote | inString) & valid;
+			long scalarStarts = scalar & ~((scalar << 1) | prevScalar);
+
+			prevScalar = (scalar >>> (n - 1)) & 1;
+
+			long bits = ((operator & ~inString) | quote | scalarStarts)
+					& valid;
+
+			while (bits != 0) {
+				structurals[tail++] = p + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+			}
+		}
+
+		sTail = tail;
+		indexedEnd = end;
+	}
+
+	private void resetIndex(int index) {
+		int capacity = buffer.length;
+
+		if (structurals == null || structurals.length < capacity)
+			structurals = new int[capacity];
+
+		sHead = 0;
+		sTail = 0;
+		scanIndex = index;
+		indexedEnd = index;
+		indexedPosition = bPosition;
+		prevInString = 0;
+		prevEscaped = 0;
+		prevScalar = 0;
+	}
+
+	private void compactQueue() {
+		int count = sTail - sHead;
+
+		System.arraycopy(structurals, sHead, structurals, 0, count);
+		sHead = 0;
+		sTail = count;
+	}
+
+	private IToken<JSONToken.Type, byte[], byte[]> needData(int sIndex,
+			int end) throws ParseException {
+		// A token filling the whole buffer can never be completed.
+		if (sIndex == 0 && end == buffer.length)
+			throw malformed("Token exceeds the buffer capacity of "
+					+ buffer.length + " bytes.", sIndex);
+
+		// Keep the partial token, but not the whitespace before it.
+		bIndex = scanIndex = sIndex;
+		return null;
+	}
+
+	private void skip(int index) {
+		sHead++;
+		bIndex = scanIndex = index;
+	}
+
+	private void checkValue(int sIndex) throws ParseException {
+		if (expect == VALUE || expect == VALUE_OR_END)
+			return;
+
+		String expected;
+
+		if (expect == COLON)
+			expected = "':'";
+		else if (expect == COMMA_OR_END)
+			expected = "',' or the end of the "
+					+ (isObject() ? "object" : "array");
+		else
+			expected = "a key";
+
+		throw malformed("Unexpected '" + (char) buffer[sIndex]
+				+ "'; expected " + expected + ".", sIndex);
+	}
+
+	private void valueParsed() {
+		expect = (depth == 0 ? VALUE : COMMA_OR_END);
+	}
+
+	private boolean isObject() {
+		int d = depth - 1;
+		return (d >= 0 && (containers[d >>> 6] & (1L << d)) != 0);
+	}
+
+	private void push(boolean object) {
+		if ((depth >>> 6) == containers.length) {
+			long[] grown = new long[containers.length * 2];
+			System.arraycopy(containers, 0, grown, 0, containers.length);
+			containers = grown;
+		}
+
+		if (object)
+			containers[depth >>> 6] |= (1L << depth);
+		else
+			containers[depth >>> 6] &= ~(1L << depth);
+
+		depth++;
+	}
+
+	private void createToken(JSONToken.Type type, int tsIndex, int length,
+			int consumed) {
+		JSONToken token = (reuseToken ? reusableToken : new JSONToken());
+		token.setValue(type, buffer, tsIndex, length, depth);
+
+		this.token = token;
+		skipRequested = false;
+		sHead += consumed;
+
+		// Strings end after their closing quote.
+		nextIndex = tsIndex + length + (consumed == 2 ? 1 : 0);
+	}
+
+	private JSONToken.Type typeOf(int tsIndex, int teIndex)
+			throws ParseException {
+		byte b = buffer[tsIndex];
+
+		if (b == 't' && matches(TRUE, tsIndex, teIndex))
+			return JSONToken.Type.TRUE;
+		else if (b == 'f' && matches(FALSE, tsIndex, teIndex))
+			return JSONToken.Type.FALSE;
+		else if (b == 'n' && matches(NULL, tsIndex, teIndex))
+			return JSONToken.Type.NULL;
+		else if (isNumber(tsIndex, teIndex))
+			return JSONToken.Type.NUMBER;
+
+		throw malformed("Invalid literal or number.", tsIndex);
+	}
+
+	private boolean matches(byte[] literal, int tsIndex, int teIndex) {
+		if (teIndex - tsIndex != literal.length)
+			return false;
+
+		for (int i = 0; i < literal.length; i++) {
+			if (buffer[tsIndex + i] != literal[i])
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Used to check the content against the JSON number grammar:
+	 * <code>-?(0|[1-9][0-9]*)(.[0-9]+)?([eE][+-]?[0-9]+)?</code>
+	 */
+	private boolean isNumber(int i, int end) {
+		byte[] buffer = this.buffer;
+
+		if (i < end && buffer[i] == '-')
+			i++;
+
+		if (i == end || !isDigit(buffer[i]))
+			return false;
+
+		// No leading zeros.
+		if (buffer[i++] != '0') {
+			while (i < end && isDigit(buffer[i]))
+				i++;
+		}
+
+		if (i < end && buffer[i] == '.') {
+			if (++i == end || !isDigit(buffer[i]))
+				return false;
+
+			while (i < end && isDigit(buffer[i]))
+				i++;
+		}
+
+		if (i < end && (buffer[i] == 'e' || buffer[i] == 'E')) {
+			if (++i < end && (buffer[i] == '+' || buffer[i] == '-'))
+				i++;
+
+			if (i == end || !isDigit(buffer[i]))
+				return false;
+
+			while (i < end && isDigit(buffer[i]))
+				i++;
+		}
+
+		return (i == end);
+	}
+
+	private static boolean isDigit(byte b) {
+		return (b >= '0' && b <= '9');
+	}
+
+	private ParseException malformed(String message, int index) {
+		return createParseException(ParseException.Type.MALFORMED, message,
+				index);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,132 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.xml;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Table used by {@link XMLTokenizer} to turn the bytes of element and
+ * attribute names into {@link String}s, creating each distinct name only
+ * once; after that, looking a name up costs a hash of its bytes and a
+ * comparison, with no allocation.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+class NameTable {
+	private static final int INITIAL_CAPACITY = 64;
+
+	private int size;
+	private int[] hashes;
+	private byte[][] keys;
+	private String[] names;
+
+	NameTable() {
+		clear();
+	}
+
+	void clear() {
+		size = 0;
+		hashes = new int[INITIAL_CAPACITY];
+		keys = new byte[INITIAL_CAPACITY][];
+		names = new String[INITIAL_CAPACITY];
+	}
+
+	String intern(byte[] buffer, int index, int length) {
+		int hash = 0;
+
+		for (int i = index, end = index + length; i < end; i++)
+			hash = 31 * hash + buffer[i];
+
+		int mask = keys.length - 1;
+
+		// Linear probing; the table is never more than half full.
+		for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+			byte[] key = keys[slot];
+
+			if (key == null)
+				return add(slot, hash, buffer, index, length);
+
+			if (hashes[slot] == hash && equals(key, buffer, index, length))
+				return names[slot];
+		}
+	}
+
+	private String add(int slot, int hash, byte[] buffer, int index,
+			int length) {
+		byte[] key = new byte[length];
+		System.arraycopy(buffer, index, key, 0, length);
+
+		String name;
+
+		try {
+			name = new String(key, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// Every JVM is required to support UTF-8.
+			throw new RuntimeException(e);
+		}
+
+		hashes[slot] = hash;
+		keys[slot] = key;
+		names[slot] = name;
+
+		if (++size * 2 > keys.length)
+			grow();
+
+		return name;
+	}
+
+	private void grow() {
+		int[] oldHashes = hashes;
+		byte[][] oldKeys = keys;
+		String[] oldNames = names;
+		int mask = oldKeys.length * 2 - 1;
+
+		hashes = new int[oldKeys.length * 2];
+		keys = new byte[oldKeys.length * 2][];
+		names = new String[oldKeys.length * 2];
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == null)
+				continue;
+
+			int slot = mix(oldHashes[i]) & mask;
+
+			while (keys[slot] != null)
+				slot = (slot + 1) & mask;
+
+			hashes[slot] = oldHashes[i];
+			keys[slot] = oldKeys[i];
+			names[slot] = oldNames[i];
+		}
+	}
+
+	private static int mix(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean equals(byte[] key, byte[] buffer, int index,
+			int length) {
+		if (key.length != length)
+			return false;
+
+		for (int i = 0; i < length; i++) {
+			if (key[i] != buffer[index + i])
+				return false;
+		}
+
+		return true;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,293 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.xml;
+
+import com.thebuzzmedia.common.parser.AbstractReusableToken;
+
+/**
+ * Token representing a single markup construct parsed by
+ * {@link XMLTokenizer}.
+ * <p/>
+ * The bounds of a token mark the following content within the tokenizer's
+ * buffer:
+ * <ul>
+ * <li>{@link Type#START_TAG}, {@link Type#END_TAG}: the name of the element.</li>
+ * <li>{@link Type#ATTRIBUTE}: the value of the attribute, excluding its
+ * quotes; the bounds of its name are available from {@link #getNameIndex()}
+ * and {@link #getNameLength()}.</li>
+ * <li>{@link Type#TEXT}: the raw character data (or the content of a CDATA
+ * section).</li>
+ * <li>{@link Type#COMMENT}: the content between <code>&lt;!--</code> and
+ * <code>--&gt;</code>.</li>
+ * <li>{@link Type#PROCESSING_INSTRUCTION}: the content following the target,
+ * up to <code>?&gt;</code>.</li>
+ * <li>{@link Type#DOCTYPE}: the content between <code>&lt;!</code> and the
+ * closing <code>&gt;</code>.</li>
+ * </ul>
+ * Entity and character references are only decoded when {@link #getValue()}
+ * is called.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class XMLToken extends
+		AbstractReusableToken<XMLToken.Type, byte[], byte[]> {
+	public enum Type {
+		START_TAG, ATTRIBUTE, TEXT, END_TAG, COMMENT, PROCESSING_INSTRUCTION,
+		DOCTYPE;
+	}
+
+	/**
+	 * Longest reference, including <code>&amp;</code> and <code>;</code>,
+	 * that is decoded.
+	 */
+	static final int MAX_REFERENCE_LENGTH = 16;
+
+	protected String name;
+	protected int nameIndex;
+	protected int nameLength;
+	protected boolean cdata;
+
+	public XMLToken() {
+		// default constructor
+	}
+
+	public XMLToken(Type type, byte[] source, int index, int length,
+			String name, int nameIndex, int nameLength)
+			throws IllegalArgumentException {
+		super(type, source, index, length);
+
+		this.name = name;
+		this.nameIndex = nameIndex;
+		this.nameLength = nameLength;
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass().getName() + "@" + hashCode() + "[type="
+				+ (type == null ? "" : type) + ", name="
+				+ (name == null ? "" : name) + ", position=" + position
+				+ ", index=" + index + ", length=" + length + ", source="
+				+ (source == null ? "" : source) + "]";
+	}
+
+	/**
+	 * Used to get the content of this token; for text (outside of a CDATA
+	 * section) and attribute values, the predefined entities and character
+	 * references are decoded and the value is returned as UTF-8. Unknown or
+	 * malformed references are copied as-is.
+	 */
+	public byte[] getValue() {
+		int end = index + length;
+		int i = index;
+
+		// Fast path, nothing to decode so just copy the raw content.
+		if ((type == Type.TEXT && !cdata) || type == Type.ATTRIBUTE) {
+			while (i < end && source[i] != '&')
+				i++;
+		} else
+			i = end;
+
+		if (i == end) {
+			byte[] value = new byte[length];
+
+			// Check if there is any data to copy.
+			if (length > 0)
+				System.arraycopy(source, index, value, 0, length);
+
+			return value;
+		}
+
+		// Decoded content is never longer than its encoded form.
+		byte[] tmp = new byte[length];
+		int vLength = i - index;
+		System.arraycopy(source, index, tmp, 0, vLength);
+
+		while (i < end) {
+			byte b = source[i];
+			int semicolon = (b == '&' ? indexOfSemicolon(i + 1, end) : -1);
+			int c = (semicolon == -1 ? -1 : decodeReference(i + 1, semicolon));
+
+			// Unknown references are copied as-is.
+			if (c < 0) {
+				tmp[vLength++] = b;
+				i++;
+				continue;
+			}
+
+			vLength = encodeUTF8(c, tmp, vLength);
+			i = semicolon + 1;
+		}
+
+		byte[] value = new byte[vLength];
+		System.arraycopy(tmp, 0, value, 0, vLength);
+
+		return value;
+	}
+
+	/**
+	 * Used to get the name of the element (for tags), attribute or target
+	 * (for processing instructions) of this token.
+	 * <p/>
+	 * Names are created once per document by the tokenizer, so the same name
+	 * always returns the same {@link String} instance while a document is
+	 * being parsed.
+	 * 
+	 * @return the name of this token or <code>null</code> if it has none.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Used to get the index of the name of this token within the source.
+	 * 
+	 * @return the index of the name of this token.
+	 */
+	public int getNameIndex() {
+		return nameIndex;
+	}
+
+	/**
+	 * Used to get the length of the name of this token within the source.
+	 * 
+	 * @return the length of the name of this token.
+	 */
+	public int getNameLength() {
+		return nameLength;
+	}
+
+	/**
+	 * Used to determine if this {@link Type#TEXT} token is the content of a
+	 * CDATA section, which is never decoded.
+	 * 
+	 * @return <code>true</code> if this token is the content of a CDATA
+	 *         section, otherwise <code>false</code>.
+	 */
+	public boolean isCData() {
+		return cdata;
+	}
+
+	protected void setValue(Type type, byte[] source, int index, int length,
+			String name, int nameIndex, int nameLength, boolean cdata)
+			throws IllegalArgumentException {
+		super.setValue(type, source, index, length);
+
+		this.name = name;
+		this.nameIndex = nameIndex;
+		this.nameLength = nameLength;
+		this.cdata = cdata;
+	}
+
+	private int indexOfSemicolon(int i, int end) {
+		int stop = Math.min(end, i + MAX_REFERENCE_LENGTH - 1);
+
+		for (; i < stop; i++) {
+			if (source[i] == ';')
+				return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Used to decode the reference between <code>&amp;</code> and
+	 * <code>;</code>, returning the code point it represents or
+	 * <code>-1</code> if it is unknown or malformed.
+	 */
+	private int decodeReference(int i, int end) {
+		int length = end - i;
+
+		if (length < 2)
+			return -1;
+
+		if (source[i] != '#') {
+			if (matches("lt", i, length))
+				return '<';
+			else if (matches("gt", i, length))
+				return '>';
+			else if (matches("amp", i, length))
+				return '&';
+			else if (matches("quot", i, length))
+				return '"';
+			else if (matches("apos", i, length))
+				return '\'';
+
+			return -1;
+		}
+
+		boolean hex = (source[i + 1] == 'x' || source[i + 1] == 'X');
+		int c = 0;
+
+		i += (hex ? 2 : 1);
+
+		if (i == end)
+			return -1;
+
+		for (; i < end; i++) {
+			int b = source[i];
+			int digit;
+
+			if (b >= '0' && b <= '9')
+				digit = b - '0';
+			else if (hex && b >= 'a' && b <= 'f')
+				digit = b - 'a' + 10;
+			else if (hex && b >= 'A' && b <= 'F')
+				digit = b - 'A' + 10;
+			else
+				return -1;
+
+			c = c * (hex ? 16 : 10) + digit;
+
+			if (c > 0x10FFFF)
+				return -1;
+		}
+
+		// Surrogates are not characters.
+		return (c >= 0xD800 && c < 0xE000 ? -1 : c);
+	}
+
+	private boolean matches(String name, int i, int length) {
+		if (name.length() != length)
+			return false;
+
+		for (int j = 0; j < length; j++) {
+			if (source[i + j] != name.charAt(j))
+				return false;
+		}
+
+		return true;
+	}
+
+	private static int encodeUTF8(int c, byte[] dest, int index) {
+		if (c < 0x80)
+			dest[index++] = (byte) c;
+		else if (c < 0x800) {
+			dest[index++] = (byte) (0xC0 | (c >> 6));
+			dest[index++] = (byte) (0x80 | (c & 0x3F));
+		} else if (c < 0x10000) {
+			dest[index++] = (byte) (0xE0 | (c >> 12));
+			dest[index++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			dest[index++] = (byte) (0x80 | (c & 0x3F));
+		} else {
+			dest[index++] = (byte) (0xF0 | (c >> 18));
+			dest[index++] = (byte) (0x80 | ((c >> 12) & 0x3F));
+			dest[index++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			dest[index++] = (byte) (0x80 | (c & 0x3F));
+		}
+
+		return index;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,615 @@
+/**   
+ * Copyright 2011 The Buzz Media, LLC
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.thebuzzmedia.common.parser.xml;
+
+import com.thebuzzmedia.common.parser.AbstractTokenizer;
+import com.thebuzzmedia.common.parser.IPullParser;
+import com.thebuzzmedia.common.parser.IToken;
+import com.thebuzzmedia.common.parser.ParseException;
+import com.thebuzzmedia.common.util.ArrayUtils;
+
+/**
+ * Tokenizer used to parse XML-like markup (including lenient HTML) into a
+ * series of {@link XMLToken}s without ever building a document tree.
+ * <p/>
+ * A start tag is returned as a {@link XMLToken.Type#START_TAG} token followed
+ * by one {@link XMLToken.Type#ATTRIBUTE} token per attribute; an empty
+ * element (<code>&lt;br/&gt;</code>) is followed by a matching
+ * {@link XMLToken.Type#END_TAG}. The names and values of tokens are bounds
+ * within the buffer, no content is copied; entity references are only
+ * decoded when {@link XMLToken#getValue()} is called and every distinct name
+ * is only turned into a {@link String} once per document (see
+ * {@link #setInput(com.thebuzzmedia.common.io.IInput)}).
+ * <p/>
+ * Tags, comments and other markup can be split over any number of buffer
+ * refills, but each one must fit within the buffer. Text is returned in
+ * chunks when it does not fit, never splitting an entity reference.
+ * <p/>
+ * The tokenizer can also be used as an {@link IPullParser} whose events are
+ * the types of the tokens.
+ * <p/>
+ * Parsing is lenient: tag nesting is not checked, unquoted and valueless
+ * attributes are accepted, a <code>&lt;</code> that can't begin a tag (e.g.
+ * in <code>a &lt; b</code>) is returned as part of the text and the DTD is
+ * not processed. When error recovery is turned on, malformed markup is
+ * skipped up to the next <code>&lt;</code>.
+ * 
+ * @author Riyad Kalla (software@thebuzzmedia.com)
+ */
+public class XMLTokenizer extends
+		AbstractTokenizer<byte[], XMLToken.Type, byte[], byte[]> implements
+		IPullParser<byte[], XMLToken.Type, XMLToken.Type, byte[], byte[]> {
+	private static final byte[] COMMENT_START = { '<', '!', '-', '-' };
+	private static final byte[] COMMENT_END = { '-', '-', '>' };
+	private static final byte[] CDATA_START = { '<', '!', '[', 'C', 'D', 'A',
+			'T', 'A', '[' };
+	private static final byte[] CDATA_END = { ']', ']', '>' };
+	private static final byte[] PI_END = { '?', '>' };
+
+	/*
+	 * While the attributes of a start tag are returned, bIndex stays on its
+	 * '<' so the whole tag is kept in the buffer; these offsets are relative
+	 * to it.
+	 */
+	private boolean inTag;
+	private int attributeOffset;
+	private int tagEndOffset;
+	private int nameLength;
+	private boolean emptyElement;
+
+	/*
+	 * Errors are always reported at the '<' of the malformed markup, which
+	 * has to be skipped before recovery looks for the next one.
+	 */
+	private boolean skipMarkup;
+
+	private int nextIndex;
+	private NameTable names = new NameTable();
+
+	private XMLToken token;
+	private XMLToken reusableToken = new XMLToken();
+
+	public XMLTokenizer() {
+		this(false);
+	}
+
+	public XMLTokenizer(boolean reuseToken) {
+		this(reuseToken, DEFAULT_BUFFER_CAPACITY);
+	}
+
+	public XMLTokenizer(boolean reuseToken, int bufferCapacity)
+			throws IllegalArgumentException {
+		super(bufferCapacity);
+
+		this.reuseToken = reuseToken;
+	}
+
+	/**
+	 * Overridden to also forget the names interned for the last document.
+	 */
+	@Override
+	public void reset() {
+		super.reset();
+
+		token = null;
+		inTag = false;
+		skipMarkup = false;
+		names.clear();
+	}
+
+	/**
+	 * Used to parse the next token and get its type.
+	 * 
+	 * @return the type of the next token or <code>null</code> if there are no
+	 *         more tokens.
+	 * 
+	 * @throws ParseException
+	 *             if the content is malformed.
+	 * 
+	 * @see #getToken()
+	 */
+	public XMLToken.Type nextEvent() throws ParseException {
+		IToken<XMLToken.Type, byte[], byte[]> token = nextToken();
+		return (token == null ? null : token.getType());
+	}
+
+	/**
+	 * Used to get the token parsed by the last call to {@link #nextEvent()}
+	 * (or {@link #nextToken()}).
+	 * 
+	 * @return the last token parsed or <code>null</code> if there is none.
+	 */
+	public IToken<XMLToken.Type, byte[], byte[]> getToken() {
+		return token;
+	}
+
+	@Override
+	protected byte[] createBuffer(int capacity) throws IllegalArgumentException {
+		if (capacity < 0)
+			throw new IllegalArgumentException("capacity [" + capacity
+					+ "] must be >= 0");
+
+		return new byte[capacity];
+	}
+
+	@Override
+	protected IToken<XMLToken.Type, byte[], byte[]> parseTokenImpl(int index,
+			int length) throws ParseException {
+		boolean endOfInput = isEndOfInput();
+		int end = index + length;
+
+		token = null;
+
+		// The end of a non-empty start tag returns no token; carry on.
+		while (true) {
+			if (inTag) {
+				if (parseAttribute(index))
+					return token;
+
+				index = bIndex;
+				continue;
+			}
+
+			if (index == end)
+				return null;
+
+			if (buffer[index] != '<')
+				return parseText(index, index, end, endOfInput);
+
+			// A '<' ending the content can't begin markup.
+			if (index + 1 == end)
+				return (endOfInput ? parseText(index, end, end, endOfInput)
+						: needData(index, end, endOfInput));
+
+			switch (buffer[index + 1]) {
+			case '!':
+				return parseDeclaration(index, end, endOfInput);
+
+			case '?':
+				return parseProcessingInstruction(index, end, endOfInput);
+
+			case '/':
+				return parseEndTag(index, end, endOfInput);
+
+			default:
+				return parseStartTag(index, end, endOfInput);
+			}
+		}
+	}
+
+	@Override
+	protected void advanceIndex(IToken<XMLToken.Type, byte[], byte[]> token) {
+		bIndex = nextIndex;
+	}
+
+	/**
+	 * Overridden to only allow checkpoints outside of start tags.
+	 */
+	@Override
+	protected boolean isCheckpointSafe() {
+		return !inTag;
+	}
+
+	/**
+	 * Overridden to record the progress through the current start tag;
+	 * always empty at a checkpoint, but not necessarily for a saved
+	 * {@link com.thebuzzmedia.common.parser.ParserState}.
+	 */
+	@Override
+	protected long[] getCheckpointState() {
+		return new long[] { (inTag ? 1 : 0), attributeOffset, tagEndOffset,
+				nameLength, (emptyElement ? 1 : 0) };
+	}
+
+	@Override
+	protected void restoreCheckpointState(long[] state) {
+		inTag = (state != null && state.length == 5 && state[0] == 1);
+
+		if (inTag) {
+			attributeOffset = (int) state[1];
+			tagEndOffset = (int) state[2];
+			nameLength = (int) state[3];
+			emptyElement = (state[4] == 1);
+		}
+	}
+
+	@Override
+	protected int indexOfRecoveryPoint(int index, int length) {
+		int i = index + (skipMarkup ? 1 : 0);
+
+		inTag = false;
+		skipMarkup = false;
+
+		for (int end = index + length; i < end; i++) {
+			if (buffer[i] == '<')
+				return i;
+		}
+
+		return ArrayUtils.INVALID_INDEX;
+	}
+
+	/**
+	 * Used to parse the text beginning at <code>index</code>, looking for its
+	 * end from <code>scanIndex</code> on (past a leading stray
+	 * <code>&lt;</code>, if any).
+	 */
+	private IToken<XMLToken.Type, byte[], byte[]> parseText(int index,
+			int scanIndex, int end, boolean endOfInput) {
+		int i = scanIndex;
+
+		while (i < end && buffer[i] != '<')
+			i++;
+
+		if (i == end && !endOfInput) {
+			// Wait for the rest of the text unless it can't fit.
+			if (index > 0 || end < buffer.length)
+				return null;
+
+			i = indexOfChunkEnd(index, end);
+		}
+
+		createToken(XMLToken.Type.TEXT, index, i - index, null, index, 0, false);
+		nextIndex = i;
+
+		return token;
+	}
+
+	/**
+	 * Used to find where a chunk of text filling the buffer should end so it
+	 * doesn't split an entity reference or a UTF-8 encoded character.
+	 */
+	private int indexOfChunkEnd(int index, int end) {
+		int stop = Math.max(index + 1, end - XMLToken.MAX_REFERENCE_LENGTH);
+
+		for (int i = end - 1; i >= stop; i--) {
+			byte b = buffer[i];
+
+			if (b == ';')
+				break;
+
+			if (b == '&')
+				return i;
+		}
+
+		// Back up over a trailing incomplete UTF-8 sequence, if any.
+		int i = end - 1;
+
+		while (i > index && (buffer[i] & 0xC0) == 0x80 && end - i < 4)
+			i--;
+
+		int b = buffer[i] & 0xFF;
+		int sequenceLength = (b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2
+				: 1);
+
+		return (i > index && end - i < sequenceLength ? i : end);
+	}
+
+	private IToken<XMLToken.Type, byte[], byte[]> parseDeclaration(int index,
+			int end, boolean endOfInput) throws ParseException {
+		int match = matches(COMMENT_START, index, end);
+
+		if (match == 0)
+			return needData(index, end, endOfInput);
+
+		if (match == 1) {
+			int cIndex = indexOf(COMMENT_END, index + 4, end);
+
+			if (cIndex == ArrayUtils.INVALID_INDEX)
+				return needData(index, end, endOfInput);
+
+			createToken(XMLToken.Type.COMMENT, index + 4, cIndex - index - 4,
+					null, index, 0, false);
+			nextIndex = cIndex + COMMENT_END.length;
+
+			return token;
+		}
+
+		match = matches(CDATA_START, index, end);
+
+		if (match == 0)
+			return needData(index, end, endOfInput);
+
+		if (match == 1) {
+			int cIndex = indexOf(CDATA_END, index + 9, end);
+
+			if (cIndex == ArrayUtils.INVALID_INDEX)
+				return needData(index, end, endOfInput);
+
+			createToken(XMLToken.Type.TEXT, index + 9, cIndex - index - 9,
+					null, index, 0, true);
+			nextIndex = cIndex + CDATA_END.length;
+
+			return token;
+		}
+
+		// A DOCTYPE can contain an internal subset with its own markup.
+		int nesting = 0;
+		byte quote = 0;
+
+		for (int i = index + 2; i < end; i++) {
+			byte b = buffer[i];
+
+			if (quote != 0) {
+				if (b == quote)
+					quote = 0;
+			} else if (b == '"' || b == '\'')
+				quote = b;
+			else if (b == '[')
+				nesting++;
+			else if (b == ']')
+				nesting--;
+			else if (b == '>' && nesting <= 0) {
+				createToken(XMLToken.Type.DOCTYPE, index + 2, i - index - 2,
+						null, index, 0, false);
+				nextIndex = i + 1;
+
+				return token;
+			}
+		}
+
+		return needData(index, end, endOfInput);
+	}
+
+	private IToken<XMLToken.Type, byte[], byte[]> parseProcessingInstruction(
+			int index, int end, boolean endOfInput) throws ParseException {
+		int pIndex = indexOf(PI_END, index + 2, end);
+
+		if (pIndex == ArrayUtils.INVALID_INDEX)
+			return needData(index, end, endOfInput);
+
+		int nIndex = index + 2;
+		int nLength = indexOfNameEnd(nIndex, pIndex) - nIndex;
+
+		if (nLength == 0)
+			throw malformed("Missing processing instruction target.", index);
+
+		int i = nIndex + nLength;
+
+		while (i < pIndex && isWhitespace(buffer[i]))
+			i++;
+
+		createToken(XMLToken.Type.PROCESSING_INSTRUCTION, i, pIndex - i,
+				names.intern(buffer, nIndex, nLength), nIndex, nLength, false);
+		nextIndex = pIndex + PI_END.length;
+
+		return token;
+	}
+
+	private IToken<XMLToken.Type, byte[], byte[]> parseEndTag(int index,
+			int end, boolean endOfInput) throws ParseException {
+		int nIndex = index + 2;
+		int i = indexOfNameEnd(nIndex, end);
+		int nLength = i - nIndex;
+
+		while (i < end && isWhitespace(buffer[i]))
+			i++;
+
+		if (i == end)
+			return needData(index, end, endOfInput);
+
+		if (nLength == 0 || buffer[i] != '>')
+			throw malformed("Malformed end tag.", index);
+
+		createToken(XMLToken.Type.END_TAG, nIndex, nLength, names.intern(
+				buffer, nIndex, nLength), nIndex, nLength, false);
+		nextIndex = i + 1;
+
+		return token;
+	}
+
+	private IToken<XMLToken.Type, byte[], byte[]> parseStartTag(int index,
+			int end, boolean endOfInput) throws ParseException {
+		int nIndex = index + 1;
+
+		// Be lenient with a stray '<' in text (e.g. "a < b").
+		if (!isNameStart(buffer[nIndex]))
+			return parseText(index, nIndex, end, endOfInput);
+
+		int nLength = indexOfNameEnd(nIndex, end) - nIndex;
+
+		// Find the end of the tag, ignoring any '>' in attribute values.
+		byte quote = 0;
+		int i = nIndex + nLength;
+
+		for (; i < end; i++) {
+			byte b = buffer[i];
+
+			if (quote != 0) {
+				if (b == quote)
+					quote = 0;
+			} else if (b == '"' || b == '\'')
+				quote = b;
+			else if (b == '>')
+				break;
+		}
+
+		if (i == end)
+			return needData(index, end, endOfInput);
+
+		inTag = true;
+		nameLength = nLength;
+		attributeOffset = 1 + nLength;
+		emptyElement = (buffer[i - 1] == '/');
+		tagEndOffset = i - index - (emptyElement ? 1 : 0);
+
+		createToken(XMLToken.Type.START_TAG, nIndex, nLength, names.intern(
+				buffer, nIndex, nLength), nIndex, nLength, false);
+
+		// Keep the whole tag in the buffer until its attributes are parsed.
+		nextIndex = index;
+
+		return token;
+	}
+
+	/**
+	 * Used to parse the next attribute of the start tag at
+	 * <code>index</code> or, once there are none left, finish the tag.
+	 * 
+	 * @return <code>true</code> if a token was created, otherwise
+	 *         <code>false</code> and <code>bIndex</code> has been moved past
+	 *         the tag.
+	 */
+	private boolean parseAttribute(int index) throws ParseException {
+		int i = index + attributeOffset;
+		int end = index + tagEndOffset;
+
+		while (i < end && isWhitespace(buffer[i]))
+			i++;
+
+		if (i == end) {
+			inTag = false;
+
+			if (!emptyElement) {
+				bIndex = end + 1;
+				return false;
+			}
+
+			createToken(XMLToken.Type.END_TAG, index + 1, nameLength,
+					names.intern(buffer, index + 1, nameLength), index + 1,
+					nameLength, false);
+			nextIndex = end + 2;
+
+			return true;
+		}
+
+		int nIndex = i;
+		i = indexOfNameEnd(nIndex, end);
+
+		if (i == nIndex)
+			throw malformed("Invalid attribute name.", index);
+
+		int nLength = i - nIndex;
+
+		while (i < end && isWhitespace(buffer[i]))
+			i++;
+
+		int vIndex = nIndex + nLength;
+		int vLength = 0;
+
+		if (i < end && buffer[i] == '=') {
+			i++;
+
+			while (i < end && isWhitespace(buffer[i]))
+				i++;
+
+			if (i < end && (buffer[i] == '"' || buffer[i] == '\'')) {
+				byte quote = buffer[i];
+
+				vIndex = ++i;
+
+				while (i < end && buffer[i] != quote)
+					i++;
+
+				if (i == end)
+					throw malformed("Unterminated attribute value.", index);
+
+				vLength = i++ - vIndex;
+			} else {
+				vIndex = i;
+
+				while (i < end && !isWhitespace(buffer[i]))
+					i++;
+
+				vLength = i - vIndex;
+			}
+		} else
+			i = nIndex + nLength;
+
+		createToken(XMLToken.Type.ATTRIBUTE, vIndex, vLength, names.intern(
+				buffer, nIndex, nLength), nIndex, nLength, false);
+		attributeOffset = i - index;
+		nextIndex = index;
+
+		return true;
+	}
+
+	private IToken<XMLToken.Type, byte[], byte[]> needData(int index, int end,
+			boolean endOfInput) throws ParseException {
+		if (endOfInput)
+			throw malformed("Unterminated markup.", index);
+
+		// Markup filling the whole buffer can never be completed.
+		if (index == 0 && end == buffer.length)
+			throw malformed("Markup exceeds the buffer capacity of "
+					+ buffer.length + " bytes.", index);
+
+		bIndex = index;
+		return null;
+	}
+
+	private void createToken(XMLToken.Type type, int tIndex, int tLength,
+			String name, int nIndex, int nLength, boolean cdata) {
+		XMLToken token = (reuseToken ? reusableToken : new XMLToken());
+		token.setValue(type, buffer, tIndex, tLength, name, nIndex, nLength,
+				cdata);
+
+		this.token = token;
+	}
+
+	/**
+	 * Used to determine if <code>pattern</code> is at <code>index</code>.
+	 * 
+	 * @return <code>1</code> if it is, <code>-1</code> if it isn't or
+	 *         <code>0</code> if the buffer ends before that can be known.
+	 */
+	private int matches(byte[] pattern, int index, int end) {
+		for (int i = 0; i < pattern.length; i++) {
+			if (index + i == end)
+				return 0;
+
+			if (buffer[index + i] != pattern[i])
+				return -1;
+		}
+
+		return 1;
+	}
+
+	private int indexOf(byte[] pattern, int index, int end) {
+		return (end - index < pattern.length ? ArrayUtils.INVALID_INDEX
+				: ArrayUtils.indexOfNoCheck(pattern, buffer, index, end
+						- index));
+	}
+
+	private int indexOfNameEnd(int index, int end) {
+		while (index < end) {
+			byte b = buffer[index];
+
+			if (isWhitespace(b) || b == '>' || b == '/' || b == '='
+					|| b == '<' || b == '"' || b == '\'' || b == '?')
+				break;
+
+			index++;
+		}
+
+		return index;
+	}
+
+	private static boolean isNameStart(byte b) {
+		return ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_'
+				|| b == ':' || (b & 0x80) != 0);
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return (b == ' ' || b == '\t' || b == '\r' || b == '\n');
+	}
+
+	private ParseException malformed(String message, int index) {
+		skipMarkup = true;
+
+		return createParseException(ParseException.Type.MALFORMED, message,
+				index);
+	}
+}
\ No newline at end of file